@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package com.bc.ceres.binio.bench;
+
+import com.bc.ceres.binio.util.ByteArrayCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk decoding of primitive arrays by {@link ByteArrayCodec}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteArrayCodecBenchmark {
+
+    @Param({"LITTLE_ENDIAN", "BIG_ENDIAN"})
+    public String byteOrder;
+
+    @Param({"65536"})
+    public int byteCount;
+
+    private ByteArrayCodec codec;
+    private byte[] bytes;
+    private short[] shorts;
+    private int[] ints;
+    private float[] floats;
+    private double[] doubles;
+
+    @Setup
+    public void setUp() {
+        codec = ByteArrayCodec.getInstance("BIG_ENDIAN".equals(byteOrder) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        bytes = new byte[byteCount];
+        new Random(42).nextBytes(bytes);
+        shorts = new short[byteCount / 2];
+        ints = new int[byteCount / 4];
+        floats = new float[byteCount / 4];
+        doubles = new double[byteCount / 8];
+    }
+
+    @Benchmark
+    public short[] getShorts() {
+        codec.getShorts(bytes, 0, shorts, 0, shorts.length);
+        return shorts;
+    }
+
+    @Benchmark
+    public int[] getInts() {
+        codec.getInts(bytes, 0, ints, 0, ints.length);
+        return ints;
+    }
+
+    @Benchmark
+    public float[] getFloats() {
+        codec.getFloats(bytes, 0, floats, 0, floats.length);
+        return floats;
+    }
+
+    @Benchmark
+    public double[] getDoubles() {
+        codec.getDoubles(bytes, 0, doubles, 0, doubles.length);
+        return doubles;
+    }
+
+    @Benchmark
+    public byte[] setInts() {
+        codec.setInts(bytes, 0, ints, 0, ints.length);
+        return bytes;
+    }
+}
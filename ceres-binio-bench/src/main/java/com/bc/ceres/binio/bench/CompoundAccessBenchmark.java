@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package com.bc.ceres.binio.bench;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.util.ByteArrayIOHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Member access of compounds of known size (grid point headers, brightness temperature records)
+ * and of variable size (grid points) through the {@link CompoundData} API.
+ * The product is held in memory, so that no I/O is involved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompoundAccessBenchmark {
+
+    @Param({"1000"})
+    public int gridPointCount;
+
+    private DataContext context;
+    private SequenceData gridPointList;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = SmosLikeProduct.FORMAT.createContext(new ByteArrayIOHandler(SmosLikeProduct.createData(gridPointCount)));
+        gridPointList = context.getData().getSequence("Grid_Point_List");
+        // resolve all grid point offsets once, the benchmarks measure member access only
+        gridPointList.resolveSize();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.dispose();
+    }
+
+    @Benchmark
+    public double gridPointMembers() throws IOException {
+        double sum = 0;
+        for (int i = 0; i < gridPointCount; i++) {
+            final CompoundData gridPoint = gridPointList.getCompound(i);
+            sum += gridPoint.getInt(0);
+            sum += gridPoint.getFloat(1);
+            sum += gridPoint.getFloat(2);
+            sum += gridPoint.getInt(5);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double btDataMembers() throws IOException {
+        double sum = 0;
+        for (int i = 0; i < gridPointCount; i++) {
+            final SequenceData btDataList = gridPointList.getCompound(i).getSequence(6);
+            final int btDataCount = btDataList.getElementCount();
+            for (int j = 0; j < btDataCount; j++) {
+                final CompoundData btData = btDataList.getCompound(j);
+                sum += btData.getInt(0);
+                sum += btData.getFloat(1);
+                sum += btData.getInt(3);
+            }
+        }
+        return sum;
+    }
+}
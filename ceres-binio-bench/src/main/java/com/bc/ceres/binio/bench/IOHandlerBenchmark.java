@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package com.bc.ceres.binio.bench;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.util.ByteArrayIOHandler;
+import com.bc.ceres.binio.util.FileChannelIOHandler;
+import com.bc.ceres.binio.util.MappedFileChannelIOHandler;
+import com.bc.ceres.binio.util.RandomAccessFileIOHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end decoding of a product file: a new data context is created for every invocation,
+ * then all grid points and their brightness temperature records are read through the given I/O handler.
+ * The product file is generated in the temporary directory during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IOHandlerBenchmark {
+
+    @Param({"ByteArray", "RandomAccessFile", "RandomAccessFileConcurrentReads", "FileChannel", "MappedFileChannel"})
+    public String ioHandler;
+
+    @Param({"10000"})
+    public int gridPointCount;
+
+    private File file;
+    private RandomAccessFile raf;
+    private byte[] fileData;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = SmosLikeProduct.createFile(gridPointCount);
+        raf = new RandomAccessFile(file, "r");
+        fileData = Files.readAllBytes(file.toPath());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        raf.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public double readAll() throws IOException {
+        final DataContext context = SmosLikeProduct.FORMAT.createContext(createIOHandler());
+        try {
+            final SequenceData gridPointList = context.getData().getSequence("Grid_Point_List");
+            final int gridPointCount = gridPointList.getElementCount();
+            double sum = 0;
+            for (int i = 0; i < gridPointCount; i++) {
+                final CompoundData gridPoint = gridPointList.getCompound(i);
+                sum += gridPoint.getFloat(1);
+                final SequenceData btDataList = gridPoint.getSequence(6);
+                final int btDataCount = btDataList.getElementCount();
+                for (int j = 0; j < btDataCount; j++) {
+                    sum += btDataList.getCompound(j).getFloat(1);
+                }
+            }
+            return sum;
+        } finally {
+            context.dispose();
+        }
+    }
+
+    private IOHandler createIOHandler() throws IOException {
+        if ("ByteArray".equals(ioHandler)) {
+            return new ByteArrayIOHandler(fileData);
+        } else if ("RandomAccessFile".equals(ioHandler)) {
+            return new RandomAccessFileIOHandler(raf);
+        } else if ("RandomAccessFileConcurrentReads".equals(ioHandler)) {
+            return new RandomAccessFileIOHandler(raf, true);
+        } else if ("FileChannel".equals(ioHandler)) {
+            return new FileChannelIOHandler(raf.getChannel());
+        } else if ("MappedFileChannel".equals(ioHandler)) {
+            return new MappedFileChannelIOHandler(raf.getChannel());
+        }
+        throw new IllegalArgumentException("ioHandler: " + ioHandler);
+    }
+}
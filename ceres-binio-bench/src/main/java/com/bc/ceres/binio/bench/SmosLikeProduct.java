@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package com.bc.ceres.binio.bench;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.util.ByteArrayCodec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+/**
+ * A synthetic product resembling the structure of SMOS L1C browse products:
+ * a list of grid points, each of them holding a variable number of brightness temperature records.
+ */
+public class SmosLikeProduct {
+
+    public static final CompoundType BT_DATA_TYPE =
+            COMPOUND("Bt_Data",
+                     MEMBER("Flags", USHORT),
+                     MEMBER("BT_Value", FLOAT),
+                     MEMBER("Radiometric_Accuracy_of_Pixel", USHORT),
+                     MEMBER("Azimuth_Angle", USHORT),
+                     MEMBER("Footprint_Axis1", USHORT),
+                     MEMBER("Footprint_Axis2", USHORT));
+
+    public static final CompoundType GRID_POINT_DATA_TYPE =
+            COMPOUND("Grid_Point_Data",
+                     MEMBER("Grid_Point_ID", UINT),
+                     MEMBER("Grid_Point_Latitude", FLOAT),
+                     MEMBER("Grid_Point_Longitude", FLOAT),
+                     MEMBER("Grid_Point_Altitude", FLOAT),
+                     MEMBER("Grid_Point_Mask", UBYTE),
+                     MEMBER("BT_Data_Counter", UBYTE),
+                     MEMBER("Bt_Data_List", VAR_SEQUENCE(BT_DATA_TYPE, "BT_Data_Counter")));
+
+    public static final CompoundType PRODUCT_TYPE =
+            COMPOUND("MIR_BWLF1C",
+                     MEMBER("Grid_Point_Counter", UINT),
+                     MEMBER("Grid_Point_List", VAR_SEQUENCE(GRID_POINT_DATA_TYPE, "Grid_Point_Counter")));
+
+    public static final DataFormat FORMAT = new DataFormat(PRODUCT_TYPE, ByteOrder.LITTLE_ENDIAN);
+
+    private static final int GRID_POINT_HEADER_SIZE = 18;
+
+    private SmosLikeProduct() {
+    }
+
+    /**
+     * @param gridPointIndex The grid point index.
+     * @return The number of brightness temperature records of the grid point, varying between 1 and 32.
+     */
+    public static int getBtDataCount(int gridPointIndex) {
+        return 1 + (gridPointIndex * 7) % 32;
+    }
+
+    /**
+     * Creates the product data in memory.
+     *
+     * @param gridPointCount The number of grid points.
+     * @return The product data.
+     */
+    public static byte[] createData(int gridPointCount) {
+        int size = 4;
+        for (int i = 0; i < gridPointCount; i++) {
+            size += GRID_POINT_HEADER_SIZE + getBtDataCount(i) * BT_DATA_TYPE.getSize();
+        }
+        final ByteArrayCodec codec = ByteArrayCodec.getInstance(FORMAT.getByteOrder());
+        final byte[] data = new byte[size];
+        int pos = 0;
+        codec.setInt(data, pos, gridPointCount);
+        pos += 4;
+        for (int i = 0; i < gridPointCount; i++) {
+            final int btDataCount = getBtDataCount(i);
+            codec.setInt(data, pos, i);
+            codec.setFloat(data, pos + 4, -90.0f + (180.0f * i) / gridPointCount);
+            codec.setFloat(data, pos + 8, -180.0f + (360.0f * i) / gridPointCount);
+            codec.setFloat(data, pos + 12, 0.5f * i);
+            data[pos + 16] = (byte) (i & 1);
+            data[pos + 17] = (byte) btDataCount;
+            pos += GRID_POINT_HEADER_SIZE;
+            for (int j = 0; j < btDataCount; j++) {
+                codec.setShort(data, pos, (short) j);
+                codec.setFloat(data, pos + 2, 200.0f + j);
+                codec.setShort(data, pos + 6, (short) (i + j));
+                codec.setShort(data, pos + 8, (short) (2 * j));
+                codec.setShort(data, pos + 10, (short) 30);
+                codec.setShort(data, pos + 12, (short) 40);
+                pos += BT_DATA_TYPE.getSize();
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Creates a temporary product file, which is deleted on exit.
+     *
+     * @param gridPointCount The number of grid points.
+     * @return The product file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static File createFile(int gridPointCount) throws IOException {
+        final File file = File.createTempFile("ceres-binio-bench-", ".bin");
+        file.deleteOnExit();
+        final OutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(createData(gridPointCount));
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package com.bc.ceres.binio.internal;
+
+import com.bc.ceres.binio.SimpleType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-element access by {@link DataAccessor}s, on heap arrays and on direct buffers.
+ * <p>
+ * Located in the implementation package because data accessors are not part of the public API.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataAccessorBenchmark {
+
+    @Param({"LITTLE_ENDIAN", "BIG_ENDIAN"})
+    public String byteOrder;
+
+    @Param({"65536"})
+    public int byteCount;
+
+    private DataAccessor ushortAccessor;
+    private DataAccessor intAccessor;
+    private DataAccessor floatAccessor;
+    private DataAccessor doubleAccessor;
+    private byte[] array;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        final ByteOrder order = "BIG_ENDIAN".equals(byteOrder) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        ushortAccessor = DataAccessor.getInstance(SimpleType.USHORT, order);
+        intAccessor = DataAccessor.getInstance(SimpleType.INT, order);
+        floatAccessor = DataAccessor.getInstance(SimpleType.FLOAT, order);
+        doubleAccessor = DataAccessor.getInstance(SimpleType.DOUBLE, order);
+        array = new byte[byteCount];
+        new Random(42).nextBytes(array);
+        buffer = ByteBuffer.allocateDirect(byteCount).order(order);
+        buffer.put(array);
+        buffer.clear();
+    }
+
+    @Benchmark
+    public int arrayGetUShortAsInt() {
+        int sum = 0;
+        for (int i = 0; i < byteCount; i += 2) {
+            sum += ushortAccessor.getInt(array, i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int arrayGetInt() {
+        int sum = 0;
+        for (int i = 0; i < byteCount; i += 4) {
+            sum += intAccessor.getInt(array, i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double arrayGetFloatAsDouble() {
+        double sum = 0;
+        for (int i = 0; i < byteCount; i += 4) {
+            sum += floatAccessor.getDouble(array, i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double arrayGetDouble() {
+        double sum = 0;
+        for (int i = 0; i < byteCount; i += 8) {
+            sum += doubleAccessor.getDouble(array, i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int bufferGetInt() {
+        int sum = 0;
+        for (int i = 0; i < byteCount; i += 4) {
+            sum += intAccessor.getInt(buffer, i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double bufferGetDouble() {
+        double sum = 0;
+        for (int i = 0; i < byteCount; i += 8) {
+            sum += doubleAccessor.getDouble(buffer, i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An I/O handler which can provide direct access to its storage, e.g. to the pages of a memory-mapped file.
+ * <p/>
+ * Segments of data instances are backed by the buffers returned by {@link #getBuffer},
+ * so that no bytes need to be copied into heap arrays.
+ *
+ * @since Ceres 0.14
+ */
+public interface ByteBufferIOHandler extends IOHandler {
+
+    /**
+     * Gets a buffer whose content is shared with the handler's storage.
+     * The returned buffer starts at the given position and has a capacity of {@code length} bytes.
+     * Changes made to a writable buffer are changes to the storage, a read-only buffer is returned
+     * if the storage cannot be modified.
+     * <p/>
+     * If the requested range cannot be provided as a single buffer, e.g. because it lies beyond the
+     * end of the file, {@code null} is returned and the bytes must be accessed using
+     * {@link #read} and {@link #write} instead.
+     *
+     * @param context  The I/O context.
+     * @param position The position of the first byte; must be non-negative.
+     * @param length   The number of bytes.
+     * @return The buffer, or {@code null}.
+     * @throws IOException If an I/O error occurs.
+     */
+    ByteBuffer getBuffer(DataContext context, long position, int length) throws IOException;
+}
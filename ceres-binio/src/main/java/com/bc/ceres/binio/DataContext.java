@@ -21,6 +21,9 @@ package com.bc.ceres.binio;
  * <p>
  * I/O performance my be tuned by setting the {@code ceres.binio.segmentSizeLimit} system property
  * to the size (in bytes) of data segments shared by multiple subsequent compounds members.
+ * The memory occupied by loaded segments may be bounded by setting the {@code ceres.binio.segmentCacheCapacity}
+ * system property to a size in bytes. Least recently used segments are then written back, if modified,
+ * and reloaded on demand.
  *
  * @author Norman Fomferra
  * @version $Revision$ $Date$
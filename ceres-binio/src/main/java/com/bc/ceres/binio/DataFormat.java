@@ -18,6 +18,8 @@ package com.bc.ceres.binio;
 
 import com.bc.ceres.binio.internal.DataContextImpl;
 import com.bc.ceres.binio.util.FileChannelIOHandler;
+import com.bc.ceres.binio.util.FilterIOHandler;
+import com.bc.ceres.binio.util.OffsetIndex;
 import com.bc.ceres.binio.util.RandomAccessFileIOHandler;
 import com.bc.ceres.core.Assert;
 
@@ -60,6 +62,9 @@ public class DataFormat {
 
     /**
      * Creates a new random access file data context.
+     * <p>
+     * In read-only mode (<tt>"r"</tt>), data is read using positional I/O, so that
+     * the data instances of the context may be read by multiple threads concurrently.
      *
      * @param file the file object
      * @param mode the access mode, one of <tt>"r"</tt>, <tt>"rw"</tt>, <tt>"rws"</tt>, or
@@ -70,8 +75,49 @@ public class DataFormat {
     public DataContext createContext(File file, String mode) throws FileNotFoundException {
         Assert.notNull(file, "file");
         Assert.notNull(mode, "mode");
+        return createFileContext(file, mode, null);
+    }
+
+    /**
+     * Creates a new random access file data context as {@link #createContext(File, String)} does.
+     * <p>
+     * If {@code indexed} is {@code true}, the context uses the persistent {@link OffsetIndex} of the file.
+     * The element offsets of sequences of variably sized elements, which are resolved while the context
+     * is in use, are saved to the index file when the context is disposed. Later contexts on the unchanged
+     * file can then access the elements of these sequences randomly without resolving their offsets again.
+     * If data is written through the context, the index is invalidated and the index file is deleted.
+     *
+     * @param file    the file object
+     * @param mode    the access mode, see {@link #createContext(File, String)}.
+     * @param indexed whether to use the file's offset index.
+     * @return The context.
+     * @throws IOException If the file could not be opened or the index file could not be read.
+     * @since Ceres 0.14
+     */
+    public DataContext createContext(File file, String mode, boolean indexed) throws IOException {
+        Assert.notNull(file, "file");
+        Assert.notNull(mode, "mode");
+        final OffsetIndex offsetIndex = indexed ? OffsetIndex.load(file) : null;
+        final DataContextImpl context = createFileContext(file, mode, offsetIndex);
+        context.setOffsetIndex(offsetIndex);
+        return context;
+    }
+
+    private DataContextImpl createFileContext(File file, String mode, final OffsetIndex offsetIndex) throws FileNotFoundException {
         final RandomAccessFile raf = new RandomAccessFile(file, mode);
-        return new DataContextImpl(this, new RandomAccessFileIOHandler(raf)) {
+        final boolean concurrentReads = "r".equals(mode);
+        IOHandler handler = new RandomAccessFileIOHandler(raf, concurrentReads);
+        if (offsetIndex != null && !concurrentReads) {
+            // written bytes may change the element offsets recorded in the index
+            handler = new FilterIOHandler(handler) {
+                @Override
+                public void write(DataContext context, byte[] data, long position) throws IOException {
+                    offsetIndex.invalidate();
+                    super.write(context, data, position);
+                }
+            };
+        }
+        return new DataContextImpl(this, handler) {
             private boolean disposed;
 
             @Override
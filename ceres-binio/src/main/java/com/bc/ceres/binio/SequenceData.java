@@ -16,6 +16,8 @@
 
 package com.bc.ceres.binio;
 
+import java.io.IOException;
+
 /**
  * A sequence of elements of same type.
  */
@@ -35,6 +37,88 @@ public interface SequenceData extends CollectionData {
     @Deprecated
     SequenceType getSequenceType();
 
-    // todo - get<type>s(index, array, off, len)
-    // todo - set<type>s(index, array, off, len)
+    /////////////////////////////////////////////////////////////////////////
+    // Bulk data access
+
+    /**
+     * Reads {@code length} consecutive elements starting at the given element index into
+     * the given array. Elements of a different simple type are converted as done by
+     * the single-element accessors, e.g. {@link #getFloat(int)}.
+     *
+     * @param index  The index of the first element.
+     * @param array  The array which receives the element values.
+     * @param offset The offset into {@code array}.
+     * @param length The number of elements to read.
+     * @throws IOException If an I/O error occurs.
+     * @throws DataAccessException If the sequence elements are not of a simple type or
+     *                             if the given index range is out of bounds.
+     * @since Ceres 0.14
+     */
+    void getBytes(int index, byte[] array, int offset, int length) throws IOException;
+
+    /**
+     * See {@link #getBytes(int, byte[], int, int)}.
+     */
+    void getShorts(int index, short[] array, int offset, int length) throws IOException;
+
+    /**
+     * See {@link #getBytes(int, byte[], int, int)}.
+     */
+    void getInts(int index, int[] array, int offset, int length) throws IOException;
+
+    /**
+     * See {@link #getBytes(int, byte[], int, int)}.
+     */
+    void getLongs(int index, long[] array, int offset, int length) throws IOException;
+
+    /**
+     * See {@link #getBytes(int, byte[], int, int)}.
+     */
+    void getFloats(int index, float[] array, int offset, int length) throws IOException;
+
+    /**
+     * See {@link #getBytes(int, byte[], int, int)}.
+     */
+    void getDoubles(int index, double[] array, int offset, int length) throws IOException;
+
+    /**
+     * Writes {@code length} consecutive elements starting at the given element index from
+     * the given array. Values are converted into the sequence's element type as done by
+     * the single-element accessors, e.g. {@link #setFloat(int, float)}.
+     *
+     * @param index  The index of the first element.
+     * @param array  The array which provides the element values.
+     * @param offset The offset into {@code array}.
+     * @param length The number of elements to write.
+     * @throws IOException If an I/O error occurs.
+     * @throws DataAccessException If the sequence elements are not of a simple type or
+     *                             if the given index range is out of bounds.
+     * @since Ceres 0.14
+     */
+    void setBytes(int index, byte[] array, int offset, int length) throws IOException;
+
+    /**
+     * See {@link #setBytes(int, byte[], int, int)}.
+     */
+    void setShorts(int index, short[] array, int offset, int length) throws IOException;
+
+    /**
+     * See {@link #setBytes(int, byte[], int, int)}.
+     */
+    void setInts(int index, int[] array, int offset, int length) throws IOException;
+
+    /**
+     * See {@link #setBytes(int, byte[], int, int)}.
+     */
+    void setLongs(int index, long[] array, int offset, int length) throws IOException;
+
+    /**
+     * See {@link #setBytes(int, byte[], int, int)}.
+     */
+    void setFloats(int index, float[] array, int offset, int length) throws IOException;
+
+    /**
+     * See {@link #setBytes(int, byte[], int, int)}.
+     */
+    void setDoubles(int index, double[] array, int offset, int length) throws IOException;
 }
@@ -22,6 +22,7 @@ import com.bc.ceres.binio.DataContext;
 import com.bc.ceres.binio.SequenceType;
 
 import java.io.IOException;
+import java.text.MessageFormat;
 
 
 abstract class AbstractSequenceOfCollections extends AbstractSequence {
@@ -38,6 +39,27 @@ abstract class AbstractSequenceOfCollections extends AbstractSequence {
         return position;
     }
 
+    /**
+     * Creates a new sequence which provides the elements {@code index} to {@code index + count - 1}
+     * of this sequence. The new sequence shares no mutable state, e.g. segments or offsets being
+     * resolved, with this sequence, so that views of the same sequence can be used by different threads.
+     *
+     * @param index The index of the first element.
+     * @param count The number of elements.
+     * @return The new sequence.
+     * @throws IOException If an I/O error occurs.
+     */
+    abstract SequenceInstance createView(int index, int count) throws IOException;
+
+    void checkViewRange(int index, int count) {
+        final int elementCount = getElementCount();
+        // written so that index + count can't overflow
+        if (count < 0 || index < 0 || index > elementCount - count) {
+            throw new DataAccessException(MessageFormat.format("Illegal element range [{0}, {1}) for a sequence of {2} elements",
+                                                               index, (long) index + count, elementCount));
+        }
+    }
+
     @Override
     public byte getByte(int index) {
         throw new DataAccessException();
@@ -97,4 +119,64 @@ abstract class AbstractSequenceOfCollections extends AbstractSequence {
     public void setDouble(int index, double value) throws IOException {
         throw new DataAccessException();
     }
+
+    @Override
+    public void getBytes(int index, byte[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void getShorts(int index, short[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void getInts(int index, int[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void getLongs(int index, long[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void getFloats(int index, float[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void getDoubles(int index, double[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void setBytes(int index, byte[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void setShorts(int index, short[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void setInts(int index, int[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void setLongs(int index, long[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void setFloats(int index, float[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
+
+    @Override
+    public void setDoubles(int index, double[] array, int offset, int length) throws IOException {
+        throw new DataAccessException();
+    }
 }
\ No newline at end of file
@@ -22,14 +22,18 @@ import com.bc.ceres.binio.DataContext;
 import com.bc.ceres.binio.SequenceType;
 
 import java.io.IOException;
+import java.text.MessageFormat;
 
 abstract class AbstractSequenceOfSimples extends AbstractSequence {
     private final int elementSize;
+    private final boolean cached;
     private DataAccessor dataAccessor;
+    private boolean resident;
 
     protected AbstractSequenceOfSimples(DataContext context, CollectionData parent, SequenceType sequenceType) {
         super(context, parent, sequenceType);
         this.elementSize = sequenceType.getElementType().getSize();
+        this.cached = Segment.getSegmentCache(context) != null;
     }
 
     protected abstract Segment getSegment();
@@ -38,80 +42,266 @@ abstract class AbstractSequenceOfSimples extends AbstractSequence {
 
     @Override
     public byte getByte(int index) throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getByte(getSegment().getData(), getSegmentOffset(index));
+        final Segment segment = pinSegment();
+        try {
+            return segment.getByte(dataAccessor, getSegmentOffset(index));
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public short getShort(int index) throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getShort(getSegment().getData(), getSegmentOffset(index));
+        final Segment segment = pinSegment();
+        try {
+            return segment.getShort(dataAccessor, getSegmentOffset(index));
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public int getInt(int index) throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getInt(getSegment().getData(), getSegmentOffset(index));
+        final Segment segment = pinSegment();
+        try {
+            return segment.getInt(dataAccessor, getSegmentOffset(index));
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public long getLong(int index) throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getLong(getSegment().getData(), getSegmentOffset(index));
+        final Segment segment = pinSegment();
+        try {
+            return segment.getLong(dataAccessor, getSegmentOffset(index));
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public float getFloat(int index) throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getFloat(getSegment().getData(), getSegmentOffset(index));
+        final Segment segment = pinSegment();
+        try {
+            return segment.getFloat(dataAccessor, getSegmentOffset(index));
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public double getDouble(int index) throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getDouble(getSegment().getData(), getSegmentOffset(index));
+        final Segment segment = pinSegment();
+        try {
+            return segment.getDouble(dataAccessor, getSegmentOffset(index));
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public void setByte(int index, byte value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setByte(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        final Segment segment = pinSegment();
+        try {
+            segment.setByte(dataAccessor, getSegmentOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public void setShort(int index, short value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setShort(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        final Segment segment = pinSegment();
+        try {
+            segment.setShort(dataAccessor, getSegmentOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public void setInt(int index, int value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setInt(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        final Segment segment = pinSegment();
+        try {
+            segment.setInt(dataAccessor, getSegmentOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public void setLong(int index, long value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setLong(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        final Segment segment = pinSegment();
+        try {
+            segment.setLong(dataAccessor, getSegmentOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public void setFloat(int index, float value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setFloat(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        final Segment segment = pinSegment();
+        try {
+            segment.setFloat(dataAccessor, getSegmentOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
     public void setDouble(int index, double value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setDouble(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        final Segment segment = pinSegment();
+        try {
+            segment.setDouble(dataAccessor, getSegmentOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void getBytes(int index, byte[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.getBytes(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void getShorts(int index, short[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.getShorts(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void getInts(int index, int[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.getInts(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void getLongs(int index, long[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.getLongs(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void getFloats(int index, float[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.getFloats(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void getDoubles(int index, double[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.getDoubles(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void setBytes(int index, byte[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.setBytes(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void setShorts(int index, short[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.setShorts(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void setInts(int index, int[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.setInts(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void setLongs(int index, long[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.setLongs(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void setFloats(int index, float[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.setFloats(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
+    }
+
+    @Override
+    public void setDoubles(int index, double[] array, int offset, int length) throws IOException {
+        final Segment segment = pinSegment();
+        try {
+            checkRange(index, length);
+            segment.setDoubles(dataAccessor, getSegmentOffset(index), elementSize, array, offset, length);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment(segment);
+        }
     }
 
     @Override
@@ -128,15 +318,43 @@ abstract class AbstractSequenceOfSimples extends AbstractSequence {
         return getSegmentOffset() + index * elementSize;
     }
 
-    private void ensureDataAccessible() throws IOException {
+    private void checkRange(int index, int length) {
+        final int elementCount = getElementCount();
+        // written so that index + length can't overflow
+        if (length < 0 || index < 0 || index > elementCount - length) {
+            throw new DataAccessException(MessageFormat.format("Illegal element range [{0}, {1}) for a sequence of {2} elements",
+                                                               index, (long) index + length, elementCount));
+        }
+    }
+
+    /**
+     * Makes the data of this sequence's segment accessible. If the context has a segment cache,
+     * the segment is pinned, so that its data cannot be evicted before {@link #unpinSegment} is called.
+     */
+    private Segment pinSegment() throws IOException {
+        if (resident) {
+            // Without a segment cache, the data is never released once it is accessible
+            return getSegment();
+        }
         if (dataAccessor == null) {
             dataAccessor = DataAccessor.getInstance(getType().getElementType(), getContext().getFormat().getByteOrder());
         }
-        if (!isDataAccessible()) {
-            if (!isSizeResolved()) {
-                resolveSize();
-            }
-            makeDataAccessible();
+        if (!isSizeResolved()) {
+            resolveSize();
+        }
+        makeDataAccessible();
+        final Segment segment = getSegment();
+        if (cached) {
+            segment.pin(getContext());
+        } else {
+            resident = true;
+        }
+        return segment;
+    }
+
+    private void unpinSegment(Segment segment) {
+        if (cached) {
+            segment.unpin();
         }
     }
 
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.internal;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.Type;
+
+import java.nio.ByteOrder;
+
+/**
+ * The precomputed layout of a compound type whose members all have a known size.
+ * <p>
+ * A layout provides the byte offset of each member and, for members of a simple type,
+ * the {@link DataAccessor} used to decode and encode the member's value. It is computed once
+ * per compound type and byte order and shared by all instances of the type, so that accessing a
+ * simple member of a {@link FixCompound} only costs an offset lookup and a codec call.
+ */
+final class CompoundLayout {
+    private final ByteOrder byteOrder;
+    private final int[] memberOffsets;
+    private final DataAccessor[] memberAccessors;
+
+    private CompoundLayout(CompoundType compoundType, ByteOrder byteOrder) {
+        if (!compoundType.isSizeKnown()) {
+            throw new IllegalArgumentException("compoundType: size must be known");
+        }
+        final int memberCount = compoundType.getMemberCount();
+        this.byteOrder = byteOrder;
+        this.memberOffsets = new int[memberCount];
+        this.memberAccessors = new DataAccessor[memberCount];
+        int offset = 0;
+        for (int i = 0; i < memberCount; i++) {
+            final Type memberType = compoundType.getMemberType(i);
+            memberOffsets[i] = offset;
+            if (memberType.isSimpleType()) {
+                memberAccessors[i] = DataAccessor.getInstance(memberType, byteOrder);
+            }
+            offset += memberType.getSize();
+        }
+    }
+
+    /**
+     * Gets the layout of the given compound type. Layouts of {@link CompoundTypeImpl}s are
+     * cached by the type itself.
+     *
+     * @param compoundType The compound type, all members must have a known size.
+     * @param byteOrder    The byte order.
+     * @return The layout.
+     */
+    static CompoundLayout getInstance(CompoundType compoundType, ByteOrder byteOrder) {
+        if (compoundType instanceof CompoundTypeImpl) {
+            final CompoundTypeImpl compoundTypeImpl = (CompoundTypeImpl) compoundType;
+            CompoundLayout layout = compoundTypeImpl.getLayout();
+            if (layout == null || layout.byteOrder != byteOrder) {
+                layout = new CompoundLayout(compoundType, byteOrder);
+                compoundTypeImpl.setLayout(layout);
+            }
+            return layout;
+        }
+        return new CompoundLayout(compoundType, byteOrder);
+    }
+
+    ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    int getMemberOffset(int memberIndex) {
+        return memberOffsets[memberIndex];
+    }
+
+    /**
+     * @param memberIndex The member index.
+     * @return The accessor for members of a simple type, {@code null} for collection members.
+     */
+    DataAccessor getMemberAccessor(int memberIndex) {
+        return memberAccessors[memberIndex];
+    }
+}
@@ -28,6 +28,7 @@ public final class CompoundTypeImpl extends AbstractType implements CompoundType
     private final CompoundMember[] members;
     private volatile HashMap<String, Integer> indices;
     private volatile Object metadata;
+    private volatile CompoundLayout layout;
     private int size;
 
     public CompoundTypeImpl(String name, CompoundMember[] members) {
@@ -87,6 +88,7 @@ public final class CompoundTypeImpl extends AbstractType implements CompoundType
         Assert.notNull(member, "member");
         members[memberIndex] = member;
         size = -1;
+        layout = null;
     }
 
     @Override
@@ -127,6 +129,14 @@ public final class CompoundTypeImpl extends AbstractType implements CompoundType
         return true;
     }
 
+    CompoundLayout getLayout() {
+        return layout;
+    }
+
+    void setLayout(CompoundLayout layout) {
+        this.layout = layout;
+    }
+
     private int computeSize() {
         int size = 0;
         for (CompoundMember member : members) {
@@ -20,6 +20,7 @@ import com.bc.ceres.binio.SimpleType;
 import com.bc.ceres.binio.Type;
 import com.bc.ceres.binio.util.ByteArrayCodec;
 
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 abstract class DataAccessor {
@@ -58,6 +59,211 @@ abstract class DataAccessor {
 
     public abstract void setDouble(byte[] array, int position, double value);
 
+    public void getBytes(byte[] array, int position, int elementSize, byte[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getByte(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getShorts(byte[] array, int position, int elementSize, short[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getShort(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getInts(byte[] array, int position, int elementSize, int[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getInt(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getLongs(byte[] array, int position, int elementSize, long[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getLong(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getFloats(byte[] array, int position, int elementSize, float[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getFloat(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getDoubles(byte[] array, int position, int elementSize, double[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getDouble(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void setBytes(byte[] array, int position, int elementSize, byte[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setByte(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setShorts(byte[] array, int position, int elementSize, short[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setShort(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setInts(byte[] array, int position, int elementSize, int[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setInt(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setLongs(byte[] array, int position, int elementSize, long[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setLong(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setFloats(byte[] array, int position, int elementSize, float[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setFloat(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setDoubles(byte[] array, int position, int elementSize, double[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setDouble(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    // The following methods access buffers, e.g. slices of memory-mapped files.
+    // The byte order of a buffer passed to single value accessors must equal the accessor's byte order.
+
+    public abstract byte getByte(ByteBuffer buffer, int position);
+
+    public abstract short getShort(ByteBuffer buffer, int position);
+
+    public abstract int getInt(ByteBuffer buffer, int position);
+
+    public abstract long getLong(ByteBuffer buffer, int position);
+
+    public abstract float getFloat(ByteBuffer buffer, int position);
+
+    public abstract double getDouble(ByteBuffer buffer, int position);
+
+    public abstract void setByte(ByteBuffer buffer, int position, byte value);
+
+    public abstract void setShort(ByteBuffer buffer, int position, short value);
+
+    public abstract void setInt(ByteBuffer buffer, int position, int value);
+
+    public abstract void setLong(ByteBuffer buffer, int position, long value);
+
+    public abstract void setFloat(ByteBuffer buffer, int position, float value);
+
+    public abstract void setDouble(ByteBuffer buffer, int position, double value);
+
+    public void getBytes(ByteBuffer buffer, int position, int elementSize, byte[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getByte(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void getShorts(ByteBuffer buffer, int position, int elementSize, short[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getShort(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void getInts(ByteBuffer buffer, int position, int elementSize, int[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getInt(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void getLongs(ByteBuffer buffer, int position, int elementSize, long[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getLong(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void getFloats(ByteBuffer buffer, int position, int elementSize, float[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getFloat(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void getDoubles(ByteBuffer buffer, int position, int elementSize, double[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getDouble(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void setBytes(ByteBuffer buffer, int position, int elementSize, byte[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setByte(buffer, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setShorts(ByteBuffer buffer, int position, int elementSize, short[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setShort(buffer, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setInts(ByteBuffer buffer, int position, int elementSize, int[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setInt(buffer, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setLongs(ByteBuffer buffer, int position, int elementSize, long[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setLong(buffer, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setFloats(ByteBuffer buffer, int position, int elementSize, float[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setFloat(buffer, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setDoubles(ByteBuffer buffer, int position, int elementSize, double[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setDouble(buffer, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    /**
+     * Returns a view of the given buffer which starts at the given position and has this accessor's byte order.
+     * Used for bulk transfers, since {@link ByteBuffer} has no absolute bulk operations.
+     */
+    protected final ByteBuffer view(ByteBuffer buffer, int position) {
+        final ByteBuffer view = buffer.duplicate().order(getByteOrder());
+        view.position(position);
+        return view;
+    }
+
     public static DataAccessor getInstance(Type type, ByteOrder byteOrder) {
         if (type == SimpleType.BYTE) {
             return new Byte(byteOrder);
@@ -149,6 +355,86 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setByte(array, position, (byte) value);
         }
+
+        @Override
+        public void getBytes(byte[] array, int position, int elementSize, byte[] values, int offset, int length) {
+            System.arraycopy(array, position, values, offset, length);
+        }
+
+        @Override
+        public void setBytes(byte[] array, int position, int elementSize, byte[] values, int offset, int length) {
+            System.arraycopy(values, offset, array, position, length);
+        }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return buffer.get(position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return getByte(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return getByte(buffer, position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return getByte(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getByte(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getByte(buffer, position);
+        }
+
+        @Override
+        public void setByte(ByteBuffer buffer, int position, byte value) {
+            buffer.put(position, value);
+        }
+
+        @Override
+        public void setShort(ByteBuffer buffer, int position, short value) {
+            setByte(buffer, position, (byte) value);
+        }
+
+        @Override
+        public void setInt(ByteBuffer buffer, int position, int value) {
+            setByte(buffer, position, (byte) value);
+        }
+
+        @Override
+        public void setLong(ByteBuffer buffer, int position, long value) {
+            setByte(buffer, position, (byte) value);
+        }
+
+        @Override
+        public void setFloat(ByteBuffer buffer, int position, float value) {
+            setByte(buffer, position, (byte) value);
+        }
+
+        @Override
+        public void setDouble(ByteBuffer buffer, int position, double value) {
+            setByte(buffer, position, (byte) value);
+        }
+
+        @Override
+        public void getBytes(ByteBuffer buffer, int position, int elementSize, byte[] values, int offset, int length) {
+            view(buffer, position).get(values, offset, length);
+        }
+
+        @Override
+        public void setBytes(ByteBuffer buffer, int position, int elementSize, byte[] values, int offset, int length) {
+            view(buffer, position).put(values, offset, length);
+        }
     }
 
     static final class UByte extends DataAccessor {
@@ -215,6 +501,86 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setByte(array, position, (byte) value);
         }
+
+        @Override
+        public void getBytes(byte[] array, int position, int elementSize, byte[] values, int offset, int length) {
+            System.arraycopy(array, position, values, offset, length);
+        }
+
+        @Override
+        public void setBytes(byte[] array, int position, int elementSize, byte[] values, int offset, int length) {
+            System.arraycopy(values, offset, array, position, length);
+        }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return buffer.get(position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getInt(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return getByte(buffer, position) & 0xFF;
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public void setByte(ByteBuffer buffer, int position, byte value) {
+            buffer.put(position, value);
+        }
+
+        @Override
+        public void setShort(ByteBuffer buffer, int position, short value) {
+            setByte(buffer, position, (byte) value);
+        }
+
+        @Override
+        public void setInt(ByteBuffer buffer, int position, int value) {
+            setByte(buffer, position, (byte) value);
+        }
+
+        @Override
+        public void setLong(ByteBuffer buffer, int position, long value) {
+            setByte(buffer, position, (byte) value);
+        }
+
+        @Override
+        public void setFloat(ByteBuffer buffer, int position, float value) {
+            setByte(buffer, position, (byte) value);
+        }
+
+        @Override
+        public void setDouble(ByteBuffer buffer, int position, double value) {
+            setByte(buffer, position, (byte) value);
+        }
+
+        @Override
+        public void getBytes(ByteBuffer buffer, int position, int elementSize, byte[] values, int offset, int length) {
+            view(buffer, position).get(values, offset, length);
+        }
+
+        @Override
+        public void setBytes(ByteBuffer buffer, int position, int elementSize, byte[] values, int offset, int length) {
+            view(buffer, position).put(values, offset, length);
+        }
     }
 
     static final class Short extends DataAccessor {
@@ -229,139 +595,445 @@ abstract class DataAccessor {
 
         @Override
         public short getShort(byte[] array, int position) {
-            return codec.getShort(array, position);
+            return codec.getShort(array, position);
+        }
+
+        @Override
+        public int getInt(byte[] array, int position) {
+            return getShort(array, position);
+        }
+
+        @Override
+        public long getLong(byte[] array, int position) {
+            return getShort(array, position);
+        }
+
+        @Override
+        public float getFloat(byte[] array, int position) {
+            return getShort(array, position);
+        }
+
+        @Override
+        public double getDouble(byte[] array, int position) {
+            return getShort(array, position);
+        }
+
+        @Override
+        public void setByte(byte[] array, int position, byte value) {
+            setShort(array, position, value);
+        }
+
+        @Override
+        public void setShort(byte[] array, int position, short value) {
+            codec.setShort(array, position, value);
+        }
+
+        @Override
+        public void setInt(byte[] array, int position, int value) {
+            setShort(array, position, (short) value);
+        }
+
+        @Override
+        public void setLong(byte[] array, int position, long value) {
+            setShort(array, position, (short) value);
+        }
+
+        @Override
+        public void setFloat(byte[] array, int position, float value) {
+            setShort(array, position, (short) value);
+        }
+
+        @Override
+        public void setDouble(byte[] array, int position, double value) {
+            setShort(array, position, (short) value);
+        }
+
+        @Override
+        public void getShorts(byte[] array, int position, int elementSize, short[] values, int offset, int length) {
+            codec.getShorts(array, position, values, offset, length);
+        }
+
+        @Override
+        public void setShorts(byte[] array, int position, int elementSize, short[] values, int offset, int length) {
+            codec.setShorts(array, position, values, offset, length);
+        }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getShort(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return buffer.getShort(position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return getShort(buffer, position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return getShort(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getShort(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getShort(buffer, position);
+        }
+
+        @Override
+        public void setByte(ByteBuffer buffer, int position, byte value) {
+            setShort(buffer, position, value);
+        }
+
+        @Override
+        public void setShort(ByteBuffer buffer, int position, short value) {
+            buffer.putShort(position, value);
+        }
+
+        @Override
+        public void setInt(ByteBuffer buffer, int position, int value) {
+            setShort(buffer, position, (short) value);
+        }
+
+        @Override
+        public void setLong(ByteBuffer buffer, int position, long value) {
+            setShort(buffer, position, (short) value);
+        }
+
+        @Override
+        public void setFloat(ByteBuffer buffer, int position, float value) {
+            setShort(buffer, position, (short) value);
+        }
+
+        @Override
+        public void setDouble(ByteBuffer buffer, int position, double value) {
+            setShort(buffer, position, (short) value);
+        }
+
+        @Override
+        public void getShorts(ByteBuffer buffer, int position, int elementSize, short[] values, int offset, int length) {
+            view(buffer, position).asShortBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setShorts(ByteBuffer buffer, int position, int elementSize, short[] values, int offset, int length) {
+            view(buffer, position).asShortBuffer().put(values, offset, length);
+        }
+    }
+
+    static final class UShort extends DataAccessor {
+        UShort(ByteOrder byteOrder) {
+            super(byteOrder);
+        }
+
+        @Override
+        public byte getByte(byte[] array, int position) {
+            return (byte) getInt(array, position);
+        }
+
+        @Override
+        public short getShort(byte[] array, int position) {
+            return codec.getShort(array, position);
+        }
+
+        @Override
+        public int getInt(byte[] array, int position) {
+            return getShort(array, position) & 0xFFFF;
+        }
+
+        @Override
+        public long getLong(byte[] array, int position) {
+            return getInt(array, position);
+        }
+
+        @Override
+        public float getFloat(byte[] array, int position) {
+            return getInt(array, position);
+        }
+
+        @Override
+        public double getDouble(byte[] array, int position) {
+            return getInt(array, position);
+        }
+
+        @Override
+        public void setByte(byte[] array, int position, byte value) {
+            setShort(array, position, value);
+        }
+
+        @Override
+        public void setShort(byte[] array, int position, short value) {
+            codec.setShort(array, position, value);
+        }
+
+        @Override
+        public void setInt(byte[] array, int position, int value) {
+            setShort(array, position, (short) value);
+        }
+
+        @Override
+        public void setLong(byte[] array, int position, long value) {
+            setShort(array, position, (short) value);
+        }
+
+        @Override
+        public void setFloat(byte[] array, int position, float value) {
+            setShort(array, position, (short) value);
+        }
+
+        @Override
+        public void setDouble(byte[] array, int position, double value) {
+            setShort(array, position, (short) value);
+        }
+
+        @Override
+        public void getShorts(byte[] array, int position, int elementSize, short[] values, int offset, int length) {
+            codec.getShorts(array, position, values, offset, length);
+        }
+
+        @Override
+        public void setShorts(byte[] array, int position, int elementSize, short[] values, int offset, int length) {
+            codec.setShorts(array, position, values, offset, length);
+        }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getInt(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return buffer.getShort(position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return getShort(buffer, position) & 0xFFFF;
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public void setByte(ByteBuffer buffer, int position, byte value) {
+            setShort(buffer, position, value);
+        }
+
+        @Override
+        public void setShort(ByteBuffer buffer, int position, short value) {
+            buffer.putShort(position, value);
+        }
+
+        @Override
+        public void setInt(ByteBuffer buffer, int position, int value) {
+            setShort(buffer, position, (short) value);
+        }
+
+        @Override
+        public void setLong(ByteBuffer buffer, int position, long value) {
+            setShort(buffer, position, (short) value);
+        }
+
+        @Override
+        public void setFloat(ByteBuffer buffer, int position, float value) {
+            setShort(buffer, position, (short) value);
+        }
+
+        @Override
+        public void setDouble(ByteBuffer buffer, int position, double value) {
+            setShort(buffer, position, (short) value);
+        }
+
+        @Override
+        public void getShorts(ByteBuffer buffer, int position, int elementSize, short[] values, int offset, int length) {
+            view(buffer, position).asShortBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setShorts(ByteBuffer buffer, int position, int elementSize, short[] values, int offset, int length) {
+            view(buffer, position).asShortBuffer().put(values, offset, length);
+        }
+    }
+
+    static final class Int extends DataAccessor {
+        Int(ByteOrder byteOrder) {
+            super(byteOrder);
+        }
+
+        @Override
+        public byte getByte(byte[] array, int position) {
+            return (byte) getInt(array, position);
+        }
+
+        @Override
+        public short getShort(byte[] array, int position) {
+            return (short) getInt(array, position);
         }
 
         @Override
         public int getInt(byte[] array, int position) {
-            return getShort(array, position);
+            return codec.getInt(array, position);
         }
 
         @Override
         public long getLong(byte[] array, int position) {
-            return getShort(array, position);
+            return getInt(array, position);
         }
 
         @Override
         public float getFloat(byte[] array, int position) {
-            return getShort(array, position);
+            return getInt(array, position);
         }
 
         @Override
         public double getDouble(byte[] array, int position) {
-            return getShort(array, position);
+            return getInt(array, position);
         }
 
         @Override
         public void setByte(byte[] array, int position, byte value) {
-            setShort(array, position, value);
+            setInt(array, position, value);
         }
 
         @Override
         public void setShort(byte[] array, int position, short value) {
-            codec.setShort(array, position, value);
+            setInt(array, position, value);
         }
 
         @Override
         public void setInt(byte[] array, int position, int value) {
-            setShort(array, position, (short) value);
+            codec.setInt(array, position, value);
         }
 
         @Override
         public void setLong(byte[] array, int position, long value) {
-            setShort(array, position, (short) value);
+            setInt(array, position, (int) value);
         }
 
         @Override
         public void setFloat(byte[] array, int position, float value) {
-            setShort(array, position, (short) value);
+            setInt(array, position, (int) value);
         }
 
         @Override
         public void setDouble(byte[] array, int position, double value) {
-            setShort(array, position, (short) value);
+            setInt(array, position, (int) value);
         }
-    }
 
-    static final class UShort extends DataAccessor {
-        UShort(ByteOrder byteOrder) {
-            super(byteOrder);
+        @Override
+        public void getInts(byte[] array, int position, int elementSize, int[] values, int offset, int length) {
+            codec.getInts(array, position, values, offset, length);
         }
 
         @Override
-        public byte getByte(byte[] array, int position) {
-            return (byte) getInt(array, position);
+        public void setInts(byte[] array, int position, int elementSize, int[] values, int offset, int length) {
+            codec.setInts(array, position, values, offset, length);
         }
 
         @Override
-        public short getShort(byte[] array, int position) {
-            return codec.getShort(array, position);
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getInt(buffer, position);
         }
 
         @Override
-        public int getInt(byte[] array, int position) {
-            return getShort(array, position) & 0xFFFF;
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getInt(buffer, position);
         }
 
         @Override
-        public long getLong(byte[] array, int position) {
-            return getInt(array, position);
+        public int getInt(ByteBuffer buffer, int position) {
+            return buffer.getInt(position);
         }
 
         @Override
-        public float getFloat(byte[] array, int position) {
-            return getInt(array, position);
+        public long getLong(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
         }
 
         @Override
-        public double getDouble(byte[] array, int position) {
-            return getInt(array, position);
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
         }
 
         @Override
-        public void setByte(byte[] array, int position, byte value) {
-            setShort(array, position, value);
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
         }
 
         @Override
-        public void setShort(byte[] array, int position, short value) {
-            codec.setShort(array, position, value);
+        public void setByte(ByteBuffer buffer, int position, byte value) {
+            setInt(buffer, position, value);
         }
 
         @Override
-        public void setInt(byte[] array, int position, int value) {
-            setShort(array, position, (short) value);
+        public void setShort(ByteBuffer buffer, int position, short value) {
+            setInt(buffer, position, value);
         }
 
         @Override
-        public void setLong(byte[] array, int position, long value) {
-            setShort(array, position, (short) value);
+        public void setInt(ByteBuffer buffer, int position, int value) {
+            buffer.putInt(position, value);
         }
 
         @Override
-        public void setFloat(byte[] array, int position, float value) {
-            setShort(array, position, (short) value);
+        public void setLong(ByteBuffer buffer, int position, long value) {
+            setInt(buffer, position, (int) value);
         }
 
         @Override
-        public void setDouble(byte[] array, int position, double value) {
-            setShort(array, position, (short) value);
+        public void setFloat(ByteBuffer buffer, int position, float value) {
+            setInt(buffer, position, (int) value);
+        }
+
+        @Override
+        public void setDouble(ByteBuffer buffer, int position, double value) {
+            setInt(buffer, position, (int) value);
+        }
+
+        @Override
+        public void getInts(ByteBuffer buffer, int position, int elementSize, int[] values, int offset, int length) {
+            view(buffer, position).asIntBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setInts(ByteBuffer buffer, int position, int elementSize, int[] values, int offset, int length) {
+            view(buffer, position).asIntBuffer().put(values, offset, length);
         }
     }
 
-    static final class Int extends DataAccessor {
-        Int(ByteOrder byteOrder) {
+    static final class UInt extends DataAccessor {
+        UInt(ByteOrder byteOrder) {
             super(byteOrder);
         }
 
         @Override
         public byte getByte(byte[] array, int position) {
-            return (byte) getInt(array, position);
+            return (byte) getLong(array, position);
         }
 
         @Override
         public short getShort(byte[] array, int position) {
-            return (short) getInt(array, position);
+            return (short) getLong(array, position);
         }
 
         @Override
@@ -371,17 +1043,17 @@ abstract class DataAccessor {
 
         @Override
         public long getLong(byte[] array, int position) {
-            return getInt(array, position);
+            return getInt(array, position) & 0xFFFFFFFFL;
         }
 
         @Override
         public float getFloat(byte[] array, int position) {
-            return getInt(array, position);
+            return getLong(array, position);
         }
 
         @Override
         public double getDouble(byte[] array, int position) {
-            return getInt(array, position);
+            return getLong(array, position);
         }
 
         @Override
@@ -413,71 +1085,85 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setInt(array, position, (int) value);
         }
-    }
 
-    static final class UInt extends DataAccessor {
-        UInt(ByteOrder byteOrder) {
-            super(byteOrder);
+        @Override
+        public void getInts(byte[] array, int position, int elementSize, int[] values, int offset, int length) {
+            codec.getInts(array, position, values, offset, length);
         }
 
         @Override
-        public byte getByte(byte[] array, int position) {
-            return (byte) getLong(array, position);
+        public void setInts(byte[] array, int position, int elementSize, int[] values, int offset, int length) {
+            codec.setInts(array, position, values, offset, length);
         }
 
         @Override
-        public short getShort(byte[] array, int position) {
-            return (short) getLong(array, position);
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getLong(buffer, position);
         }
 
         @Override
-        public int getInt(byte[] array, int position) {
-            return codec.getInt(array, position);
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getLong(buffer, position);
         }
 
         @Override
-        public long getLong(byte[] array, int position) {
-            return getInt(array, position) & 0xFFFFFFFFL;
+        public int getInt(ByteBuffer buffer, int position) {
+            return buffer.getInt(position);
         }
 
         @Override
-        public float getFloat(byte[] array, int position) {
-            return getLong(array, position);
+        public long getLong(ByteBuffer buffer, int position) {
+            return getInt(buffer, position) & 0xFFFFFFFFL;
         }
 
         @Override
-        public double getDouble(byte[] array, int position) {
-            return getLong(array, position);
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getLong(buffer, position);
         }
 
         @Override
-        public void setByte(byte[] array, int position, byte value) {
-            setInt(array, position, value);
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getLong(buffer, position);
         }
 
         @Override
-        public void setShort(byte[] array, int position, short value) {
-            setInt(array, position, value);
+        public void setByte(ByteBuffer buffer, int position, byte value) {
+            setInt(buffer, position, value);
         }
 
         @Override
-        public void setInt(byte[] array, int position, int value) {
-            codec.setInt(array, position, value);
+        public void setShort(ByteBuffer buffer, int position, short value) {
+            setInt(buffer, position, value);
         }
 
         @Override
-        public void setLong(byte[] array, int position, long value) {
-            setInt(array, position, (int) value);
+        public void setInt(ByteBuffer buffer, int position, int value) {
+            buffer.putInt(position, value);
         }
 
         @Override
-        public void setFloat(byte[] array, int position, float value) {
-            setInt(array, position, (int) value);
+        public void setLong(ByteBuffer buffer, int position, long value) {
+            setInt(buffer, position, (int) value);
         }
 
         @Override
-        public void setDouble(byte[] array, int position, double value) {
-            setInt(array, position, (int) value);
+        public void setFloat(ByteBuffer buffer, int position, float value) {
+            setInt(buffer, position, (int) value);
+        }
+
+        @Override
+        public void setDouble(ByteBuffer buffer, int position, double value) {
+            setInt(buffer, position, (int) value);
+        }
+
+        @Override
+        public void getInts(ByteBuffer buffer, int position, int elementSize, int[] values, int offset, int length) {
+            view(buffer, position).asIntBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setInts(ByteBuffer buffer, int position, int elementSize, int[] values, int offset, int length) {
+            view(buffer, position).asIntBuffer().put(values, offset, length);
         }
     }
 
@@ -545,6 +1231,86 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setLong(array, position, (long) value);
         }
+
+        @Override
+        public void getLongs(byte[] array, int position, int elementSize, long[] values, int offset, int length) {
+            codec.getLongs(array, position, values, offset, length);
+        }
+
+        @Override
+        public void setLongs(byte[] array, int position, int elementSize, long[] values, int offset, int length) {
+            codec.setLongs(array, position, values, offset, length);
+        }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getLong(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getLong(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return (int) getLong(buffer, position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return buffer.getLong(position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getLong(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getLong(buffer, position);
+        }
+
+        @Override
+        public void setByte(ByteBuffer buffer, int position, byte value) {
+            setLong(buffer, position, value);
+        }
+
+        @Override
+        public void setShort(ByteBuffer buffer, int position, short value) {
+            setLong(buffer, position, value);
+        }
+
+        @Override
+        public void setInt(ByteBuffer buffer, int position, int value) {
+            setLong(buffer, position, value);
+        }
+
+        @Override
+        public void setLong(ByteBuffer buffer, int position, long value) {
+            buffer.putLong(position, value);
+        }
+
+        @Override
+        public void setFloat(ByteBuffer buffer, int position, float value) {
+            setLong(buffer, position, (long) value);
+        }
+
+        @Override
+        public void setDouble(ByteBuffer buffer, int position, double value) {
+            setLong(buffer, position, (long) value);
+        }
+
+        @Override
+        public void getLongs(ByteBuffer buffer, int position, int elementSize, long[] values, int offset, int length) {
+            view(buffer, position).asLongBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setLongs(ByteBuffer buffer, int position, int elementSize, long[] values, int offset, int length) {
+            view(buffer, position).asLongBuffer().put(values, offset, length);
+        }
     }
 
     static final class Float extends DataAccessor {
@@ -611,6 +1377,86 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setFloat(array, position, (float) value);
         }
+
+        @Override
+        public void getFloats(byte[] array, int position, int elementSize, float[] values, int offset, int length) {
+            codec.getFloats(array, position, values, offset, length);
+        }
+
+        @Override
+        public void setFloats(byte[] array, int position, int elementSize, float[] values, int offset, int length) {
+            codec.setFloats(array, position, values, offset, length);
+        }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getFloat(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getFloat(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return (int) getFloat(buffer, position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return (long) getFloat(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return buffer.getFloat(position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getFloat(buffer, position);
+        }
+
+        @Override
+        public void setByte(ByteBuffer buffer, int position, byte value) {
+            setFloat(buffer, position, value);
+        }
+
+        @Override
+        public void setShort(ByteBuffer buffer, int position, short value) {
+            setFloat(buffer, position, value);
+        }
+
+        @Override
+        public void setInt(ByteBuffer buffer, int position, int value) {
+            setFloat(buffer, position, value);
+        }
+
+        @Override
+        public void setLong(ByteBuffer buffer, int position, long value) {
+            setFloat(buffer, position, value);
+        }
+
+        @Override
+        public void setFloat(ByteBuffer buffer, int position, float value) {
+            buffer.putFloat(position, value);
+        }
+
+        @Override
+        public void setDouble(ByteBuffer buffer, int position, double value) {
+            setFloat(buffer, position, (float) value);
+        }
+
+        @Override
+        public void getFloats(ByteBuffer buffer, int position, int elementSize, float[] values, int offset, int length) {
+            view(buffer, position).asFloatBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setFloats(ByteBuffer buffer, int position, int elementSize, float[] values, int offset, int length) {
+            view(buffer, position).asFloatBuffer().put(values, offset, length);
+        }
     }
 
     static final class Double extends DataAccessor {
@@ -677,5 +1523,85 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             codec.setDouble(array, position, value);
         }
+
+        @Override
+        public void getDoubles(byte[] array, int position, int elementSize, double[] values, int offset, int length) {
+            codec.getDoubles(array, position, values, offset, length);
+        }
+
+        @Override
+        public void setDoubles(byte[] array, int position, int elementSize, double[] values, int offset, int length) {
+            codec.setDoubles(array, position, values, offset, length);
+        }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getDouble(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getDouble(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return (int) getDouble(buffer, position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return (long) getDouble(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return (float) getDouble(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return buffer.getDouble(position);
+        }
+
+        @Override
+        public void setByte(ByteBuffer buffer, int position, byte value) {
+            setDouble(buffer, position, value);
+        }
+
+        @Override
+        public void setShort(ByteBuffer buffer, int position, short value) {
+            setDouble(buffer, position, value);
+        }
+
+        @Override
+        public void setInt(ByteBuffer buffer, int position, int value) {
+            setDouble(buffer, position, value);
+        }
+
+        @Override
+        public void setLong(ByteBuffer buffer, int position, long value) {
+            setDouble(buffer, position, value);
+        }
+
+        @Override
+        public void setFloat(ByteBuffer buffer, int position, float value) {
+            setDouble(buffer, position, value);
+        }
+
+        @Override
+        public void setDouble(ByteBuffer buffer, int position, double value) {
+            buffer.putDouble(position, value);
+        }
+
+        @Override
+        public void getDoubles(ByteBuffer buffer, int position, int elementSize, double[] values, int offset, int length) {
+            view(buffer, position).asDoubleBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setDoubles(ByteBuffer buffer, int position, int elementSize, double[] values, int offset, int length) {
+            view(buffer, position).asDoubleBuffer().put(values, offset, length);
+        }
     }
 }
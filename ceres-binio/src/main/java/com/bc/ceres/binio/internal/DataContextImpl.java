@@ -17,17 +17,36 @@
 package com.bc.ceres.binio.internal;
 
 import com.bc.ceres.binio.*;
+import com.bc.ceres.binio.util.OffsetIndex;
 
 import java.io.IOException;
 
 public class DataContextImpl implements DataContext {
     private final DataFormat format;
     private final IOHandler handler;
+    private final SegmentCache segmentCache;
     private volatile CompoundData data;
+    private volatile OffsetIndex offsetIndex;
 
     public DataContextImpl(DataFormat format, IOHandler handler) {
+        this(format, handler, SegmentCache.getDefaultCapacity());
+    }
+
+    /**
+     * Constructs a new context whose segments occupy at most {@code segmentCacheCapacity} bytes.
+     * If the capacity is exceeded, least recently used segments are written back (if modified)
+     * and dropped from memory; they are transparently reloaded on their next access.
+     *
+     * @param format               The data format.
+     * @param handler              The I/O handler.
+     * @param segmentCacheCapacity The capacity of the segment cache in bytes. A value less or equal to
+     *                             zero disables the cache, so that segment data is kept as long as
+     *                             the owning data instance exists.
+     */
+    public DataContextImpl(DataFormat format, IOHandler handler, long segmentCacheCapacity) {
         this.format = format;
         this.handler = handler;
+        this.segmentCache = segmentCacheCapacity > 0L ? new SegmentCache(segmentCacheCapacity) : null;
     }
 
     @Override
@@ -77,6 +96,64 @@ public class DataContextImpl implements DataContext {
         return createData(type, position);
     }
 
+    /**
+     * @return The capacity of the segment cache in bytes, or {@code 0} if segments are not cached.
+     */
+    public long getSegmentCacheCapacity() {
+        return segmentCache != null ? segmentCache.getCapacity() : 0L;
+    }
+
+    /**
+     * @return The number of bytes currently held by cached segments.
+     */
+    public long getSegmentCacheSize() {
+        return segmentCache != null ? segmentCache.getResidentBytes() : 0L;
+    }
+
+    /**
+     * @return The number of segment accesses which found the segment's data already loaded.
+     */
+    public long getSegmentCacheHitCount() {
+        return segmentCache != null ? segmentCache.getHitCount() : 0L;
+    }
+
+    /**
+     * @return The number of segment accesses which caused the segment's data to be loaded.
+     */
+    public long getSegmentCacheMissCount() {
+        return segmentCache != null ? segmentCache.getMissCount() : 0L;
+    }
+
+    /**
+     * @return The number of segments evicted from the cache.
+     */
+    public long getSegmentCacheEvictionCount() {
+        return segmentCache != null ? segmentCache.getEvictionCount() : 0L;
+    }
+
+    /**
+     * @return The index used to look up and record the element offsets of sequences, may be {@code null}.
+     * @since Ceres 0.14
+     */
+    public OffsetIndex getOffsetIndex() {
+        return offsetIndex;
+    }
+
+    /**
+     * Sets the index used to look up and record the element offsets of sequences. If the index is associated
+     * with a data file, it is saved when this context is disposed.
+     *
+     * @param offsetIndex The offset index, may be {@code null}.
+     * @since Ceres 0.14
+     */
+    public void setOffsetIndex(OffsetIndex offsetIndex) {
+        this.offsetIndex = offsetIndex;
+    }
+
+    SegmentCache getSegmentCache() {
+        return segmentCache;
+    }
+
     @Override
     public synchronized void dispose() {
         if (data != null) {
@@ -86,5 +163,19 @@ public class DataContextImpl implements DataContext {
                 // ignore
             }
         }
+        if (segmentCache != null) {
+            try {
+                segmentCache.clear(this);
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        if (offsetIndex != null && offsetIndex.getDataFile() != null && offsetIndex.isModified()) {
+            try {
+                offsetIndex.save();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
     }
 }
\ No newline at end of file
@@ -21,20 +21,46 @@ import com.bc.ceres.binio.CompoundType;
 import com.bc.ceres.binio.DataContext;
 import com.bc.ceres.binio.Type;
 
+import java.io.IOException;
 
+/**
+ * A compound of known size. Simple members are read and written directly from and to
+ * the compound's segment using the precomputed {@link CompoundLayout} of its type.
+ */
 final class FixCompound extends AbstractCompound {
 
+    private final Segment segment;
+    private final int segmentOffset;
+    private final CompoundLayout layout;
+    private final boolean cached;
+    private boolean resident;
+
     FixCompound(DataContext context, CollectionData parent, CompoundType compoundType, long position) {
         this(context, parent, compoundType, new Segment(position, compoundType.getSize()), 0);
     }
 
     FixCompound(DataContext context, CollectionData parent, CompoundType compoundType, Segment segment, int bufferOffset) {
         super(context, parent, compoundType, segment.getPosition() + bufferOffset);
-        for (int i = 0; i < compoundType.getMemberCount(); i++) {
-            final Type memberType = compoundType.getMember(i).getType();
-            setMemberInstance(i, InstanceFactory.createFixMember(context, this, memberType, segment, bufferOffset));
-            bufferOffset += memberType.getSize();
+        this.segment = segment;
+        this.segmentOffset = bufferOffset;
+        this.layout = CompoundLayout.getInstance(compoundType, context.getFormat().getByteOrder());
+        this.cached = Segment.getSegmentCache(context) != null;
+    }
+
+    /**
+     * Member instances are created on demand only, simple members are
+     * usually accessed directly through the compound's layout.
+     */
+    @Override
+    protected MemberInstance getMemberInstance(int index) throws IOException {
+        MemberInstance memberInstance = super.getMemberInstance(index);
+        if (memberInstance == null) {
+            final Type memberType = getType().getMemberType(index);
+            memberInstance = InstanceFactory.createFixMember(getContext(), this, memberType, segment,
+                                                             segmentOffset + layout.getMemberOffset(index));
+            setMemberInstance(index, memberInstance);
         }
+        return memberInstance;
     }
 
     @Override
@@ -62,6 +88,216 @@ final class FixCompound extends AbstractCompound {
         // ok
     }
 
+    @Override
+    public byte getByte(int index) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            return super.getByte(index);
+        }
+        pinSegment();
+        try {
+            return segment.getByte(accessor, segmentOffset + layout.getMemberOffset(index));
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public short getShort(int index) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            return super.getShort(index);
+        }
+        pinSegment();
+        try {
+            return segment.getShort(accessor, segmentOffset + layout.getMemberOffset(index));
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public int getInt(int index) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            return super.getInt(index);
+        }
+        pinSegment();
+        try {
+            return segment.getInt(accessor, segmentOffset + layout.getMemberOffset(index));
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public long getLong(int index) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            return super.getLong(index);
+        }
+        pinSegment();
+        try {
+            return segment.getLong(accessor, segmentOffset + layout.getMemberOffset(index));
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public float getFloat(int index) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            return super.getFloat(index);
+        }
+        pinSegment();
+        try {
+            return segment.getFloat(accessor, segmentOffset + layout.getMemberOffset(index));
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public double getDouble(int index) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            return super.getDouble(index);
+        }
+        pinSegment();
+        try {
+            return segment.getDouble(accessor, segmentOffset + layout.getMemberOffset(index));
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public void setByte(int index, byte value) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            super.setByte(index, value);
+            return;
+        }
+        pinSegment();
+        try {
+            segment.setByte(accessor, segmentOffset + layout.getMemberOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public void setShort(int index, short value) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            super.setShort(index, value);
+            return;
+        }
+        pinSegment();
+        try {
+            segment.setShort(accessor, segmentOffset + layout.getMemberOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public void setInt(int index, int value) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            super.setInt(index, value);
+            return;
+        }
+        pinSegment();
+        try {
+            segment.setInt(accessor, segmentOffset + layout.getMemberOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public void setLong(int index, long value) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            super.setLong(index, value);
+            return;
+        }
+        pinSegment();
+        try {
+            segment.setLong(accessor, segmentOffset + layout.getMemberOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public void setFloat(int index, float value) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            super.setFloat(index, value);
+            return;
+        }
+        pinSegment();
+        try {
+            segment.setFloat(accessor, segmentOffset + layout.getMemberOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public void setDouble(int index, double value) throws IOException {
+        final DataAccessor accessor = layout.getMemberAccessor(index);
+        if (accessor == null) {
+            super.setDouble(index, value);
+            return;
+        }
+        pinSegment();
+        try {
+            segment.setDouble(accessor, segmentOffset + layout.getMemberOffset(index), value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        segment.flushData(getContext());
+        super.flush();
+    }
+
+    /**
+     * Makes the data of this compound's segment accessible. If the context has a segment cache,
+     * the segment is pinned, so that its data cannot be evicted before {@link #unpinSegment} is called.
+     */
+    private void pinSegment() throws IOException {
+        if (resident) {
+            // Without a segment cache, the data is never released once it is accessible
+            return;
+        }
+        if (cached) {
+            segment.makeDataAccessible(getContext());
+            segment.pin(getContext());
+        } else {
+            segment.makeDataAccessible(getContext());
+            resident = true;
+        }
+    }
+
+    private void unpinSegment() {
+        if (cached) {
+            segment.unpin();
+        }
+    }
+
     static int getMemberIndexWithinSizeLimit(CompoundType compoundType, long sizeLimit) {
         int index = -1;
         int segmentSize = 0;
@@ -121,6 +121,15 @@ final class FixSequenceOfFixCollections extends AbstractSequenceOfCollections {
         throw new DataAccessException(MessageFormat.format("Compound expected at index = {0}", index));
     }
 
+    @Override
+    SequenceInstance createView(int index, int count) {
+        checkViewRange(index, count);
+        final Type elementType = getType().getElementType();
+        return new FixSequenceOfFixCollections(getContext(), getParent(),
+                                               new SequenceTypeImpl(elementType, count),
+                                               getPosition() + (long) index * elementType.getSize());
+    }
+
     @Override
     public void flush() throws IOException {
         if (segment != null) {
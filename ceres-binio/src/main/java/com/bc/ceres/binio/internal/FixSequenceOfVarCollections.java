@@ -17,6 +17,7 @@
 package com.bc.ceres.binio.internal;
 
 import com.bc.ceres.binio.*;
+import com.bc.ceres.binio.util.OffsetIndex;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -42,6 +43,13 @@ final class FixSequenceOfVarCollections extends AbstractSequenceOfCollections {
         size = -1L;
     }
 
+    private FixSequenceOfVarCollections(DataContext context, CollectionData parent, SequenceType sequenceType, long[] elementOffsets) {
+        this(context, parent, sequenceType, elementOffsets[0]);
+        this.elementOffsets = elementOffsets;
+        this.maxResolvedElementIndex = elementOffsets.length - 2;
+        this.size = elementOffsets[elementOffsets.length - 1] - elementOffsets[0];
+    }
+
     @Override
     public long getSize() {
         return size;
@@ -58,7 +66,7 @@ final class FixSequenceOfVarCollections extends AbstractSequenceOfCollections {
     }
 
     @Override
-    public void resolveSize(int index) throws IOException {
+    public synchronized void resolveSize(int index) throws IOException {
         if (isSizeResolved(index)) {
             return;
         }
@@ -81,11 +89,27 @@ final class FixSequenceOfVarCollections extends AbstractSequenceOfCollections {
         }
         if (index == getElementCount() - 1) {
             size = elementOffsets[getElementCount()] - elementOffsets[0];
+            final OffsetIndex offsetIndex = getOffsetIndex();
+            if (offsetIndex != null) {
+                offsetIndex.putElementOffsets(getPosition(), unresolvedElementType, elementOffsets);
+            }
         }
     }
 
     private void ensureElementOffsetsCreated() {
         if (elementOffsets == null) {
+            final OffsetIndex offsetIndex = getOffsetIndex();
+            if (offsetIndex != null) {
+                final long[] indexedElementOffsets = offsetIndex.getElementOffsets(getPosition(),
+                                                                                   unresolvedElementType,
+                                                                                   getElementCount());
+                if (indexedElementOffsets != null) {
+                    elementOffsets = indexedElementOffsets;
+                    maxResolvedElementIndex = getElementCount() - 1;
+                    size = elementOffsets[getElementCount()] - elementOffsets[0];
+                    return;
+                }
+            }
             elementOffsets = new long[getElementCount() + 1];
             Arrays.fill(elementOffsets, -1L);
             elementOffsets[0] = getPosition();
@@ -117,20 +141,43 @@ final class FixSequenceOfVarCollections extends AbstractSequenceOfCollections {
             return lastAccessedElementInstance;
         }
         CollectionInstance elementInstance;
-        if (index == maxResolvedElementIndex) {
+        if (index == maxResolvedElementIndex && maxResolvedElementInstance != null) {
             elementInstance = maxResolvedElementInstance;
         } else {
             elementInstance = createElementInstance(elementOffsets[index]);
         }
         lastAccessedElementIndex = index;
         lastAccessedElementInstance = elementInstance;
+        if (index == getElementCount() - 1 && getOffsetIndex() != null) {
+            // completes the offsets, so that they are recorded after a sequential pass
+            resolveSize(index);
+        }
         return elementInstance;
     }
 
+    private OffsetIndex getOffsetIndex() {
+        final DataContext context = getContext();
+        return context instanceof DataContextImpl ? ((DataContextImpl) context).getOffsetIndex() : null;
+    }
+
     private CollectionInstance createElementInstance(long position) throws IOException {
         return InstanceFactory.createCollection(getContext(), this, unresolvedElementType, position, getContext().getFormat().getByteOrder());
     }
 
+    @Override
+    synchronized SequenceInstance createView(int index, int count) throws IOException {
+        checkViewRange(index, count);
+        ensureElementOffsetsCreated();
+        if (index + count > 0) {
+            ensureSizeResolved(index + count - 1);
+        }
+        // the view starts with the resolved offsets of its elements
+        final long[] viewElementOffsets = Arrays.copyOfRange(elementOffsets, index, index + count + 1);
+        return new FixSequenceOfVarCollections(getContext(), getParent(),
+                                               new SequenceTypeImpl(unresolvedElementType, count),
+                                               viewElementOffsets);
+    }
+
     @Override
     public void flush() throws IOException {
         // todo - flush modified elements
@@ -26,6 +26,26 @@ import java.nio.ByteOrder;
  */
 public class InstanceFactory {
 
+    /**
+     * Creates a new sequence which provides the elements {@code index} to {@code index + count - 1}
+     * of the given sequence of collections. The element offsets are resolved before the view is created.
+     * The view shares no mutable state with the given sequence, so that multiple views of the same
+     * sequence can be accessed by different threads.
+     *
+     * @param sequence A sequence of compounds or sequences created by this factory.
+     * @param index    The index of the first element.
+     * @param count    The number of elements.
+     * @return The new sequence.
+     * @throws IOException If an I/O error occurs.
+     * @since Ceres 0.14
+     */
+    public static SequenceData createSequenceView(SequenceData sequence, int index, int count) throws IOException {
+        if (!(sequence instanceof AbstractSequenceOfCollections)) {
+            throw new IllegalArgumentException("sequence: sequence of collections expected");
+        }
+        return ((AbstractSequenceOfCollections) sequence).createView(index, count);
+    }
+
     public static CompoundInstance createCompound(DataContext context, CollectionData parent, CompoundType compoundType, long position, ByteOrder byteOrder) {
         if (compoundType.isSizeKnown()) {
             // COMPOUND(all members have known size)
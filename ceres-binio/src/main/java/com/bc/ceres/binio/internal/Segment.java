@@ -16,16 +16,28 @@
 
 package com.bc.ceres.binio.internal;
 
+import com.bc.ceres.binio.ByteBufferIOHandler;
 import com.bc.ceres.binio.DataContext;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
-
+/**
+ * A contiguous range of bytes of a data context.
+ * <p>
+ * The bytes are either copied into a heap array or, if the context's I/O handler is a
+ * {@link ByteBufferIOHandler}, accessed in place through a buffer provided by the handler.
+ * Values are read and written by the typed access methods, which delegate to
+ * the given {@link DataAccessor} for the current storage.
+ */
 final class Segment {
     private final long position;
     private final int size;
-    private byte[] data;
-    private boolean dirty;
+    private volatile byte[] data;
+    private volatile ByteBuffer buffer;
+    private volatile boolean dirty;
+    private volatile boolean referenced;
+    private int pinCount;
 
     static final String SEGMENT_SIZE_LIMIT_PROPERTY = "ceres.binio.segmentSizeLimit";
 
@@ -67,26 +79,340 @@ final class Segment {
         return size;
     }
 
+    /**
+     * @return The heap array holding the segment's bytes, or {@code null} if the segment
+     *         is not accessible or backed by a buffer.
+     */
     public byte[] getData() {
         return data;
     }
 
+    /**
+     * @return The buffer holding the segment's bytes, or {@code null} if the segment
+     *         is not accessible or backed by a heap array.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
     public boolean isDataAccessible() {
-        return data != null;
+        return data != null || buffer != null;
     }
 
     public void makeDataAccessible(DataContext context) throws IOException {
-        if (data == null) {
-            data = new byte[size];
-            setDirty(false);
-            context.getHandler().read(context, data, position);
+        if (buffer != null) {
+            return;
+        }
+        final SegmentCache segmentCache = getSegmentCache(context);
+        if (data != null) {
+            if (segmentCache != null) {
+                segmentCache.hit(this);
+            }
+            return;
+        }
+        // buffers are neither copied nor cached
+        if (context.getHandler() instanceof ByteBufferIOHandler && setBuffer(context)) {
+            return;
+        }
+        if (segmentCache != null) {
+            segmentCache.load(context, this);
+        } else {
+            synchronized (this) {
+                if (!isDataAccessible()) {
+                    setData(context, new byte[size]);
+                }
+            }
         }
     }
 
     public synchronized void flushData(DataContext context) throws IOException {
-        if (isDirty()) {
+        if (buffer != null) {
+            // changes have been made to the storage already
+            setDirty(false);
+        } else if (isDirty()) {
             context.getHandler().write(context, data, position);
             setDirty(false);
         }
     }
+
+    /**
+     * Prevents the segment's data from being evicted by the context's segment cache
+     * until {@link #unpin()} is called. The data is reloaded if it has been evicted
+     * since it was last made accessible.
+     *
+     * @param context The context.
+     * @throws IOException If an I/O error occurs.
+     */
+    void pin(DataContext context) throws IOException {
+        while (true) {
+            synchronized (this) {
+                if (isDataAccessible()) {
+                    pinCount++;
+                    return;
+                }
+            }
+            makeDataAccessible(context);
+        }
+    }
+
+    synchronized void unpin() {
+        pinCount--;
+    }
+
+    synchronized boolean isPinned() {
+        return pinCount > 0;
+    }
+
+    boolean isReferenced() {
+        return referenced;
+    }
+
+    void setReferenced(boolean referenced) {
+        this.referenced = referenced;
+    }
+
+    synchronized void setData(DataContext context, byte[] buffer) throws IOException {
+        setDirty(false);
+        context.getHandler().read(context, buffer, position);
+        data = buffer;
+    }
+
+    synchronized byte[] releaseData(DataContext context) throws IOException {
+        if (isDataAccessible()) {
+            flushData(context);
+        }
+        final byte[] array = data;
+        data = null;
+        buffer = null;
+        return array;
+    }
+
+    private synchronized boolean setBuffer(DataContext context) throws IOException {
+        if (isDataAccessible()) {
+            return true;
+        }
+        final ByteBuffer byteBuffer = ((ByteBufferIOHandler) context.getHandler()).getBuffer(context, position, size);
+        if (byteBuffer == null) {
+            return false;
+        }
+        byteBuffer.order(context.getFormat().getByteOrder());
+        setDirty(false);
+        buffer = byteBuffer;
+        return true;
+    }
+
+    /**
+     * Copies the bytes of a read-only buffer into a heap array, so that they can be modified.
+     * The modified bytes are written by {@link #flushData}.
+     */
+    private synchronized byte[] getWritableData() {
+        if (data == null) {
+            final byte[] array = new byte[size];
+            final ByteBuffer view = buffer.duplicate();
+            view.position(0);
+            view.get(array);
+            data = array;
+            buffer = null;
+        }
+        return data;
+    }
+
+    byte getByte(DataAccessor accessor, int offset) {
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getByte(buffer, offset) : accessor.getByte(data, offset);
+    }
+
+    short getShort(DataAccessor accessor, int offset) {
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getShort(buffer, offset) : accessor.getShort(data, offset);
+    }
+
+    int getInt(DataAccessor accessor, int offset) {
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getInt(buffer, offset) : accessor.getInt(data, offset);
+    }
+
+    long getLong(DataAccessor accessor, int offset) {
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getLong(buffer, offset) : accessor.getLong(data, offset);
+    }
+
+    float getFloat(DataAccessor accessor, int offset) {
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getFloat(buffer, offset) : accessor.getFloat(data, offset);
+    }
+
+    double getDouble(DataAccessor accessor, int offset) {
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getDouble(buffer, offset) : accessor.getDouble(data, offset);
+    }
+
+    void setByte(DataAccessor accessor, int offset, byte value) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setByte(buffer, offset, value);
+        } else {
+            accessor.setByte(buffer != null ? getWritableData() : data, offset, value);
+        }
+    }
+
+    void setShort(DataAccessor accessor, int offset, short value) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setShort(buffer, offset, value);
+        } else {
+            accessor.setShort(buffer != null ? getWritableData() : data, offset, value);
+        }
+    }
+
+    void setInt(DataAccessor accessor, int offset, int value) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setInt(buffer, offset, value);
+        } else {
+            accessor.setInt(buffer != null ? getWritableData() : data, offset, value);
+        }
+    }
+
+    void setLong(DataAccessor accessor, int offset, long value) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setLong(buffer, offset, value);
+        } else {
+            accessor.setLong(buffer != null ? getWritableData() : data, offset, value);
+        }
+    }
+
+    void setFloat(DataAccessor accessor, int offset, float value) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setFloat(buffer, offset, value);
+        } else {
+            accessor.setFloat(buffer != null ? getWritableData() : data, offset, value);
+        }
+    }
+
+    void setDouble(DataAccessor accessor, int offset, double value) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setDouble(buffer, offset, value);
+        } else {
+            accessor.setDouble(buffer != null ? getWritableData() : data, offset, value);
+        }
+    }
+
+    void getBytes(DataAccessor accessor, int offset, int elementSize, byte[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getBytes(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.getBytes(data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void getShorts(DataAccessor accessor, int offset, int elementSize, short[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getShorts(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.getShorts(data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void getInts(DataAccessor accessor, int offset, int elementSize, int[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getInts(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.getInts(data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void getLongs(DataAccessor accessor, int offset, int elementSize, long[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getLongs(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.getLongs(data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void getFloats(DataAccessor accessor, int offset, int elementSize, float[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getFloats(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.getFloats(data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void getDoubles(DataAccessor accessor, int offset, int elementSize, double[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getDoubles(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.getDoubles(data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void setBytes(DataAccessor accessor, int offset, int elementSize, byte[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setBytes(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.setBytes(buffer != null ? getWritableData() : data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void setShorts(DataAccessor accessor, int offset, int elementSize, short[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setShorts(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.setShorts(buffer != null ? getWritableData() : data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void setInts(DataAccessor accessor, int offset, int elementSize, int[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setInts(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.setInts(buffer != null ? getWritableData() : data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void setLongs(DataAccessor accessor, int offset, int elementSize, long[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setLongs(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.setLongs(buffer != null ? getWritableData() : data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void setFloats(DataAccessor accessor, int offset, int elementSize, float[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setFloats(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.setFloats(buffer != null ? getWritableData() : data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    void setDoubles(DataAccessor accessor, int offset, int elementSize, double[] values, int valuesOffset, int length) {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isReadOnly()) {
+            accessor.setDoubles(buffer, offset, elementSize, values, valuesOffset, length);
+        } else {
+            accessor.setDoubles(buffer != null ? getWritableData() : data, offset, elementSize, values, valuesOffset, length);
+        }
+    }
+
+    static SegmentCache getSegmentCache(DataContext context) {
+        if (context instanceof DataContextImpl) {
+            return ((DataContextImpl) context).getSegmentCache();
+        }
+        return null;
+    }
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.internal;
+
+import com.bc.ceres.binio.DataContext;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache which bounds the number of bytes held by the segments of a {@link DataContext}.
+ * <p>
+ * Segments are registered when their data is loaded. If the capacity is exceeded,
+ * least recently used segments are evicted: dirty data is written back through the
+ * context's {@link com.bc.ceres.binio.IOHandler}, then the segment's buffer is released
+ * into a pool from which later segments of the same size are served.
+ * <p>
+ * Recency is approximated by a second-chance (CLOCK) policy, so that a segment access
+ * only needs to set a flag instead of reordering a shared list.
+ * <p>
+ * Segments are pinned by the data instances while their data is accessed. A pinned segment
+ * is not released, so that its buffer cannot be recycled during the access.
+ */
+final class SegmentCache {
+
+    static final String SEGMENT_CACHE_CAPACITY_PROPERTY = "ceres.binio.segmentCacheCapacity";
+
+    private static long defaultCapacity;
+
+    static {
+        final String value = System.getProperty(SEGMENT_CACHE_CAPACITY_PROPERTY);
+        if (value != null) {
+            try {
+                defaultCapacity = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                // ignored
+            }
+        }
+    }
+
+    private final long capacity;
+    private final LinkedHashSet<Segment> residentSegments;
+    private final Map<Integer, ArrayDeque<byte[]>> bufferPool;
+    private long residentBytes;
+    private long pooledBytes;
+
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private final AtomicLong evictionCount;
+
+    SegmentCache(long capacity) {
+        if (capacity <= 0L) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        this.capacity = capacity;
+        this.residentSegments = new LinkedHashSet<Segment>();
+        this.bufferPool = new HashMap<Integer, ArrayDeque<byte[]>>();
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+        this.evictionCount = new AtomicLong();
+    }
+
+    /**
+     * @return The capacity in bytes given by the {@code ceres.binio.segmentCacheCapacity} system property.
+     *         A value less or equal to zero means that segments are not cached.
+     */
+    static long getDefaultCapacity() {
+        return defaultCapacity;
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    void hit(Segment segment) {
+        hitCount.incrementAndGet();
+        segment.setReferenced(true);
+    }
+
+    /**
+     * Loads the data of the given segment and evicts other segments if the capacity is exceeded.
+     *
+     * @param context The context.
+     * @param segment The segment.
+     * @throws IOException If an I/O error occurs.
+     */
+    void load(DataContext context, Segment segment) throws IOException {
+        final List<Segment> victims;
+        synchronized (segment) {
+            if (segment.isDataAccessible()) {
+                hit(segment);
+                return;
+            }
+            missCount.incrementAndGet();
+            final int size = segment.getSize();
+            byte[] buffer;
+            synchronized (this) {
+                victims = selectVictims(size);
+                buffer = takePooledBuffer(size);
+                residentSegments.add(segment);
+                residentBytes += size;
+            }
+            if (buffer == null) {
+                buffer = new byte[size];
+            } else {
+                Arrays.fill(buffer, (byte) 0);
+            }
+            try {
+                segment.setData(context, buffer);
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (residentSegments.remove(segment)) {
+                        residentBytes -= size;
+                    }
+                }
+                throw e;
+            }
+        }
+        // Victims are released outside of the segment's monitor, otherwise two threads
+        // loading segments could wait on each other's victims.
+        for (Segment victim : victims) {
+            release(context, victim);
+        }
+    }
+
+    /**
+     * Evicts all resident segments and drops all pooled buffers.
+     *
+     * @param context The context.
+     * @throws IOException If an I/O error occurs.
+     */
+    void clear(DataContext context) throws IOException {
+        final List<Segment> victims;
+        synchronized (this) {
+            victims = new ArrayList<Segment>(residentSegments);
+            residentSegments.clear();
+            residentBytes = 0L;
+            bufferPool.clear();
+            pooledBytes = 0L;
+        }
+        for (Segment victim : victims) {
+            victim.releaseData(context);
+        }
+    }
+
+    private void release(DataContext context, Segment victim) throws IOException {
+        final byte[] buffer;
+        synchronized (victim) {
+            if (victim.isPinned()) {
+                // the segment is being accessed, keep it resident
+                synchronized (this) {
+                    if (residentSegments.add(victim)) {
+                        residentBytes += victim.getSize();
+                    }
+                }
+                return;
+            }
+            buffer = victim.releaseData(context);
+        }
+        evictionCount.incrementAndGet();
+        if (buffer != null) {
+            synchronized (this) {
+                if (residentBytes + pooledBytes + buffer.length <= capacity) {
+                    ArrayDeque<byte[]> buffers = bufferPool.get(buffer.length);
+                    if (buffers == null) {
+                        buffers = new ArrayDeque<byte[]>();
+                        bufferPool.put(buffer.length, buffers);
+                    }
+                    buffers.push(buffer);
+                    pooledBytes += buffer.length;
+                }
+            }
+        }
+    }
+
+    // must be called while holding this cache's monitor
+    private List<Segment> selectVictims(int size) {
+        List<Segment> victims = null;
+        while (residentBytes + size > capacity && !residentSegments.isEmpty()) {
+            final Iterator<Segment> iterator = residentSegments.iterator();
+            final Segment segment = iterator.next();
+            iterator.remove();
+            if (segment.isReferenced()) {
+                // second chance
+                segment.setReferenced(false);
+                residentSegments.add(segment);
+            } else {
+                residentBytes -= segment.getSize();
+                if (victims == null) {
+                    victims = new ArrayList<Segment>(4);
+                }
+                victims.add(segment);
+            }
+        }
+        return victims != null ? victims : new ArrayList<Segment>(0);
+    }
+
+    // must be called while holding this cache's monitor
+    private byte[] takePooledBuffer(int size) {
+        final ArrayDeque<byte[]> buffers = bufferPool.get(size);
+        if (buffers != null && !buffers.isEmpty()) {
+            pooledBytes -= size;
+            return buffers.pop();
+        }
+        // make room for a new buffer by dropping pooled buffers of other sizes
+        final Iterator<ArrayDeque<byte[]>> iterator = bufferPool.values().iterator();
+        while (residentBytes + pooledBytes + size > capacity && iterator.hasNext()) {
+            final ArrayDeque<byte[]> otherBuffers = iterator.next();
+            while (residentBytes + pooledBytes + size > capacity && !otherBuffers.isEmpty()) {
+                pooledBytes -= otherBuffers.pop().length;
+            }
+            if (otherBuffers.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        return null;
+    }
+}
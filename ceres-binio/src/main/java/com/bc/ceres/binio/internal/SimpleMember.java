@@ -27,7 +27,9 @@ final class SimpleMember implements MemberInstance {
     private final SimpleType simpleType;
     private final Segment segment;
     private final int segmentOffset;
+    private final boolean cached;
     private DataAccessor dataAccessor;
+    private boolean resident;
 
     protected SimpleMember(DataContext context,
                            CollectionData parent,
@@ -39,6 +41,7 @@ final class SimpleMember implements MemberInstance {
         this.simpleType = simpleType;
         this.segment = segment;
         this.segmentOffset = segmentOffset;
+        this.cached = Segment.getSegmentCache(context) != null;
     }
 
     public CollectionData getParent() {
@@ -78,80 +81,128 @@ final class SimpleMember implements MemberInstance {
 
     @Override
     public byte getByte() throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getByte(segment.getData(), segmentOffset);
+        pinSegment();
+        try {
+            return segment.getByte(dataAccessor, segmentOffset);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public void setByte(byte value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setByte(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        pinSegment();
+        try {
+            segment.setByte(dataAccessor, segmentOffset, value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public short getShort() throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getShort(segment.getData(), segmentOffset);
+        pinSegment();
+        try {
+            return segment.getShort(dataAccessor, segmentOffset);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public void setShort(short value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setShort(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        pinSegment();
+        try {
+            segment.setShort(dataAccessor, segmentOffset, value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public int getInt() throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getInt(segment.getData(), segmentOffset);
+        pinSegment();
+        try {
+            return segment.getInt(dataAccessor, segmentOffset);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public void setInt(int value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setInt(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        pinSegment();
+        try {
+            segment.setInt(dataAccessor, segmentOffset, value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public long getLong() throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getLong(segment.getData(), segmentOffset);
+        pinSegment();
+        try {
+            return segment.getLong(dataAccessor, segmentOffset);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public void setLong(long value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setLong(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        pinSegment();
+        try {
+            segment.setLong(dataAccessor, segmentOffset, value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public float getFloat() throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getFloat(segment.getData(), segmentOffset);
+        pinSegment();
+        try {
+            return segment.getFloat(dataAccessor, segmentOffset);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public void setFloat(float value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setFloat(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        pinSegment();
+        try {
+            segment.setFloat(dataAccessor, segmentOffset, value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public double getDouble() throws IOException {
-        ensureDataAccessible();
-        return dataAccessor.getDouble(segment.getData(), segmentOffset);
+        pinSegment();
+        try {
+            return segment.getDouble(dataAccessor, segmentOffset);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
     public void setDouble(double value) throws IOException {
-        ensureDataAccessible();
-        dataAccessor.setDouble(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        pinSegment();
+        try {
+            segment.setDouble(dataAccessor, segmentOffset, value);
+            segment.setDirty(true);
+        } finally {
+            unpinSegment();
+        }
     }
 
     @Override
@@ -172,12 +223,28 @@ final class SimpleMember implements MemberInstance {
     // data access
     ////////////////////////////////////////////////////
 
-    private void ensureDataAccessible() throws IOException {
+    private void pinSegment() throws IOException {
+        if (resident) {
+            // Without a segment cache, the data is never released once it is accessible
+            return;
+        }
         if (dataAccessor == null) {
             this.dataAccessor = DataAccessor.getInstance(simpleType, context.getFormat().getByteOrder());
+        }
+        if (cached) {
+            segment.makeDataAccessible(context);
+            segment.pin(context);
+        } else {
             if (!segment.isDataAccessible()) {
                 segment.makeDataAccessible(context);
             }
+            resident = true;
+        }
+    }
+
+    private void unpinSegment() {
+        if (cached) {
+            segment.unpin();
         }
     }
 }
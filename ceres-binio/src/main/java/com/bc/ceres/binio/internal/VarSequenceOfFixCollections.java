@@ -29,7 +29,7 @@ import java.io.IOException;
 
 
 final class VarSequenceOfFixCollections extends AbstractSequenceOfCollections {
-    private SequenceType resolvedSequenceType;
+    private volatile SequenceType resolvedSequenceType;
 
     public VarSequenceOfFixCollections(DataContext context, CollectionData parent, SequenceType sequenceType, long position) {
         super(context, parent, sequenceType, position);
@@ -49,7 +49,7 @@ final class VarSequenceOfFixCollections extends AbstractSequenceOfCollections {
 
     // todo - code duplication: see VarSequenceOfSimples.resolveSize()
     @Override
-    public void resolveSize() throws IOException {
+    public synchronized void resolveSize() throws IOException {
         if (resolvedSequenceType == null) {
             resolvedSequenceType = resolveSequenceType();
             if (!resolvedSequenceType.isSizeKnown()) {
@@ -58,6 +58,16 @@ final class VarSequenceOfFixCollections extends AbstractSequenceOfCollections {
         }
     }
 
+    @Override
+    SequenceInstance createView(int index, int count) throws IOException {
+        resolveSize();
+        checkViewRange(index, count);
+        final Type elementType = resolvedSequenceType.getElementType();
+        return new FixSequenceOfFixCollections(getContext(), getParent(),
+                                               new SequenceTypeImpl(elementType, count),
+                                               getPosition() + (long) index * elementType.getSize());
+    }
+
     @Override
     public void flush() throws IOException {
         // todo - flush modified elements
@@ -91,10 +91,10 @@ final class VarSequenceOfSimples extends AbstractSequenceOfSimples {
 
     @Override
     public void makeDataAccessible() throws IOException {
-        if (!isDataAccessible()) {
+        if (segment == null) {
             segment = new Segment(position, resolvedSequenceType.getSize());
-            segment.makeDataAccessible(getContext());
         }
+        segment.makeDataAccessible(getContext());
     }
 
     @Override
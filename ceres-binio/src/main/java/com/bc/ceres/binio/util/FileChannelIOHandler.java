@@ -20,10 +20,18 @@ import com.bc.ceres.binio.DataContext;
 import com.bc.ceres.binio.IOHandler;
 
 import java.io.IOException;
-import java.io.EOFException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
+/**
+ * An I/O handler which uses a {@link FileChannel}.
+ * <p>
+ * Reads use positional I/O ({@link FileChannel#read(ByteBuffer, long)}) and are not synchronized,
+ * so that multiple threads may read from the same channel concurrently without contending for
+ * a shared file pointer.
+ * <p>
+ * Note that a file channel is closed if a thread blocked in an I/O operation on it is interrupted.
+ */
 public class FileChannelIOHandler implements IOHandler {
     private final FileChannel fileChannel;
 
@@ -33,11 +41,9 @@ public class FileChannelIOHandler implements IOHandler {
 
     @Override
     public void read(DataContext context, byte[] data, long position) throws IOException {
-        synchronized (fileChannel) {
-            // We do not check for EOF here, because read() is called whenever
-            // segment data is allocated
-            fileChannel.read(ByteBuffer.wrap(data), position);
-        }
+        // We do not check for EOF here, because read() is called whenever
+        // segment data is allocated
+        read(fileChannel, data, position);
     }
 
     @Override
@@ -49,8 +55,25 @@ public class FileChannelIOHandler implements IOHandler {
     
     @Override
     public long getMaxPosition() throws IOException {
-        synchronized (fileChannel) {
-            return fileChannel.size();
+        return fileChannel.size();
+    }
+
+    /**
+     * Reads up to {@code data.length} bytes from the given position without modifying the channel's position.
+     * Reading stops if either the array is filled or the end of the file is reached.
+     *
+     * @param fileChannel The file channel.
+     * @param data        The array into which bytes are to be transferred.
+     * @param position    The file position at which the transfer is to begin.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void read(FileChannel fileChannel, byte[] data, long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            final int n = fileChannel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                break;
+            }
         }
     }
-}
\ No newline at end of file
+}
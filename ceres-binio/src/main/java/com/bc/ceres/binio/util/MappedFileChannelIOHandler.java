@@ -16,90 +16,234 @@
 
 package com.bc.ceres.binio.util;
 
+import com.bc.ceres.binio.ByteBufferIOHandler;
 import com.bc.ceres.binio.DataContext;
-import com.bc.ceres.binio.IOHandler;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-public class MappedFileChannelIOHandler implements IOHandler {
+/**
+ * An I/O handler which memory-maps a file channel.
+ * <p>
+ * The file is mapped as a sequence of fixed-size chunks, so that files larger than 2 GB can be
+ * accessed. Chunks are mapped lazily on first access and are kept mapped afterwards. Data spanning
+ * two chunks is copied from both of them. Reads do not lock and may be performed by multiple
+ * threads concurrently.
+ * <p>
+ * Positions are relative to the position of the channel at the time the handler is created.
+ * The size of the file is determined when the handler is created and is updated when the handler
+ * grows the file and by {@link #getMaxPosition()}. Reads beyond this size are treated as reads
+ * beyond the end of the file.
+ * <p>
+ * If the handler is created in {@link FileChannel.MapMode#READ_WRITE READ_WRITE} mode,
+ * data may also be written. Writing beyond the end of the file grows the file.
+ * <p>
+ * Data which lies within a single chunk can be accessed without copying by {@link #getBuffer}.
+ */
+public class MappedFileChannelIOHandler implements ByteBufferIOHandler {
 
-    private final FileChannel channel;
+    /**
+     * The default size of the chunks mapped into memory, 256 MB.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024 * 1024;
 
-    private MappedByteBuffer mappedBuffer;
-    private long mappedPos;
-    private long mappedUpperBound;
-    private long streamPos;
+    private final FileChannel channel;
+    private final FileChannel.MapMode mapMode;
+    private final int chunkSize;
+    private final long basePosition;
+    private volatile long size;
+    private volatile AtomicReferenceArray<MappedByteBuffer> chunks;
 
+    /**
+     * Constructs a read-only handler.
+     *
+     * @param channel The file channel.
+     * @throws IOException If an I/O error occurs.
+     */
     public MappedFileChannelIOHandler(FileChannel channel) throws IOException {
+        this(channel, FileChannel.MapMode.READ_ONLY);
+    }
+
+    /**
+     * Constructs a handler which uses chunks of {@link #DEFAULT_CHUNK_SIZE} bytes.
+     *
+     * @param channel The file channel.
+     * @param mapMode Either {@link FileChannel.MapMode#READ_ONLY} or {@link FileChannel.MapMode#READ_WRITE}.
+     * @throws IOException If an I/O error occurs.
+     * @since Ceres 0.14
+     */
+    public MappedFileChannelIOHandler(FileChannel channel, FileChannel.MapMode mapMode) throws IOException {
+        this(channel, mapMode, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a handler.
+     *
+     * @param channel   The file channel.
+     * @param mapMode   Either {@link FileChannel.MapMode#READ_ONLY} or {@link FileChannel.MapMode#READ_WRITE}.
+     * @param chunkSize The size in bytes of the chunks mapped into memory.
+     * @throws IOException If an I/O error occurs.
+     * @since Ceres 0.14
+     */
+    public MappedFileChannelIOHandler(FileChannel channel, FileChannel.MapMode mapMode, int chunkSize) throws IOException {
         if (channel == null) {
             throw new IllegalArgumentException("channel == null");
         }
         if (!channel.isOpen()) {
             throw new IllegalArgumentException("channel.isOpen() == false");
         }
-
+        if (mapMode != FileChannel.MapMode.READ_ONLY && mapMode != FileChannel.MapMode.READ_WRITE) {
+            throw new IllegalArgumentException("mapMode must be either READ_ONLY or READ_WRITE");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize <= 0");
+        }
         this.channel = channel;
-        long channelPosition = channel.position();
-        streamPos = channelPosition;
-        long fullSize = channel.size() - channelPosition;
-        long mappedSize = Math.min(fullSize, 2147483647L);
-        mappedPos = 0L;
-        mappedUpperBound = mappedPos + mappedSize;
-        mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, channelPosition, mappedSize);
+        this.mapMode = mapMode;
+        this.chunkSize = chunkSize;
+        this.basePosition = channel.position();
+        this.size = Math.max(0L, channel.size() - basePosition);
+        this.chunks = new AtomicReferenceArray<MappedByteBuffer>(getChunkCount(size));
+    }
+
+    public FileChannel.MapMode getMapMode() {
+        return mapMode;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
     }
 
     @Override
     public void read(DataContext context, byte[] data, long position) throws IOException {
-        synchronized (this) {
-            seek(position);
-            read(data);
+        int offset = 0;
+        while (offset < data.length) {
+            final int chunkIndex = getChunkIndex(position);
+            final int chunkOffset = getChunkOffset(position);
+            final int length = Math.min(data.length - offset, chunkSize - chunkOffset);
+            final MappedByteBuffer chunk = getChunk(chunkIndex, chunkOffset + length, false);
+            if (chunk == null || chunkOffset >= chunk.capacity()) {
+                // end of file
+                return;
+            }
+            final int n = Math.min(length, chunk.capacity() - chunkOffset);
+            final ByteBuffer view = chunk.duplicate();
+            view.position(chunkOffset);
+            view.get(data, offset, n);
+            if (n < length) {
+                // end of file
+                return;
+            }
+            offset += n;
+            position += n;
         }
     }
 
     @Override
     public void write(DataContext context, byte[] data, long position) throws IOException {
-        throw new RuntimeException("not implemented");
+        if (mapMode != FileChannel.MapMode.READ_WRITE) {
+            throw new IOException("Read only.");
+        }
+        int offset = 0;
+        while (offset < data.length) {
+            final int chunkIndex = getChunkIndex(position);
+            final int chunkOffset = getChunkOffset(position);
+            final int length = Math.min(data.length - offset, chunkSize - chunkOffset);
+            final MappedByteBuffer chunk = getChunk(chunkIndex, chunkOffset + length, true);
+            final ByteBuffer view = chunk.duplicate();
+            view.position(chunkOffset);
+            view.put(data, offset, length);
+            offset += length;
+            position += length;
+        }
     }
-    
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Returns {@code null} if the requested bytes span two chunks or lie beyond the end of the file.
+     */
     @Override
-    public long getMaxPosition() throws IOException {
-        synchronized (this) {
-            return channel.size();
+    public ByteBuffer getBuffer(DataContext context, long position, int length) throws IOException {
+        final int chunkOffset = getChunkOffset(position);
+        if (chunkOffset + length > chunkSize) {
+            return null;
+        }
+        final MappedByteBuffer chunk = getChunk(getChunkIndex(position), chunkOffset + length, false);
+        if (chunk == null || chunkOffset + length > chunk.capacity()) {
+            return null;
         }
+        final ByteBuffer view = chunk.duplicate();
+        view.position(chunkOffset);
+        view.limit(chunkOffset + length);
+        return view.slice();
     }
 
-    private void seek(long pos) throws IOException {
-        streamPos = pos;
-        if (pos >= mappedPos && pos < mappedUpperBound) {
-            mappedBuffer.position((int) (pos - mappedPos));
-        } else {
-            int len = (int) Math.min(channel.size() - pos, 2147483647L);
-            mappedBuffer = getMappedBuffer(len);
-        }
+    @Override
+    public synchronized long getMaxPosition() throws IOException {
+        size = Math.max(0L, channel.size() - basePosition);
+        return size;
+    }
+
+    private int getChunkIndex(long position) {
+        return (int) (position / chunkSize);
+    }
+
+    private int getChunkOffset(long position) {
+        return (int) (position % chunkSize);
     }
 
-    private int read(byte b[]) throws IOException {
-        if (b.length == 0) {
-            return 0;
+    private int getChunkCount(long size) {
+        return (int) ((size + chunkSize - 1) / chunkSize);
+    }
+
+    private MappedByteBuffer getChunk(int chunkIndex, int requiredCapacity, boolean write) throws IOException {
+        final AtomicReferenceArray<MappedByteBuffer> chunks = this.chunks;
+        final long chunkPosition = (long) chunkIndex * chunkSize;
+        final MappedByteBuffer chunk = chunkIndex < chunks.length() ? chunks.get(chunkIndex) : null;
+        if (chunk != null && chunk.capacity() >= requiredCapacity) {
+            return chunk;
         }
-        final int len = b.length;
-        ByteBuffer byteBuffer = getMappedBuffer(len);
-        byteBuffer.get(b, 0, len);
-        streamPos += len;
-        return len;
+        if (!write && chunkPosition + (chunk != null ? chunk.capacity() : 0) >= size) {
+            // the chunk is mapped up to the end of the file, or lies beyond it
+            return chunk;
+        }
+        return mapChunk(chunkIndex, requiredCapacity, write);
     }
 
-    private MappedByteBuffer getMappedBuffer(int len) throws IOException {
-        if (streamPos < mappedPos || streamPos + (long) len >= mappedUpperBound) {
-            mappedPos = streamPos;
-            long mappedSize = Math.min(channel.size() - mappedPos, 2147483647L);
-            mappedUpperBound = mappedPos + mappedSize;
-            mappedBuffer = channel.map(
-                    FileChannel.MapMode.READ_ONLY, mappedPos, mappedSize);
+    private synchronized MappedByteBuffer mapChunk(int chunkIndex, int requiredCapacity, boolean write) throws IOException {
+        AtomicReferenceArray<MappedByteBuffer> chunks = this.chunks;
+        MappedByteBuffer chunk = chunkIndex < chunks.length() ? chunks.get(chunkIndex) : null;
+        if (chunk != null && chunk.capacity() >= requiredCapacity) {
+            // mapped by another thread in the meantime
+            return chunk;
+        }
+        final long chunkPosition = (long) chunkIndex * chunkSize;
+        long mapSize = Math.min(chunkSize, size - chunkPosition);
+        if (write) {
+            mapSize = Math.max(mapSize, requiredCapacity);
+        }
+        if (mapSize <= 0 || chunk != null && mapSize <= chunk.capacity()) {
+            // end of file
+            return chunk;
+        }
+        chunk = channel.map(mapMode, basePosition + chunkPosition, mapSize);
+        if (chunkPosition + mapSize > size) {
+            // the file has been grown by mapping it
+            size = chunkPosition + mapSize;
+        }
+        if (chunkIndex >= chunks.length()) {
+            final AtomicReferenceArray<MappedByteBuffer> newChunks = new AtomicReferenceArray<MappedByteBuffer>(chunkIndex + 1);
+            for (int i = 0; i < chunks.length(); i++) {
+                newChunks.set(i, chunks.get(i));
+            }
+            chunks = newChunks;
+            this.chunks = newChunks;
         }
-        return mappedBuffer;
+        chunks.set(chunkIndex, chunk);
+        return chunk;
     }
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundMember;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.SequenceType;
+import com.bc.ceres.binio.Type;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An index of the element offsets of sequences whose elements have a variable size.
+ * <p>
+ * Without an index, accessing element N of such a sequence requires resolving the sizes of all
+ * elements before it. If a data context has an offset index, the element offsets of a sequence
+ * are stored in the index once they have been fully resolved, either during a sequential pass or by
+ * calling {@link com.bc.ceres.binio.CollectionData#resolveSize()}, possibly from a background thread.
+ * Sequences created later at the same position, e.g. by other contexts, take their offsets from the index,
+ * so that random access to their elements is immediate.
+ * <p>
+ * An index can be persisted to a sidecar file next to the data file. It is only loaded if the size and
+ * last modification time of the data file are still the ones recorded when the index was saved.
+ * Only sequences with at least {@link #MIN_ELEMENT_COUNT} elements are indexed.
+ * <p>
+ * Sequences are identified by their position, their element count and the structure of their element type,
+ * so that sequences of different types having the same name are not confused. If the data file is modified,
+ * the index must be {@link #invalidate() invalidated}.
+ *
+ * @see com.bc.ceres.binio.DataFormat#createContext(java.io.File, String, boolean)
+ * @since Ceres 0.14
+ */
+public class OffsetIndex {
+
+    /**
+     * The extension appended to the data file's path to form the path of the index file.
+     */
+    public static final String FILE_EXTENSION = ".bidx";
+
+    /**
+     * The minimum number of elements of sequences recorded in the index.
+     */
+    public static final int MIN_ELEMENT_COUNT = 64;
+
+    private static final int MAGIC = 0x42494458; // "BIDX"
+    private static final int VERSION = 2;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File dataFile;
+    private final Map<String, long[]> elementOffsetsMap;
+    private final Map<Type, String> typeSignatures;
+    private boolean modified;
+    private boolean invalid;
+
+    /**
+     * Constructs an empty index which is not associated with a file, e.g. to be shared by
+     * multiple contexts on the same data.
+     */
+    public OffsetIndex() {
+        this(null);
+    }
+
+    /**
+     * Constructs an empty index for the given data file.
+     *
+     * @param dataFile The data file, may be {@code null}.
+     */
+    public OffsetIndex(File dataFile) {
+        this.dataFile = dataFile;
+        this.elementOffsetsMap = new HashMap<String, long[]>();
+        this.typeSignatures = new WeakHashMap<Type, String>();
+    }
+
+    /**
+     * Loads the index of the given data file. If there is no index file, or if the index file is outdated
+     * or cannot be decoded, an empty index is returned.
+     *
+     * @param dataFile The data file.
+     * @return The index.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static OffsetIndex load(File dataFile) throws IOException {
+        if (dataFile == null) {
+            throw new IllegalArgumentException("dataFile == null");
+        }
+        final OffsetIndex offsetIndex = new OffsetIndex(dataFile);
+        final File indexFile = getIndexFile(dataFile);
+        if (!indexFile.isFile()) {
+            return offsetIndex;
+        }
+        final DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (stream.readInt() != MAGIC
+                || stream.readInt() != VERSION
+                || stream.readLong() != dataFile.length()
+                || stream.readLong() != dataFile.lastModified()) {
+                return offsetIndex;
+            }
+            final Map<String, long[]> elementOffsetsMap = new HashMap<String, long[]>();
+            final int entryCount = stream.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                final long position = stream.readLong();
+                final byte[] signatureBytes = new byte[stream.readInt()];
+                stream.readFully(signatureBytes);
+                final long[] elementOffsets = new long[stream.readInt() + 1];
+                for (int j = 0; j < elementOffsets.length; j++) {
+                    elementOffsets[j] = stream.readLong();
+                }
+                final String typeSignature = new String(signatureBytes, UTF_8);
+                elementOffsetsMap.put(createKey(position, elementOffsets.length - 1, typeSignature), elementOffsets);
+            }
+            offsetIndex.elementOffsetsMap.putAll(elementOffsetsMap);
+        } catch (IOException e) {
+            // corrupt index file, will be rebuilt
+        } finally {
+            stream.close();
+        }
+        return offsetIndex;
+    }
+
+    /**
+     * @param dataFile The data file.
+     * @return The index file of the given data file.
+     */
+    public static File getIndexFile(File dataFile) {
+        return new File(dataFile.getPath() + FILE_EXTENSION);
+    }
+
+    /**
+     * @return The data file, or {@code null} if the index is not associated with a file.
+     */
+    public File getDataFile() {
+        return dataFile;
+    }
+
+    public synchronized int getEntryCount() {
+        return elementOffsetsMap.size();
+    }
+
+    /**
+     * @return {@code true} if entries have been added since the index was created, loaded or saved,
+     *         or if the index has been invalidated.
+     */
+    public synchronized boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * @return {@code true} if the index has been invalidated.
+     */
+    public synchronized boolean isInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Invalidates this index, because the data file has been modified and recorded offsets may have changed.
+     * All entries are removed and entries added later are ignored. When saved, the index file is deleted.
+     */
+    public synchronized void invalidate() {
+        if (!invalid) {
+            elementOffsetsMap.clear();
+            invalid = true;
+            modified = true;
+        }
+    }
+
+    /**
+     * Gets the element offsets of a sequence.
+     *
+     * @param position     The position of the sequence.
+     * @param elementType  The sequence's element type.
+     * @param elementCount The number of elements.
+     * @return A copy of the {@code elementCount + 1} absolute offsets of the elements and of the sequence's end,
+     *         or {@code null} if the sequence is not indexed.
+     */
+    public synchronized long[] getElementOffsets(long position, Type elementType, int elementCount) {
+        final long[] elementOffsets = elementOffsetsMap.get(createKey(position, elementCount, getTypeSignature(elementType)));
+        return elementOffsets != null ? elementOffsets.clone() : null;
+    }
+
+    /**
+     * Adds a copy of the element offsets of a sequence to this index. Sequences having less than
+     * {@link #MIN_ELEMENT_COUNT} elements are ignored, as are all sequences once the index has been invalidated.
+     *
+     * @param position       The position of the sequence.
+     * @param elementType    The sequence's element type.
+     * @param elementOffsets The absolute offsets of the elements and of the sequence's end.
+     */
+    public synchronized void putElementOffsets(long position, Type elementType, long[] elementOffsets) {
+        final int elementCount = elementOffsets.length - 1;
+        if (elementCount < MIN_ELEMENT_COUNT || invalid) {
+            return;
+        }
+        final String key = createKey(position, elementCount, getTypeSignature(elementType));
+        if (!elementOffsetsMap.containsKey(key)) {
+            elementOffsetsMap.put(key, elementOffsets.clone());
+            modified = true;
+        }
+    }
+
+    /**
+     * Saves this index to the index file of its data file, together with the data file's
+     * current size and last modification time. If the index has been invalidated, the index file is deleted.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void save() throws IOException {
+        if (dataFile == null) {
+            throw new IllegalStateException("dataFile == null");
+        }
+        final File indexFile = getIndexFile(dataFile);
+        if (invalid) {
+            if (indexFile.exists() && !indexFile.delete()) {
+                throw new IOException("Failed to delete index file " + indexFile);
+            }
+            modified = false;
+            return;
+        }
+        final File tempFile = new File(indexFile.getPath() + ".tmp");
+        final DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+            stream.writeLong(dataFile.length());
+            stream.writeLong(dataFile.lastModified());
+            stream.writeInt(elementOffsetsMap.size());
+            for (Map.Entry<String, long[]> entry : elementOffsetsMap.entrySet()) {
+                final String key = entry.getKey();
+                final long[] elementOffsets = entry.getValue();
+                final int i1 = key.indexOf(':');
+                final int i2 = key.indexOf(':', i1 + 1);
+                final byte[] signatureBytes = key.substring(i2 + 1).getBytes(UTF_8);
+                stream.writeLong(Long.parseLong(key.substring(0, i1)));
+                stream.writeInt(signatureBytes.length);
+                stream.write(signatureBytes);
+                stream.writeInt(elementOffsets.length - 1);
+                for (long elementOffset : elementOffsets) {
+                    stream.writeLong(elementOffset);
+                }
+            }
+        } finally {
+            stream.close();
+        }
+        if (indexFile.exists() && !indexFile.delete() || !tempFile.renameTo(indexFile)) {
+            tempFile.delete();
+            throw new IOException("Failed to write index file " + indexFile);
+        }
+        modified = false;
+    }
+
+    // must be called while holding this index's monitor
+    private String getTypeSignature(Type type) {
+        String signature = typeSignatures.get(type);
+        if (signature == null) {
+            final StringBuilder sb = new StringBuilder();
+            appendTypeSignature(type, sb);
+            signature = sb.toString();
+            typeSignatures.put(type, signature);
+        }
+        return signature;
+    }
+
+    /**
+     * Appends the structure of a type, i.e. its name and the names and signatures of its members or elements.
+     */
+    private static void appendTypeSignature(Type type, StringBuilder sb) {
+        sb.append(type.getName());
+        if (type instanceof CompoundType) {
+            final CompoundType compoundType = (CompoundType) type;
+            sb.append('{');
+            for (int i = 0; i < compoundType.getMemberCount(); i++) {
+                final CompoundMember member = compoundType.getMember(i);
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(member.getName()).append('=');
+                appendTypeSignature(member.getType(), sb);
+            }
+            sb.append('}');
+        } else if (type instanceof SequenceType) {
+            final SequenceType sequenceType = (SequenceType) type;
+            sb.append('(');
+            appendTypeSignature(sequenceType.getElementType(), sb);
+            sb.append(')');
+        }
+    }
+
+    private static String createKey(long position, int elementCount, String typeSignature) {
+        return position + ":" + elementCount + ":" + typeSignature;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An I/O handler which reads ahead when it detects sequential or strided reads.
+ * <p>
+ * If two subsequent reads of the same length are separated by the same positive stride as the
+ * previous two, the handler asynchronously reads the next segments at that stride on a background
+ * executor. A later read of a prefetched segment waits for and copies the prefetched bytes instead
+ * of reading from the delegate.
+ * <p>
+ * Writes invalidate all pending prefetches overlapping the written bytes.
+ * <p>
+ * Prefetched segments are looked up without locking. Only the detection of the access pattern
+ * is synchronized.
+ */
+public class PrefetchingIOHandler extends FilterIOHandler {
+
+    public static final int DEFAULT_PREFETCH_COUNT = 4;
+
+    private static ExecutorService defaultExecutor;
+
+    private final ExecutorService executor;
+    private final int prefetchCount;
+    private final ConcurrentHashMap<Long, Prefetch> prefetches;
+    private final Object accessPatternLock;
+    private long lastPosition;
+    private int lastLength;
+    private long lastStride;
+
+    private final AtomicLong hitCount;
+    private final AtomicLong prefetchedCount;
+
+    public PrefetchingIOHandler(IOHandler delegate) {
+        this(delegate, DEFAULT_PREFETCH_COUNT);
+    }
+
+    public PrefetchingIOHandler(IOHandler delegate, int prefetchCount) {
+        this(delegate, prefetchCount, getDefaultExecutor());
+    }
+
+    /**
+     * Constructs a new prefetching I/O handler.
+     *
+     * @param delegate      The I/O handler used to read and write.
+     * @param prefetchCount The number of segments read ahead once a sequential or strided access has been detected.
+     * @param executor      The executor used to read ahead.
+     */
+    public PrefetchingIOHandler(IOHandler delegate, int prefetchCount, ExecutorService executor) {
+        super(delegate);
+        if (prefetchCount <= 0) {
+            throw new IllegalArgumentException("prefetchCount <= 0");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor == null");
+        }
+        this.executor = executor;
+        this.prefetchCount = prefetchCount;
+        this.prefetches = new ConcurrentHashMap<Long, Prefetch>(4 * prefetchCount);
+        this.accessPatternLock = new Object();
+        this.lastPosition = -1L;
+        this.hitCount = new AtomicLong();
+        this.prefetchedCount = new AtomicLong();
+    }
+
+    public int getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    /**
+     * @return The number of reads served from prefetched data.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return The number of prefetches issued so far.
+     */
+    public long getPrefetchedCount() {
+        return prefetchedCount.get();
+    }
+
+    @Override
+    public void read(DataContext context, byte[] data, long position) throws IOException {
+        final Prefetch prefetch = prefetches.remove(position);
+        final long stride = detectAccessPattern(position, data.length);
+        if (stride > 0) {
+            for (int i = 1; i <= prefetchCount; i++) {
+                final long prefetchPosition = position + i * stride;
+                if (!prefetches.containsKey(prefetchPosition)) {
+                    schedule(context, prefetchPosition, data.length);
+                }
+            }
+            dropStalePrefetches(position, stride);
+        }
+        if (prefetch != null && prefetch.length == data.length) {
+            final byte[] prefetchedData = prefetch.get();
+            if (prefetchedData != null) {
+                System.arraycopy(prefetchedData, 0, data, 0, data.length);
+                hitCount.incrementAndGet();
+                return;
+            }
+        }
+        super.read(context, data, position);
+    }
+
+    @Override
+    public void write(DataContext context, byte[] data, long position) throws IOException {
+        try {
+            super.write(context, data, position);
+        } finally {
+            // Prefetches still pending after the write may have read the old bytes
+            final Iterator<Prefetch> iterator = prefetches.values().iterator();
+            while (iterator.hasNext()) {
+                final Prefetch prefetch = iterator.next();
+                if (prefetch.position < position + data.length && position < prefetch.position + prefetch.length) {
+                    prefetch.future.cancel(false);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The stride at which to read ahead, or {@code 0} if the access is not regular.
+     */
+    private long detectAccessPattern(long position, int length) {
+        synchronized (accessPatternLock) {
+            final long stride = position - lastPosition;
+            final boolean regular = lastPosition >= 0 && stride > 0 && stride == lastStride && length == lastLength;
+            lastStride = stride;
+            lastPosition = position;
+            lastLength = length;
+            return regular && length > 0 ? stride : 0L;
+        }
+    }
+
+    private void schedule(final DataContext context, final long position, final int length) {
+        final Future<byte[]> future = executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                final byte[] data = new byte[length];
+                getDelegate().read(context, data, position);
+                return data;
+            }
+        });
+        if (prefetches.putIfAbsent(position, new Prefetch(position, length, future)) == null) {
+            prefetchedCount.incrementAndGet();
+        } else {
+            // scheduled by another thread in the meantime
+            future.cancel(false);
+        }
+    }
+
+    // drop stale prefetches, e.g. if the access pattern has changed
+    private void dropStalePrefetches(long position, long stride) {
+        if (prefetches.size() > 2 * prefetchCount) {
+            final long endPosition = position + prefetchCount * stride;
+            final Iterator<Prefetch> iterator = prefetches.values().iterator();
+            while (iterator.hasNext()) {
+                final Prefetch prefetch = iterator.next();
+                if (prefetch.position <= position || prefetch.position > endPosition) {
+                    prefetch.future.cancel(false);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "ceres-binio-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return defaultExecutor;
+    }
+
+    private static final class Prefetch {
+        private final long position;
+        private final int length;
+        private final Future<byte[]> future;
+
+        private Prefetch(long position, int length, Future<byte[]> future) {
+            this.position = position;
+            this.length = length;
+            this.future = future;
+        }
+
+        /**
+         * @return The prefetched data, or {@code null} if prefetching failed.
+         */
+        private byte[] get() {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                // read again on the caller's thread, so that the error is reported there
+                return null;
+            } catch (CancellationException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -21,22 +21,58 @@ import com.bc.ceres.binio.IOHandler;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.io.EOFException;
+import java.nio.channels.FileChannel;
 
+/**
+ * An I/O handler which uses a {@link RandomAccessFile}.
+ * <p>
+ * By default, all I/O is performed by seeking and reading or writing the file, which
+ * serializes reader threads on the file pointer. If concurrent reads are enabled,
+ * reads are performed using positional I/O on the file's {@link RandomAccessFile#getChannel() channel},
+ * so that multiple threads may read at the same time without locking.
+ */
 public class RandomAccessFileIOHandler implements IOHandler {
     private final RandomAccessFile raf;
+    private final FileChannel channel;
 
     public RandomAccessFileIOHandler(RandomAccessFile raf) {
+        this(raf, false);
+    }
+
+    /**
+     * Constructs a new I/O handler.
+     *
+     * @param raf             The random access file.
+     * @param concurrentReads If {@code true}, reads use positional, unsynchronized I/O on the
+     *                        file's channel instead of {@code seek()} and {@code read()}.
+     *                        Note that the channel (and therefore the file) is closed if a reading
+     *                        thread is interrupted.
+     * @since Ceres 0.14
+     */
+    public RandomAccessFileIOHandler(RandomAccessFile raf, boolean concurrentReads) {
         this.raf = raf;
+        this.channel = concurrentReads ? raf.getChannel() : null;
+    }
+
+    /**
+     * @return {@code true}, if reads use positional I/O and may be performed concurrently.
+     * @since Ceres 0.14
+     */
+    public boolean isConcurrentReads() {
+        return channel != null;
     }
 
     @Override
-    public synchronized void read(DataContext context, byte[] data, long position) throws IOException {
-        synchronized (raf) {
-            raf.seek(position);
-            // We do not check for EOF here, because read() is called whenever
-            // segment data is allocated
-            raf.read(data, 0, data.length);
+    public void read(DataContext context, byte[] data, long position) throws IOException {
+        // We do not check for EOF here, because read() is called whenever
+        // segment data is allocated
+        if (channel != null) {
+            FileChannelIOHandler.read(channel, data, position);
+        } else {
+            synchronized (raf) {
+                raf.seek(position);
+                raf.read(data, 0, data.length);
+            }
         }
     }
 
@@ -54,4 +90,4 @@ public class RandomAccessFileIOHandler implements IOHandler {
             return raf.length();
         }
     }
-}
\ No newline at end of file
+}
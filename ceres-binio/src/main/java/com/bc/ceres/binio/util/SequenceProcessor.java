@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.internal.InstanceFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Processes the compound elements (records) of a sequence in parallel using a fork/join pool.
+ * <p>
+ * The offsets of the records are resolved first. Then the index range is split recursively
+ * until ranges of at most the grain size are left. Each range is processed by a worker
+ * using its own view of the sequence (see {@link InstanceFactory#createSequenceView}), so that
+ * workers do not share segments or lazily resolved offsets.
+ * <p>
+ * The sequence's data context may use a segment cache. Data instances pin their segment while
+ * accessing it, so that a worker's segment cannot be evicted and its buffer recycled by another worker.
+ * The context's {@link com.bc.ceres.binio.IOHandler} must support concurrent reads and writes.
+ *
+ * @since Ceres 0.14
+ */
+public class SequenceProcessor {
+
+    /**
+     * Handles a single record.
+     */
+    public interface RecordHandler {
+        /**
+         * Handles a record. May be called concurrently for different records.
+         *
+         * @param record The record.
+         * @param index  The index of the record within the processed sequence.
+         * @throws IOException If an I/O error occurs.
+         */
+        void handleRecord(CompoundData record, int index) throws IOException;
+    }
+
+    private static ForkJoinPool defaultPool;
+
+    private final ForkJoinPool pool;
+    private final int grainSize;
+
+    /**
+     * Constructs a processor using a shared pool, whose parallelism equals
+     * the number of available processors, and a grain size derived from the sequence length.
+     */
+    public SequenceProcessor() {
+        this(getDefaultPool(), 0);
+    }
+
+    /**
+     * Constructs a processor.
+     *
+     * @param pool      The fork/join pool.
+     * @param grainSize The maximum number of records processed by a single task.
+     *                  If zero, the sequence is split into about four tasks per worker thread.
+     */
+    public SequenceProcessor(ForkJoinPool pool, int grainSize) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool == null");
+        }
+        if (grainSize < 0) {
+            throw new IllegalArgumentException("grainSize < 0");
+        }
+        this.pool = pool;
+        this.grainSize = grainSize;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getGrainSize() {
+        return grainSize;
+    }
+
+    /**
+     * Processes all records of the given sequence and waits until processing is completed.
+     *
+     * @param sequence The sequence, its elements must be compounds.
+     * @param handler  The record handler.
+     * @throws IOException If an I/O error occurs, either while resolving the sequence or in the handler.
+     */
+    public void process(SequenceData sequence, RecordHandler handler) throws IOException {
+        if (sequence == null) {
+            throw new IllegalArgumentException("sequence == null");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("handler == null");
+        }
+        // resolved on the calling thread, so that workers only read the resolved size
+        sequence.resolveSize();
+        if (!sequence.getType().getElementType().isCompoundType()) {
+            throw new IllegalArgumentException("sequence: sequence of compounds expected");
+        }
+        final int elementCount = sequence.getElementCount();
+        int taskSize = grainSize;
+        if (taskSize == 0) {
+            taskSize = Math.max(1, elementCount / (4 * pool.getParallelism()));
+        }
+        try {
+            pool.invoke(new ProcessTask(sequence, handler, 0, elementCount, taskSize));
+        } catch (RuntimeException e) {
+            // the exception may have been re-created for the calling thread, so search the causes
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof IOExceptionWrapper) {
+                    throw (IOException) t.getCause();
+                }
+            }
+            throw e;
+        }
+    }
+
+    private static synchronized ForkJoinPool getDefaultPool() {
+        if (defaultPool == null) {
+            defaultPool = new ForkJoinPool();
+        }
+        return defaultPool;
+    }
+
+    private static final class ProcessTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SequenceData sequence;
+        private final RecordHandler handler;
+        private final int index;
+        private final int count;
+        private final int grainSize;
+
+        private ProcessTask(SequenceData sequence, RecordHandler handler, int index, int count, int grainSize) {
+            this.sequence = sequence;
+            this.handler = handler;
+            this.index = index;
+            this.count = count;
+            this.grainSize = grainSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (count > grainSize) {
+                final int count1 = count / 2;
+                invokeAll(new ProcessTask(sequence, handler, index, count1, grainSize),
+                          new ProcessTask(sequence, handler, index + count1, count - count1, grainSize));
+                return;
+            }
+            try {
+                final SequenceData view = InstanceFactory.createSequenceView(sequence, index, count);
+                for (int i = 0; i < count; i++) {
+                    handler.handleRecord(view.getCompound(i), index + i);
+                }
+            } catch (IOException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+    }
+
+    private static final class IOExceptionWrapper extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private IOExceptionWrapper(IOException cause) {
+            super(cause);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.bc.ceres.binio.internal;
 import com.bc.ceres.binio.*;
 import static com.bc.ceres.binio.TypeBuilder.*;
 import com.bc.ceres.binio.smos.SmosProduct;
+import com.bc.ceres.binio.util.ByteArrayCodec;
 import com.bc.ceres.binio.util.ByteArrayIOHandler;
 import com.bc.ceres.binio.util.ImageIOHandler;
 import junit.framework.TestCase;
@@ -86,6 +87,57 @@ public class InstanceTest extends TestCase {
         assertEquals(36134, sequenceInstance.getInt(2));
     }
 
+    public void testFixSequenceOfSimplesBulkAccess() throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(baos);
+        ios.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        ios.writeFloat(1.5f);
+        ios.writeFloat(-2.5f);
+        ios.writeFloat(3.25f);
+        ios.writeFloat(4.0f);
+        ios.close();
+
+        final ByteArrayIOHandler ioHandler = new ByteArrayIOHandler(baos.toByteArray());
+        final DataContext context = new DataFormat(COMPOUND("UNDEFINED"), ByteOrder.LITTLE_ENDIAN).createContext(ioHandler);
+        final FixSequenceOfSimples sequenceInstance = new FixSequenceOfSimples(context, null, SEQUENCE(SimpleType.FLOAT, 4), 0);
+
+        final float[] floats = new float[5];
+        sequenceInstance.getFloats(1, floats, 2, 3);
+        assertEquals(0.0f, floats[1], 0.0f);
+        assertEquals(-2.5f, floats[2], 0.0f);
+        assertEquals(3.25f, floats[3], 0.0f);
+        assertEquals(4.0f, floats[4], 0.0f);
+
+        final int[] ints = new int[4];
+        sequenceInstance.getInts(0, ints, 0, 4);
+        assertEquals(1, ints[0]);
+        assertEquals(-2, ints[1]);
+        assertEquals(3, ints[2]);
+        assertEquals(4, ints[3]);
+
+        sequenceInstance.setDoubles(2, new double[]{7.5, 8.5}, 0, 2);
+        sequenceInstance.flush();
+        assertEquals(7.5f, sequenceInstance.getFloat(2), 0.0f);
+        assertEquals(8.5f, sequenceInstance.getFloat(3), 0.0f);
+        final byte[] bytes = ioHandler.toByteArray();
+        assertEquals(7.5f, ByteArrayCodec.LITTLE_ENDIAN.getFloat(bytes, 8), 0.0f);
+        assertEquals(8.5f, ByteArrayCodec.LITTLE_ENDIAN.getFloat(bytes, 12), 0.0f);
+
+        try {
+            sequenceInstance.getFloats(2, floats, 0, 3);
+            fail("DataAccessException expected");
+        } catch (DataAccessException e) {
+            // ok
+        }
+
+        try {
+            sequenceInstance.getInts(1, ints, 0, Integer.MAX_VALUE);
+            fail("DataAccessException expected");
+        } catch (DataAccessException e) {
+            // ok
+        }
+    }
+
     public void testFixCompound() throws IOException {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
         MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(baos);
@@ -167,6 +219,51 @@ public class InstanceTest extends TestCase {
         // assertEquals(67.0, compoundInstance.getCompound(2).getDouble(1), 0.0);
     }
 
+    public void testFixCompoundLayout() throws IOException {
+        final CompoundType complexType = COMPOUND("Complex", MEMBER("x", DOUBLE), MEMBER("y", DOUBLE));
+        final CompoundType type = COMPOUND("compoundTestType",
+                                           MEMBER("a", SimpleType.SHORT),
+                                           MEMBER("b", SimpleType.INT),
+                                           MEMBER("c", complexType),
+                                           MEMBER("d", SimpleType.FLOAT));
+
+        final CompoundLayout layout = CompoundLayout.getInstance(type, ByteOrder.BIG_ENDIAN);
+        assertSame(layout, CompoundLayout.getInstance(type, ByteOrder.BIG_ENDIAN));
+        assertEquals(0, layout.getMemberOffset(0));
+        assertEquals(2, layout.getMemberOffset(1));
+        assertEquals(6, layout.getMemberOffset(2));
+        assertEquals(22, layout.getMemberOffset(3));
+        assertNotNull(layout.getMemberAccessor(0));
+        assertNull(layout.getMemberAccessor(2));
+
+        final ByteArrayIOHandler ioHandler = new ByteArrayIOHandler();
+        final DataContext context = new DataFormat(type).createContext(ioHandler);
+        final CompoundData compoundData = context.getData();
+        assertSame(FixCompound.class, compoundData.getClass());
+        compoundData.setShort(0, (short) -3);
+        compoundData.setInt(1, 123456);
+        compoundData.getCompound(2).setDouble(1, 0.25);
+        compoundData.setFloat(3, 1.5f);
+        assertEquals(-3, compoundData.getShort(0));
+        assertEquals(0xFFFD, compoundData.getUShort(0));
+        assertEquals(123456, compoundData.getInt(1));
+        assertEquals(0.25, compoundData.getCompound(2).getDouble(1), 0.0);
+        assertEquals(1.5f, compoundData.getFloat(3), 0.0f);
+        compoundData.flush();
+
+        final ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(ioHandler.toByteArray()));
+        assertEquals(-3, iis.readShort());
+        assertEquals(123456, iis.readInt());
+        assertEquals(0.0, iis.readDouble(), 0.0);
+        assertEquals(0.25, iis.readDouble(), 0.0);
+        assertEquals(1.5f, iis.readFloat(), 0.0f);
+
+        ((CompoundTypeImpl) type).setMember(3, MEMBER("d", SimpleType.DOUBLE));
+        final CompoundLayout newLayout = CompoundLayout.getInstance(type, ByteOrder.BIG_ENDIAN);
+        assertNotSame(layout, newLayout);
+        assertEquals(22, newLayout.getMemberOffset(3));
+    }
+
     public void testVarCompound() throws Exception {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
         MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(baos);
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.internal;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.TracingIOHandler;
+import com.bc.ceres.binio.util.ByteArrayIOHandler;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class SegmentCacheTest extends TestCase {
+
+    private static final CompoundType TYPE =
+            COMPOUND("Data",
+                     MEMBER("Complex_List",
+                            SEQUENCE(COMPOUND("Complex",
+                                              MEMBER("x", DOUBLE),
+                                              MEMBER("y", DOUBLE)), 8)));
+
+    public void testCacheIsDisabledByDefault() {
+        final DataContextImpl context = new DataContextImpl(new DataFormat(TYPE), new ByteArrayIOHandler());
+        assertEquals(0L, context.getSegmentCacheCapacity());
+        assertNull(context.getSegmentCache());
+    }
+
+    public void testEvictedSegmentsAreWrittenBackAndReloaded() throws IOException {
+        final ByteArrayIOHandler byteArrayIOHandler = new ByteArrayIOHandler();
+        final TracingIOHandler tracingIOHandler = new TracingIOHandler(byteArrayIOHandler);
+        final DataContextImpl context = new DataContextImpl(new DataFormat(TYPE), tracingIOHandler, 3 * 16);
+        assertEquals(48L, context.getSegmentCacheCapacity());
+
+        final SequenceData seq = context.getData().getSequence("Complex_List");
+        for (int i = 0; i < 8; i++) {
+            final CompoundData complex = seq.getCompound(i);
+            complex.setDouble("x", i + 23.04);
+            complex.setDouble("y", i + 10.12);
+            assertTrue(context.getSegmentCacheSize() <= 48L);
+        }
+        assertEquals(8L, context.getSegmentCacheMissCount());
+        assertEquals(5L, context.getSegmentCacheEvictionCount());
+        assertEquals("R(0,16)R(16,16)R(32,16)R(48,16)W(0,16)R(64,16)W(16,16)" +
+                     "R(80,16)W(32,16)R(96,16)W(48,16)R(112,16)W(64,16)", tracingIOHandler.getTrace());
+
+        tracingIOHandler.reset();
+        for (int i = 0; i < 8; i++) {
+            final CompoundData complex = seq.getCompound(i);
+            assertEquals(i + 23.04, complex.getDouble("x"), 1e-10);
+            assertEquals(i + 10.12, complex.getDouble("y"), 1e-10);
+        }
+        assertTrue(context.getSegmentCacheHitCount() > 0L);
+        assertTrue(context.getSegmentCacheSize() <= 48L);
+
+        context.dispose();
+        assertEquals(0L, context.getSegmentCacheSize());
+
+        final DataContextImpl context2 = new DataContextImpl(new DataFormat(TYPE),
+                                                             new ByteArrayIOHandler(byteArrayIOHandler.toByteArray()));
+        final SequenceData seq2 = context2.getData().getSequence("Complex_List");
+        for (int i = 0; i < 8; i++) {
+            final CompoundData complex = seq2.getCompound(i);
+            assertEquals(i + 23.04, complex.getDouble("x"), 1e-10);
+            assertEquals(i + 10.12, complex.getDouble("y"), 1e-10);
+        }
+    }
+
+    public void testPinnedSegmentsAreNotEvicted() throws IOException {
+        final DataContextImpl context = new DataContextImpl(new DataFormat(TYPE), new ByteArrayIOHandler(), 16);
+        final Segment segment1 = new Segment(0, 16);
+        final Segment segment2 = new Segment(16, 16);
+        final Segment segment3 = new Segment(32, 16);
+
+        segment1.makeDataAccessible(context);
+        segment1.pin(context);
+        segment2.makeDataAccessible(context);
+        assertTrue(segment1.isDataAccessible());
+        assertTrue(segment2.isDataAccessible());
+        assertEquals(0L, context.getSegmentCacheEvictionCount());
+
+        segment1.unpin();
+        segment3.makeDataAccessible(context);
+        assertFalse(segment1.isDataAccessible());
+        assertFalse(segment2.isDataAccessible());
+        assertTrue(segment3.isDataAccessible());
+        assertEquals(2L, context.getSegmentCacheEvictionCount());
+    }
+
+    public void testFixCompoundMembersArePinnedUnderEvictionPressure() throws Exception {
+        final ByteArrayIOHandler byteArrayIOHandler = new ByteArrayIOHandler();
+        final DataContextImpl context1 = new DataContextImpl(new DataFormat(TYPE), byteArrayIOHandler);
+        final SequenceData seq1 = context1.getData().getSequence("Complex_List");
+        for (int i = 0; i < 8; i++) {
+            final CompoundData complex = seq1.getCompound(i);
+            complex.setDouble("x", i + 23.04);
+            complex.setDouble("y", i + 10.12);
+            complex.flush();
+        }
+
+        // the cache holds a single compound only, so that every access evicts the segment of another thread
+        final DataContextImpl context = new DataContextImpl(new DataFormat(TYPE),
+                                                            new ByteArrayIOHandler(byteArrayIOHandler.toByteArray()),
+                                                            16);
+        final SequenceData seq = context.getData().getSequence("Complex_List");
+        assertTrue(seq.getCompound(0) instanceof FixCompound);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int n = 0; n < 20000 && failure.get() == null; n++) {
+                            final int i = (offset + n) % 8;
+                            final CompoundData complex = seq.getCompound(i);
+                            if (complex.getDouble(0) != i + 23.04 || complex.getDouble(1) != i + 10.12) {
+                                throw new IllegalStateException("wrong members of compound " + i);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(String.valueOf(failure.get()), failure.get());
+        assertTrue(context.getSegmentCacheEvictionCount() > 0L);
+    }
+}
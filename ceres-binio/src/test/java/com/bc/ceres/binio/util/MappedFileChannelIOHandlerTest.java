@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SequenceData;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class MappedFileChannelIOHandlerTest extends TestCase {
+    private File file;
+    private RandomAccessFile raf;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = new File("test.dat");
+        file.delete();
+        final byte[] bytes = new byte[4 * 1000];
+        for (int i = 0; i < 1000; i++) {
+            ByteArrayCodec.BIG_ENDIAN.setInt(bytes, 4 * i, i);
+        }
+        raf = new RandomAccessFile(file, "rw");
+        raf.write(bytes);
+        raf.seek(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            raf.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testReadAcrossChunks() throws IOException {
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel(),
+                                                                                  FileChannel.MapMode.READ_ONLY, 100);
+        assertEquals(4000L, handler.getMaxPosition());
+
+        // 204 bytes starting at 96 span the chunks [0,100), [100,200) and [200,300)
+        final byte[] data = new byte[204];
+        handler.read(null, data, 96);
+        for (int i = 0; i < 51; i++) {
+            assertEquals(24 + i, ByteArrayCodec.BIG_ENDIAN.getInt(data, 4 * i));
+        }
+    }
+
+    public void testReadBeyondEndOfFile() throws IOException {
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel(),
+                                                                                  FileChannel.MapMode.READ_ONLY, 100);
+        final byte[] data = new byte[12];
+        handler.read(null, data, 3992);
+        assertEquals(998, ByteArrayCodec.BIG_ENDIAN.getInt(data, 0));
+        assertEquals(999, ByteArrayCodec.BIG_ENDIAN.getInt(data, 4));
+        assertEquals(0, ByteArrayCodec.BIG_ENDIAN.getInt(data, 8));
+
+        final byte[] data2 = new byte[4];
+        handler.read(null, data2, 8000);
+        assertEquals(0, ByteArrayCodec.BIG_ENDIAN.getInt(data2, 0));
+    }
+
+    public void testPositionsAreRelativeToChannelPosition() throws IOException {
+        raf.seek(400);
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel(),
+                                                                                  FileChannel.MapMode.READ_ONLY, 100);
+        assertEquals(3600L, handler.getMaxPosition());
+
+        final byte[] data = new byte[8];
+        handler.read(null, data, 0);
+        assertEquals(100, ByteArrayCodec.BIG_ENDIAN.getInt(data, 0));
+        assertEquals(101, ByteArrayCodec.BIG_ENDIAN.getInt(data, 4));
+        final byte[] data2 = new byte[8];
+        handler.read(null, data2, 3596);
+        assertEquals(999, ByteArrayCodec.BIG_ENDIAN.getInt(data2, 0));
+        assertEquals(0, ByteArrayCodec.BIG_ENDIAN.getInt(data2, 4));
+    }
+
+    public void testGetBuffer() throws IOException {
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel(),
+                                                                                  FileChannel.MapMode.READ_ONLY, 100);
+        final ByteBuffer buffer = handler.getBuffer(null, 104, 40);
+        assertNotNull(buffer);
+        assertTrue(buffer.isReadOnly());
+        assertEquals(40, buffer.capacity());
+        assertEquals(26, buffer.getInt(0));
+        assertEquals(35, buffer.getInt(36));
+
+        // spans the chunks [0,100) and [100,200)
+        assertNull(handler.getBuffer(null, 96, 8));
+        // beyond end of file
+        assertNull(handler.getBuffer(null, 3996, 8));
+    }
+
+    public void testDataContextAccessesMappedBuffers() throws IOException {
+        final CompoundType type = COMPOUND("Data", MEMBER("Values", SEQUENCE(INT, 1000)));
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel(),
+                                                                                  FileChannel.MapMode.READ_WRITE);
+        final DataContext context = new DataFormat(type).createContext(handler);
+        final SequenceData values = context.getData().getSequence("Values");
+        assertEquals(0, values.getInt(0));
+        assertEquals(999, values.getInt(999));
+        final int[] ints = new int[10];
+        values.getInts(500, ints, 0, 10);
+        for (int i = 0; i < ints.length; i++) {
+            assertEquals(500 + i, ints[i]);
+        }
+
+        // written through to the mapped file without flushing
+        values.setInt(3, -3);
+        final byte[] data = new byte[4];
+        handler.read(null, data, 12);
+        assertEquals(-3, ByteArrayCodec.BIG_ENDIAN.getInt(data, 0));
+    }
+
+    public void testDataContextCopiesReadOnlyBuffersOnWrite() throws IOException {
+        final CompoundType type = COMPOUND("Data", MEMBER("Values", SEQUENCE(INT, 1000)));
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel());
+        final DataContext context = new DataFormat(type).createContext(handler);
+        final SequenceData values = context.getData().getSequence("Values");
+        assertEquals(3, values.getInt(3));
+        values.setInt(3, -3);
+        assertEquals(-3, values.getInt(3));
+        assertEquals(4, values.getInt(4));
+        try {
+            values.flush();
+            fail("IOException expected");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    public void testWriteIsRejectedInReadOnlyMode() throws IOException {
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel());
+        try {
+            handler.write(null, new byte[4], 0);
+            fail("IOException expected");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    public void testWriteAcrossChunksAndBeyondEndOfFile() throws IOException {
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel(),
+                                                                                  FileChannel.MapMode.READ_WRITE, 100);
+        final byte[] data = new byte[8];
+        ByteArrayCodec.BIG_ENDIAN.setInt(data, 0, -1);
+        ByteArrayCodec.BIG_ENDIAN.setInt(data, 4, -2);
+        handler.write(null, data, 196);
+        handler.write(null, data, 3996);
+        assertEquals(4004L, handler.getMaxPosition());
+
+        final byte[] actual = new byte[8];
+        handler.read(null, actual, 196);
+        assertEquals(-1, ByteArrayCodec.BIG_ENDIAN.getInt(actual, 0));
+        assertEquals(-2, ByteArrayCodec.BIG_ENDIAN.getInt(actual, 4));
+        handler.read(null, actual, 3996);
+        assertEquals(-1, ByteArrayCodec.BIG_ENDIAN.getInt(actual, 0));
+        assertEquals(-2, ByteArrayCodec.BIG_ENDIAN.getInt(actual, 4));
+
+        raf.seek(200);
+        assertEquals(-2, raf.readInt());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.TracingIOHandler;
+import com.bc.ceres.binio.internal.DataContextImpl;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class OffsetIndexTest extends TestCase {
+
+    private static final int RECORD_COUNT = 100;
+    private static final CompoundType RECORD_TYPE = COMPOUND("Record",
+                                                             MEMBER("count", INT),
+                                                             MEMBER("values", VAR_SEQUENCE(INT, "count")));
+    private static final DataFormat FORMAT = new DataFormat(COMPOUND("Data",
+                                                                     MEMBER("Records", SEQUENCE(RECORD_TYPE, RECORD_COUNT))));
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("OffsetIndexTest", ".bin");
+        final OutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(createData());
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        OffsetIndex.getIndexFile(file).delete();
+        file.delete();
+    }
+
+    public void testIndexIsSavedAndReused() throws IOException {
+        final File indexFile = OffsetIndex.getIndexFile(file);
+        assertFalse(indexFile.exists());
+
+        final DataContext context1 = FORMAT.createContext(file, "r", true);
+        final SequenceData records1 = context1.getData().getSequence("Records");
+        assertRecord(records1.getCompound(RECORD_COUNT - 1), RECORD_COUNT - 1);
+        context1.dispose();
+        assertTrue(indexFile.exists());
+
+        final OffsetIndex offsetIndex = OffsetIndex.load(file);
+        assertEquals(1, offsetIndex.getEntryCount());
+        assertFalse(offsetIndex.isModified());
+
+        // only the requested record is read
+        final TracingIOHandler tracingIOHandler = new TracingIOHandler(new ByteArrayIOHandler(createData()));
+        final DataContextImpl context2 = new DataContextImpl(FORMAT, tracingIOHandler);
+        context2.setOffsetIndex(offsetIndex);
+        final SequenceData records2 = context2.getData().getSequence("Records");
+        tracingIOHandler.reset();
+        assertRecord(records2.getCompound(RECORD_COUNT - 1), RECORD_COUNT - 1);
+        assertEquals("R(19800,4)R(19804,396)", tracingIOHandler.getTrace());
+        assertRecord(records2.getCompound(42), 42);
+    }
+
+    public void testOutdatedIndexIsIgnored() throws IOException {
+        final DataContext context1 = FORMAT.createContext(file, "r", true);
+        context1.getData().getSequence("Records").resolveSize();
+        context1.dispose();
+        assertEquals(1, OffsetIndex.load(file).getEntryCount());
+
+        assertTrue(file.setLastModified(file.lastModified() - 10000L));
+        assertEquals(0, OffsetIndex.load(file).getEntryCount());
+    }
+
+    public void testWriteInvalidatesIndex() throws IOException {
+        final DataContext context1 = FORMAT.createContext(file, "r", true);
+        context1.getData().getSequence("Records").resolveSize();
+        context1.dispose();
+        final File indexFile = OffsetIndex.getIndexFile(file);
+        assertTrue(indexFile.exists());
+
+        final DataContext context2 = FORMAT.createContext(file, "rw", true);
+        final OffsetIndex offsetIndex = ((DataContextImpl) context2).getOffsetIndex();
+        final SequenceData records2 = context2.getData().getSequence("Records");
+        assertRecord(records2.getCompound(42), 42);
+        assertFalse(offsetIndex.isInvalid());
+        records2.getCompound(42).getSequence("values").setInt(0, -1);
+        records2.getCompound(42).getSequence("values").flush();
+        assertTrue(offsetIndex.isInvalid());
+        assertEquals(0, offsetIndex.getEntryCount());
+        records2.resolveSize();
+        assertEquals(0, offsetIndex.getEntryCount());
+        context2.dispose();
+        assertFalse(indexFile.exists());
+    }
+
+    public void testSmallSequencesAreNotIndexed() {
+        final OffsetIndex offsetIndex = new OffsetIndex();
+        offsetIndex.putElementOffsets(0L, RECORD_TYPE, new long[OffsetIndex.MIN_ELEMENT_COUNT]);
+        assertEquals(0, offsetIndex.getEntryCount());
+        assertFalse(offsetIndex.isModified());
+        offsetIndex.putElementOffsets(0L, RECORD_TYPE, new long[OffsetIndex.MIN_ELEMENT_COUNT + 1]);
+        assertEquals(1, offsetIndex.getEntryCount());
+        assertTrue(offsetIndex.isModified());
+        assertNotNull(offsetIndex.getElementOffsets(0L, RECORD_TYPE, OffsetIndex.MIN_ELEMENT_COUNT));
+    }
+
+    public void testElementOffsetsAreCopied() {
+        final OffsetIndex offsetIndex = new OffsetIndex();
+        final long[] elementOffsets = new long[OffsetIndex.MIN_ELEMENT_COUNT + 1];
+        elementOffsets[1] = 8L;
+        offsetIndex.putElementOffsets(0L, RECORD_TYPE, elementOffsets);
+        elementOffsets[1] = -1L;
+        final long[] indexedElementOffsets = offsetIndex.getElementOffsets(0L, RECORD_TYPE, OffsetIndex.MIN_ELEMENT_COUNT);
+        assertEquals(8L, indexedElementOffsets[1]);
+        indexedElementOffsets[1] = -1L;
+        assertEquals(8L, offsetIndex.getElementOffsets(0L, RECORD_TYPE, OffsetIndex.MIN_ELEMENT_COUNT)[1]);
+    }
+
+    public void testTypesWithSameNameAreDistinguished() {
+        final CompoundType otherRecordType = COMPOUND("Record",
+                                                      MEMBER("count", INT),
+                                                      MEMBER("values", VAR_SEQUENCE(SHORT, "count")));
+        final OffsetIndex offsetIndex = new OffsetIndex();
+        offsetIndex.putElementOffsets(0L, RECORD_TYPE, new long[OffsetIndex.MIN_ELEMENT_COUNT + 1]);
+        assertNotNull(offsetIndex.getElementOffsets(0L, RECORD_TYPE, OffsetIndex.MIN_ELEMENT_COUNT));
+        assertNull(offsetIndex.getElementOffsets(0L, otherRecordType, OffsetIndex.MIN_ELEMENT_COUNT));
+    }
+
+    private static void assertRecord(CompoundData record, int index) throws IOException {
+        assertEquals(index, record.getInt("count"));
+        final SequenceData values = record.getSequence("values");
+        for (int j = 0; j < index; j++) {
+            assertEquals(index + j, values.getInt(j));
+        }
+    }
+
+    private static byte[] createData() {
+        // record i has i values
+        final byte[] bytes = new byte[4 * RECORD_COUNT + 4 * (RECORD_COUNT * (RECORD_COUNT - 1) / 2)];
+        int pos = 0;
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            ByteArrayCodec.BIG_ENDIAN.setInt(bytes, pos, i);
+            pos += 4;
+            for (int j = 0; j < i; j++) {
+                ByteArrayCodec.BIG_ENDIAN.setInt(bytes, pos, i + j);
+                pos += 4;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+
+public class PrefetchingIOHandlerTest extends TestCase {
+
+    private static byte[] createData(int n) {
+        final byte[] bytes = new byte[4 * n];
+        for (int i = 0; i < n; i++) {
+            ByteArrayCodec.BIG_ENDIAN.setInt(bytes, 4 * i, i);
+        }
+        return bytes;
+    }
+
+    public void testSequentialReads() throws IOException {
+        final PrefetchingIOHandler handler = new PrefetchingIOHandler(new ByteArrayIOHandler(createData(1000)), 4);
+        final byte[] data = new byte[16];
+        for (int i = 0; i < 250; i++) {
+            handler.read(null, data, 16L * i);
+            for (int k = 0; k < 4; k++) {
+                assertEquals(4 * i + k, ByteArrayCodec.BIG_ENDIAN.getInt(data, 4 * k));
+            }
+        }
+        assertTrue(handler.getPrefetchedCount() > 0);
+        assertEquals(247, handler.getHitCount());
+    }
+
+    public void testStridedReads() throws IOException {
+        final PrefetchingIOHandler handler = new PrefetchingIOHandler(new ByteArrayIOHandler(createData(1000)), 2);
+        final byte[] data = new byte[4];
+        for (int i = 0; i < 1000; i += 10) {
+            handler.read(null, data, 4L * i);
+            assertEquals(i, ByteArrayCodec.BIG_ENDIAN.getInt(data, 0));
+        }
+        assertEquals(97, handler.getHitCount());
+    }
+
+    public void testRandomReadsDoNotPrefetch() throws IOException {
+        final PrefetchingIOHandler handler = new PrefetchingIOHandler(new ByteArrayIOHandler(createData(1000)));
+        final byte[] data = new byte[4];
+        final int[] indexes = {17, 3, 400, 401, 12, 999, 0, 5};
+        for (int index : indexes) {
+            handler.read(null, data, 4L * index);
+            assertEquals(index, ByteArrayCodec.BIG_ENDIAN.getInt(data, 0));
+        }
+        assertEquals(0, handler.getPrefetchedCount());
+    }
+
+    public void testWriteInvalidatesPrefetchedData() throws IOException {
+        // unlike ByteArrayIOHandler, the delegate does not shrink to the end of the written bytes,
+        // so the prefetched bytes following them stay valid whether read before or after the write
+        final PrefetchingIOHandler handler = new PrefetchingIOHandler(new FixedSizeIOHandler(createData(1000)), 4);
+        final byte[] data = new byte[4];
+        handler.read(null, data, 0);
+        handler.read(null, data, 4);
+        handler.read(null, data, 8);
+        assertEquals(4, handler.getPrefetchedCount());
+
+        final byte[] newData = new byte[4];
+        ByteArrayCodec.BIG_ENDIAN.setInt(newData, 0, -3);
+        handler.write(null, newData, 12);
+
+        handler.read(null, data, 12);
+        assertEquals(-3, ByteArrayCodec.BIG_ENDIAN.getInt(data, 0));
+        handler.read(null, data, 16);
+        assertEquals(4, ByteArrayCodec.BIG_ENDIAN.getInt(data, 0));
+    }
+
+    private static class FixedSizeIOHandler implements IOHandler {
+        private final byte[] bytes;
+
+        private FixedSizeIOHandler(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public synchronized void read(DataContext context, byte[] data, long position) {
+            System.arraycopy(bytes, (int) position, data, 0, Math.min(data.length, bytes.length - (int) position));
+        }
+
+        @Override
+        public synchronized void write(DataContext context, byte[] data, long position) {
+            System.arraycopy(data, 0, bytes, (int) position, data.length);
+        }
+
+        @Override
+        public long getMaxPosition() {
+            return bytes.length;
+        }
+    }
+}
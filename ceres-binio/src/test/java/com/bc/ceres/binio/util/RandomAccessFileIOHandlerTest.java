@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.IOHandler;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class RandomAccessFileIOHandlerTest extends TestCase {
+    private static final int N = 64 * 1024;
+
+    private File file;
+    private RandomAccessFile raf;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = new File("test.dat");
+        file.delete();
+        final byte[] bytes = new byte[4 * N];
+        for (int i = 0; i < N; i++) {
+            ByteArrayCodec.BIG_ENDIAN.setInt(bytes, 4 * i, i);
+        }
+        raf = new RandomAccessFile(file, "rw");
+        raf.write(bytes);
+        raf.close();
+        raf = new RandomAccessFile(file, "r");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            raf.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testSeekingReads() throws Exception {
+        final RandomAccessFileIOHandler handler = new RandomAccessFileIOHandler(raf);
+        assertFalse(handler.isConcurrentReads());
+        assertReadsInParallel(handler);
+    }
+
+    public void testConcurrentReads() throws Exception {
+        final RandomAccessFileIOHandler handler = new RandomAccessFileIOHandler(raf, true);
+        assertTrue(handler.isConcurrentReads());
+        assertReadsInParallel(handler);
+        assertEquals(0L, raf.getFilePointer());
+    }
+
+    public void testConcurrentReadBeyondEndOfFile() throws Exception {
+        final RandomAccessFileIOHandler handler = new RandomAccessFileIOHandler(raf, true);
+        final byte[] data = new byte[8];
+        handler.read(null, data, 4 * (N - 1));
+        assertEquals(N - 1, ByteArrayCodec.BIG_ENDIAN.getInt(data, 0));
+        assertEquals(0, ByteArrayCodec.BIG_ENDIAN.getInt(data, 4));
+    }
+
+    private static void assertReadsInParallel(final IOHandler handler) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 4; t++) {
+                final int stride = t + 1;
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        final byte[] data = new byte[16];
+                        for (int i = 0; i < N - 4; i += stride) {
+                            handler.read(null, data, 4L * i);
+                            for (int k = 0; k < 4; k++) {
+                                if (ByteArrayCodec.BIG_ENDIAN.getInt(data, 4 * k) != i + k) {
+                                    return false;
+                                }
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.internal.DataContextImpl;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class SequenceProcessorTest extends TestCase {
+
+    private static final CompoundType FIX_RECORD_TYPE = COMPOUND("Record", MEMBER("id", INT), MEMBER("value", DOUBLE));
+    private static final CompoundType VAR_RECORD_TYPE = COMPOUND("Record",
+                                                                 MEMBER("count", INT),
+                                                                 MEMBER("values", VAR_SEQUENCE(INT, "count")));
+
+    private static final int FIX_RECORD_COUNT = 1000;
+    private static final CompoundType FIX_TYPE = COMPOUND("Data", MEMBER("Records", SEQUENCE(FIX_RECORD_TYPE, FIX_RECORD_COUNT)));
+
+    public void testFixRecords() throws IOException {
+        final DataContext context = new DataFormat(FIX_TYPE).createContext(new ByteArrayIOHandler(createFixRecordBytes()));
+        processFixRecords(context);
+    }
+
+    public void testFixRecordsWithSegmentCache() throws IOException {
+        // the cache holds 10 records only, so that workers evict each other's segments
+        final DataContextImpl context = new DataContextImpl(new DataFormat(FIX_TYPE),
+                                                            new ByteArrayIOHandler(createFixRecordBytes()), 10 * 12);
+        processFixRecords(context);
+        assertTrue(context.getSegmentCacheEvictionCount() > 0L);
+    }
+
+    public void testVarRecords() throws IOException {
+        final int n = 100;
+        final byte[] bytes = new byte[4 * n + 4 * (n * (n - 1) / 2)];
+        int pos = 0;
+        for (int i = 0; i < n; i++) {
+            // record i has i values
+            ByteArrayCodec.BIG_ENDIAN.setInt(bytes, pos, i);
+            pos += 4;
+            for (int j = 0; j < i; j++) {
+                ByteArrayCodec.BIG_ENDIAN.setInt(bytes, pos, i + j);
+                pos += 4;
+            }
+        }
+        final CompoundType type = COMPOUND("Data", MEMBER("Records", SEQUENCE(VAR_RECORD_TYPE, n)));
+        final DataContext context = new DataFormat(type).createContext(new ByteArrayIOHandler(bytes));
+        final SequenceData records = context.getData().getSequence("Records");
+
+        final AtomicIntegerArray visits = new AtomicIntegerArray(n);
+        new SequenceProcessor(new ForkJoinPool(4), 3).process(records, new SequenceProcessor.RecordHandler() {
+            @Override
+            public void handleRecord(CompoundData record, int index) throws IOException {
+                assertEquals(index, record.getInt("count"));
+                final SequenceData values = record.getSequence("values");
+                assertEquals(index, values.getElementCount());
+                for (int j = 0; j < index; j++) {
+                    assertEquals(index + j, values.getInt(j));
+                }
+                visits.incrementAndGet(index);
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            assertEquals(1, visits.get(i));
+        }
+    }
+
+    public void testIOExceptionIsRethrown() throws IOException {
+        final CompoundType type = COMPOUND("Data", MEMBER("Records", SEQUENCE(FIX_RECORD_TYPE, 100)));
+        final DataContext context = new DataFormat(type).createContext(new ByteArrayIOHandler());
+        final SequenceData records = context.getData().getSequence("Records");
+        try {
+            new SequenceProcessor(new ForkJoinPool(2), 5).process(records, new SequenceProcessor.RecordHandler() {
+                @Override
+                public void handleRecord(CompoundData record, int index) throws IOException {
+                    if (index == 42) {
+                        throw new IOException("42");
+                    }
+                }
+            });
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals("42", e.getMessage());
+        }
+    }
+
+    public void testSequenceOfSimplesIsRejected() throws IOException {
+        final CompoundType type = COMPOUND("Data", MEMBER("Values", SEQUENCE(INT, 10)));
+        final DataContext context = new DataFormat(type).createContext(new ByteArrayIOHandler());
+        try {
+            new SequenceProcessor().process(context.getData().getSequence("Values"), new SequenceProcessor.RecordHandler() {
+                @Override
+                public void handleRecord(CompoundData record, int index) {
+                }
+            });
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    private static byte[] createFixRecordBytes() {
+        final byte[] bytes = new byte[FIX_RECORD_COUNT * 12];
+        for (int i = 0; i < FIX_RECORD_COUNT; i++) {
+            ByteArrayCodec.BIG_ENDIAN.setInt(bytes, 12 * i, i);
+            ByteArrayCodec.BIG_ENDIAN.setDouble(bytes, 12 * i + 4, 0.5 * i);
+        }
+        return bytes;
+    }
+
+    private static void processFixRecords(DataContext context) throws IOException {
+        final int n = FIX_RECORD_COUNT;
+        final SequenceData records = context.getData().getSequence("Records");
+
+        final AtomicIntegerArray visits = new AtomicIntegerArray(n);
+        new SequenceProcessor(new ForkJoinPool(4), 10).process(records, new SequenceProcessor.RecordHandler() {
+            @Override
+            public void handleRecord(CompoundData record, int index) throws IOException {
+                assertEquals(index, record.getInt("id"));
+                assertEquals(0.5 * index, record.getDouble("value"), 0.0);
+                visits.incrementAndGet(index);
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            assertEquals(1, visits.get(i));
+        }
+    }
+}
@@ -16,7 +16,9 @@
 
 package com.bc.ceres.compiler;
 
+import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
 import javax.tools.StandardLocation;
@@ -26,14 +28,25 @@ import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Arrays;
+import java.util.Map;
 
 /**
  * A Java code compiler.
+ * <p/>
+ * Classes are either compiled into an output directory and loaded from the class path,
+ * or compiled into memory and loaded by a {@link MemoryClassLoader}.
+ * <p/>
+ * A compiler reuses its file manager for all compilations, so that the class path is
+ * opened only once. Compilations performed by the same compiler are therefore serialized.
+ * Many codes may be compiled by a single compiler task using {@link #compile(Code[])}.
+ * If compilation fails, a {@link CodeCompilerException} reports the compiler's diagnostics.
  */
 public class CodeCompiler {
     private final JavaCompiler compiler;
     private final File outputDir;
     private final File[] classPath;
+    private final MemoryClassLoader classLoader;
+    private JavaFileManager fileManager;
 
     public CodeCompiler(File outputDir, File[] classPath) {
         this(ToolProvider.getSystemJavaCompiler(), outputDir, classPath);
@@ -43,6 +56,28 @@ public class CodeCompiler {
         this.compiler = compiler;
         this.outputDir = outputDir;
         this.classPath = classPath.clone();
+        this.classLoader = null;
+    }
+
+    /**
+     * Constructs a compiler which compiles classes into memory.
+     *
+     * @param classPath   The class path used to resolve the classes referenced by compiled code.
+     *                    If empty, the class path of the Java VM is used.
+     * @param classLoader The class loader which loads the compiled classes. May be shared by many compilers.
+     */
+    public CodeCompiler(File[] classPath, MemoryClassLoader classLoader) {
+        this(ToolProvider.getSystemJavaCompiler(), classPath, classLoader);
+    }
+
+    public CodeCompiler(JavaCompiler compiler, File[] classPath, MemoryClassLoader classLoader) {
+        if (classLoader == null) {
+            throw new NullPointerException("classLoader");
+        }
+        this.compiler = compiler;
+        this.outputDir = null;
+        this.classPath = classPath.clone();
+        this.classLoader = classLoader;
     }
 
     public Class<?> compile(String packageName, String className, String code) throws IOException, ClassNotFoundException {
@@ -50,30 +85,112 @@ public class CodeCompiler {
     }
 
     public Class<?> compile(Code code) throws IOException, ClassNotFoundException {
-        final boolean status = performCompilerTask(code);
-        if (!status) {
-            // todo - include compiler error info (nf, 01.10.2008)
-            throw new RuntimeException("Code compilation failed.");
+        return compile(new Code[]{code})[0];
+    }
+
+    /**
+     * Compiles the given codes by a single compiler task.
+     *
+     * @param codes The codes.
+     * @return The compiled classes, in the order of the given codes.
+     * @throws CodeCompilerException  If the compilation fails.
+     * @throws IOException            If an I/O error occurs.
+     * @throws ClassNotFoundException If a compiled class cannot be loaded.
+     */
+    public synchronized Class<?>[] compile(Code... codes) throws IOException, ClassNotFoundException {
+        return compile(codes, classLoader);
+    }
+
+    /**
+     * Compiles the given codes into memory by a single compiler task. The classes are loaded by the given
+     * class loader instead of the compiler's one, so that they can be unloaded together with that class loader.
+     *
+     * @param classLoader The class loader which loads the compiled classes.
+     * @param codes       The codes.
+     * @return The compiled classes, in the order of the given codes.
+     * @throws CodeCompilerException  If the compilation fails.
+     * @throws IOException            If an I/O error occurs.
+     * @throws ClassNotFoundException If a compiled class cannot be loaded.
+     */
+    public synchronized Class<?>[] compile(MemoryClassLoader classLoader, Code... codes) throws IOException, ClassNotFoundException {
+        if (classLoader == null) {
+            throw new NullPointerException("classLoader");
         }
-        URL[] urls = new URL[classPath.length];
-        for (int i = 0; i < urls.length; i++) {
-            urls[i] = classPath[i].toURI().toURL();
+        if (this.classLoader == null) {
+            throw new IllegalStateException("Compiler does not compile into memory.");
         }
-        URLClassLoader loader = new URLClassLoader(urls, Thread.currentThread().getContextClassLoader());
-        return loader.loadClass(code.getClassName());
+        return compile(codes, classLoader);
     }
 
-    private boolean performCompilerTask(JavaFileObject... source) throws IOException {
-        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
-        outputDir.mkdirs();
-        fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Arrays.asList(outputDir));
-        fileManager.setLocation(StandardLocation.CLASS_PATH, Arrays.asList(classPath));
-        final JavaCompiler.CompilationTask task = compiler.getTask(null, // todo - specify writer
+    private Class<?>[] compile(Code[] codes, MemoryClassLoader classLoader) throws IOException, ClassNotFoundException {
+        final JavaFileManager fileManager = getFileManager();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        final JavaCompiler.CompilationTask task = compiler.getTask(null,
                                                                    fileManager,
+                                                                   diagnostics,
                                                                    null,
                                                                    null,
-                                                                   null,
-                                                                   Arrays.asList(source));
-        return task.call();
+                                                                   Arrays.asList(codes));
+        final boolean status = task.call();
+        if (fileManager instanceof MemoryFileManager) {
+            // also remove the class files of a failed compilation
+            final Map<String, byte[]> classFiles = ((MemoryFileManager) fileManager).removeClassFiles();
+            if (status) {
+                for (Map.Entry<String, byte[]> entry : classFiles.entrySet()) {
+                    classLoader.addClass(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        if (!status) {
+            throw new CodeCompilerException("Code compilation failed.", diagnostics.getDiagnostics());
+        }
+
+        final ClassLoader loader;
+        if (classLoader != null) {
+            loader = classLoader;
+        } else {
+            URL[] urls = new URL[classPath.length];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = classPath[i].toURI().toURL();
+            }
+            loader = new URLClassLoader(urls, Thread.currentThread().getContextClassLoader());
+        }
+        final Class<?>[] classes = new Class<?>[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            classes[i] = loader.loadClass(codes[i].getClassName());
+        }
+        return classes;
+    }
+
+    /**
+     * Releases the file manager of this compiler. The compiler may still be used afterwards.
+     */
+    public synchronized void dispose() {
+        if (fileManager != null) {
+            try {
+                fileManager.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            fileManager = null;
+        }
+    }
+
+    private JavaFileManager getFileManager() throws IOException {
+        if (fileManager == null) {
+            final StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, null);
+            if (classLoader != null) {
+                if (classPath.length > 0) {
+                    standardFileManager.setLocation(StandardLocation.CLASS_PATH, Arrays.asList(classPath));
+                }
+                fileManager = new MemoryFileManager(standardFileManager);
+            } else {
+                outputDir.mkdirs();
+                standardFileManager.setLocation(StandardLocation.CLASS_OUTPUT, Arrays.asList(outputDir));
+                standardFileManager.setLocation(StandardLocation.CLASS_PATH, Arrays.asList(classPath));
+                fileManager = standardFileManager;
+            }
+        }
+        return fileManager;
     }
 }
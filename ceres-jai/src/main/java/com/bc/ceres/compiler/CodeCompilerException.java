@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.compiler;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by the {@link CodeCompiler} if code cannot be compiled.
+ */
+public class CodeCompilerException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    // diagnostics are not serializable, their messages are kept in the exception message
+    private final transient List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
+    public CodeCompilerException(String message, List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        super(createMessage(message, diagnostics));
+        this.diagnostics = Collections.unmodifiableList(new ArrayList<Diagnostic<? extends JavaFileObject>>(diagnostics));
+    }
+
+    /**
+     * @return The errors, warnings and notes reported by the compiler,
+     *         empty if this exception has been deserialized.
+     */
+    public List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
+        if (diagnostics == null) {
+            return Collections.emptyList();
+        }
+        return diagnostics;
+    }
+
+    private static String createMessage(String message, List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        final StringBuilder sb = new StringBuilder(message);
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                sb.append('\n');
+                final JavaFileObject source = diagnostic.getSource();
+                if (source instanceof Code) {
+                    sb.append(((Code) source).getClassName());
+                } else if (source != null) {
+                    sb.append(source.getName());
+                }
+                sb.append(':').append(diagnostic.getLineNumber()).append(": ");
+                sb.append(diagnostic.getMessage(null));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A class loader which loads classes from byte arrays, e.g. from classes
+ * compiled into memory by a {@link CodeCompiler}.
+ * <p/>
+ * A single instance can be shared by any number of compilations. Classes are
+ * only unloaded together with the class loader.
+ */
+public class MemoryClassLoader extends ClassLoader {
+
+    private final Map<String, byte[]> classBytes;
+
+    public MemoryClassLoader(ClassLoader parent) {
+        super(parent);
+        classBytes = new HashMap<String, byte[]>();
+    }
+
+    /**
+     * Makes the given class file available to this class loader.
+     * The class is defined when it is first loaded.
+     *
+     * @param className The fully qualified class name.
+     * @param bytes     The contents of the class file.
+     */
+    public synchronized void addClass(String className, byte[] bytes) {
+        classBytes.put(className, bytes);
+    }
+
+    @Override
+    protected synchronized Class<?> findClass(String className) throws ClassNotFoundException {
+        // defined classes are remembered by the VM, so the bytes are no longer needed
+        final byte[] bytes = classBytes.remove(className);
+        if (bytes == null) {
+            throw new ClassNotFoundException(className);
+        }
+        return defineClass(className, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.compiler;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A file manager which keeps the class files written by the compiler in memory.
+ * Sources and class path entries are read through the given standard file manager.
+ */
+class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    private final Map<String, ClassFile> classFiles;
+
+    MemoryFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+        classFiles = new LinkedHashMap<String, ClassFile>();
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                               JavaFileObject.Kind kind, FileObject sibling) {
+        final ClassFile classFile = new ClassFile(className, kind);
+        classFiles.put(className, classFile);
+        return classFile;
+    }
+
+    /**
+     * Removes the class files written since the last call.
+     *
+     * @return The class files written, keyed by class name. Nested classes are included.
+     */
+    Map<String, byte[]> removeClassFiles() {
+        final Map<String, byte[]> classBytes = new LinkedHashMap<String, byte[]>();
+        for (ClassFile classFile : classFiles.values()) {
+            classBytes.put(classFile.className, classFile.outputStream.toByteArray());
+        }
+        classFiles.clear();
+        return classBytes;
+    }
+
+    private static final class ClassFile extends SimpleJavaFileObject {
+        private final String className;
+        private final ByteArrayOutputStream outputStream;
+
+        private ClassFile(String className, Kind kind) {
+            super(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind);
+            this.className = className;
+            this.outputStream = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return outputStream;
+        }
+    }
+}
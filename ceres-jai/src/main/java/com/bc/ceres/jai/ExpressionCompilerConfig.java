@@ -22,6 +22,9 @@ import java.io.File;
  * The configuration for the Java expression compiler.
  * This class is used as parameter for the
  * {@link com.bc.ceres.jai.operator.ExpressionDescriptor expression} operation.
+ * <p/>
+ * Expressions are compiled into memory, so the output directory is not used
+ * by the expression operation anymore.
  */
 public class ExpressionCompilerConfig {
     private File outputDir;
@@ -24,6 +24,10 @@ import java.util.Arrays;
  * A general filter function.
  * This class is used as parameter for the
  * {@link com.bc.ceres.jai.operator.GeneralFilterDescriptor GeneralFilter} operation.
+ * <p/>
+ * The operation computes the predefined functions incrementally while the kernel slides over
+ * the image instead of calling {@link #filter(float[])} for every pixel, which makes large kernels
+ * affordable. Except for {@code Median}, this also applies if a structuring element is given.
  */
 public abstract class GeneralFilterFunction {
 
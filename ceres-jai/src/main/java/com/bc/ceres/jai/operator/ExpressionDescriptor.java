@@ -38,9 +38,13 @@ import java.util.TreeSet;
  * An <code>OperationDescriptor</code> describing the "Expression"
  * operation.
  * <p/>
- * <p> The Expression operation creates a single-banded, tiled rendered
- * image, where all the samples are computed from a given mathematical
- * (Java) expression.
+ * <p> The Expression operation creates a tiled rendered image, where all
+ * the samples are computed from a given mathematical (Java) expression.
+ * <p/>
+ * <p> The source images must either have a single band or all have the
+ * same number of bands. The destination image has as many bands as the
+ * source image with the most bands. The expression is evaluated for each
+ * band, single-banded sources contribute their only band to every band.
  */
 public class ExpressionDescriptor extends OperationDescriptorImpl {
 
@@ -52,7 +56,7 @@ public class ExpressionDescriptor extends OperationDescriptorImpl {
             {"GlobalName", "Expression"},
             {"LocalName", "Expression"},
             {"Vendor", "com.bc.ceres.jai"},
-            {"Description", "Computes a single-banded image using a Java expression."},
+            {"Description", "Computes an image using a Java expression."},
             {"DocURL", ""},
             {"Version", "1.0"},
             {"arg0Desc", "The type of the destination image."},
@@ -103,6 +107,7 @@ public class ExpressionDescriptor extends OperationDescriptorImpl {
         }
         final Map.Entry[] entries = source.entrySet().toArray(new Map.Entry[0]);
         RenderedImage image0 = null;
+        int numBands = 1;
         for (Map.Entry entry : entries) {
             if (!(entry.getKey() instanceof String)) {
                 message.append("Invalid key in source map.");
@@ -113,9 +118,13 @@ public class ExpressionDescriptor extends OperationDescriptorImpl {
                 return false;
             }
             final RenderedImage image = (RenderedImage) entry.getValue();
-            if (image.getSampleModel().getNumBands() != 1) {
-                message.append("All images in the source map must have exactly one band.");
-                return false;
+            final int imageNumBands = image.getSampleModel().getNumBands();
+            if (imageNumBands != 1) {
+                if (numBands != 1 && imageNumBands != numBands) {
+                    message.append("All multi-banded images in the source map must have the same number of bands.");
+                    return false;
+                }
+                numBands = imageNumBands;
             }
             if (image0 != null) {
                 if (image.getWidth() != image0.getWidth()
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.opimage;
+
+import javax.media.jai.AreaOpImage;
+import javax.media.jai.BorderExtender;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.KernelJAI;
+import javax.media.jai.RasterAccessor;
+import javax.media.jai.RasterFormatTag;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An OpImage performing the "DFTConvolve" operation tile by tile.
+ * <p/>
+ * Each destination tile is computed by the overlap-save method in blocks of a fixed size: a block of the
+ * source, extended by the kernel size, is Fourier-transformed, multiplied by the spectrum of the kernel
+ * and transformed back, whereupon the samples affected by the cyclic convolution are discarded.
+ * Memory and computing time per tile are therefore independent of the image size.
+ * <p/>
+ * The kernel spectra are shared by all instances, so that repeated convolutions with the same kernel
+ * transform the kernel only once.
+ * <p/>
+ * As for the convolution of the entire image, the kernel is normalized and the result is
+ * <code>dst(x,y) = sum(src(x - i, y - j) * kernel(xOrigin + i, yOrigin + j))</code>.
+ * The source must be of type float or double.
+ *
+ * @see DFTConvolveRIF
+ */
+public final class DFTConvolveOpImage extends AreaOpImage {
+
+    /**
+     * The default size of the blocks which are Fourier-transformed.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    private static final int MAX_CACHED_SPECTRA = 16;
+    // access ordered, least recently used first
+    private static final Map<SpectrumKey, double[][]> spectra =
+            new LinkedHashMap<SpectrumKey, double[][]>(MAX_CACHED_SPECTRA, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<SpectrumKey, double[][]> eldest) {
+                    return size() > MAX_CACHED_SPECTRA;
+                }
+            };
+
+    private final KernelJAI kernel;
+    private final int blockWidth;
+    private final int blockHeight;
+
+    /**
+     * Constructor.
+     *
+     * @param source    The source image of type float or double.
+     * @param extender  A BorderExtender, or null.
+     * @param config    The image configuration.
+     * @param layout    An ImageLayout optionally containing the tile grid layout,
+     *                  SampleModel, and ColorModel, or null.
+     * @param kernel    The convolution kernel.
+     * @param blockSize The minimum size of the blocks which are Fourier-transformed, a power of two.
+     *                  Larger blocks are used for kernels larger than half of this size.
+     */
+    public DFTConvolveOpImage(RenderedImage source,
+                              BorderExtender extender,
+                              Map config,
+                              ImageLayout layout,
+                              KernelJAI kernel,
+                              int blockSize) {
+        super(source,
+              layout,
+              config,
+              true,
+              extender,
+              kernel.getWidth() - 1 - kernel.getXOrigin(),
+              kernel.getXOrigin(),
+              kernel.getHeight() - 1 - kernel.getYOrigin(),
+              kernel.getYOrigin());
+        if (blockSize <= 0 || Integer.bitCount(blockSize) != 1) {
+            throw new IllegalArgumentException("blockSize is not a power of two");
+        }
+        final int dataType = source.getSampleModel().getDataType();
+        if (dataType != DataBuffer.TYPE_FLOAT && dataType != DataBuffer.TYPE_DOUBLE) {
+            throw new IllegalArgumentException("source is neither of type float nor double");
+        }
+        this.kernel = kernel;
+        // the blocks must at least hold twice the kernel, so that half of the samples are valid
+        this.blockWidth = Math.max(blockSize, DFTConvolveRIF.getNextBase2Size(2 * kernel.getWidth()));
+        this.blockHeight = Math.max(blockSize, DFTConvolveRIF.getNextBase2Size(2 * kernel.getHeight()));
+    }
+
+    /**
+     * Performs the convolution of the given rectangle block by block.
+     *
+     * @param sources  an array of source Rasters, guaranteed to provide all
+     *                 necessary source data for computing the output.
+     * @param dest     a WritableRaster tile containing the area to be computed.
+     * @param destRect the rectangle within dest to be processed.
+     */
+    @Override
+    protected void computeRect(Raster[] sources,
+                               WritableRaster dest,
+                               Rectangle destRect) {
+        RasterFormatTag[] formatTags = getFormatTags();
+        Rectangle srcRect = mapDestRect(destRect, 0);
+        RasterAccessor src = new RasterAccessor(sources[0], srcRect,
+                                                formatTags[0], getSourceImage(0).getColorModel());
+        RasterAccessor dst = new RasterAccessor(dest, destRect,
+                                                formatTags[1], getColorModel());
+
+        final int kw = kernel.getWidth();
+        final int kh = kernel.getHeight();
+        final int leftPadding = kw - 1 - kernel.getXOrigin();
+        final int topPadding = kh - 1 - kernel.getYOrigin();
+        // the number of destination samples computed per block
+        final int validWidth = blockWidth - kw + 1;
+        final int validHeight = blockHeight - kh + 1;
+
+        final FFT rowFFT = new FFT(blockWidth);
+        final FFT columnFFT = new FFT(blockHeight);
+        final double[][] spectrum = getKernelSpectrum(kernel, rowFFT, columnFFT);
+        final double[] re = new double[blockWidth * blockHeight];
+        final double[] im = new double[blockWidth * blockHeight];
+        final double scale = 1.0 / (blockWidth * blockHeight);
+
+        final int dwidth = dst.getWidth();
+        final int dheight = dst.getHeight();
+        final boolean isFloat = dst.getDataType() == DataBuffer.TYPE_FLOAT;
+        for (int k = 0; k < dst.getNumBands(); k++) {
+            for (int by = 0; by < dheight; by += validHeight) {
+                for (int bx = 0; bx < dwidth; bx += validWidth) {
+                    final int bw = Math.min(validWidth, dwidth - bx);
+                    final int bh = Math.min(validHeight, dheight - by);
+                    Arrays.fill(re, 0.0);
+                    Arrays.fill(im, 0.0);
+                    getBlock(src, k, bx, by, bw + kw - 1, bh + kh - 1, re, isFloat);
+                    FFT.transform(rowFFT, columnFFT, re, im, false);
+                    multiply(re, im, spectrum[0], spectrum[1]);
+                    FFT.transform(rowFFT, columnFFT, re, im, true);
+                    setBlock(dst, k, bx, by, bw, bh, re, topPadding * blockWidth + leftPadding, scale, isFloat);
+                }
+            }
+        }
+
+        if (dst.isDataCopy()) {
+            dst.clampDataArrays();
+            dst.copyDataToRaster();
+        }
+    }
+
+    private void getBlock(RasterAccessor src, int band, int x0, int y0, int width, int height,
+                          double[] re, boolean isFloat) {
+        final int pixelStride = src.getPixelStride();
+        final int scanlineStride = src.getScanlineStride();
+        final int offset0 = src.getBandOffset(band) + y0 * scanlineStride + x0 * pixelStride;
+        final float[] floatData = isFloat ? src.getFloatDataArray(band) : null;
+        final double[] doubleData = isFloat ? null : src.getDoubleDataArray(band);
+        for (int y = 0; y < height; y++) {
+            int offset = offset0 + y * scanlineStride;
+            for (int x = 0; x < width; x++) {
+                re[y * blockWidth + x] = isFloat ? floatData[offset] : doubleData[offset];
+                offset += pixelStride;
+            }
+        }
+    }
+
+    private void setBlock(RasterAccessor dst, int band, int x0, int y0, int width, int height,
+                          double[] re, int reOffset, double scale, boolean isFloat) {
+        final int pixelStride = dst.getPixelStride();
+        final int scanlineStride = dst.getScanlineStride();
+        final int offset0 = dst.getBandOffset(band) + y0 * scanlineStride + x0 * pixelStride;
+        final float[] floatData = isFloat ? dst.getFloatDataArray(band) : null;
+        final double[] doubleData = isFloat ? null : dst.getDoubleDataArray(band);
+        for (int y = 0; y < height; y++) {
+            int offset = offset0 + y * scanlineStride;
+            for (int x = 0; x < width; x++) {
+                final double v = scale * re[reOffset + y * blockWidth + x];
+                if (isFloat) {
+                    floatData[offset] = (float) v;
+                } else {
+                    doubleData[offset] = v;
+                }
+                offset += pixelStride;
+            }
+        }
+    }
+
+    private static void multiply(double[] re, double[] im, double[] kernelRe, double[] kernelIm) {
+        for (int i = 0; i < re.length; i++) {
+            final double r = re[i] * kernelRe[i] - im[i] * kernelIm[i];
+            im[i] = re[i] * kernelIm[i] + im[i] * kernelRe[i];
+            re[i] = r;
+        }
+    }
+
+    /**
+     * @return The spectrum of the normalized kernel for the given block size, as real and imaginary parts.
+     */
+    static double[][] getKernelSpectrum(KernelJAI kernel, FFT rowFFT, FFT columnFFT) {
+        final int width = rowFFT.getSize();
+        final int height = columnFFT.getSize();
+        final SpectrumKey key = new SpectrumKey(kernel, width, height);
+        synchronized (spectra) {
+            final double[][] spectrum = spectra.get(key);
+            if (spectrum != null) {
+                return spectrum;
+            }
+        }
+        // computed outside of the lock, equal spectra computed concurrently are equal
+        final float[] kernelData = DFTConvolveRIF.normalizeKernelData(kernel.getKernelData());
+        final int kw = kernel.getWidth();
+        final int kh = kernel.getHeight();
+        final double[] re = new double[width * height];
+        final double[] im = new double[width * height];
+        for (int ky = 0; ky < kh; ky++) {
+            for (int kx = 0; kx < kw; kx++) {
+                // kernel element (xOrigin + dx, yOrigin + dy) at cyclic position (dx, dy)
+                final int x = (kx - kernel.getXOrigin() + width) % width;
+                final int y = (ky - kernel.getYOrigin() + height) % height;
+                re[y * width + x] += kernelData[ky * kw + kx];
+            }
+        }
+        FFT.transform(rowFFT, columnFFT, re, im, false);
+        final double[][] spectrum = {re, im};
+        synchronized (spectra) {
+            spectra.put(key, spectrum);
+        }
+        return spectrum;
+    }
+
+    private static final class SpectrumKey {
+        private final float[] kernelData;
+        private final int kernelWidth;
+        private final int xOrigin;
+        private final int yOrigin;
+        private final int width;
+        private final int height;
+        private final int hashCode;
+
+        private SpectrumKey(KernelJAI kernel, int width, int height) {
+            this.kernelData = kernel.getKernelData();
+            this.kernelWidth = kernel.getWidth();
+            this.xOrigin = kernel.getXOrigin();
+            this.yOrigin = kernel.getYOrigin();
+            this.width = width;
+            this.height = height;
+            this.hashCode = 31 * (31 * (31 * (31 * Arrays.hashCode(kernelData) + kernelWidth) + xOrigin) + yOrigin)
+                    + 961 * width + height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SpectrumKey)) {
+                return false;
+            }
+            final SpectrumKey other = (SpectrumKey) o;
+            return kernelWidth == other.kernelWidth
+                    && xOrigin == other.xOrigin
+                    && yOrigin == other.yOrigin
+                    && width == other.width
+                    && height == other.height
+                    && Arrays.equals(kernelData, other.kernelData);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
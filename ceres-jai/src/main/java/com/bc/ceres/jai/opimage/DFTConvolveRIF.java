@@ -21,6 +21,7 @@ import com.sun.media.jai.opimage.RIFUtil;
 
 import javax.media.jai.BorderExtender;
 import javax.media.jai.ComponentSampleModelJAI;
+import javax.media.jai.ImageLayout;
 import javax.media.jai.KernelJAI;
 import javax.media.jai.PlanarImage;
 import javax.media.jai.RenderedOp;
@@ -50,6 +51,10 @@ public class DFTConvolveRIF implements RenderedImageFactory {
     /**
      * Create a new instance of ConvolveOpImage in the rendered layer.
      * This method satisfies the implementation of RIF.
+     * <p/>
+     * If no Fourier-transformed kernel is given, the convolution is computed tile by tile by a
+     * {@link DFTConvolveOpImage}. Otherwise the entire, padded image is Fourier-transformed,
+     * so that the given kernel transformation can be reused.
      *
      * @param paramBlock The source image and the convolution kernel.
      */
@@ -62,6 +67,20 @@ public class DFTConvolveRIF implements RenderedImageFactory {
         RenderedImage sourceImage = (RenderedImage) paramBlock.getSource(0);
         printImageInfo(sourceImage, "sourceImage");
 
+        if (kernelFT == null) {
+            ImageLayout layout = RIFUtil.getImageLayoutHint(renderHints);
+            if (extender == null) {
+                // the border of the entire image is zero-padded as well
+                extender = BorderExtender.createInstance(BorderExtender.BORDER_ZERO);
+            }
+            return new DFTConvolveOpImage(toFloat(sourceImage, renderHints),
+                                          extender,
+                                          renderHints,
+                                          layout,
+                                          kernel,
+                                          DFTConvolveOpImage.DEFAULT_BLOCK_SIZE);
+        }
+
         int iw = sourceImage.getWidth();
         int ih = sourceImage.getHeight();
 
@@ -84,17 +103,6 @@ public class DFTConvolveRIF implements RenderedImageFactory {
                                                               null);
         printImageInfo(extendedImage, "extendedImage");
 
-        if (kernelFT == null) {
-            TiledImage kernelImage = createKernelImage(extendedImage,
-                                                       extendedImage.getSampleModel().getDataType(),
-                                                       kernel);
-            printImageInfo(kernelImage, "kernelImage");
-
-            kernelFT = DFTDescriptor.create(kernelImage,
-                                            DFTDescriptor.SCALING_NONE,
-                                            DFTDescriptor.REAL_TO_COMPLEX,
-                                            null);
-        }
         printImageInfo(kernelFT, "kernelFT");
 
         RenderedOp sourceFT = DFTDescriptor.create(extendedImage,
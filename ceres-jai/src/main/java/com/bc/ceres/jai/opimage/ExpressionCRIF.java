@@ -17,6 +17,7 @@
 package com.bc.ceres.jai.opimage;
 
 import com.bc.ceres.compiler.CodeCompiler;
+import com.bc.ceres.compiler.MemoryClassLoader;
 import com.bc.ceres.jai.ExpressionCompilerConfig;
 
 import javax.media.jai.CRIFImpl;
@@ -24,20 +25,47 @@ import javax.media.jai.ImageLayout;
 import javax.media.jai.JAI;
 import javax.media.jai.OpImage;
 import java.awt.RenderingHints;
+import java.awt.image.BandedSampleModel;
 import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.RenderedImage;
 import java.awt.image.renderable.ParameterBlock;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A <code>CRIF</code> supporting the "Expression" operation in the rendered
  * and renderable image layers.
+ * <p/>
+ * Expressions are compiled into memory. The compiled op-image classes are cached and
+ * reused for all expressions which only differ in the names of their sources, provided
+ * that the source and target data types are equal. Each class is loaded by its own class loader,
+ * so that the least recently used classes can be evicted from the cache and unloaded
+ * once no image refers to them anymore.
  *
  * @see com.bc.ceres.jai.operator.ExpressionDescriptor
  */
 public class ExpressionCRIF extends CRIFImpl {
 
+    private static final int MAX_CACHED_CLASS_COUNT = 256;
+
+    // guarded by itself, in access order
+    private static final Map<String, Class<?>> opImageClasses = new LinkedHashMap<String, Class<?>>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+            return size() > MAX_CACHED_CLASS_COUNT;
+        }
+    };
+    private static final AtomicLong classCount = new AtomicLong();
+    // guarded by itself
+    private static final Map<List<File>, CodeCompiler> compilers = new HashMap<List<File>, CodeCompiler>();
+
     /**
      * Constructor.
      */
@@ -67,14 +95,23 @@ public class ExpressionCRIF extends CRIFImpl {
             layout = new ImageLayout();
         }
         final RenderedImage sourceImage = sourceMap.values().iterator().next();
+        final int numBands = ExpressionCodeGenerator.getNumBands(sourceMap);
         layout.setWidth(sourceImage.getWidth());
         layout.setHeight(sourceImage.getHeight());
-        layout.setSampleModel(new PixelInterleavedSampleModel(dataType,
-                                                              sourceImage.getWidth(),
-                                                              sourceImage.getHeight(),
-                                                              1,
-                                                              sourceImage.getWidth(),
-                                                              new int[]{0}));
+        if (numBands == 1) {
+            layout.setSampleModel(new PixelInterleavedSampleModel(dataType,
+                                                                  sourceImage.getWidth(),
+                                                                  sourceImage.getHeight(),
+                                                                  1,
+                                                                  sourceImage.getWidth(),
+                                                                  new int[]{0}));
+        } else {
+            // bands are stored separately, so that samples are computed by unit-stride loops
+            layout.setSampleModel(new BandedSampleModel(dataType,
+                                                        sourceImage.getWidth(),
+                                                        sourceImage.getHeight(),
+                                                        numBands));
+        }
         return create(sourceMap, expression, compilerConfig, renderHints, layout);
     }
 
@@ -84,14 +121,14 @@ public class ExpressionCRIF extends CRIFImpl {
                                  Map config,
                                  ImageLayout layout) {
         final String packageName = getClass().getPackage().getName();
-        final String className = "ExpressionOpImage_" + Long.toHexString(System.nanoTime());
+        final String className = "ExpressionOpImage_" + Long.toHexString(classCount.incrementAndGet());
         ExpressionCode code = ExpressionCodeGenerator.generate(packageName,
                                                                className,
                                                                sourceMap,
                                                                layout.getSampleModel(null).getDataType(),
                                                                expression);
         try {
-            Class<?> opImageClass = new CodeCompiler(compilerConfig.getOutputDir(), compilerConfig.getClassPath()).compile(code);
+            Class<?> opImageClass = getOpImageClass(code, compilerConfig);
             return (OpImage) opImageClass.getConstructor(Vector.class, Map.class, ImageLayout.class).newInstance(code.getSources(), config, layout);
         } catch (RuntimeException e) {
             throw e;
@@ -99,4 +136,43 @@ public class ExpressionCRIF extends CRIFImpl {
             throw new RuntimeException(e);
         }
     }
+
+    private static Class<?> getOpImageClass(ExpressionCode code,
+                                            ExpressionCompilerConfig compilerConfig) throws IOException, ClassNotFoundException {
+        final String expressionKey = code.getExpressionKey();
+        Class<?> opImageClass = getCachedOpImageClass(expressionKey);
+        if (opImageClass == null) {
+            // compile one expression at a time, so that equal expressions are compiled only once
+            synchronized (compilers) {
+                opImageClass = getCachedOpImageClass(expressionKey);
+                if (opImageClass == null) {
+                    final MemoryClassLoader classLoader = new MemoryClassLoader(ExpressionCRIF.class.getClassLoader());
+                    opImageClass = getCompiler(compilerConfig.getClassPath()).compile(classLoader, code)[0];
+                    synchronized (opImageClasses) {
+                        opImageClasses.put(expressionKey, opImageClass);
+                    }
+                }
+            }
+        }
+        return opImageClass;
+    }
+
+    private static Class<?> getCachedOpImageClass(String expressionKey) {
+        synchronized (opImageClasses) {
+            return opImageClasses.get(expressionKey);
+        }
+    }
+
+    // must be called while holding the monitor of compilers
+    private static CodeCompiler getCompiler(File[] classPath) {
+        // compilers keep their file manager, so that the class path is opened only once
+        final List<File> key = Arrays.asList(classPath.clone());
+        CodeCompiler compiler = compilers.get(key);
+        if (compiler == null) {
+            // the compiler's own class loader is not used, every class gets a new one
+            compiler = new CodeCompiler(classPath, new MemoryClassLoader(ExpressionCRIF.class.getClassLoader()));
+            compilers.put(key, compiler);
+        }
+        return compiler;
+    }
 }
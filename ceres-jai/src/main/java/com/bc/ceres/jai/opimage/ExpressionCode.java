@@ -23,10 +23,24 @@ import java.util.Vector;
 
 public class ExpressionCode extends Code {
     private final Vector<RenderedImage> sources;
+    private final String expressionKey;
 
     public ExpressionCode(String className, String code, Vector<RenderedImage> sources) {
+        this(className, code, sources, code);
+    }
+
+    /**
+     * @param expressionKey Identifies the generated code apart from the class name.
+     *                      Codes with equal keys differ only in their class names.
+     */
+    public ExpressionCode(String className, String code, Vector<RenderedImage> sources, String expressionKey) {
         super(className, code);
         this.sources = sources;
+        this.expressionKey = expressionKey;
+    }
+
+    public String getExpressionKey() {
+        return expressionKey;
     }
 
     public Vector<RenderedImage> getSources() {
@@ -21,11 +21,26 @@ import com.bc.ceres.compiler.CodeMapper;
 import java.awt.image.DataBuffer;
 import java.awt.image.RenderedImage;
 import java.text.MessageFormat;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
+/**
+ * Generates the code of a {@link javax.media.jai.PointOpImage} which computes its samples from a Java expression.
+ * <p/>
+ * The expression is evaluated for each band of the destination, which has as many bands as the source image
+ * with the most bands (see {@link #getNumBands(Map)}). Single-banded sources contribute their only band to
+ * every band.
+ * <p/>
+ * For each line, the generated code uses a loop without any per-pixel offset bookkeeping if all source and
+ * destination samples are stored with a pixel stride of 1, so that the loop can be vectorized by the JIT
+ * compiler. Invariant calls of mathematical functions, such as <code>sin(PI / 4)</code>, are evaluated
+ * only once per tile.
+ */
 public class ExpressionCodeGenerator {
 
     private static final String HEAD_COMMENT = "" +
@@ -65,48 +80,77 @@ public class ExpressionCodeGenerator {
             "        final UnpackedImageData src{0}Pixels = src{0}Acc.getPixels(srcRasters[{0}], destRectangle, srcRasters[{0}].getSampleModel().getDataType(), false);\n" +
             "        final int src{0}LineStride = src{0}Pixels.lineStride;\n" +
             "        final int src{0}PixelStride = src{0}Pixels.pixelStride;\n" +
-            "        int src{0}LineOffset = src{0}Pixels.bandOffsets[0];\n" +
-            "        final {1}[] src{0}Data = src{0}Pixels.get{2}Data(0);\n" +
+            "        final int[] src{0}BandOffsets = src{0}Pixels.bandOffsets;\n" +
+            "        final {1}[][] src{0}Data = src{0}Pixels.get{2}Data();\n" +
             "\n";
     private static final String DST_DEF_PART = "" +
             "        final PixelAccessor destAcc = new PixelAccessor(this);\n" +
             "        final UnpackedImageData destPixels = destAcc.getPixels(destRaster, destRectangle, getSampleModel().getDataType(), true);\n" +
             "        final int destLineStride = destPixels.lineStride;\n" +
             "        final int destPixelStride = destPixels.pixelStride;\n" +
-            "        int destLineOffset = destPixels.bandOffsets[0];\n" +
-            "        final {1}[] destData = destPixels.get{2}Data(0);\n" +
-            "\n";
-    private static final String Y_LOOP_PART = "" +
+            "        final int[] destBandOffsets = destPixels.bandOffsets;\n" +
+            "        final {1}[][] destData = destPixels.get{2}Data();\n" +
+            "\n" +
             "        final int width = destRectangle.width;\n" +
             "        final int height = destRectangle.height;\n" +
+            "\n";
+    private static final String UNIT_STRIDE_PART = "" +
+            "        final boolean unitStride = {0};\n" +
+            "\n";
+    private static final String INVARIANT_PART = "" +
+            "        final double {0} = {1};\n";
+    private static final String BAND_LOOP_PART = "" +
+            "        for (int b = 0; b < {0}; b++) '{'\n";
+    private static final String SRC_BAND_PART = "" +
+            "            final {1}[] src{0}BandData = src{0}Data[{2}];\n" +
+            "            int src{0}LineOffset = src{0}BandOffsets[{2}];\n";
+    private static final String DST_BAND_PART = "" +
+            "            final {0}[] destBandData = destData[b];\n" +
+            "            int destLineOffset = destBandOffsets[b];\n" +
             "\n" +
-            "        for (int y = 0; y < height; y++) {\n" +
-            "";
+            "            for (int y = 0; y < height; y++) '{'\n" +
+            "                if (unitStride) '{'\n" +
+            "                    for (int x = 0; x < width; x++) '{'\n";
+    private static final String UNIT_EXPR_VAR_PART = "" +
+            "                        final {1} _{0} = src{0}BandData[src{0}LineOffset + x];\n";
+    private static final String UNIT_EXPR_PART = "" +
+            "                        destBandData[destLineOffset + x] = ({0})({1});\n" +
+            "                    '}'\n" +
+            "                '}' else '{'\n";
     private static final String SRC_OFFS_PART = "" +
-            "            int src{0}PixelOffset = src{0}LineOffset;\n" +
-            "            src{0}LineOffset += src{0}LineStride;\n" +
-            "\n";
+            "                    int src{0}PixelOffset = src{0}LineOffset;\n";
     private static final String X_LOOP_PART = "" +
-            "            int destPixelOffset = destLineOffset;\n" +
-            "            destLineOffset += destLineStride;\n" +
-            "\n" +
-            "            for (int x = 0; x < width; x++) {\n";
+            "                    int destPixelOffset = destLineOffset;\n" +
+            "                    for (int x = 0; x < width; x++) {\n";
     private static final String EXPR_VAR_PART = "" +
-            "                final {1} _{0} = src{0}Data[src{0}PixelOffset];\n";
+            "                        final {1} _{0} = src{0}BandData[src{0}PixelOffset];\n";
     private static final String EXPR_PART = "" +
-            "                destData[destPixelOffset] = ({0})({1});\n" +
+            "                        destBandData[destPixelOffset] = ({0})({1});\n" +
             "\n";
     private static final String SRC_PIXEL_INC_PART = "" +
-            "                src{0}PixelOffset += src{0}PixelStride;\n";
+            "                        src{0}PixelOffset += src{0}PixelStride;\n";
+    private static final String X_LOOP_END_PART = "" +
+            "                        destPixelOffset += destPixelStride;\n" +
+            "                    } // next x\n" +
+            "                }\n";
+    private static final String SRC_LINE_INC_PART = "" +
+            "                src{0}LineOffset += src{0}LineStride;\n";
     private static final String FINAL_PART = "" +
-            "                destPixelOffset += destPixelStride;\n" +
-            "            } // next x\n" +
-            "        } // next y\n" +
+            "                destLineOffset += destLineStride;\n" +
+            "            } // next y\n" +
+            "        } // next band\n" +
             "\n" +
             "        destAcc.setPixels(destPixels);\n" +
             "    }\n" +
             "}\n";
 
+    // Math functions of constant arguments which may be evaluated once per tile; all return double
+    private static final Set<String> INVARIANT_FUNCTIONS = new HashSet<String>(Arrays.asList(
+            "sin", "cos", "tan", "asin", "acos", "atan", "atan2", "sinh", "cosh", "tanh",
+            "exp", "expm1", "log", "log10", "log1p", "pow", "sqrt", "cbrt", "hypot",
+            "toRadians", "toDegrees", "ceil", "floor", "rint"));
+    private static final Set<String> INVARIANT_CONSTANTS = new HashSet<String>(Arrays.asList("PI", "E"));
+
 
     public static ExpressionCode generate(String packageName,
                                           String className,
@@ -115,6 +159,9 @@ public class ExpressionCodeGenerator {
                                           String expression) {
         MyNameMapper mapper = new MyNameMapper(sourceMap);
         CodeMapper.CodeMapping codeMapping = CodeMapper.mapCode(expression, mapper);
+        Map<String, String> invariants = new LinkedHashMap<String, String>();
+        String mappedCode = hoistInvariants(codeMapping.getMappedCode(), invariants);
+        int numBands = getNumBands(sourceMap);
 
         StringBuilder codeBuilder = new StringBuilder();
 
@@ -133,22 +180,203 @@ public class ExpressionCodeGenerator {
                                                 String.valueOf(sources.size()),
                                                 dstTypeName,
                                                 getCamelCase(dstTypeName)));
-        codeBuilder.append(Y_LOOP_PART);
+        StringBuilder unitStride = new StringBuilder();
+        for (int i = 0; i < sources.size(); i++) {
+            unitStride.append(MessageFormat.format("src{0}PixelStride == 1 && ", String.valueOf(i)));
+        }
+        unitStride.append("destPixelStride == 1");
+        codeBuilder.append(MessageFormat.format(UNIT_STRIDE_PART, unitStride));
+        for (Map.Entry<String, String> invariant : invariants.entrySet()) {
+            codeBuilder.append(MessageFormat.format(INVARIANT_PART, invariant.getValue(), invariant.getKey()));
+        }
+        if (!invariants.isEmpty()) {
+            codeBuilder.append("\n");
+        }
+
+        codeBuilder.append(MessageFormat.format(BAND_LOOP_PART, String.valueOf(numBands)));
+        for (int i = 0; i < sources.size(); i++) {
+            String band = sources.get(i).getSampleModel().getNumBands() == 1 ? "0" : "b";
+            codeBuilder.append(MessageFormat.format(SRC_BAND_PART, String.valueOf(i), getTypeName(sources, i), band));
+        }
+        codeBuilder.append(MessageFormat.format(DST_BAND_PART, dstTypeName));
+        for (int i = 0; i < sources.size(); i++) {
+            codeBuilder.append(MessageFormat.format(UNIT_EXPR_VAR_PART, String.valueOf(i), getTypeName(sources, i)));
+        }
+        codeBuilder.append(MessageFormat.format(UNIT_EXPR_PART, dstTypeName, mappedCode));
         for (int i = 0; i < sources.size(); i++) {
             codeBuilder.append(MessageFormat.format(SRC_OFFS_PART, String.valueOf(i)));
         }
         codeBuilder.append(X_LOOP_PART);
         for (int i = 0; i < sources.size(); i++) {
-            String typeName = getTypeName(sources, i);
-            codeBuilder.append(MessageFormat.format(EXPR_VAR_PART, String.valueOf(i), typeName));
+            codeBuilder.append(MessageFormat.format(EXPR_VAR_PART, String.valueOf(i), getTypeName(sources, i)));
         }
-        codeBuilder.append(MessageFormat.format(EXPR_PART, dstTypeName, codeMapping.getMappedCode()));
+        codeBuilder.append(MessageFormat.format(EXPR_PART, dstTypeName, mappedCode));
         for (int i = 0; i < sources.size(); i++) {
             codeBuilder.append(MessageFormat.format(SRC_PIXEL_INC_PART, String.valueOf(i)));
         }
+        codeBuilder.append(X_LOOP_END_PART);
+        for (int i = 0; i < sources.size(); i++) {
+            codeBuilder.append(MessageFormat.format(SRC_LINE_INC_PART, String.valueOf(i)));
+        }
         codeBuilder.append(FINAL_PART);
 
-        return new ExpressionCode(packageName + "." + className, codeBuilder.toString(), sources);
+        return new ExpressionCode(packageName + "." + className, codeBuilder.toString(), sources,
+                                  createExpressionKey(sources, dataType, numBands, codeMapping.getMappedCode()));
+    }
+
+    /**
+     * @param sourceMap The name-to-source map.
+     * @return The number of bands of the destination image, which is the number of bands of
+     *         the source image with the most bands.
+     */
+    public static int getNumBands(Map<String, RenderedImage> sourceMap) {
+        int numBands = 1;
+        for (RenderedImage source : sourceMap.values()) {
+            numBands = Math.max(numBands, source.getSampleModel().getNumBands());
+        }
+        return numBands;
+    }
+
+    /**
+     * Source names are mapped to their indexes in the order of appearance and white space is
+     * normalized, so expressions which only differ in the names of their sources or in their
+     * formatting share a key if the sources have equal data types and numbers of bands.
+     */
+    private static String createExpressionKey(Vector<RenderedImage> sources, int dataType, int numBands, String mappedCode) {
+        StringBuilder keyBuilder = new StringBuilder(mappedCode.length() + 8 * sources.size());
+        keyBuilder.append(dataType).append('x').append(numBands);
+        for (RenderedImage source : sources) {
+            keyBuilder.append(',').append(source.getSampleModel().getDataType());
+            keyBuilder.append('x').append(source.getSampleModel().getNumBands());
+        }
+        keyBuilder.append(':').append(mappedCode.trim().replaceAll("\\s+", " "));
+        return keyBuilder.toString();
+    }
+
+    /**
+     * Replaces the calls of {@link #INVARIANT_FUNCTIONS} whose arguments are made up of literals,
+     * {@link #INVARIANT_CONSTANTS} and further invariant calls only by the names of local variables.
+     * The outermost invariant calls are hoisted; equal calls share a variable.
+     *
+     * @param code       The mapped code.
+     * @param invariants Receives the hoisted calls mapped to their variable names.
+     * @return The code using the variables.
+     */
+    static String hoistInvariants(String code, Map<String, String> invariants) {
+        StringBuilder codeBuilder = new StringBuilder(code.length());
+        int pos = 0;
+        while (pos < code.length()) {
+            char ch = code.charAt(pos);
+            if (Character.isDigit(ch)) {
+                int end = skipNumber(code, pos);
+                codeBuilder.append(code, pos, end);
+                pos = end;
+            } else if (Character.isJavaIdentifierStart(ch)) {
+                int end = skipName(code, pos);
+                String name = code.substring(pos, end);
+                int open = skipWhitespace(code, end);
+                int close = open < code.length() && code.charAt(open) == '(' ? findClosingParenthesis(code, open) : -1;
+                if (close > 0 && isInvariantFunction(name) && isInvariant(code.substring(open + 1, close))) {
+                    String call = code.substring(pos, close + 1);
+                    String var = invariants.get(call);
+                    if (var == null) {
+                        var = "_c" + invariants.size();
+                        invariants.put(call, var);
+                    }
+                    codeBuilder.append(var);
+                    pos = close + 1;
+                } else {
+                    codeBuilder.append(name);
+                    pos = end;
+                }
+            } else if (ch == '"' || ch == '\'') {
+                // literals are not expected in expressions, leave the remaining code as it is
+                codeBuilder.append(code, pos, code.length());
+                pos = code.length();
+            } else {
+                codeBuilder.append(ch);
+                pos++;
+            }
+        }
+        return codeBuilder.toString();
+    }
+
+    private static boolean isInvariant(String code) {
+        int pos = 0;
+        while (pos < code.length()) {
+            char ch = code.charAt(pos);
+            if (Character.isDigit(ch)) {
+                pos = skipNumber(code, pos);
+            } else if (Character.isJavaIdentifierStart(ch)) {
+                int end = skipName(code, pos);
+                String name = code.substring(pos, end);
+                if (!INVARIANT_CONSTANTS.contains(stripMath(name)) && !isInvariantFunction(name)) {
+                    return false;
+                }
+                pos = end;
+            } else if (ch == '"' || ch == '\'') {
+                return false;
+            } else {
+                pos++;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInvariantFunction(String name) {
+        return INVARIANT_FUNCTIONS.contains(stripMath(name));
+    }
+
+    private static String stripMath(String name) {
+        return name.startsWith("Math.") ? name.substring(5) : name;
+    }
+
+    private static int skipName(String code, int pos) {
+        while (pos < code.length() && (Character.isJavaIdentifierPart(code.charAt(pos)) || code.charAt(pos) == '.')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    // also skips exponents, type suffixes and hex digits, e.g. "1.5e-3", "2f" or "0xff"
+    private static int skipNumber(String code, int pos) {
+        final boolean hex = code.regionMatches(true, pos, "0x", 0, 2);
+        final String exponents = hex ? "pP" : "eE";
+        final int start = pos;
+        while (pos < code.length()) {
+            char ch = code.charAt(pos);
+            if (Character.isLetterOrDigit(ch) || ch == '.' || ch == '_') {
+                pos++;
+            } else if ((ch == '+' || ch == '-') && pos > start && exponents.indexOf(code.charAt(pos - 1)) >= 0) {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private static int skipWhitespace(String code, int pos) {
+        while (pos < code.length() && Character.isWhitespace(code.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int findClosingParenthesis(String code, int open) {
+        int depth = 0;
+        for (int pos = open; pos < code.length(); pos++) {
+            char ch = code.charAt(pos);
+            if (ch == '(') {
+                depth++;
+            } else if (ch == ')') {
+                depth--;
+                if (depth == 0) {
+                    return pos;
+                }
+            }
+        }
+        return -1;
     }
 
     private static String getTypeName(Vector<RenderedImage> sources, int i) {
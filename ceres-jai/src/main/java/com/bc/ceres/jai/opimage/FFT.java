@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.opimage;
+
+/**
+ * An in-place radix-2 fast Fourier transformation of complex data given as separate arrays
+ * of real and imaginary parts. The inverse transformation is not scaled.
+ */
+final class FFT {
+
+    private final int n;
+    private final int[] reversed;
+    private final double[] cos;
+    private final double[] sin;
+
+    /**
+     * @param n The number of elements, a power of two.
+     */
+    FFT(int n) {
+        if (n <= 0 || Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("n is not a power of two");
+        }
+        this.n = n;
+        final int bits = Integer.numberOfTrailingZeros(n);
+        reversed = new int[n];
+        for (int i = 0; i < n; i++) {
+            reversed[i] = bits > 0 ? Integer.reverse(i) >>> (32 - bits) : 0;
+        }
+        cos = new double[n / 2];
+        sin = new double[n / 2];
+        for (int i = 0; i < n / 2; i++) {
+            final double a = -2.0 * Math.PI * i / n;
+            cos[i] = Math.cos(a);
+            sin[i] = Math.sin(a);
+        }
+    }
+
+    int getSize() {
+        return n;
+    }
+
+    /**
+     * Transforms {@code n} consecutive elements.
+     *
+     * @param re      The real parts.
+     * @param im      The imaginary parts.
+     * @param offset  The index of the first element.
+     * @param inverse Whether to perform the inverse transformation.
+     */
+    void transform(double[] re, double[] im, int offset, boolean inverse) {
+        for (int i = 0; i < n; i++) {
+            final int j = reversed[i];
+            if (j > i) {
+                double t = re[offset + i];
+                re[offset + i] = re[offset + j];
+                re[offset + j] = t;
+                t = im[offset + i];
+                im[offset + i] = im[offset + j];
+                im[offset + j] = t;
+            }
+        }
+        final double sign = inverse ? -1.0 : 1.0;
+        for (int size = 2; size <= n; size <<= 1) {
+            final int half = size >> 1;
+            final int step = n / size;
+            for (int start = offset; start < offset + n; start += size) {
+                for (int k = 0; k < half; k++) {
+                    final double wr = cos[k * step];
+                    final double wi = sign * sin[k * step];
+                    final int a = start + k;
+                    final int b = a + half;
+                    final double tr = wr * re[b] - wi * im[b];
+                    final double ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms a two-dimensional array of {@code rowFFT.getSize()} columns and {@code columnFFT.getSize()} rows.
+     */
+    static void transform(FFT rowFFT, FFT columnFFT, double[] re, double[] im, boolean inverse) {
+        final int width = rowFFT.n;
+        final int height = columnFFT.n;
+        for (int y = 0; y < height; y++) {
+            rowFFT.transform(re, im, y * width, inverse);
+        }
+        final double[] columnRe = new double[height];
+        final double[] columnIm = new double[height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                columnRe[y] = re[y * width + x];
+                columnIm[y] = im[y * width + x];
+            }
+            columnFFT.transform(columnRe, columnIm, 0, inverse);
+            for (int y = 0; y < height; y++) {
+                re[y * width + x] = columnRe[y];
+                im[y * width + x] = columnIm[y];
+            }
+        }
+    }
+}
@@ -80,6 +80,11 @@ public final class GeneralFilterOpImage extends AreaOpImage {
      */
     private final GeneralFilterFunction filterFunction;
 
+    /**
+     * The incremental implementation of the filter function, may be null.
+     */
+    private final SlidingWindowFilter slidingWindowFilter;
+
     /**
      * Creates a ConvolveOpImage given a ParameterBlock containing the image
      * source and pre-rotated convolution kernel.  The image dimensions are
@@ -111,6 +116,7 @@ public final class GeneralFilterOpImage extends AreaOpImage {
               filterFunction.getBottomPadding());
 
         this.filterFunction = filterFunction;
+        this.slidingWindowFilter = SlidingWindowFilter.create(filterFunction);
     }
 
     /**
@@ -139,6 +145,22 @@ public final class GeneralFilterOpImage extends AreaOpImage {
                 new RasterAccessor(dest, destRect,
                                    formatTags[1], getColorModel());
 
+        if (slidingWindowFilter != null) {
+            slidingWindowLoop(srcAccessor, dstAccessor);
+        } else {
+            filterLoop(srcAccessor, dstAccessor);
+        }
+
+        // If the RasterAccessor object set up a temporary buffer for the
+        // op to write to, tell the RasterAccessor to write that data
+        // to the raster no that we're done with it.
+        if (dstAccessor.isDataCopy()) {
+            dstAccessor.clampDataArrays();
+            dstAccessor.copyDataToRaster();
+        }
+    }
+
+    private void filterLoop(RasterAccessor srcAccessor, RasterAccessor dstAccessor) {
         switch (dstAccessor.getDataType()) {
             case DataBuffer.TYPE_BYTE:
                 byteLoop(srcAccessor, dstAccessor);
@@ -161,13 +183,130 @@ public final class GeneralFilterOpImage extends AreaOpImage {
 
             default:
         }
+    }
 
-        // If the RasterAccessor object set up a temporary buffer for the
-        // op to write to, tell the RasterAccessor to write that data
-        // to the raster no that we're done with it.
-        if (dstAccessor.isDataCopy()) {
-            dstAccessor.clampDataArrays();
-            dstAccessor.copyDataToRaster();
+    /**
+     * Filters band by band: the source samples of a band are converted to float, filtered by the
+     * {@link SlidingWindowFilter} and converted back like the samples computed by the type specific loops.
+     */
+    private void slidingWindowLoop(RasterAccessor src, RasterAccessor dst) {
+        int dwidth = dst.getWidth();
+        int dheight = dst.getHeight();
+        int dnumBands = dst.getNumBands();
+        int dataType = dst.getDataType();
+
+        int swidth = dwidth + filterFunction.getWidth() - 1;
+        int sheight = dheight + filterFunction.getHeight() - 1;
+        float[] srcSamples = new float[swidth * sheight];
+        float[] dstSamples = new float[dwidth * dheight];
+
+        for (int k = 0; k < dnumBands; k++) {
+            getSamples(src, k, swidth, sheight, srcSamples);
+            slidingWindowFilter.filter(srcSamples, dstSamples, dwidth, dheight, dataType);
+            setSamples(dst, k, dwidth, dheight, dstSamples);
+        }
+    }
+
+    private static void getSamples(RasterAccessor src, int band, int width, int height, float[] samples) {
+        int pixelStride = src.getPixelStride();
+        int scanlineStride = src.getScanlineStride();
+        int scanlineOffset = src.getBandOffset(band);
+        int dataType = src.getDataType();
+        for (int j = 0, index = 0; j < height; j++) {
+            int pixelOffset = scanlineOffset;
+            switch (dataType) {
+                case DataBuffer.TYPE_BYTE:
+                    byte[] byteData = src.getByteDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        samples[index++] = byteData[pixelOffset] & 0xff;
+                    }
+                    break;
+                case DataBuffer.TYPE_USHORT:
+                    short[] ushortData = src.getShortDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        samples[index++] = ushortData[pixelOffset] & 0xffff;
+                    }
+                    break;
+                case DataBuffer.TYPE_SHORT:
+                    short[] shortData = src.getShortDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        samples[index++] = shortData[pixelOffset];
+                    }
+                    break;
+                case DataBuffer.TYPE_INT:
+                    int[] intData = src.getIntDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        samples[index++] = intData[pixelOffset];
+                    }
+                    break;
+                case DataBuffer.TYPE_FLOAT:
+                    float[] floatData = src.getFloatDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        samples[index++] = floatData[pixelOffset];
+                    }
+                    break;
+                case DataBuffer.TYPE_DOUBLE:
+                    double[] doubleData = src.getDoubleDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        samples[index++] = (float) doubleData[pixelOffset];
+                    }
+                    break;
+                default:
+            }
+            scanlineOffset += scanlineStride;
+        }
+    }
+
+    private static void setSamples(RasterAccessor dst, int band, int width, int height, float[] samples) {
+        int pixelStride = dst.getPixelStride();
+        int scanlineStride = dst.getScanlineStride();
+        int scanlineOffset = dst.getBandOffset(band);
+        int dataType = dst.getDataType();
+        for (int j = 0, index = 0; j < height; j++) {
+            int pixelOffset = scanlineOffset;
+            switch (dataType) {
+                case DataBuffer.TYPE_BYTE:
+                    byte[] byteData = dst.getByteDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        int val = (int) samples[index++];
+                        byteData[pixelOffset] = (byte) (val < 0 ? 0 : val > 255 ? 255 : val);
+                    }
+                    break;
+                case DataBuffer.TYPE_USHORT:
+                    short[] ushortData = dst.getShortDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        int val = (int) samples[index++];
+                        ushortData[pixelOffset] = (short) (val < 0 ? 0 : val > 0xffff ? 0xffff : val);
+                    }
+                    break;
+                case DataBuffer.TYPE_SHORT:
+                    short[] shortData = dst.getShortDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        int val = (int) samples[index++];
+                        shortData[pixelOffset] = (short) (val < Short.MIN_VALUE ? Short.MIN_VALUE : val > Short.MAX_VALUE ? Short.MAX_VALUE : val);
+                    }
+                    break;
+                case DataBuffer.TYPE_INT:
+                    int[] intData = dst.getIntDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        intData[pixelOffset] = (int) samples[index++];
+                    }
+                    break;
+                case DataBuffer.TYPE_FLOAT:
+                    float[] floatData = dst.getFloatDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        floatData[pixelOffset] = samples[index++];
+                    }
+                    break;
+                case DataBuffer.TYPE_DOUBLE:
+                    double[] doubleData = dst.getDoubleDataArray(band);
+                    for (int i = 0; i < width; i++, pixelOffset += pixelStride) {
+                        doubleData[pixelOffset] = samples[index++];
+                    }
+                    break;
+                default:
+            }
+            scanlineOffset += scanlineStride;
         }
     }
 
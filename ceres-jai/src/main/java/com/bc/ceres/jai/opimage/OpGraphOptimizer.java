@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.opimage;
+
+import com.bc.ceres.compiler.CodeMapper;
+import com.bc.ceres.jai.operator.InterpretationType;
+import com.bc.ceres.jai.operator.ReinterpretDescriptor;
+import com.bc.ceres.jai.operator.ScalingType;
+
+import javax.media.jai.JAI;
+import javax.media.jai.ParameterBlockJAI;
+import java.awt.RenderingHints;
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.ParameterBlock;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Optimizes a graph of operations while it is created bottom-up, operation by operation:
+ * <ol>
+ * <li>Operations which do not change their source, e.g. a "Rescale" by 1 with offset 0 or a "Format"
+ * into the data type of the source, are dropped.</li>
+ * <li>"Rescale", "Format", "Reinterpret" and "Expression" operations whose source is the result of an
+ * "Expression" operation are fused with it into a single expression, so that a single
+ * {@link javax.media.jai.PointOpImage} is generated and no intermediate tiles are computed and cached.
+ * Point operations are only fused if their results are neither rounded nor clamped to integer ranges.
+ * Fused results may differ from the results of the operations in the last bit, since fused expressions
+ * are evaluated in double precision and use {@link Math#exp} for the exponential scaling of "Reinterpret".</li>
+ * <li>Operations equal to an operation already created, with respect to the operation name, the
+ * sources and the parameters, are created only once.</li>
+ * </ol>
+ * An "Expression" operation is not fused with its consumers if it is shared, see {@link #setShared}.
+ * It is also regarded as shared if an expression refers to it more than once, since fusing it would
+ * duplicate its computation.
+ *
+ * @see XmlRIF
+ */
+final class OpGraphOptimizer {
+
+    private static final String EXPRESSION = "Expression";
+
+    private final RenderingHints renderingHints;
+    private final Map<OpKey, RenderedImage> createdImages;
+    // the parameter blocks of unshared expression images
+    private final Map<RenderedImage, ParameterBlock> fusibleExpressions;
+
+    OpGraphOptimizer(RenderingHints renderingHints) {
+        this.renderingHints = renderingHints;
+        this.createdImages = new HashMap<OpKey, RenderedImage>();
+        this.fusibleExpressions = new IdentityHashMap<RenderedImage, ParameterBlock>();
+    }
+
+    /**
+     * Creates an image, unless it can be replaced by a source image, fused with a source image
+     * or an equal image has already been created.
+     *
+     * @param opName         The operation name.
+     * @param parameterBlock The sources and parameters.
+     * @return The image.
+     */
+    RenderedImage create(String opName, ParameterBlockJAI parameterBlock) {
+        final RenderedImage identitySource = getIdentitySource(opName, parameterBlock);
+        if (identitySource != null) {
+            return identitySource;
+        }
+        final ParameterBlockJAI fusedParameterBlock = fuse(opName, parameterBlock);
+        if (fusedParameterBlock != null) {
+            opName = EXPRESSION;
+            parameterBlock = fusedParameterBlock;
+        }
+        final OpKey key = new OpKey(opName, parameterBlock);
+        RenderedImage image = createdImages.get(key);
+        if (image != null) {
+            setShared(image);
+        } else {
+            image = JAI.create(opName, parameterBlock, renderingHints);
+            createdImages.put(key, image);
+            if (EXPRESSION.equalsIgnoreCase(opName)) {
+                fusibleExpressions.put(image, parameterBlock);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Marks an image as used by more than a single operation, so that it is not fused.
+     *
+     * @param image The image.
+     */
+    void setShared(RenderedImage image) {
+        fusibleExpressions.remove(image);
+    }
+
+    private RenderedImage getIdentitySource(String opName, ParameterBlock parameterBlock) {
+        if (parameterBlock.getNumSources() != 1 || !(parameterBlock.getSource(0) instanceof RenderedImage)) {
+            return null;
+        }
+        final RenderedImage source = (RenderedImage) parameterBlock.getSource(0);
+        if ("Null".equalsIgnoreCase(opName)) {
+            return source;
+        } else if ("Rescale".equalsIgnoreCase(opName)) {
+            final double[] constants = (double[]) parameterBlock.getObjectParameter(0);
+            final double[] offsets = (double[]) parameterBlock.getObjectParameter(1);
+            return isConstant(constants, 1.0) && isConstant(offsets, 0.0) ? source : null;
+        } else if ("Format".equalsIgnoreCase(opName)) {
+            return parameterBlock.getIntParameter(0) == getDataType(source) ? source : null;
+        } else if ("Reinterpret".equalsIgnoreCase(opName)) {
+            final double factor = parameterBlock.getDoubleParameter(0);
+            final double offset = parameterBlock.getDoubleParameter(1);
+            final ScalingType scalingType = (ScalingType) parameterBlock.getObjectParameter(2);
+            final InterpretationType interpretationType = (InterpretationType) parameterBlock.getObjectParameter(3);
+            final int dataType = getDataType(source);
+            final boolean identity = scalingType == ReinterpretDescriptor.LINEAR && factor == 1.0 && offset == 0.0
+                                     && ReinterpretDescriptor.getTargetDataType(dataType, factor, offset,
+                                                                                scalingType, interpretationType) == dataType;
+            return identity ? source : null;
+        }
+        return null;
+    }
+
+    private ParameterBlockJAI fuse(String opName, ParameterBlock parameterBlock) {
+        if (parameterBlock.getNumSources() != 1) {
+            return null;
+        }
+        if (EXPRESSION.equalsIgnoreCase(opName)) {
+            final Map<String, RenderedImage> sources = (Map<String, RenderedImage>) parameterBlock.getSource(0);
+            final String outerExpression = (String) parameterBlock.getObjectParameter(1);
+            final Map<RenderedImage, Integer> referenceCounts = getReferenceCounts(outerExpression, sources);
+            for (Map.Entry<RenderedImage, Integer> entry : referenceCounts.entrySet()) {
+                if (entry.getValue() > 1) {
+                    setShared(entry.getKey());
+                }
+            }
+            final Map<String, RenderedImage> fusedSources = new LinkedHashMap<String, RenderedImage>();
+            final String expression = fuseExpressions(outerExpression, sources, fusibleExpressions, fusedSources);
+            if (expression == null) {
+                return null;
+            }
+            return createExpression(fusedSources, parameterBlock.getIntParameter(0), expression,
+                                    parameterBlock.getObjectParameter(2));
+        }
+
+        final ParameterBlock expressionBlock = fusibleExpressions.get(parameterBlock.getSource(0));
+        if (expressionBlock == null) {
+            return null;
+        }
+        final Map<String, RenderedImage> sources = (Map<String, RenderedImage>) expressionBlock.getSource(0);
+        final int dataType = expressionBlock.getIntParameter(0);
+        final String expression = "(" + (String) expressionBlock.getObjectParameter(1) + ")";
+        final Object compilerConfig = expressionBlock.getObjectParameter(2);
+
+        if ("Rescale".equalsIgnoreCase(opName)) {
+            // integer results are rounded and clamped by the operation
+            if (dataType != DataBuffer.TYPE_FLOAT && dataType != DataBuffer.TYPE_DOUBLE) {
+                return null;
+            }
+            final double[] constants = (double[]) parameterBlock.getObjectParameter(0);
+            final double[] offsets = (double[]) parameterBlock.getObjectParameter(1);
+            final boolean singleBanded = ExpressionCodeGenerator.getNumBands(sources) == 1;
+            if (!singleBanded && (constants.length != 1 || offsets.length != 1)) {
+                return null;
+            }
+            final String constant = toLiteral(constants[0]);
+            final String offset = toLiteral(offsets[0]);
+            if (constant == null || offset == null) {
+                return null;
+            }
+            return createExpression(sources, dataType,
+                                    constant + " * " + getSampleValue(dataType, expression, true) + " + " + offset,
+                                    compilerConfig);
+        } else if ("Format".equalsIgnoreCase(opName)) {
+            // only conversions which are not clamped by the operation
+            final int targetDataType = parameterBlock.getIntParameter(0);
+            if (targetDataType != DataBuffer.TYPE_DOUBLE
+                && (targetDataType != DataBuffer.TYPE_FLOAT || dataType == DataBuffer.TYPE_DOUBLE)) {
+                return null;
+            }
+            return createExpression(sources, targetDataType,
+                                    getSampleValue(dataType, expression, true),
+                                    compilerConfig);
+        } else if ("Reinterpret".equalsIgnoreCase(opName)) {
+            final double factor = parameterBlock.getDoubleParameter(0);
+            final double offset = parameterBlock.getDoubleParameter(1);
+            final ScalingType scalingType = (ScalingType) parameterBlock.getObjectParameter(2);
+            final InterpretationType interpretationType = (InterpretationType) parameterBlock.getObjectParameter(3);
+            final String value;
+            if (dataType == DataBuffer.TYPE_BYTE && interpretationType == ReinterpretDescriptor.INTERPRET_BYTE_SIGNED) {
+                value = getSampleValue(dataType, expression, false);
+            } else if (dataType == DataBuffer.TYPE_INT && interpretationType == ReinterpretDescriptor.INTERPRET_INT_UNSIGNED) {
+                value = "((int) " + expression + " & 0xffffffffL)";
+            } else {
+                value = getSampleValue(dataType, expression, true);
+            }
+            final String factorLiteral = toLiteral(factor);
+            final String offsetLiteral = toLiteral(offset);
+            if (factorLiteral == null || offsetLiteral == null) {
+                return null;
+            }
+            final String scaledValue = factorLiteral + " * " + value + " + " + offsetLiteral;
+            final String fusedExpression;
+            if (scalingType == ReinterpretDescriptor.EXPONENTIAL) {
+                // the operation computes FastMath.exp(ln(10) * x), generated code only depends on java.lang.Math,
+                // so that results may differ in the last bit
+                fusedExpression = "exp(" + Math.log(10.0) + " * (" + scaledValue + "))";
+            } else if (scalingType == ReinterpretDescriptor.LOGARITHMIC) {
+                fusedExpression = "log10(" + scaledValue + ")";
+            } else if (factor != 1.0 || offset != 0.0) {
+                fusedExpression = scaledValue;
+            } else {
+                fusedExpression = value;
+            }
+            final int targetDataType = ReinterpretDescriptor.getTargetDataType(dataType, factor, offset,
+                                                                               scalingType, interpretationType);
+            return createExpression(sources, targetDataType, fusedExpression, compilerConfig);
+        }
+        return null;
+    }
+
+    private int getDataType(RenderedImage image) {
+        final ParameterBlock expressionBlock = fusibleExpressions.get(image);
+        if (expressionBlock != null) {
+            // the expression image may be fused later, so it shall not be rendered now
+            return expressionBlock.getIntParameter(0);
+        }
+        return image.getSampleModel().getDataType();
+    }
+
+    private static ParameterBlockJAI createExpression(Map<String, RenderedImage> sources, int dataType,
+                                                      String expression, Object compilerConfig) {
+        final ParameterBlockJAI parameterBlock = new ParameterBlockJAI(EXPRESSION);
+        parameterBlock.addSource(sources);
+        parameterBlock.setParameter("dataType", dataType);
+        parameterBlock.setParameter("expression", expression);
+        parameterBlock.setParameter("compilerConfig", compilerConfig);
+        return parameterBlock;
+    }
+
+    /**
+     * Replaces the names of all expression images in an expression by their expressions.
+     * Expression images which are referred to more than once are not replaced, so that their
+     * expressions are not computed repeatedly.
+     *
+     * @param expression         The expression.
+     * @param sources            The sources of the expression.
+     * @param expressionBlocks   The parameter blocks of the images which shall be replaced.
+     * @param fusedSources       Receives the sources of the fused expression.
+     * @return The fused expression, or null if no source is to be replaced.
+     */
+    static String fuseExpressions(String expression,
+                                  Map<String, RenderedImage> sources,
+                                  Map<RenderedImage, ParameterBlock> expressionBlocks,
+                                  Map<String, RenderedImage> fusedSources) {
+        final Map<RenderedImage, Integer> referenceCounts = getReferenceCounts(expression, sources);
+        final Map<String, ParameterBlock> fusedBlocks = new LinkedHashMap<String, ParameterBlock>();
+        for (Map.Entry<String, RenderedImage> entry : sources.entrySet()) {
+            final ParameterBlock expressionBlock = expressionBlocks.get(entry.getValue());
+            if (expressionBlock != null && referenceCounts.get(entry.getValue()) == 1) {
+                fusedBlocks.put(entry.getKey(), expressionBlock);
+            } else {
+                fusedSources.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (fusedBlocks.isEmpty()) {
+            return null;
+        }
+        final Map<String, String> replacements = new HashMap<String, String>();
+        for (Map.Entry<String, ParameterBlock> entry : fusedBlocks.entrySet()) {
+            final ParameterBlock expressionBlock = entry.getValue();
+            final Map<String, RenderedImage> innerSources = (Map<String, RenderedImage>) expressionBlock.getSource(0);
+            final Map<String, String> renamings = new HashMap<String, String>();
+            for (Map.Entry<String, RenderedImage> innerEntry : innerSources.entrySet()) {
+                String name = innerEntry.getKey();
+                for (int i = 1; fusedSources.containsKey(name) && fusedSources.get(name) != innerEntry.getValue(); i++) {
+                    name = innerEntry.getKey() + "_" + i;
+                }
+                fusedSources.put(name, innerEntry.getValue());
+                renamings.put(innerEntry.getKey(), name);
+            }
+            final String innerExpression = CodeMapper.mapCode((String) expressionBlock.getObjectParameter(1),
+                                                              new MapNameMapper(renamings)).getMappedCode();
+            // samples are read from expression images as in Java, bytes are signed
+            replacements.put(entry.getKey(),
+                             getSampleValue(expressionBlock.getIntParameter(0), "(" + innerExpression + ")", false));
+        }
+        return CodeMapper.mapCode(expression, new MapNameMapper(replacements)).getMappedCode();
+    }
+
+    /**
+     * @param expression The expression.
+     * @param sources    The sources of the expression.
+     * @return The number of references to each source image within the expression.
+     */
+    private static Map<RenderedImage, Integer> getReferenceCounts(String expression, final Map<String, RenderedImage> sources) {
+        final Map<RenderedImage, Integer> referenceCounts = new IdentityHashMap<RenderedImage, Integer>();
+        for (RenderedImage source : sources.values()) {
+            referenceCounts.put(source, 0);
+        }
+        CodeMapper.mapCode(expression, new CodeMapper.NameMapper() {
+            @Override
+            public String mapName(String name) {
+                final RenderedImage source = sources.get(name);
+                if (source != null) {
+                    referenceCounts.put(source, referenceCounts.get(source) + 1);
+                }
+                return null;
+            }
+        });
+        return referenceCounts;
+    }
+
+    /**
+     * @param dataType      The data type of the samples.
+     * @param expression    The expression computing the samples, in parentheses.
+     * @param unsignedBytes Whether bytes are interpreted as unsigned.
+     * @return The Java expression for the value of the samples as stored in an image of the given data type.
+     */
+    static String getSampleValue(int dataType, String expression, boolean unsignedBytes) {
+        switch (dataType) {
+            case DataBuffer.TYPE_BYTE:
+                return unsignedBytes ? "((byte) " + expression + " & 0xff)" : "((byte) " + expression + ")";
+            case DataBuffer.TYPE_USHORT:
+                return "((short) " + expression + " & 0xffff)";
+            default:
+                return "((" + ExpressionCodeGenerator.getTypeName(dataType) + ") " + expression + ")";
+        }
+    }
+
+    private static String toLiteral(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return null;
+        }
+        return "(" + value + ")";
+    }
+
+    private static boolean isConstant(double[] values, double value) {
+        for (double v : values) {
+            if (v != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class MapNameMapper implements CodeMapper.NameMapper {
+        private final Map<String, String> names;
+
+        private MapNameMapper(Map<String, String> names) {
+            this.names = names;
+        }
+
+        @Override
+        public String mapName(String name) {
+            return names.get(name);
+        }
+    }
+
+    private static final class OpKey {
+        private final String opName;
+        private final Object[] sources;
+        private final Object[] parameters;
+        private final int hashCode;
+
+        private OpKey(String opName, ParameterBlock parameterBlock) {
+            this.opName = opName.toLowerCase();
+            this.sources = parameterBlock.getSources().toArray();
+            this.parameters = parameterBlock.getParameters().toArray();
+            this.hashCode = 31 * (31 * this.opName.hashCode() + Arrays.hashCode(sources)) + Arrays.deepHashCode(parameters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof OpKey)) {
+                return false;
+            }
+            final OpKey other = (OpKey) o;
+            return opName.equals(other.opName)
+                   && Arrays.equals(sources, other.sources)
+                   && Arrays.deepEquals(parameters, other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -49,6 +49,8 @@ public final class ReinterpretOpImage extends PointOpImage {
     private final ScalingType scalingType;
     private final InterpretationType interpretationType;
     private final ScalingTransform scalingTransform;
+    private final int lookupTableSize;
+    private volatile float[] lookupTable;
 
     static RenderedImage create(RenderedImage source, double factor, double offset, ScalingType scalingType,
                                 InterpretationType interpretationType, Map<Object, Object> config) {
@@ -82,6 +84,7 @@ public final class ReinterpretOpImage extends PointOpImage {
         this.scalingType = scalingType;
         this.interpretationType = interpretationType;
         this.scalingTransform = scalingType == EXPONENTIAL ? new Pow10() : scalingType == LOGARITHMIC ? new Log10() : null;
+        this.lookupTableSize = getLookupTableSize(source, getSampleModel().getDataType());
         // set flag to permit in-place operation.
         permitInPlaceOperation();
     }
@@ -106,6 +109,17 @@ public final class ReinterpretOpImage extends PointOpImage {
         sourcePixels = sourceAcc.getPixels(sourceRaster, targetRectangle, sourceDataType, false);
         targetPixels = targetAcc.getPixels(targetRaster, targetRectangle, targetDataType, true);
 
+        final float[] lookupTable = getLookupTable();
+        if (lookupTable != null) {
+            if (sourceDataType == DataBuffer.TYPE_BYTE) {
+                lookupByte(sourcePixels, targetPixels, targetRectangle, lookupTable);
+            } else {
+                lookupShort(sourcePixels, targetPixels, targetRectangle, lookupTable);
+            }
+            targetAcc.setPixels(targetPixels);
+            return;
+        }
+
         switch (sourceDataType) {
             case DataBuffer.TYPE_BYTE:
                 if (interpretationType == ReinterpretDescriptor.INTERPRET_BYTE_SIGNED) {
@@ -168,6 +182,130 @@ public final class ReinterpretOpImage extends PointOpImage {
         targetAcc.setPixels(targetPixels);
     }
 
+    /**
+     * A lookup table is used for 8 and 16 bit sources with a float target, if the image has at least
+     * as many pixels as the table has entries.
+     *
+     * @return The size of the lookup table, or zero if no lookup table shall be used.
+     */
+    private static int getLookupTableSize(RenderedImage source, int targetDataType) {
+        final int size;
+        switch (source.getSampleModel().getDataType()) {
+            case DataBuffer.TYPE_BYTE:
+                size = 1 << 8;
+                break;
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_SHORT:
+                size = 1 << 16;
+                break;
+            default:
+                return 0;
+        }
+        if (targetDataType != DataBuffer.TYPE_FLOAT || (long) source.getWidth() * source.getHeight() < size) {
+            return 0;
+        }
+        return size;
+    }
+
+    /**
+     * @return The target values indexed by the unsigned bits of the source values, or null.
+     */
+    private float[] getLookupTable() {
+        float[] table = lookupTable;
+        if (table == null && lookupTableSize > 0) {
+            // concurrently created tables are equal
+            table = createLookupTable();
+            lookupTable = table;
+        }
+        return table;
+    }
+
+    private float[] createLookupTable() {
+        final int sourceDataType = getSourceImage(0).getSampleModel().getDataType();
+        final float[] table = new float[lookupTableSize];
+        for (int i = 0; i < table.length; i++) {
+            final double v;
+            if (sourceDataType == DataBuffer.TYPE_SHORT) {
+                v = (short) i;
+            } else if (sourceDataType == DataBuffer.TYPE_BYTE
+                       && interpretationType == ReinterpretDescriptor.INTERPRET_BYTE_SIGNED) {
+                v = (byte) i;
+            } else {
+                v = i;
+            }
+            if (scalingTransform != null) {
+                table[i] = (float) scalingTransform.transform(factor * v + offset);
+            } else {
+                table[i] = (float) (factor * v + offset);
+            }
+        }
+        return table;
+    }
+
+    private static void lookupByte(UnpackedImageData sourcePixels, UnpackedImageData targetPixels,
+                                   Rectangle targetRectangle, float[] lookupTable) {
+        final int sourceLineStride = sourcePixels.lineStride;
+        final int sourcePixelStride = sourcePixels.pixelStride;
+        final byte[] sourceData = sourcePixels.getByteData(0);
+
+        final int targetLineStride = targetPixels.lineStride;
+        final int targetPixelStride = targetPixels.pixelStride;
+        final float[] targetData = targetPixels.getFloatData(0);
+
+        final int w = targetRectangle.width;
+        final int h = targetRectangle.height;
+
+        int sourceLineOffset = sourcePixels.bandOffsets[0];
+        int targetLineOffset = targetPixels.bandOffsets[0];
+
+        for (int y = 0; y < h; y++) {
+            int sourcePixelOffset = sourceLineOffset;
+            sourceLineOffset += sourceLineStride;
+
+            int targetPixelOffset = targetLineOffset;
+            targetLineOffset += targetLineStride;
+
+            for (int x = 0; x < w; x++) {
+                targetData[targetPixelOffset] = lookupTable[sourceData[sourcePixelOffset] & 0xFF];
+
+                sourcePixelOffset += sourcePixelStride;
+                targetPixelOffset += targetPixelStride;
+            } // next x
+        } // next y
+    }
+
+    private static void lookupShort(UnpackedImageData sourcePixels, UnpackedImageData targetPixels,
+                                    Rectangle targetRectangle, float[] lookupTable) {
+        final int sourceLineStride = sourcePixels.lineStride;
+        final int sourcePixelStride = sourcePixels.pixelStride;
+        final short[] sourceData = sourcePixels.getShortData(0);
+
+        final int targetLineStride = targetPixels.lineStride;
+        final int targetPixelStride = targetPixels.pixelStride;
+        final float[] targetData = targetPixels.getFloatData(0);
+
+        final int w = targetRectangle.width;
+        final int h = targetRectangle.height;
+
+        int sourceLineOffset = sourcePixels.bandOffsets[0];
+        int targetLineOffset = targetPixels.bandOffsets[0];
+
+        for (int y = 0; y < h; y++) {
+            int sourcePixelOffset = sourceLineOffset;
+            sourceLineOffset += sourceLineStride;
+
+            int targetPixelOffset = targetLineOffset;
+            targetLineOffset += targetLineStride;
+
+            for (int x = 0; x < w; x++) {
+                targetData[targetPixelOffset] = lookupTable[sourceData[sourcePixelOffset] & 0xFFFF];
+
+                sourcePixelOffset += sourcePixelStride;
+                targetPixelOffset += targetPixelStride;
+            } // next x
+        } // next y
+    }
+
     private void reformatSByte(UnpackedImageData sourcePixels, UnpackedImageData targetPixels,
                                Rectangle targetRectangle) {
         final int sourceLineStride = sourcePixels.lineStride;
@@ -0,0 +1,543 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.opimage;
+
+import com.bc.ceres.jai.GeneralFilterFunction;
+
+import java.awt.image.DataBuffer;
+import java.util.Arrays;
+
+/**
+ * Incremental implementations of the predefined {@link GeneralFilterFunction}s.
+ * <p/>
+ * Instead of gathering the full neighbourhood of every destination pixel, a sliding window filter
+ * updates its state while the window moves along a line, so that the costs per pixel do not (or only
+ * weakly) depend on the size of the window:
+ * <ul>
+ * <li>{@code Mean} and {@code StdDev} keep running sums of columns and of the window,</li>
+ * <li>{@code Min}, {@code Max}, {@code Erosion} and {@code Dilation} use the van Herk/Gil-Werman algorithm
+ * separately for lines and columns,</li>
+ * <li>{@code Median} keeps a rolling histogram for 8 and 16 bit integer data (Huang's algorithm) and
+ * a sorted window for all other data types.</li>
+ * </ul>
+ * A structuring element which covers the full kernel is ignored. Otherwise, the structuring element
+ * is decomposed into horizontal runs: {@code Min}, {@code Max}, {@code Erosion} and {@code Dilation}
+ * combine running extrema of the lengths of the runs, {@code Mean} and {@code StdDev} combine
+ * sums of the runs taken from cumulative sums of the lines. The costs per pixel are then proportional to
+ * the number of runs, i.e. to the height of usual (e.g. disk shaped) structuring elements.
+ * <p/>
+ * The results equal those of {@link GeneralFilterFunction#filter(float[])}, apart from rounding
+ * differences of mean and standard deviation.
+ * <p/>
+ * Instances are thread-safe.
+ */
+abstract class SlidingWindowFilter {
+
+    protected final int fw;
+    protected final int fh;
+
+    protected SlidingWindowFilter(GeneralFilterFunction function) {
+        this.fw = function.getWidth();
+        this.fh = function.getHeight();
+    }
+
+    /**
+     * @param function The filter function.
+     * @return The sliding window filter equivalent to the given function, or {@code null} if there is none.
+     */
+    static SlidingWindowFilter create(GeneralFilterFunction function) {
+        final int[] runs = getRuns(function);
+        final Class<?> type = function.getClass();
+        if (type == GeneralFilterFunction.Mean.class) {
+            return new Moments(function, runs, false);
+        } else if (type == GeneralFilterFunction.StdDev.class) {
+            return new Moments(function, runs, true);
+        } else if (type == GeneralFilterFunction.Min.class || type == GeneralFilterFunction.Erosion.class) {
+            return new Extremum(function, runs, false);
+        } else if (type == GeneralFilterFunction.Max.class || type == GeneralFilterFunction.Dilation.class) {
+            return new Extremum(function, runs, true);
+        } else if (type == GeneralFilterFunction.Median.class && runs == null) {
+            return new Median(function);
+        }
+        return null;
+    }
+
+    /**
+     * @return The horizontal runs of the structuring element as triples of line, column and length,
+     *         or {@code null} if it covers the full kernel.
+     */
+    static int[] getRuns(GeneralFilterFunction function) {
+        final boolean[] se = function.getStructuringElement();
+        final int fw = function.getWidth();
+        final int fh = function.getHeight();
+        if (se == null) {
+            return null;
+        }
+        final int[] runs = new int[3 * (fw / 2 + 1) * fh];
+        int count = 0;
+        for (int y = 0; y < fh; y++) {
+            for (int x = 0; x < fw; x++) {
+                if (se[y * fw + x] && (x == 0 || !se[y * fw + x - 1])) {
+                    int length = 1;
+                    while (x + length < fw && se[y * fw + x + length]) {
+                        length++;
+                    }
+                    runs[count++] = y;
+                    runs[count++] = x;
+                    runs[count++] = length;
+                }
+            }
+        }
+        boolean full = count == 3 * fh;
+        for (int r = 0; full && r < count; r += 3) {
+            full = runs[r + 2] == fw;
+        }
+        return full ? null : Arrays.copyOf(runs, count);
+    }
+
+    /**
+     * Filters a single band.
+     *
+     * @param src       The source samples, line by line, {@code dstWidth + fw - 1} samples per line
+     *                  and {@code dstHeight + fh - 1} lines. May be modified.
+     * @param dst       The destination samples, line by line.
+     * @param dstWidth  The destination width.
+     * @param dstHeight The destination height.
+     * @param dataType  The data type of the samples, one of the {@code DataBuffer.TYPE_}<i>X</i> constants.
+     */
+    abstract void filter(float[] src, float[] dst, int dstWidth, int dstHeight, int dataType);
+
+    private static final class Moments extends SlidingWindowFilter {
+        private final int[] runs;
+        private final boolean stdDev;
+
+        private Moments(GeneralFilterFunction function, int[] runs, boolean stdDev) {
+            super(function);
+            this.runs = runs;
+            this.stdDev = stdDev;
+        }
+
+        @Override
+        void filter(float[] src, float[] dst, int dstWidth, int dstHeight, int dataType) {
+            if (runs != null) {
+                filterRuns(src, dst, dstWidth, dstHeight);
+                return;
+            }
+            final int srcWidth = dstWidth + fw - 1;
+            // NaNs are skipped, infinities are counted separately, so that they can leave the window again
+            final double[] colSum = new double[srcWidth];
+            final double[] colSqr = new double[srcWidth];
+            final int[] colCount = new int[srcWidth];
+            final int[] colPosInf = new int[srcWidth];
+            final int[] colNegInf = new int[srcWidth];
+            for (int y = 0; y < fh; y++) {
+                addLine(src, y * srcWidth, srcWidth, colSum, colSqr, colCount, colPosInf, colNegInf, 1);
+            }
+            for (int j = 0; j < dstHeight; j++) {
+                if (j > 0) {
+                    addLine(src, (j - 1) * srcWidth, srcWidth, colSum, colSqr, colCount, colPosInf, colNegInf, -1);
+                    addLine(src, (j + fh - 1) * srcWidth, srcWidth, colSum, colSqr, colCount, colPosInf, colNegInf, 1);
+                }
+                double sum = 0.0;
+                double sqr = 0.0;
+                int n = 0;
+                int posInf = 0;
+                int negInf = 0;
+                for (int x = 0; x < fw; x++) {
+                    sum += colSum[x];
+                    sqr += colSqr[x];
+                    n += colCount[x];
+                    posInf += colPosInf[x];
+                    negInf += colNegInf[x];
+                }
+                final int dstOffset = j * dstWidth;
+                for (int i = 0; i < dstWidth; i++) {
+                    if (i > 0) {
+                        final int x0 = i - 1;
+                        final int x1 = i + fw - 1;
+                        sum += colSum[x1] - colSum[x0];
+                        sqr += colSqr[x1] - colSqr[x0];
+                        n += colCount[x1] - colCount[x0];
+                        posInf += colPosInf[x1] - colPosInf[x0];
+                        negInf += colNegInf[x1] - colNegInf[x0];
+                    }
+                    dst[dstOffset + i] = stdDev ? stdDev(sum, sqr, n, posInf + negInf) : mean(sum, n, posInf, negInf);
+                }
+            }
+        }
+
+        private void filterRuns(float[] src, float[] dst, int dstWidth, int dstHeight) {
+            final int srcWidth = dstWidth + fw - 1;
+            final int srcHeight = dstHeight + fh - 1;
+            // cumulative sums of the lines, the sum of a run is the difference of two cumulative sums
+            final int cumWidth = srcWidth + 1;
+            final double[] cumSum = new double[cumWidth * srcHeight];
+            final double[] cumSqr = stdDev ? new double[cumWidth * srcHeight] : null;
+            final int[] cumCount = new int[cumWidth * srcHeight];
+            final int[] cumPosInf = new int[cumWidth * srcHeight];
+            final int[] cumNegInf = new int[cumWidth * srcHeight];
+            for (int y = 0; y < srcHeight; y++) {
+                for (int x = 0; x < srcWidth; x++) {
+                    final float v = src[y * srcWidth + x];
+                    final int i = y * cumWidth + x;
+                    final boolean finite = !Float.isNaN(v) && !Float.isInfinite(v);
+                    cumSum[i + 1] = cumSum[i] + (finite ? v : 0.0);
+                    if (cumSqr != null) {
+                        cumSqr[i + 1] = cumSqr[i] + (finite ? (double) v * v : 0.0);
+                    }
+                    cumCount[i + 1] = cumCount[i] + (Float.isNaN(v) ? 0 : 1);
+                    cumPosInf[i + 1] = cumPosInf[i] + (v == Float.POSITIVE_INFINITY ? 1 : 0);
+                    cumNegInf[i + 1] = cumNegInf[i] + (v == Float.NEGATIVE_INFINITY ? 1 : 0);
+                }
+            }
+            for (int j = 0; j < dstHeight; j++) {
+                for (int i = 0; i < dstWidth; i++) {
+                    double sum = 0.0;
+                    double sqr = 0.0;
+                    int n = 0;
+                    int posInf = 0;
+                    int negInf = 0;
+                    for (int r = 0; r < runs.length; r += 3) {
+                        final int i0 = (j + runs[r]) * cumWidth + i + runs[r + 1];
+                        final int i1 = i0 + runs[r + 2];
+                        sum += cumSum[i1] - cumSum[i0];
+                        if (cumSqr != null) {
+                            sqr += cumSqr[i1] - cumSqr[i0];
+                        }
+                        n += cumCount[i1] - cumCount[i0];
+                        posInf += cumPosInf[i1] - cumPosInf[i0];
+                        negInf += cumNegInf[i1] - cumNegInf[i0];
+                    }
+                    dst[j * dstWidth + i] = stdDev ? stdDev(sum, sqr, n, posInf + negInf) : mean(sum, n, posInf, negInf);
+                }
+            }
+        }
+
+        private static float mean(double sum, int n, int posInf, int negInf) {
+            if (n == 0) {
+                return Float.NaN;
+            } else if (posInf > 0) {
+                return negInf > 0 ? Float.NaN : Float.POSITIVE_INFINITY;
+            } else if (negInf > 0) {
+                return Float.NEGATIVE_INFINITY;
+            }
+            return (float) sum / n;
+        }
+
+        private static float stdDev(double sum, double sqr, int n, int inf) {
+            if (n == 0 || inf > 0) {
+                return Float.NaN;
+            }
+            final double variance = (sqr - sum * sum / n) / n;
+            return (float) Math.sqrt(variance > 0.0 ? variance : 0.0);
+        }
+
+        private static void addLine(float[] src, int offset, int width,
+                                    double[] colSum, double[] colSqr, int[] colCount,
+                                    int[] colPosInf, int[] colNegInf, int sign) {
+            for (int x = 0; x < width; x++) {
+                final float v = src[offset + x];
+                if (v == Float.POSITIVE_INFINITY) {
+                    colPosInf[x] += sign;
+                    colCount[x] += sign;
+                } else if (v == Float.NEGATIVE_INFINITY) {
+                    colNegInf[x] += sign;
+                    colCount[x] += sign;
+                } else if (!Float.isNaN(v)) {
+                    colSum[x] += sign * v;
+                    colSqr[x] += sign * ((double) v * v);
+                    colCount[x] += sign;
+                }
+            }
+        }
+    }
+
+    private static final class Extremum extends SlidingWindowFilter {
+        private final int[] runs;
+        private final boolean max;
+
+        private Extremum(GeneralFilterFunction function, int[] runs, boolean max) {
+            super(function);
+            this.runs = runs;
+            this.max = max;
+        }
+
+        @Override
+        void filter(float[] src, float[] dst, int dstWidth, int dstHeight, int dataType) {
+            final int srcWidth = dstWidth + fw - 1;
+            final int srcHeight = dstHeight + fh - 1;
+            // The maximum is computed as the negated minimum of the negated samples.
+            // NaNs are ignored by replacing them with positive infinity.
+            for (int i = 0; i < srcWidth * srcHeight; i++) {
+                final float v = src[i];
+                src[i] = Float.isNaN(v) ? Float.POSITIVE_INFINITY : max ? -v : v;
+            }
+            final int n = Math.max(srcWidth, srcHeight);
+            final float[] prefix = new float[n];
+            final float[] suffix = new float[n];
+            if (runs == null) {
+                final float[] lineMin = new float[dstWidth * srcHeight];
+                for (int y = 0; y < srcHeight; y++) {
+                    min(src, y * srcWidth, 1, srcWidth, fw, lineMin, y * dstWidth, 1, prefix, suffix);
+                }
+                for (int x = 0; x < dstWidth; x++) {
+                    min(lineMin, x, dstWidth, srcHeight, fh, dst, x, dstWidth, prefix, suffix);
+                }
+            } else {
+                // the running minima of the lines for each run length
+                final float[][] lineMins = new float[fw + 1][];
+                Arrays.fill(dst, 0, dstWidth * dstHeight, Float.POSITIVE_INFINITY);
+                for (int r = 0; r < runs.length; r += 3) {
+                    final int length = runs[r + 2];
+                    final int minWidth = srcWidth - length + 1;
+                    float[] lineMin = lineMins[length];
+                    if (lineMin == null) {
+                        lineMin = new float[minWidth * srcHeight];
+                        for (int y = 0; y < srcHeight; y++) {
+                            min(src, y * srcWidth, 1, srcWidth, length, lineMin, y * minWidth, 1, prefix, suffix);
+                        }
+                        lineMins[length] = lineMin;
+                    }
+                    for (int j = 0; j < dstHeight; j++) {
+                        final int offset = (j + runs[r]) * minWidth + runs[r + 1];
+                        for (int i = 0; i < dstWidth; i++) {
+                            final float v = lineMin[offset + i];
+                            if (v < dst[j * dstWidth + i]) {
+                                dst[j * dstWidth + i] = v;
+                            }
+                        }
+                    }
+                }
+            }
+            // There is no extremum if no sample is less than positive infinity (greater than negative infinity)
+            for (int i = 0; i < dstWidth * dstHeight; i++) {
+                final float v = dst[i];
+                dst[i] = v == Float.POSITIVE_INFINITY ? Float.NaN : max ? -v : v;
+            }
+        }
+
+        /**
+         * The van Herk/Gil-Werman algorithm: the minimum of a window is the minimum of the suffix minimum
+         * of its first block and the prefix minimum of its last block, where blocks have the window's size.
+         */
+        private static void min(float[] in, int inOffset, int inStride, int length, int k,
+                                float[] out, int outOffset, int outStride,
+                                float[] prefix, float[] suffix) {
+            for (int i = 0; i < length; i++) {
+                final float v = in[inOffset + i * inStride];
+                prefix[i] = i % k == 0 || v < prefix[i - 1] ? v : prefix[i - 1];
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                final float v = in[inOffset + i * inStride];
+                suffix[i] = i == length - 1 || (i + 1) % k == 0 || v < suffix[i + 1] ? v : suffix[i + 1];
+            }
+            final int outLength = length - k + 1;
+            for (int i = 0; i < outLength; i++) {
+                final float a = suffix[i];
+                final float b = prefix[i + k - 1];
+                out[outOffset + i * outStride] = b < a ? b : a;
+            }
+        }
+    }
+
+    private static final class Median extends SlidingWindowFilter {
+
+        private Median(GeneralFilterFunction function) {
+            super(function);
+        }
+
+        @Override
+        void filter(float[] src, float[] dst, int dstWidth, int dstHeight, int dataType) {
+            if (dataType == DataBuffer.TYPE_BYTE) {
+                histogramFilter(src, dst, dstWidth, dstHeight, 0, 256);
+            } else if (dataType == DataBuffer.TYPE_USHORT) {
+                histogramFilter(src, dst, dstWidth, dstHeight, 0, 65536);
+            } else if (dataType == DataBuffer.TYPE_SHORT) {
+                histogramFilter(src, dst, dstWidth, dstHeight, Short.MIN_VALUE, 65536);
+            } else {
+                sortedWindowFilter(src, dst, dstWidth, dstHeight);
+            }
+        }
+
+        private void histogramFilter(float[] src, float[] dst, int dstWidth, int dstHeight, int minValue, int binCount) {
+            final int srcWidth = dstWidth + fw - 1;
+            final int srcHeight = dstHeight + fh - 1;
+            final int n = fw * fh;
+            final int[] bins = new int[srcWidth * srcHeight];
+            for (int i = 0; i < bins.length; i++) {
+                bins[i] = (int) src[i] - minValue;
+            }
+            final int[] histogram = new int[binCount];
+            // the lower and, if n is even, upper middle element
+            final Rank lower = new Rank(histogram, n % 2 == 0 ? n / 2 - 1 : n / 2);
+            final Rank upper = n % 2 == 0 ? new Rank(histogram, n / 2) : null;
+            for (int j = 0; j < dstHeight; j++) {
+                final int lineOffset = j * srcWidth;
+                for (int y = 0; y < fh; y++) {
+                    for (int x = 0; x < fw; x++) {
+                        histogram[bins[lineOffset + y * srcWidth + x]]++;
+                    }
+                }
+                lower.init(bins[lineOffset], bins, lineOffset, srcWidth, fw, fh);
+                if (upper != null) {
+                    upper.init(bins[lineOffset], bins, lineOffset, srcWidth, fw, fh);
+                }
+                for (int i = 0; i < dstWidth; i++) {
+                    if (i > 0) {
+                        for (int y = 0; y < fh; y++) {
+                            final int offset = lineOffset + y * srcWidth + i;
+                            final int removed = bins[offset - 1];
+                            final int added = bins[offset + fw - 1];
+                            histogram[removed]--;
+                            histogram[added]++;
+                            lower.update(removed, added);
+                            if (upper != null) {
+                                upper.update(removed, added);
+                            }
+                        }
+                    }
+                    final float median;
+                    if (upper != null) {
+                        median = 0.5F * ((float) (lower.find() + minValue) + (float) (upper.find() + minValue));
+                    } else {
+                        median = lower.find() + minValue;
+                    }
+                    dst[j * dstWidth + i] = median;
+                }
+                // empty the histogram for the next line
+                for (int y = 0; y < fh; y++) {
+                    for (int x = dstWidth - 1; x < srcWidth; x++) {
+                        histogram[bins[lineOffset + y * srcWidth + x]]--;
+                    }
+                }
+            }
+        }
+
+        private void sortedWindowFilter(float[] src, float[] dst, int dstWidth, int dstHeight) {
+            final int srcWidth = dstWidth + fw - 1;
+            final int n = fw * fh;
+            // Sorted like by Arrays.sort(), NaNs are at the end
+            final float[] window = new float[n];
+            for (int j = 0; j < dstHeight; j++) {
+                final int lineOffset = j * srcWidth;
+                int nanCount = 0;
+                for (int y = 0; y < fh; y++) {
+                    System.arraycopy(src, lineOffset + y * srcWidth, window, y * fw, fw);
+                    for (int x = 0; x < fw; x++) {
+                        if (Float.isNaN(window[y * fw + x])) {
+                            nanCount++;
+                        }
+                    }
+                }
+                Arrays.sort(window);
+                for (int i = 0; i < dstWidth; i++) {
+                    if (i > 0) {
+                        for (int y = 0; y < fh; y++) {
+                            final int offset = lineOffset + y * srcWidth + i;
+                            final float removed = src[offset - 1];
+                            final float added = src[offset + fw - 1];
+                            if (Float.isNaN(removed)) {
+                                nanCount--;
+                            }
+                            if (Float.isNaN(added)) {
+                                nanCount++;
+                            }
+                            replace(window, removed, added);
+                        }
+                    }
+                    dst[j * dstWidth + i] = median(window, n - nanCount);
+                }
+            }
+        }
+
+        private static float median(float[] window, int n) {
+            if (n == 0) {
+                return Float.NaN;
+            } else if (n % 2 == 1) {
+                return window[n / 2];
+            } else {
+                return 0.5F * (window[n / 2 - 1] + window[n / 2]);
+            }
+        }
+
+        // keeps the window sorted by moving only the elements between the removed and the added value
+        private static void replace(float[] window, float removed, float added) {
+            final int length = window.length;
+            final int removedIndex = Arrays.binarySearch(window, 0, length, removed);
+            int addedIndex = Arrays.binarySearch(window, 0, length, added);
+            if (addedIndex < 0) {
+                addedIndex = -addedIndex - 1;
+            }
+            if (addedIndex > removedIndex) {
+                addedIndex--;
+                System.arraycopy(window, removedIndex + 1, window, removedIndex, addedIndex - removedIndex);
+            } else if (addedIndex < removedIndex) {
+                System.arraycopy(window, addedIndex, window, addedIndex + 1, removedIndex - addedIndex);
+            }
+            window[addedIndex] = added;
+        }
+    }
+
+    /**
+     * Tracks the bin of the element of a given rank in a histogram.
+     */
+    private static final class Rank {
+        private final int[] histogram;
+        private final int rank;
+        // the current bin and the number of elements in lower bins
+        private int bin;
+        private int below;
+
+        private Rank(int[] histogram, int rank) {
+            this.histogram = histogram;
+            this.rank = rank;
+        }
+
+        private void init(int bin, int[] bins, int offset, int stride, int fw, int fh) {
+            this.bin = bin;
+            below = 0;
+            for (int y = 0; y < fh; y++) {
+                for (int x = 0; x < fw; x++) {
+                    if (bins[offset + y * stride + x] < bin) {
+                        below++;
+                    }
+                }
+            }
+        }
+
+        private void update(int removed, int added) {
+            if (removed < bin) {
+                below--;
+            }
+            if (added < bin) {
+                below++;
+            }
+        }
+
+        private int find() {
+            while (below > rank) {
+                bin--;
+                below -= histogram[bin];
+            }
+            while (below + histogram[bin] <= rank) {
+                below += histogram[bin];
+                bin++;
+            }
+            return bin;
+        }
+    }
+}
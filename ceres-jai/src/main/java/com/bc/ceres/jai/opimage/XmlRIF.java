@@ -24,11 +24,9 @@ import org.jdom2.input.SAXBuilder;
 
 import javax.media.jai.EnumeratedParameter;
 import javax.media.jai.Interpolation;
-import javax.media.jai.JAI;
 import javax.media.jai.OperationDescriptor;
 import javax.media.jai.ParameterBlockJAI;
 import javax.media.jai.ParameterListDescriptor;
-import javax.media.jai.RenderedOp;
 import java.awt.RenderingHints;
 import java.awt.image.RenderedImage;
 import java.awt.image.renderable.ParameterBlock;
@@ -62,6 +60,8 @@ public class XmlRIF implements RenderedImageFactory {
     /**
      * Create a new instance of ConvolveOpImage in the rendered layer.
      * This method satisfies the implementation of RIF.
+     * <p/>
+     * The graph of operations is optimized while it is created, see {@link OpGraphOptimizer}.
      *
      * @param paramBlock The source image and the convolution kernel.
      */
@@ -89,11 +89,12 @@ public class XmlRIF implements RenderedImageFactory {
         Map<String, Element> sourceMap = getElementMap(rootElement, ENAME_SOURCE);
         Map<String, Element> parameterMap = getElementMap(rootElement, ENAME_PARAMETER);
         Element targetElement = rootElement.getChild(ENAME_TARGET);
-        return parseImage(targetElement, sourceMap, parameterMap, configuration, renderingHints, "rendered");
+        OpGraphOptimizer optimizer = new OpGraphOptimizer(renderingHints);
+        return parseImage(targetElement, sourceMap, parameterMap, configuration, optimizer, "rendered");
     }
 
-    private RenderedOp parseImage(Element targetElement, Map<String, Element> definedSourceElements, Map<String, Element> definedParameterElements,
-                                  Map<String, Object> configuration, RenderingHints renderHints, String modeName) {
+    private RenderedImage parseImage(Element targetElement, Map<String, Element> definedSourceElements, Map<String, Element> definedParameterElements,
+                                     Map<String, Object> configuration, OpGraphOptimizer optimizer, String modeName) {
         Element opElement = targetElement.getChild(ENAME_OP);
         String opName = opElement.getValue();
 
@@ -104,14 +105,14 @@ public class XmlRIF implements RenderedImageFactory {
                      definedSourceElements,
                      definedParameterElements,
                      configuration,
-                     renderHints);
+                     optimizer);
 
         parseParameters(parameterBlock,
                         targetElement,
                         definedParameterElements,
                         configuration);
 
-        return JAI.create(opName, parameterBlock, renderHints);
+        return optimizer.create(opName, parameterBlock);
     }
 
     private void parseSources(ParameterBlockJAI parameterBlock,
@@ -119,7 +120,7 @@ public class XmlRIF implements RenderedImageFactory {
                               Map<String, Element> definedSourceElements,
                               Map<String, Element> definedParameterElements,
                               Map<String, Object> configuration,
-                              RenderingHints renderingHints) {
+                              OpGraphOptimizer optimizer) {
         List sourceElements = targetElement.getChildren(ENAME_SOURCE);
         for (int i = 0; i < sourceElements.size(); i++) {
             Element sourceElement = (Element) sourceElements.get(i);
@@ -135,17 +136,21 @@ public class XmlRIF implements RenderedImageFactory {
                                             definedSourceElements,
                                             definedParameterElements,
                                             configuration,
-                                            renderingHints,
+                                            optimizer,
                                             parameterBlock.getMode());
                         configuration.put(sourceId, source);
                     }
                 }
+                if (source instanceof RenderedImage) {
+                    // referenced sources are shared by definition
+                    optimizer.setShared((RenderedImage) source);
+                }
             } else {
                 source = parseImage(sourceElement,
                                     definedSourceElements,
                                     definedParameterElements,
                                     configuration,
-                                    renderingHints,
+                                    optimizer,
                                     parameterBlock.getMode());
             }
             if (sourceName != null) {
@@ -0,0 +1,905 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import com.sun.media.jai.util.CacheDiagnostics;
+
+import javax.media.jai.TileCache;
+import java.awt.Point;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Observable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A tile cache which, like the {@link SwappingTileCache}, never throws away any tiles
+ * but swaps them to a {@link SwapSpace}. In opposite to the {@link SwappingTileCache},
+ * it can be accessed by many threads at the same time:
+ * <ul>
+ * <li>Tiles are held in a table per owner image, which is found by the owner's identity.
+ * Tile lookups neither block nor allocate objects.</li>
+ * <li>Recency is approximated by a second-chance (CLOCK) policy, so that a cache hit
+ * only needs to set a flag, if it is not yet set, instead of reordering a shared list.
+ * The CLOCK is a non-blocking queue: added tiles are appended, removed tiles are left
+ * in the queue until the eviction hand passes them.</li>
+ * <li>Hits and misses are counted by striped counters.</li>
+ * <li>Tiles are swapped out by one thread at a time, while other threads continue to
+ * read from the cache.</li>
+ * </ul>
+ * <p/>
+ * If a tile comparator is set, tiles are swapped out in the order given by the comparator
+ * and, if that is not sufficient, by the CLOCK policy. Note that the time stamp of a tile
+ * is the time it has been added to the cache, it is not updated by cache hits.
+ * <p/>
+ * If the cache is {@link #setCostAware(boolean) cost-aware}, tiles are evicted following
+ * the GreedyDual-Size algorithm instead of the CLOCK policy: tiles which took long to compute
+ * compared to their size are kept longer. Tiles cheaper than the
+ * {@link #setDropCostThreshold(long) drop cost threshold} are not swapped out but discarded,
+ * since computing them again is faster than restoring them.
+ *
+ * @see SwappingTileCache
+ */
+public final class ConcurrentSwappingTileCache extends Observable implements TileCache, CacheDiagnostics {
+
+    // diagnostic actions, same as SwappingTileCache.getCachedTileActions()
+    private static final int ADD = 0;
+    private static final int REMOVE = 1;
+    private static final int REMOVE_FROM_FLUSH = 2;
+    private static final int REMOVE_FROM_MEMCON = 3;
+    private static final int UPDATE_FROM_ADD = 4;
+    private static final int UPDATE_FROM_GETTILE = 5;
+    private static final int ABOUT_TO_REMOVE = 6;
+
+    /**
+     * The tiles currently held in memory, looked up by owner and tile index.
+     */
+    private final TileRegistry registry;
+
+    /**
+     * The CLOCK of resident tiles, oldest first. May also contain tiles which have been removed
+     * from the cache since they were added. Only polled while holding the memory control lock.
+     */
+    private final ConcurrentLinkedQueue<MemoryTile> clock;
+    private final AtomicInteger clockSize;
+
+    /**
+     * Serializes memory control, so that tiles are swapped out by one thread at a time.
+     */
+    private final ReentrantLock memoryControlLock;
+
+    private final SwapSpace swapSpace;
+
+    private final AtomicLong memoryUsage;
+    private final AtomicLong tileCount;
+    private final StripedCounter hitCount;
+    private final StripedCounter missCount;
+
+    private volatile long memoryCapacity;
+    private volatile float memoryThreshold = 0.75F;
+    private volatile Comparator comparator;
+    private volatile boolean diagnostics;
+    private volatile GreedyDualSizePolicy costPolicy;
+    private volatile long dropCostThreshold;
+
+    /**
+     * No args constructor. Use the DEFAULT_MEMORY_CAPACITY of 16 Megs.
+     */
+    public ConcurrentSwappingTileCache() {
+        this(SwappingTileCache.DEFAULT_MEMORY_CAPACITY, new DefaultSwapSpace(SwappingTileCache.DEFAULT_SWAP_DIR));
+    }
+
+    /**
+     * Constructor.  The memory capacity should be explicitly specified.
+     *
+     * @param memoryCapacity The maximum cache memory size in bytes.
+     * @param swapSpace      The space used to swap out tiles. Must be safe for use by multiple threads.
+     * @throws IllegalArgumentException If <code>memoryCapacity</code>
+     *                                  is less than 0.
+     */
+    public ConcurrentSwappingTileCache(long memoryCapacity, SwapSpace swapSpace) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("memoryCapacity < 0");
+        }
+        if (swapSpace == null) {
+            throw new NullPointerException("swapSpace");
+        }
+        this.memoryCapacity = memoryCapacity;
+        this.swapSpace = swapSpace;
+        this.registry = new TileRegistry();
+        this.clock = new ConcurrentLinkedQueue<MemoryTile>();
+        this.clockSize = new AtomicInteger();
+        this.memoryControlLock = new ReentrantLock();
+        this.memoryUsage = new AtomicLong();
+        this.tileCount = new AtomicLong();
+        this.hitCount = new StripedCounter();
+        this.missCount = new StripedCounter();
+    }
+
+    /**
+     * Adds a tile to the cache.
+     *
+     * @param owner The image the tile blongs to.
+     * @param tileX The tile's X index within the image.
+     * @param tileY The tile's Y index within the image.
+     * @param tile  The tile to be cached.
+     */
+    @Override
+    public void add(RenderedImage owner, int tileX, int tileY, Raster tile) {
+        add(owner, tileX, tileY, tile, null);
+    }
+
+    /**
+     * Adds a tile to the cache with an associated tile compute cost.
+     * <p/>
+     * <p> If the specified tile is already in the cache, it will not be
+     * cached again.  If by adding this tile, the cache exceeds the memory
+     * capacity, tiles in the cache are swapped out to keep the cache
+     * memory usage under the specified limit.
+     *
+     * @param owner           The image the tile blongs to.
+     * @param tileX           The tile's X index within the image.
+     * @param tileY           The tile's Y index within the image.
+     * @param tile            The tile to be cached.
+     * @param tileCacheMetric Metric for prioritizing tiles
+     */
+    @Override
+    public void add(RenderedImage owner, int tileX, int tileY, Raster tile, Object tileCacheMetric) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+        addTile(owner, tileX, tileY, tile, tileCacheMetric);
+    }
+
+    /**
+     * Adds an array of tiles to the tile cache.
+     *
+     * @param owner           The <code>RenderedImage</code> that the tile belongs to.
+     * @param tileIndices     An array of <code>Point</code>s containing the
+     *                        <code>tileX</code> and <code>tileY</code> indices for each tile.
+     * @param tiles           The array of tile <code>Raster</code>s containing tile data.
+     * @param tileCacheMetric Object which provides an ordering metric
+     *                        associated with the <code>RenderedImage</code> owner.
+     */
+    @Override
+    public void addTiles(RenderedImage owner, Point[] tileIndices, Raster[] tiles, Object tileCacheMetric) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+        for (int i = 0; i < tileIndices.length; i++) {
+            addTile(owner, tileIndices[i].x, tileIndices[i].y, tiles[i], tileCacheMetric);
+        }
+    }
+
+    private void addTile(RenderedImage owner, int tileX, int tileY, Raster tile, Object tileCacheMetric) {
+        final TileRegistry.OwnerTiles ownerTiles = registry.get(owner);
+        final int index = ownerTiles != null ? ownerTiles.getIndex(tileX, tileY) : -1;
+        final MemoryTile ct = index >= 0 ? ownerTiles.get(index) : null;
+        if (ct != null) {
+            touch(ct);
+            hitCount.increment();
+            if (diagnostics) {
+                notifyDiagnostics(ct, UPDATE_FROM_ADD);
+            }
+        } else {
+            addTile(owner, new MemoryTile(owner, tileX, tileY, tile, tileCacheMetric), true);
+        }
+    }
+
+    /**
+     * @return The tile which is now in the cache, or {@code null} if the tile is too large to be cached.
+     */
+    private MemoryTile addTile(RenderedImage owner, MemoryTile ct, boolean computed) {
+        // Don't cache tile if adding it would provoke memoryControl()
+        // which would in turn only end up removing the tile.
+        final long capacity = memoryCapacity;
+        if (memoryUsage.get() + ct.tileSize > capacity && ct.tileSize > (long) (capacity * memoryThreshold)) {
+            return null;
+        }
+        final TileRegistry.OwnerTiles ownerTiles = registry.getOrCreate(owner);
+        final int index = ownerTiles.getIndex(ct.tileX, ct.tileY);
+        if (index < 0) {
+            // not a tile of the owner's tile grid
+            return null;
+        }
+        expungeStaleOwners();
+
+        ct.timeStamp = System.nanoTime();
+        ct.referenced = true;
+        ct.ownerTiles = ownerTiles;
+        ct.tileIndex = index;
+        final GreedyDualSizePolicy policy = costPolicy;
+        if (policy != null) {
+            policy.tileAdded(ct, computed);
+        }
+        final MemoryTile other = ownerTiles.putIfAbsent(index, ct);
+        if (other != null) {
+            // another thread has been faster
+            touch(other);
+            return other;
+        }
+        offerClock(ct);
+        tileCount.incrementAndGet();
+        final long usage = memoryUsage.addAndGet(ct.tileSize);
+        if (diagnostics) {
+            notifyDiagnostics(ct, ADD);
+        }
+        // Bring memory usage down to memoryThreshold % of memory capacity.
+        if (usage > capacity) {
+            memoryControl();
+        }
+        return ct;
+    }
+
+    /**
+     * Removes a tile from the cache and from the swap space.
+     * <p/>
+     * <p> If the specified tile is not in the cache, this method
+     * does nothing.
+     */
+    @Override
+    public void remove(RenderedImage owner, int tileX, int tileY) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+        removeTile(owner, tileX, tileY);
+    }
+
+    /**
+     * Removes all the tiles that belong to a <code>RenderedImage</code>
+     * from the cache and from the swap space.
+     *
+     * @param owner The image whose tiles are to be removed from the cache.
+     */
+    @Override
+    public void removeTiles(RenderedImage owner) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+        final TileRegistry.OwnerTiles ownerTiles = registry.remove(owner);
+        if (ownerTiles != null) {
+            final int tileCount = ownerTiles.getTileCount();
+            for (int index = 0; index < tileCount; index++) {
+                removeTile(owner, ownerTiles, index);
+            }
+        } else {
+            // The owner's tile table may already have been expunged, because weak references are cleared
+            // before OpImage.finalize() calls removeTiles(). Swap spaces identify the tiles of a collected
+            // PlanarImage by its image ID, so make sure that it leaves nothing in the swap space.
+            final int minTx = owner.getMinTileX();
+            final int minTy = owner.getMinTileY();
+            final int maxTx = minTx + owner.getNumXTiles();
+            final int maxTy = minTy + owner.getNumYTiles();
+            for (int y = minTy; y < maxTy; y++) {
+                for (int x = minTx; x < maxTx; x++) {
+                    swapSpace.deleteTile(owner, x, y);
+                }
+            }
+        }
+    }
+
+    private void removeTile(RenderedImage owner, int tileX, int tileY) {
+        final TileRegistry.OwnerTiles ownerTiles = registry.get(owner);
+        if (ownerTiles != null) {
+            final int index = ownerTiles.getIndex(tileX, tileY);
+            if (index >= 0) {
+                removeTile(owner, ownerTiles, index);
+            }
+        }
+    }
+
+    private void removeTile(RenderedImage owner, TileRegistry.OwnerTiles ownerTiles, int index) {
+        final MemoryTile ct = ownerTiles.get(index);
+        if (ct != null) {
+            if (diagnostics) {
+                notifyDiagnostics(ct, ABOUT_TO_REMOVE);
+            }
+            // only the thread which actually removes the tile updates the memory usage
+            if (ownerTiles.remove(index, ct)) {
+                unlink(ct);
+                if (diagnostics) {
+                    notifyDiagnostics(ct, REMOVE);
+                }
+            }
+        }
+        if (ownerTiles.clearSwapped(index)) {
+            final int tileX = ownerTiles.getTileX(index);
+            final int tileY = ownerTiles.getTileY(index);
+            swapSpace.deleteTile(owner, tileX, tileY);
+        }
+    }
+
+    /**
+     * Retrieves a tile from the cache. If the specified tile is not in memory,
+     * it is restored from the swap space.
+     *
+     * @param owner The image the tile blongs to.
+     * @param tileX The tile's X index within the image.
+     * @param tileY The tile's Y index within the image.
+     * @return The tile or <code>null</code> if the specified tile is neither in memory nor in the swap space.
+     */
+    @Override
+    public Raster getTile(RenderedImage owner, int tileX, int tileY) {
+        if (memoryCapacity == 0) {
+            return null;
+        }
+        return getTileImpl(owner, tileX, tileY);
+    }
+
+    /**
+     * Retrieves a contiguous array of all tiles in the cache which are
+     * owned by the specified image.  May be <code>null</code> if there
+     * were no tiles in the cache.  The array contains no null entries.
+     *
+     * @param owner The <code>RenderedImage</code> to which the tiles belong.
+     * @return An array of all tiles owned by the specified image or
+     *         <code>null</code> if there are none currently in the cache.
+     */
+    @Override
+    public Raster[] getTiles(RenderedImage owner) {
+        if (memoryCapacity == 0) {
+            return null;
+        }
+        final int minTx = owner.getMinTileX();
+        final int minTy = owner.getMinTileY();
+        final int maxTx = minTx + owner.getNumXTiles();
+        final int maxTy = minTy + owner.getNumYTiles();
+        final ArrayList<Raster> temp = new ArrayList<Raster>(32);
+        for (int y = minTy; y < maxTy; y++) {
+            for (int x = minTx; x < maxTx; x++) {
+                final Raster tile = getTileImpl(owner, x, y);
+                if (tile != null) {
+                    temp.add(tile);
+                }
+            }
+        }
+        if (!temp.isEmpty()) {
+            return temp.toArray(new Raster[temp.size()]);
+        }
+        return null;
+    }
+
+    /**
+     * Returns an array of tile <code>Raster</code>s from the cache.
+     * Any or all of the elements of the returned array may be <code>null</code>
+     * if the corresponding tile is not in the cache.
+     *
+     * @param owner       The <code>RenderedImage</code> that the tile belongs to.
+     * @param tileIndices An array of <code>Point</code>s containing the
+     *                    <code>tileX</code> and <code>tileY</code> indices for each tile.
+     */
+    @Override
+    public Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
+        if (memoryCapacity == 0) {
+            return null;
+        }
+        final Raster[] tiles = new Raster[tileIndices.length];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = getTileImpl(owner, tileIndices[i].x, tileIndices[i].y);
+        }
+        return tiles;
+    }
+
+    private Raster getTileImpl(RenderedImage owner, int tileX, int tileY) {
+        final TileRegistry.OwnerTiles ownerTiles = registry.get(owner);
+        final int index = ownerTiles != null ? ownerTiles.getIndex(tileX, tileY) : -1;
+        MemoryTile ct = index >= 0 ? ownerTiles.get(index) : null;
+        // only ask the swap space for tiles which have been swapped out
+        if (ct == null && index >= 0 && ownerTiles.isSwapped(index)) {
+            ct = swapSpace.restoreTile(owner, tileX, tileY);
+            if (ct != null) {
+                final MemoryTile cachedTile = addTile(owner, ct, false);
+                if (cachedTile == null) {
+                    // too large to be cached
+                    return ct.getTile();
+                }
+                ct = cachedTile;
+            }
+        }
+        if (ct == null) {
+            missCount.increment();
+            final GreedyDualSizePolicy policy = costPolicy;
+            if (policy != null) {
+                // the tile is likely to be computed and added now
+                policy.tileMissed(owner, tileX, tileY);
+            }
+            return null;
+        }
+        touch(ct);
+        hitCount.increment();
+        if (diagnostics) {
+            notifyDiagnostics(ct, UPDATE_FROM_GETTILE);
+        }
+        return ct.getTile();
+    }
+
+    /**
+     * Removes -ALL- tiles from memory. Tiles which have been swapped out remain in the swap space.
+     */
+    @Override
+    public void flush() {
+        memoryControlLock.lock();
+        try {
+            hitCount.reset();
+            missCount.reset();
+            for (TileRegistry.OwnerTiles ownerTiles : registry.getAll()) {
+                final int tileCount = ownerTiles.getTileCount();
+                for (int index = 0; index < tileCount; index++) {
+                    final MemoryTile ct = ownerTiles.get(index);
+                    if (ct != null && ownerTiles.remove(index, ct)) {
+                        unlink(ct);
+                        if (diagnostics) {
+                            notifyDiagnostics(ct, REMOVE_FROM_FLUSH);
+                        }
+                    }
+                }
+            }
+        } finally {
+            memoryControlLock.unlock();
+        }
+    }
+
+    /**
+     * Swaps out tiles until the memory usage is memoryThreshold % of the memory capacity.
+     * Tiles are chosen by the tile comparator, if any, and then either by their
+     * GreedyDual-Size priority or by a second-chance approximation of their last-access time.
+     * <p/>
+     * Only one thread at a time performs memory control. Other threads calling
+     * this method wait until it has finished.
+     */
+    @Override
+    public void memoryControl() {
+        memoryControlLock.lock();
+        try {
+            final long limit = (long) (memoryCapacity * memoryThreshold);
+            if (comparator != null && memoryUsage.get() > limit) {
+                comparatorMemoryControl(limit);
+            }
+            final GreedyDualSizePolicy policy = costPolicy;
+            while (memoryUsage.get() > limit) {
+                final MemoryTile ct = policy != null ? nextVictim(policy) : nextVictim();
+                if (ct == null) {
+                    break;
+                }
+                if (policy != null && policy.isDroppable(ct)) {
+                    drop(ct);
+                } else {
+                    swapOut(ct);
+                }
+            }
+        } finally {
+            memoryControlLock.unlock();
+        }
+    }
+
+    // must be called while holding the memory control lock
+    private void comparatorMemoryControl(long limit) {
+        final List<MemoryTile> tiles = new ArrayList<MemoryTile>(clockSize.get());
+        for (MemoryTile ct : clock) {
+            if (isCached(ct)) {
+                tiles.add(ct);
+            }
+        }
+        // noinspection unchecked
+        Collections.sort(tiles, comparator);
+        for (int i = 0; i < tiles.size() && memoryUsage.get() > limit; i++) {
+            final MemoryTile ct = tiles.get(i);
+            // the tile stays in the clock until the hand passes it
+            if (isCached(ct)) {
+                swapOut(ct);
+            }
+        }
+    }
+
+    // must be called while holding the memory control lock
+    private MemoryTile nextVictim() {
+        MemoryTile ct;
+        while ((ct = pollClock()) != null) {
+            if (!isCached(ct)) {
+                // removed since it has been added
+                continue;
+            }
+            if (ct.referenced) {
+                // second chance
+                ct.referenced = false;
+                offerClock(ct);
+            } else {
+                return ct;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Samples the next tiles passed by the CLOCK hand and returns the one with the lowest priority.
+     * The other sampled tiles are moved behind the hand, so that the next call samples other tiles.
+     * Must be called while holding the memory control lock.
+     */
+    private MemoryTile nextVictim(GreedyDualSizePolicy policy) {
+        MemoryTile victim = null;
+        MemoryTile ct;
+        int sampleCount = 0;
+        while (sampleCount < GreedyDualSizePolicy.SAMPLE_SIZE && (ct = pollClock()) != null) {
+            if (!isCached(ct)) {
+                // removed since it has been added
+                continue;
+            }
+            if (victim == null || ct.priority < victim.priority) {
+                if (victim != null) {
+                    offerClock(victim);
+                }
+                victim = ct;
+            } else {
+                offerClock(ct);
+            }
+            sampleCount++;
+        }
+        if (victim != null) {
+            policy.tileEvicted(victim);
+        }
+        return victim;
+    }
+
+    private void offerClock(MemoryTile ct) {
+        clock.offer(ct);
+        clockSize.incrementAndGet();
+    }
+
+    // must be called while holding the memory control lock
+    private MemoryTile pollClock() {
+        final MemoryTile ct = clock.poll();
+        if (ct != null) {
+            clockSize.decrementAndGet();
+        }
+        return ct;
+    }
+
+    /**
+     * Removes tiles which are no longer cached from the clock, if they outnumber the cached tiles.
+     * Skipped if another thread is performing memory control, which also removes them.
+     */
+    private void purgeClock() {
+        if (clockSize.get() > 2 * tileCount.get() + SwappingTileCache.DEFAULT_HASHTABLE_CAPACITY
+            && memoryControlLock.tryLock()) {
+            try {
+                final Iterator<MemoryTile> iterator = clock.iterator();
+                while (iterator.hasNext()) {
+                    if (!isCached(iterator.next())) {
+                        iterator.remove();
+                        clockSize.decrementAndGet();
+                    }
+                }
+            } finally {
+                memoryControlLock.unlock();
+            }
+        }
+    }
+
+    // must be called while holding the memory control lock, the tile must not be in the clock or no longer cached
+    private void drop(MemoryTile ct) {
+        if (ct.ownerTiles.remove(ct.tileIndex, ct)) {
+            memoryUsage.addAndGet(-ct.tileSize);
+            tileCount.decrementAndGet();
+            if (diagnostics) {
+                notifyDiagnostics(ct, REMOVE_FROM_MEMCON);
+            }
+        }
+    }
+
+    // must be called while holding the memory control lock
+    private void swapOut(MemoryTile ct) {
+        if (ct.getOwner() == null) {
+            // the owner has been garbage collected, so the tile will never be requested again
+            drop(ct);
+            return;
+        }
+        // The tile is stored before it is removed from memory, so that concurrent
+        // readers either find it in memory or in the swap space.
+        swapSpace.storeTile(ct);
+        ct.ownerTiles.setSwapped(ct.tileIndex);
+        if (ct.ownerTiles.remove(ct.tileIndex, ct)) {
+            memoryUsage.addAndGet(-ct.tileSize);
+            tileCount.decrementAndGet();
+            if (diagnostics) {
+                notifyDiagnostics(ct, REMOVE_FROM_MEMCON);
+            }
+        } else {
+            // the tile has been removed concurrently, so it must not stay in the swap space
+            ct.ownerTiles.clearSwapped(ct.tileIndex);
+            final RenderedImage owner = ct.getOwner();
+            if (owner != null) {
+                swapSpace.deleteTile(owner, ct.tileX, ct.tileY);
+            }
+        }
+    }
+
+    private static boolean isCached(MemoryTile ct) {
+        return ct.ownerTiles.get(ct.tileIndex) == ct;
+    }
+
+    /**
+     * Releases the tiles of owners which have been garbage collected. Their swapped tiles
+     * are deleted by {@link #removeTiles(RenderedImage)}, which is usually called on finalization.
+     */
+    private void expungeStaleOwners() {
+        TileRegistry.OwnerTiles ownerTiles;
+        while ((ownerTiles = registry.pollStale()) != null) {
+            final int tileCount = ownerTiles.getTileCount();
+            for (int index = 0; index < tileCount; index++) {
+                final MemoryTile ct = ownerTiles.get(index);
+                if (ct != null && ownerTiles.remove(index, ct)) {
+                    unlink(ct);
+                }
+            }
+        }
+    }
+
+    // the tile must already be removed from its tile table, it is removed from the clock later
+    private void unlink(MemoryTile ct) {
+        memoryUsage.addAndGet(-ct.tileSize);
+        tileCount.decrementAndGet();
+        purgeClock();
+    }
+
+    private void touch(MemoryTile ct) {
+        if (!ct.referenced) {
+            // only written once per revolution of the CLOCK hand, so that hits on hot tiles don't write shared memory
+            ct.referenced = true;
+        }
+        final GreedyDualSizePolicy policy = costPolicy;
+        if (policy != null) {
+            policy.tileAccessed(ct);
+        }
+    }
+
+    private void notifyDiagnostics(MemoryTile ct, int action) {
+        synchronized (this) {
+            ct.action = action;
+            setChanged();
+            notifyObservers(ct);
+        }
+    }
+
+    /**
+     * Returns the cache's tile capacity.
+     * <p/>
+     * <p> This implementation of <code>TileCache</code> does not use
+     * the tile capacity.  This method always returns 0.
+     */
+    @Override
+    public int getTileCapacity() {
+        return 0;
+    }
+
+    /**
+     * This implementation of <code>TileCache</code> does not use
+     * the tile capacity.  This method does nothing.
+     */
+    @Override
+    public void setTileCapacity(int tileCapacity) {
+    }
+
+    /**
+     * Returns the cache's memory capacity in bytes.
+     */
+    @Override
+    public long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    /**
+     * Sets the cache's memory capacity to the desired number of bytes.
+     * If the new memory capacity is smaller than the amount of memory
+     * currently being used by this cache, tiles are swapped out until
+     * the memory usage is less than the specified memory capacity.
+     *
+     * @param memoryCapacity The desired memory capacity for this cache in bytes.
+     * @throws IllegalArgumentException If <code>memoryCapacity</code> is less than 0.
+     */
+    @Override
+    public void setMemoryCapacity(long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("memoryCapacity < 0");
+        } else if (memoryCapacity == 0) {
+            flush();
+        }
+        this.memoryCapacity = memoryCapacity;
+        if (memoryUsage.get() > memoryCapacity) {
+            memoryControl();
+        }
+    }
+
+    /**
+     * Set the memory threshold value.
+     */
+    @Override
+    public void setMemoryThreshold(float mt) {
+        if (mt < 0.0F || mt > 1.0F) {
+            throw new IllegalArgumentException("mt < 0.0F || mt > 1.0F");
+        }
+        memoryThreshold = mt;
+        memoryControl();
+    }
+
+    /**
+     * Returns the current <code>memoryThreshold</code>.
+     */
+    @Override
+    public float getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * The <code>Comparator</code> is used to produce an
+     * ordered list of tiles based on a user defined
+     * compute cost or priority metric.  This determines
+     * which tiles are subject to "ordered" removal
+     * during a memory control operation.
+     */
+    @Override
+    public void setTileComparator(Comparator c) {
+        comparator = c;
+    }
+
+    /**
+     * Return the current comparator
+     */
+    @Override
+    public Comparator getTileComparator() {
+        return comparator;
+    }
+
+    /**
+     * @return {@code true} if tiles are evicted by their compute cost, size and recency.
+     */
+    public boolean isCostAware() {
+        return costPolicy != null;
+    }
+
+    /**
+     * Enables or disables cost-aware eviction. If enabled, the cache measures the time
+     * needed to compute each tile as the time between a cache miss and the addition of
+     * the tile. An <code>OpImage</code> may declare the cost instead by a tile cache metric
+     * which is a {@link Number} giving the compute time in nanoseconds.
+     * <p/>
+     * Tiles cached while cost-aware eviction was disabled are assumed to have the
+     * mean cost of the tiles measured so far.
+     *
+     * @param costAware {@code true} to evict tiles GreedyDual-Size style,
+     *                  {@code false} to evict them by recency only.
+     */
+    public void setCostAware(boolean costAware) {
+        memoryControlLock.lock();
+        try {
+            if (costAware && costPolicy == null) {
+                final GreedyDualSizePolicy policy = new GreedyDualSizePolicy();
+                policy.setDropCostThreshold(dropCostThreshold);
+                costPolicy = policy;
+            } else if (!costAware) {
+                costPolicy = null;
+            }
+        } finally {
+            memoryControlLock.unlock();
+        }
+    }
+
+    /**
+     * @return The compute time in nanoseconds below which tiles are discarded instead of swapped out.
+     */
+    public long getDropCostThreshold() {
+        return dropCostThreshold;
+    }
+
+    /**
+     * Sets the compute time below which tiles are discarded instead of swapped out,
+     * because computing them again is faster than restoring them from the swap space.
+     * Only used if the cache is cost-aware. Tiles of unknown cost are always swapped out.
+     *
+     * @param dropCostThreshold The compute time in nanoseconds, 0 to never discard tiles.
+     * @throws IllegalArgumentException If <code>dropCostThreshold</code> is less than 0.
+     */
+    public void setDropCostThreshold(long dropCostThreshold) {
+        if (dropCostThreshold < 0) {
+            throw new IllegalArgumentException("dropCostThreshold < 0");
+        }
+        memoryControlLock.lock();
+        try {
+            this.dropCostThreshold = dropCostThreshold;
+            final GreedyDualSizePolicy policy = costPolicy;
+            if (policy != null) {
+                policy.setDropCostThreshold(dropCostThreshold);
+            }
+        } finally {
+            memoryControlLock.unlock();
+        }
+    }
+
+    /**
+     * Enable Tile Monitoring and Diagnostics
+     */
+    @Override
+    public void enableDiagnostics() {
+        diagnostics = true;
+    }
+
+    /**
+     * Turn off diagnostic notification
+     */
+    @Override
+    public void disableDiagnostics() {
+        diagnostics = false;
+    }
+
+    @Override
+    public long getCacheTileCount() {
+        return tileCount.get();
+    }
+
+    @Override
+    public long getCacheMemoryUsed() {
+        return memoryUsage.get();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Reset hit and miss counters.
+     */
+    @Override
+    public void resetCounts() {
+        hitCount.reset();
+        missCount.reset();
+    }
+
+    // used for testing only
+    int getClockSize() {
+        return clockSize.get();
+    }
+
+    /**
+     * @return the <code>Object</code> that represents the actual cache.
+     */
+    public Object getCachedObject() {
+        return registry;
+    }
+
+    /**
+     * Returns a string representation of the class object.
+     */
+    @Override
+    public String toString() {
+        return getClass().getName() + "@" + Integer.toHexString(hashCode()) +
+                ": memoryCapacity = " + Long.toHexString(memoryCapacity) +
+                " memoryUsage = " + Long.toHexString(memoryUsage.get()) +
+                " #tilesInCache = " + Long.toString(tileCount.get());
+    }
+}
@@ -35,6 +35,14 @@ public class DefaultSwapSpace implements SwapSpace {
     private final File swapDir;
     private final Logger logger;
     private final Map<Object, SwappedTile> swappedTiles;
+    private final LatencyHistogram storeLatencies;
+    private final LatencyHistogram restoreLatencies;
+    private long storeCount;
+    private long restoreCount;
+    private long deleteCount;
+    private long failureCount;
+    private long bytesWritten;
+    private long bytesRead;
 
     public DefaultSwapSpace(File swapDir) {
         this(swapDir, Logger.getLogger(System.getProperty("ceres.context", "ceres")));
@@ -44,6 +52,8 @@ public class DefaultSwapSpace implements SwapSpace {
         this.swapDir = swapDir;
         this.logger = logger;
         this.swappedTiles = new HashMap<Object, SwappedTile>(1009); // prime number
+        this.storeLatencies = new LatencyHistogram();
+        this.restoreLatencies = new LatencyHistogram();
     }
 
     @Override
@@ -60,16 +70,20 @@ public class DefaultSwapSpace implements SwapSpace {
             try {
                 st = new SwappedTile(mt, swapDir);
                 if (!st.isAvailable()) {
-                    final long t1 = System.currentTimeMillis();
+                    final long t1 = System.nanoTime();
                     st.storeTile(mt.getTile());
-                    final long t2 = System.currentTimeMillis();
+                    final long t2 = System.nanoTime();
                     st.getFile().deleteOnExit();
-                    logger.log(Level.FINEST, "Tile stored: " + st.getFile() + " (" + (t2 - t1) + " ms)");
+                    storeLatencies.record(t2 - t1);
+                    storeCount++;
+                    bytesWritten += mt.getTileSize();
+                    logger.log(Level.FINEST, "Tile stored: " + st.getFile() + " (" + (t2 - t1) / 1000000L + " ms)");
                 }
                 swappedTiles.put(mt.getKey(), st);
                 return true;
             } catch (IOException e) {
                 logger.log(Level.SEVERE, "Tile NOT stored: " + st.getFile(), e);
+                failureCount++;
                 handleTileStoreFailed(mt, e);
             }
         }
@@ -77,31 +91,37 @@ public class DefaultSwapSpace implements SwapSpace {
     }
 
     public synchronized MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
-        final Object key = hashKey(owner, tileX, tileY);
+        final Object key = TileKey.lookup(owner, tileX, tileY);
         final SwappedTile st = swappedTiles.get(key);
         if (st == null) {
             return null;
         }
         try {
-            final long t1 = System.currentTimeMillis();
+            final long t1 = System.nanoTime();
             final Raster tile = st.restoreTile();
-            final long t2 = System.currentTimeMillis();
-            logger.log(Level.FINEST, "Tile restored: " + st.getFile()  + " (" + (t2 - t1) + " ms)");
-            return new MemoryTile(owner, tileX, tileY, tile, st.getTileCacheMetric());
+            final long t2 = System.nanoTime();
+            logger.log(Level.FINEST, "Tile restored: " + st.getFile()  + " (" + (t2 - t1) / 1000000L + " ms)");
+            final MemoryTile mt = new MemoryTile(owner, tileX, tileY, tile, st.getTileCacheMetric());
+            restoreLatencies.record(t2 - t1);
+            restoreCount++;
+            bytesRead += mt.getTileSize();
+            return mt;
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Tile NOT restored: " + st.getFile());
+            failureCount++;
             return handleTileRestoreFailed(owner, tileX, tileY, e);
         }
     }
 
     public synchronized boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
-        final Object key = hashKey(owner, tileX, tileY);
+        final Object key = TileKey.lookup(owner, tileX, tileY);
         final SwappedTile st = swappedTiles.remove(key);
         if (st == null || !st.getFile().exists()) {
             return false;
         }
         final boolean deleted = st.delete();
         if (deleted) {
+            deleteCount++;
             logger.log(Level.FINEST, "Tile deleted: " + st.getFile());
         } else {
             logger.log(Level.WARNING, "Tile NOT deleted: " + st.getFile());
@@ -109,6 +129,15 @@ public class DefaultSwapSpace implements SwapSpace {
         return deleted;
     }
 
+    /**
+     * @return A snapshot of the statistics of this swap space, accumulated since it has been created.
+     */
+    public synchronized SwapSpaceStatistics getStatistics() {
+        return new SwapSpaceStatistics(swappedTiles.size(), storeCount, restoreCount, deleteCount, failureCount,
+                                       bytesWritten, bytesRead,
+                                       storeLatencies.getCounts(), restoreLatencies.getCounts());
+    }
+
     protected void handleTileStoreFailed(MemoryTile mt, IOException e) {
         deleteTile(mt.getOwner(), mt.getTileX(), mt.getTileY());
     }
@@ -117,8 +146,4 @@ public class DefaultSwapSpace implements SwapSpace {
         return null;
     }
 
-    private static Object hashKey(RenderedImage owner, int tileX, int tileY) {
-        return MemoryTile.hashKey(owner, tileX, tileY);
-    }
-
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The free list of a fixed-size storage area, e.g. a slab file or an off-heap buffer.
+ * Regions are allocated first fit, and released regions are merged with adjacent free ones.
+ * <p/>
+ * Instances are not thread safe.
+ */
+final class FreeRegions {
+
+    // free regions: position --> length, adjacent regions are always merged
+    private final TreeMap<Long, Long> regions;
+
+    FreeRegions(long size) {
+        regions = new TreeMap<Long, Long>();
+        regions.put(0L, size);
+    }
+
+    /**
+     * @return The position of the allocated region, or {@code -1} if there is no free region large enough.
+     */
+    long allocate(long length) {
+        for (Map.Entry<Long, Long> region : regions.entrySet()) {
+            final long regionLength = region.getValue();
+            if (regionLength >= length) {
+                final long position = region.getKey();
+                regions.remove(position);
+                if (regionLength > length) {
+                    regions.put(position + length, regionLength - length);
+                }
+                return position;
+            }
+        }
+        return -1L;
+    }
+
+    void free(long position, long length) {
+        final Map.Entry<Long, Long> lower = regions.floorEntry(position);
+        if (lower != null && lower.getKey() + lower.getValue() == position) {
+            position = lower.getKey();
+            length += lower.getValue();
+            regions.remove(position);
+        }
+        final Long higherLength = regions.remove(position + length);
+        if (higherLength != null) {
+            length += higherLength;
+        }
+        regions.put(position, length);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.image.RenderedImage;
+
+/**
+ * A cost-aware eviction policy following the GreedyDual-Size algorithm.
+ * <p/>
+ * Each tile is given the priority <code>L + cost / size</code>, where <code>cost</code> is the
+ * time needed to compute the tile and <code>L</code> is an inflation value which is raised
+ * to the priority of every evicted tile. Tiles which are expensive to compute per byte
+ * therefore stay longer in memory, while tiles which have not been accessed for a while
+ * age out as <code>L</code> grows.
+ * <p/>
+ * The cost of a tile is taken from its tile cache metric, if that is a {@link Number} giving
+ * the cost in nanoseconds. Otherwise it is measured as the time between the cache miss and
+ * the addition of the tile. Tiles of unknown cost, e.g. tiles restored from the swap space,
+ * are assumed to cost the mean cost per byte of the tiles measured so far.
+ * <p/>
+ * Caches choose the tile of lowest priority among the {@link #SAMPLE_SIZE} least recently
+ * used tiles, so that eviction does not need to keep all tiles sorted by priority.
+ */
+final class GreedyDualSizePolicy {
+
+    /**
+     * The number of least recently used tiles from which a victim is chosen.
+     */
+    static final int SAMPLE_SIZE = 8;
+
+    private final TileCostRecorder costRecorder;
+    private volatile double inflation;
+    private volatile double meanCostPerByte;
+    private volatile long dropCostThreshold;
+
+    GreedyDualSizePolicy() {
+        costRecorder = new TileCostRecorder();
+    }
+
+    long getDropCostThreshold() {
+        return dropCostThreshold;
+    }
+
+    void setDropCostThreshold(long dropCostThreshold) {
+        this.dropCostThreshold = dropCostThreshold;
+    }
+
+    void tileMissed(RenderedImage owner, int tileX, int tileY) {
+        costRecorder.missed(owner, tileX, tileY);
+    }
+
+    /**
+     * Assigns cost and priority to a tile which has been added to the cache.
+     *
+     * @param ct       The tile.
+     * @param computed {@code true} if the tile has just been computed, {@code false} if it has been restored.
+     */
+    void tileAdded(MemoryTile ct, boolean computed) {
+        long cost = -1L;
+        if (ct.tileCacheMetric instanceof Number) {
+            cost = ((Number) ct.tileCacheMetric).longValue();
+        } else if (computed) {
+            final RenderedImage owner = ct.getOwner();
+            if (owner != null) {
+                cost = costRecorder.added(owner, ct.tileX, ct.tileY);
+            }
+        }
+        ct.computeCost = cost;
+        if (cost >= 0L) {
+            // unsynchronized moving average, lost updates don't matter
+            meanCostPerByte = 0.9 * meanCostPerByte + 0.1 * cost / Math.max(1L, ct.tileSize);
+        }
+        tileAccessed(ct);
+    }
+
+    void tileAccessed(MemoryTile ct) {
+        final double costPerByte = ct.computeCost >= 0L ? ct.computeCost / (double) Math.max(1L, ct.tileSize) : meanCostPerByte;
+        ct.priority = inflation + costPerByte;
+    }
+
+    /**
+     * Raises the inflation value to the priority of an evicted tile.
+     * Must be called by one thread at a time.
+     */
+    void tileEvicted(MemoryTile ct) {
+        if (ct.priority > inflation) {
+            inflation = ct.priority;
+        }
+    }
+
+    /**
+     * @return {@code true} if the given tile is cheaper to recompute than to swap.
+     */
+    boolean isDroppable(MemoryTile ct) {
+        return ct.computeCost >= 0L && ct.computeCost < dropCostThreshold;
+    }
+}
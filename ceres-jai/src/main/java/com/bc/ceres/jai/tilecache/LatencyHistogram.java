@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with exponentially growing buckets.
+ * Bucket {@code i} counts latencies less than <code>2<sup>i</sup></code> microseconds
+ * (and not counted by bucket {@code i - 1}); the last bucket counts all larger latencies.
+ * <p/>
+ * Recording a latency is lock-free and does not allocate objects.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of buckets. The last but one bucket ends at about 4 seconds.
+     */
+    public static final int BUCKET_COUNT = 24;
+
+    private final AtomicLongArray counts;
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    /**
+     * @param bucket The bucket index.
+     * @return The exclusive upper bound of the given bucket in microseconds,
+     *         or {@link Long#MAX_VALUE} for the last bucket.
+     */
+    public static long getUpperBound(int bucket) {
+        return bucket < BUCKET_COUNT - 1 ? 1L << bucket : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        final long micros = nanos / 1000L;
+        final int bucket = micros > 0L ? 64 - Long.numberOfLeadingZeros(micros) : 0;
+        counts.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+    }
+
+    /**
+     * @return A copy of the bucket counts.
+     */
+    public long[] getCounts() {
+        final long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0L);
+        }
+    }
+}
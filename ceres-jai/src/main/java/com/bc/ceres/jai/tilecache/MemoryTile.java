@@ -20,9 +20,7 @@ import javax.media.jai.CachedTile;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
-import java.awt.Image;
 import java.lang.ref.WeakReference;
-import java.math.BigInteger;
 
 
 /**
@@ -53,7 +51,7 @@ public final class MemoryTile implements CachedTile {
     Object tileCacheMetric;     // Metric for weighting tile computation cost
     long timeStamp;        // the last time this tile is accessed
 
-    Object key;            // the key used to hash this tile
+    TileKey key;           // the key used to hash this tile
     long tileSize;        // the memory used by this tile in bytes
 
     MemoryTile previous;    // the SunCachedTile before this tile
@@ -61,17 +59,26 @@ public final class MemoryTile implements CachedTile {
 
     int action = 0;             // add, remove, update from tile cache
 
+    volatile boolean referenced; // accessed since last visited by a CLOCK eviction
+
+    TileRegistry.OwnerTiles ownerTiles; // the tile table holding this tile, if any
+    int tileIndex;                      // the index of this tile within its tile table
+
+    long computeCost = -1L;     // the time in nanoseconds needed to compute this tile, -1 if unknown
+    double priority;            // the GreedyDual-Size priority, tiles with lowest priority are evicted first
+
     MemoryTile(RenderedImage owner,
                int tileX,
                int tileY,
                Raster tile,
                Object tileCacheMetric) {
-        this.owner = new WeakReference<RenderedImage>(owner);
+        final WeakReference<RenderedImage> ownerRef = new WeakReference<RenderedImage>(owner);
+        this.owner = ownerRef;
         this.tile = tile;
         this.tileX = tileX;
         this.tileY = tileY;
         this.tileCacheMetric = tileCacheMetric;  // may be null
-        this.key = hashKey(owner, tileX, tileY);
+        this.key = TileKey.create(owner, ownerRef, tileX, tileY);
         DataBuffer db = tile.getDataBuffer();
         this.tileSize = DataBuffer.getDataTypeSize(db.getDataType()) / 8L *
                 db.getSize() * db.getNumBanks();
@@ -89,54 +96,16 @@ public final class MemoryTile implements CachedTile {
         return key;
     }
 
-    /*
-     * Returns the hash table "key" as a <code>Object</code> for this
-     * tile.  For <code>PlanarImage</code> and
-     * <code>SerializableRenderedImage</code>, the key is generated by
-     * the method <code>ImageUtilgenerateID(Object) </code>.  For the
-     * other cases, a <code>Long</code> object is returned.
-     * The upper 32 bits for this <code>Long</code> is the tile owner's
-     * hash code, and the lower 32 bits is the tile's index.
+    /**
+     * Returns the hash table "key" for the given tile. Keys are equal if they
+     * refer to the same tile indices of the identical owner. The owner is
+     * neither asked for its hash code nor for any of its properties.
+     * The returned key references the owner strongly and is meant for lookups only.
      */
     public static Object hashKey(RenderedImage owner,
                                  int tileX,
                                  int tileY) {
-// todo - added new (but unsafe) key for better readability (swapped file names)
-        Object imageId = owner.getProperty("imageId");
-        if (imageId == null  || Image.UndefinedProperty.equals(imageId)) {
-            return  Integer.toHexString(owner.hashCode()) +
-                    "_" + tileX +
-                    "_" + tileY +
-                    "_" + owner.getClass().getName().replace('.', '_');
-        } else {
-            return  Integer.toHexString(owner.hashCode()) +
-                    "_" + tileX +
-                    "_" + tileY +
-                    "_" + imageId;
-        }
-// todo - restore original Sun code
-/*
-        long idx = tileY * (long) owner.getNumXTiles() + tileX;
-
-        BigInteger imageID = null;
-        if (owner instanceof PlanarImage)
-            imageID = (BigInteger) ((PlanarImage) owner).getImageID();
-        else if (owner instanceof SerializableRenderedImage)
-            imageID = (BigInteger) ((SerializableRenderedImage) owner).getImageID();
-
-        if (imageID != null) {
-            byte[] buf = imageID.toByteArray();
-            int length = buf.length;
-            byte[] buf1 = new byte[length + 8];
-            System.arraycopy(buf, 0, buf1, 0, length);
-            for (int i = 7, j = 0; i >= 0; i--, j += 8)
-                buf1[length++] = (byte) (idx >> j);
-            return new BigInteger(buf1);
-        }
-
-        idx = idx & 0x00000000ffffffffL;
-        return ((long) owner.hashCode() << 32) | idx;
-*/
+        return TileKey.lookup(owner, tileX, tileY);
     }
 
     /**
@@ -181,11 +150,7 @@ public final class MemoryTile implements CachedTile {
     }
 
     public String getKeyAsString() {
-        if (key instanceof BigInteger) {
-            BigInteger bigInteger = (BigInteger) key;
-            return bigInteger.toString(16);
-        }
-        return ((key instanceof Long) ? Long.toHexString((Long) key) : key.toString());
+        return key.toString();
     }
 
     /**
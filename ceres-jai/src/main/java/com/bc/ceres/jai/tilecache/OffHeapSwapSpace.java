@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A swap space which holds the data of swapped tiles outside of the Java heap, in direct
+ * byte buffers, and passes them on to a delegate swap space, usually a disk-based one,
+ * only if its off-heap capacity is exhausted.
+ * <p/>
+ * Together with a tile cache, this gives three storage tiers, each limited by a byte budget:
+ * <ol>
+ * <li>the tile cache's memory capacity on the heap,</li>
+ * <li>this swap space's capacity off the heap,</li>
+ * <li>the delegate swap space on disk.</li>
+ * </ol>
+ * Tiles evicted by the tile cache are demoted into off-heap storage. If that is full, the
+ * least recently used off-heap tiles are demoted further to the delegate. Tiles restored by the
+ * tile cache are promoted back to the heap, but keep their off-heap copy until it is demoted,
+ * so that swapping out an unchanged tile again costs nothing.
+ * <p/>
+ * Since off-heap data is not scanned by the garbage collector, a large off-heap capacity
+ * combined with a small heap cache gives a large effective cache without long GC pauses.
+ * The maximum amount of direct memory may have to be raised by the
+ * <code>-XX:MaxDirectMemorySize</code> VM option.
+ */
+public class OffHeapSwapSpace implements SwapSpace {
+
+    /**
+     * The default size of a direct buffer holding tile data (64 MB).
+     */
+    public static final int DEFAULT_ARENA_SIZE = 64 * 1024 * 1024;
+
+    private final SwapSpace delegate;
+    private final long capacity;
+    private final int arenaSize;
+    private final Logger logger;
+    private final List<Arena> arenas;
+    // access ordered, least recently used first
+    private final LinkedHashMap<Object, Entry> entries;
+    // tiles removed from off-heap storage and not yet stored by the delegate
+    private final ConcurrentHashMap<Object, MemoryTile> demotingTiles;
+    private long usedBytes;
+
+    public OffHeapSwapSpace(SwapSpace delegate, long capacity) {
+        this(delegate, capacity, DEFAULT_ARENA_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate  The swap space to which tiles are demoted if the off-heap capacity is exhausted.
+     * @param capacity  The maximum number of bytes held off the heap.
+     * @param arenaSize The size of the direct buffers which are allocated on demand to hold tile data.
+     *                  Tiles larger than this are passed directly to the delegate.
+     */
+    public OffHeapSwapSpace(SwapSpace delegate, long capacity, int arenaSize) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate");
+        }
+        if (capacity < 0L) {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        if (arenaSize <= 0) {
+            throw new IllegalArgumentException("arenaSize <= 0");
+        }
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.arenaSize = (int) Math.min(arenaSize, Math.max(capacity, 1L));
+        this.logger = Logger.getLogger(System.getProperty("ceres.context", "ceres"));
+        this.arenas = new ArrayList<Arena>(4);
+        this.entries = new LinkedHashMap<Object, Entry>(1009, 0.75F, true);
+        this.demotingTiles = new ConcurrentHashMap<Object, MemoryTile>();
+    }
+
+    public SwapSpace getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return The maximum number of bytes held off the heap.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of bytes occupied by tiles off the heap.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return The number of tiles held off the heap.
+     */
+    public synchronized int getTileCount() {
+        return entries.size();
+    }
+
+    @Override
+    public boolean storeTile(MemoryTile mt) {
+        final Object key = mt.getKey();
+        final Raster tile = mt.getTile();
+        final DataBuffer dataBuffer = tile.getDataBuffer();
+        final int length = SlabSwapSpace.getEncodedLength(dataBuffer);
+        if (length > arenaSize || length > capacity) {
+            return delegate.storeTile(mt);
+        }
+
+        final List<MemoryTile> demotedTiles = new ArrayList<MemoryTile>();
+        boolean stored = false;
+        try {
+            synchronized (this) {
+                if (entries.containsKey(key)) {
+                    return false;
+                }
+                long position = -1L;
+                Arena arena = null;
+                while (true) {
+                    if (usedBytes + length <= capacity) {
+                        for (Arena a : arenas) {
+                            position = a.freeRegions.allocate(length);
+                            if (position >= 0L) {
+                                arena = a;
+                                break;
+                            }
+                        }
+                        if (arena == null && (long) arenas.size() * arenaSize + arenaSize <= capacity) {
+                            arena = allocateArena();
+                            if (arena != null) {
+                                position = arena.freeRegions.allocate(length);
+                            }
+                        }
+                        if (arena != null) {
+                            break;
+                        }
+                    }
+                    if (entries.isEmpty()) {
+                        break;
+                    }
+                    demoteEldest(demotedTiles);
+                }
+                if (arena != null) {
+                    // written while holding the monitor, copying within memory is fast
+                    SlabSwapSpace.encode(dataBuffer, arena.slice(position, length));
+                    entries.put(key, new Entry(mt, arena, position, length));
+                    usedBytes += length;
+                    stored = true;
+                }
+            }
+        } finally {
+            for (MemoryTile demotedTile : demotedTiles) {
+                demote(demotedTile);
+            }
+        }
+        return stored || delegate.storeTile(mt);
+    }
+
+    @Override
+    public MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+        final Object key = TileKey.lookup(owner, tileX, tileY);
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry.restore(owner, tileX, tileY);
+            }
+        }
+        final MemoryTile demotingTile = demotingTiles.get(key);
+        if (demotingTile != null) {
+            return new MemoryTile(owner, tileX, tileY, demotingTile.getTile(), demotingTile.getTileCacheMetric());
+        }
+        return delegate.restoreTile(owner, tileX, tileY);
+    }
+
+    @Override
+    public boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
+        final Object key = TileKey.lookup(owner, tileX, tileY);
+        boolean deleted;
+        synchronized (this) {
+            final Entry entry = entries.remove(key);
+            deleted = entry != null;
+            if (deleted) {
+                free(entry);
+            }
+        }
+        deleted |= demotingTiles.remove(key) != null;
+        return delegate.deleteTile(owner, tileX, tileY) || deleted;
+    }
+
+    /**
+     * Releases all off-heap storage. Tiles already demoted to the delegate are kept.
+     */
+    public synchronized void dispose() {
+        entries.clear();
+        arenas.clear();
+        usedBytes = 0L;
+    }
+
+    // must be called while holding the monitor
+    private Arena allocateArena() {
+        try {
+            final Arena arena = new Arena(arenaSize);
+            arenas.add(arena);
+            logger.log(Level.FINEST, "Off-heap arena allocated: " + arenaSize + " bytes");
+            return arena;
+        } catch (OutOfMemoryError e) {
+            // direct memory is limited by -XX:MaxDirectMemorySize
+            logger.log(Level.WARNING, "Off-heap arena NOT allocated: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // must be called while holding the monitor
+    private void demoteEldest(List<MemoryTile> demotedTiles) {
+        final Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator();
+        final Map.Entry<Object, Entry> eldest = iterator.next();
+        iterator.remove();
+        final Entry entry = eldest.getValue();
+        final RenderedImage owner = entry.owner.get();
+        if (owner != null) {
+            final MemoryTile demotedTile = entry.restore(owner, entry.tileX, entry.tileY);
+            demotingTiles.put(eldest.getKey(), demotedTile);
+            demotedTiles.add(demotedTile);
+        }
+        free(entry);
+    }
+
+    // must be called while holding the monitor
+    private void free(Entry entry) {
+        entry.arena.freeRegions.free(entry.position, entry.length);
+        usedBytes -= entry.length;
+    }
+
+    private void demote(MemoryTile demotedTile) {
+        final Object key = demotedTile.getKey();
+        if (!demotingTiles.containsKey(key)) {
+            // deleted meanwhile
+            return;
+        }
+        delegate.storeTile(demotedTile);
+        if (!demotingTiles.remove(key, demotedTile)) {
+            // deleted while being stored
+            delegate.deleteTile(demotedTile.getOwner(), demotedTile.getTileX(), demotedTile.getTileY());
+        }
+    }
+
+    private static final class Arena {
+        private final ByteBuffer buffer;
+        private final FreeRegions freeRegions;
+
+        private Arena(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+            freeRegions = new FreeRegions(size);
+        }
+
+        private ByteBuffer slice(long position, int length) {
+            final ByteBuffer duplicate = buffer.duplicate();
+            duplicate.limit((int) position + length);
+            duplicate.position((int) position);
+            return duplicate.slice();
+        }
+    }
+
+    private static final class Entry {
+        private final WeakReference<RenderedImage> owner;
+        private final int tileX;
+        private final int tileY;
+        private final Arena arena;
+        private final long position;
+        private final int length;
+        private final SampleModel sampleModel;
+        private final Point location;
+        private final boolean writable;
+        private final int dataType;
+        private final int size;
+        private final int numBanks;
+        private final Object tileCacheMetric;
+
+        private Entry(MemoryTile mt, Arena arena, long position, int length) {
+            final Raster tile = mt.getTile();
+            final DataBuffer dataBuffer = tile.getDataBuffer();
+            this.owner = new WeakReference<RenderedImage>(mt.getOwner());
+            this.tileX = mt.getTileX();
+            this.tileY = mt.getTileY();
+            this.arena = arena;
+            this.position = position;
+            this.length = length;
+            this.sampleModel = tile.getSampleModel();
+            this.location = tile.getBounds().getLocation();
+            this.writable = tile instanceof WritableRaster;
+            this.dataType = dataBuffer.getDataType();
+            this.size = dataBuffer.getSize();
+            this.numBanks = dataBuffer.getNumBanks();
+            this.tileCacheMetric = mt.getTileCacheMetric();
+        }
+
+        private MemoryTile restore(RenderedImage owner, int tileX, int tileY) {
+            final DataBuffer dataBuffer = SlabSwapSpace.decode(arena.slice(position, length), dataType, size, numBanks);
+            final Raster tile;
+            if (writable) {
+                tile = Raster.createWritableRaster(sampleModel, dataBuffer, location);
+            } else {
+                tile = Raster.createRaster(sampleModel, dataBuffer, location);
+            }
+            return new MemoryTile(owner, tileX, tileY, tile, tileCacheMetric);
+        }
+    }
+}
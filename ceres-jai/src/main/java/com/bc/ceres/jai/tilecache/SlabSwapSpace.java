@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link SwapSpace} which stores all tiles in a few large slab files instead of
+ * creating a file for each tile as the {@link DefaultSwapSpace} does.
+ * <p/>
+ * Slab files are preallocated in the swap directory. The space occupied by the tiles
+ * is managed by an in-memory index and a free list per slab, and tile data is
+ * transferred with positional {@link FileChannel} I/O. Optionally, the data of each tile
+ * is compressed using a fast {@link Deflater} setting, which pays off for tiles
+ * containing large homogeneous areas, e.g. masks or no-data regions.
+ * <p/>
+ * Slab files are deleted by {@link #dispose()} or, at the latest, when the VM exits.
+ */
+public class SlabSwapSpace implements SwapSpace {
+
+    /**
+     * The default size of a slab file (256 MB).
+     */
+    public static final long DEFAULT_SLAB_SIZE = 256L * 1024L * 1024L;
+
+    private final File swapDir;
+    private final long slabSize;
+    private final boolean compressed;
+    private final Logger logger;
+    private final List<Slab> slabs;
+    private final Map<Object, Entry> entries;
+    private long storedBytes;
+
+    public SlabSwapSpace(File swapDir) {
+        this(swapDir, DEFAULT_SLAB_SIZE, false);
+    }
+
+    public SlabSwapSpace(File swapDir, long slabSize, boolean compressed) {
+        this(swapDir, slabSize, compressed, Logger.getLogger(System.getProperty("ceres.context", "ceres")));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param swapDir    The directory in which slab files are created.
+     * @param slabSize   The size of a slab file in bytes. Tiles larger than this get a slab of their own.
+     * @param compressed If {@code true}, tile data is compressed.
+     * @param logger     The logger.
+     */
+    public SlabSwapSpace(File swapDir, long slabSize, boolean compressed, Logger logger) {
+        if (slabSize <= 0L) {
+            throw new IllegalArgumentException("slabSize <= 0");
+        }
+        this.swapDir = swapDir;
+        this.slabSize = slabSize;
+        this.compressed = compressed;
+        this.logger = logger;
+        this.slabs = new ArrayList<Slab>(4);
+        this.entries = new HashMap<Object, Entry>(1009); // prime number
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return The number of slab files.
+     */
+    public synchronized int getSlabCount() {
+        return slabs.size();
+    }
+
+    /**
+     * @return The number of tiles currently stored.
+     */
+    public synchronized int getTileCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of bytes occupied by the stored tiles in the slab files.
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    @Override
+    public boolean storeTile(MemoryTile mt) {
+        final Object key = mt.getKey();
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return false;
+            }
+        }
+        final Raster tile = mt.getTile();
+        final DataBuffer dataBuffer = tile.getDataBuffer();
+        final long t1 = System.currentTimeMillis();
+        final byte[] data = encode(dataBuffer);
+        byte[] storedData = data;
+        int storedLength = data.length;
+        if (compressed) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                final byte[] compressedData = new byte[data.length];
+                deflater.setInput(data);
+                deflater.finish();
+                final int compressedLength = deflater.deflate(compressedData);
+                if (deflater.finished() && compressedLength < data.length) {
+                    storedData = compressedData;
+                    storedLength = compressedLength;
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        final Slab slab;
+        final long position;
+        try {
+            synchronized (this) {
+                Slab freeSlab = null;
+                long freePosition = -1L;
+                for (Slab s : slabs) {
+                    freePosition = s.allocate(storedLength);
+                    if (freePosition >= 0L) {
+                        freeSlab = s;
+                        break;
+                    }
+                }
+                if (freeSlab == null) {
+                    freeSlab = new Slab(swapDir, Math.max(slabSize, storedLength));
+                    slabs.add(freeSlab);
+                    freePosition = freeSlab.allocate(storedLength);
+                    logger.log(Level.FINEST, "Slab created: " + freeSlab.file);
+                }
+                slab = freeSlab;
+                position = freePosition;
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Tile NOT stored: " + mt.getKeyAsString(), e);
+            return false;
+        }
+
+        // Written outside of the monitor, other tiles may be stored or restored meanwhile.
+        try {
+            slab.write(ByteBuffer.wrap(storedData, 0, storedLength), position);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Tile NOT stored: " + mt.getKeyAsString(), e);
+            synchronized (this) {
+                slab.free(position, storedLength);
+            }
+            return false;
+        }
+        final long t2 = System.currentTimeMillis();
+
+        final Entry entry = new Entry(slab, position, storedLength, data.length, storedData != data,
+                                      tile.getSampleModel(), tile.getBounds().getLocation(),
+                                      tile instanceof WritableRaster, dataBuffer.getDataType(),
+                                      dataBuffer.getSize(), dataBuffer.getNumBanks(), mt.getTileCacheMetric());
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                // stored concurrently
+                slab.free(position, storedLength);
+                return false;
+            }
+            entries.put(key, entry);
+            storedBytes += storedLength;
+        }
+        logger.log(Level.FINEST, "Tile stored: " + mt.getKeyAsString() + " (" + (t2 - t1) + " ms)");
+        return true;
+    }
+
+    @Override
+    public MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+        final Object key = TileKey.lookup(owner, tileX, tileY);
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        try {
+            final long t1 = System.currentTimeMillis();
+            final byte[] storedData = new byte[entry.storedLength];
+            entry.slab.read(ByteBuffer.wrap(storedData), entry.position);
+            synchronized (this) {
+                if (entries.get(key) != entry) {
+                    // deleted while being read, the space may already be reused
+                    return null;
+                }
+            }
+            byte[] data = storedData;
+            if (entry.compressed) {
+                data = new byte[entry.length];
+                final Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(storedData);
+                    if (inflater.inflate(data) != data.length) {
+                        throw new IOException("Corrupt tile data");
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt tile data", e);
+                } finally {
+                    inflater.end();
+                }
+            }
+            final DataBuffer dataBuffer = decode(data, entry.dataType, entry.size, entry.numBanks);
+            final Raster tile;
+            if (entry.writable) {
+                tile = Raster.createWritableRaster(entry.sampleModel, dataBuffer, entry.location);
+            } else {
+                tile = Raster.createRaster(entry.sampleModel, dataBuffer, entry.location);
+            }
+            final long t2 = System.currentTimeMillis();
+            logger.log(Level.FINEST, "Tile restored: " + key + " (" + (t2 - t1) + " ms)");
+            return new MemoryTile(owner, tileX, tileY, tile, entry.tileCacheMetric);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Tile NOT restored: " + key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
+        final Entry entry = entries.remove(TileKey.lookup(owner, tileX, tileY));
+        if (entry == null) {
+            return false;
+        }
+        entry.slab.free(entry.position, entry.storedLength);
+        storedBytes -= entry.storedLength;
+        return true;
+    }
+
+    /**
+     * Deletes all stored tiles and the slab files.
+     */
+    public synchronized void dispose() {
+        entries.clear();
+        storedBytes = 0L;
+        for (Slab slab : slabs) {
+            slab.delete();
+        }
+        slabs.clear();
+    }
+
+    static int getEncodedLength(DataBuffer dataBuffer) {
+        return dataBuffer.getNumBanks() * dataBuffer.getSize() * (DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8);
+    }
+
+    static byte[] encode(DataBuffer dataBuffer) {
+        final ByteBuffer buffer = ByteBuffer.allocate(getEncodedLength(dataBuffer));
+        encode(dataBuffer, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Writes the data of all banks of the given data buffer in native byte order, starting
+     * at position 0 of the given buffer, which must have at least {@link #getEncodedLength(DataBuffer)}
+     * remaining bytes.
+     */
+    static void encode(DataBuffer dataBuffer, ByteBuffer buffer) {
+        final int dataType = dataBuffer.getDataType();
+        final int size = dataBuffer.getSize();
+        final int numBanks = dataBuffer.getNumBanks();
+        final int elemSize = DataBuffer.getDataTypeSize(dataType) / 8;
+        buffer.order(ByteOrder.nativeOrder());
+        final int[] offsets = dataBuffer.getOffsets();
+        for (int b = 0; b < numBanks; b++) {
+            final int offset = offsets[b];
+            buffer.position(b * size * elemSize);
+            if (dataBuffer instanceof DataBufferByte) {
+                buffer.put(((DataBufferByte) dataBuffer).getData(b), offset, size);
+            } else if (dataBuffer instanceof DataBufferUShort) {
+                buffer.asShortBuffer().put(((DataBufferUShort) dataBuffer).getData(b), offset, size);
+            } else if (dataBuffer instanceof DataBufferShort) {
+                buffer.asShortBuffer().put(((DataBufferShort) dataBuffer).getData(b), offset, size);
+            } else if (dataBuffer instanceof DataBufferInt) {
+                buffer.asIntBuffer().put(((DataBufferInt) dataBuffer).getData(b), offset, size);
+            } else if (dataBuffer instanceof DataBufferFloat) {
+                buffer.asFloatBuffer().put(((DataBufferFloat) dataBuffer).getData(b), offset, size);
+            } else if (dataBuffer instanceof DataBufferDouble) {
+                buffer.asDoubleBuffer().put(((DataBufferDouble) dataBuffer).getData(b), offset, size);
+            } else {
+                // e.g. JAI's own data buffers
+                for (int i = 0; i < size; i++) {
+                    if (dataType == DataBuffer.TYPE_BYTE) {
+                        buffer.put((byte) dataBuffer.getElem(b, i));
+                    } else if (dataType == DataBuffer.TYPE_USHORT || dataType == DataBuffer.TYPE_SHORT) {
+                        buffer.putShort((short) dataBuffer.getElem(b, i));
+                    } else if (dataType == DataBuffer.TYPE_INT) {
+                        buffer.putInt(dataBuffer.getElem(b, i));
+                    } else if (dataType == DataBuffer.TYPE_FLOAT) {
+                        buffer.putFloat(dataBuffer.getElemFloat(b, i));
+                    } else if (dataType == DataBuffer.TYPE_DOUBLE) {
+                        buffer.putDouble(dataBuffer.getElemDouble(b, i));
+                    } else {
+                        throw new IllegalArgumentException("illegal dataBuffer: " + dataBuffer.getClass());
+                    }
+                }
+            }
+        }
+    }
+
+    static DataBuffer decode(byte[] data, int dataType, int size, int numBanks) {
+        return decode(ByteBuffer.wrap(data), dataType, size, numBanks);
+    }
+
+    /**
+     * Reads data written by {@link #encode(DataBuffer, ByteBuffer)}, starting at position 0 of the given buffer.
+     */
+    static DataBuffer decode(ByteBuffer buffer, int dataType, int size, int numBanks) {
+        buffer.order(ByteOrder.nativeOrder());
+        final int elemSize = DataBuffer.getDataTypeSize(dataType) / 8;
+        if (dataType == DataBuffer.TYPE_BYTE) {
+            final byte[][] banks = new byte[numBanks][size];
+            for (byte[] bank : banks) {
+                buffer.get(bank);
+            }
+            return new DataBufferByte(banks, size);
+        } else if (dataType == DataBuffer.TYPE_USHORT || dataType == DataBuffer.TYPE_SHORT) {
+            final short[][] banks = new short[numBanks][size];
+            for (int b = 0; b < numBanks; b++) {
+                buffer.position(b * size * elemSize);
+                buffer.asShortBuffer().get(banks[b]);
+            }
+            if (dataType == DataBuffer.TYPE_USHORT) {
+                return new DataBufferUShort(banks, size);
+            }
+            return new DataBufferShort(banks, size);
+        } else if (dataType == DataBuffer.TYPE_INT) {
+            final int[][] banks = new int[numBanks][size];
+            for (int b = 0; b < numBanks; b++) {
+                buffer.position(b * size * elemSize);
+                buffer.asIntBuffer().get(banks[b]);
+            }
+            return new DataBufferInt(banks, size);
+        } else if (dataType == DataBuffer.TYPE_FLOAT) {
+            final float[][] banks = new float[numBanks][size];
+            for (int b = 0; b < numBanks; b++) {
+                buffer.position(b * size * elemSize);
+                buffer.asFloatBuffer().get(banks[b]);
+            }
+            return new DataBufferFloat(banks, size);
+        } else if (dataType == DataBuffer.TYPE_DOUBLE) {
+            final double[][] banks = new double[numBanks][size];
+            for (int b = 0; b < numBanks; b++) {
+                buffer.position(b * size * elemSize);
+                buffer.asDoubleBuffer().get(banks[b]);
+            }
+            return new DataBufferDouble(banks, size);
+        }
+        throw new IllegalStateException();
+    }
+
+    private static final class Entry {
+        private final Slab slab;
+        private final long position;
+        private final int storedLength;
+        private final int length;
+        private final boolean compressed;
+        private final SampleModel sampleModel;
+        private final Point location;
+        private final boolean writable;
+        private final int dataType;
+        private final int size;
+        private final int numBanks;
+        private final Object tileCacheMetric;
+
+        private Entry(Slab slab, long position, int storedLength, int length, boolean compressed,
+                      SampleModel sampleModel, Point location, boolean writable,
+                      int dataType, int size, int numBanks, Object tileCacheMetric) {
+            this.slab = slab;
+            this.position = position;
+            this.storedLength = storedLength;
+            this.length = length;
+            this.compressed = compressed;
+            this.sampleModel = sampleModel;
+            this.location = location;
+            this.writable = writable;
+            this.dataType = dataType;
+            this.size = size;
+            this.numBanks = numBanks;
+            this.tileCacheMetric = tileCacheMetric;
+        }
+    }
+
+    /**
+     * A slab file. Allocation and release of space must be synchronized by the caller,
+     * reading and writing may happen concurrently.
+     */
+    private static final class Slab {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final FreeRegions freeRegions;
+
+        private Slab(File swapDir, long size) throws IOException {
+            file = File.createTempFile("ceres-swap-", ".slab", swapDir);
+            file.deleteOnExit();
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(size);
+            channel = raf.getChannel();
+            freeRegions = new FreeRegions(size);
+        }
+
+        private long allocate(int length) {
+            return freeRegions.allocate(length);
+        }
+
+        private void free(long position, long length) {
+            freeRegions.free(position, length);
+        }
+
+        private void write(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        private void read(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                final int n = channel.read(buffer, position);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of slab file " + file);
+                }
+                position += n;
+            }
+        }
+
+        private void delete() {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            file.delete();
+        }
+    }
+}
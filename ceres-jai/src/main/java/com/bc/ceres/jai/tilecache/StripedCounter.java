@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which spreads concurrent updates over several cells, so that threads
+ * incrementing it rarely contend for the same memory location.
+ * The sum is computed on demand and is exact if no updates happen concurrently.
+ */
+final class StripedCounter {
+
+    // cells are placed 8 longs (64 bytes) apart in order to avoid false sharing
+    private static final int PADDING = 8;
+
+    private final int mask;
+    private final AtomicLongArray cells;
+
+    StripedCounter() {
+        int stripeCount = 1;
+        while (stripeCount < 2 * Runtime.getRuntime().availableProcessors()) {
+            stripeCount <<= 1;
+        }
+        this.mask = stripeCount - 1;
+        this.cells = new AtomicLongArray(stripeCount * PADDING);
+    }
+
+    void increment() {
+        add(1L);
+    }
+
+    void add(long delta) {
+        cells.addAndGet(index(), delta);
+    }
+
+    long sum() {
+        long sum = 0L;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    void reset() {
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            cells.set(i, 0L);
+        }
+    }
+
+    private int index() {
+        // spread the thread IDs, which are usually consecutive numbers
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & mask) * PADDING;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+/**
+ * A snapshot of the statistics of a {@link DefaultSwapSpace}.
+ *
+ * @see DefaultSwapSpace#getStatistics()
+ */
+public final class SwapSpaceStatistics {
+
+    private final long tileCount;
+    private final long storeCount;
+    private final long restoreCount;
+    private final long deleteCount;
+    private final long failureCount;
+    private final long bytesWritten;
+    private final long bytesRead;
+    private final long[] storeLatencies;
+    private final long[] restoreLatencies;
+
+    SwapSpaceStatistics(long tileCount, long storeCount, long restoreCount, long deleteCount, long failureCount,
+                        long bytesWritten, long bytesRead, long[] storeLatencies, long[] restoreLatencies) {
+        this.tileCount = tileCount;
+        this.storeCount = storeCount;
+        this.restoreCount = restoreCount;
+        this.deleteCount = deleteCount;
+        this.failureCount = failureCount;
+        this.bytesWritten = bytesWritten;
+        this.bytesRead = bytesRead;
+        this.storeLatencies = storeLatencies;
+        this.restoreLatencies = restoreLatencies;
+    }
+
+    /**
+     * @return The number of tiles currently in the swap space.
+     */
+    public long getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * @return The number of tiles written.
+     */
+    public long getStoreCount() {
+        return storeCount;
+    }
+
+    /**
+     * @return The number of tiles read.
+     */
+    public long getRestoreCount() {
+        return restoreCount;
+    }
+
+    public long getDeleteCount() {
+        return deleteCount;
+    }
+
+    /**
+     * @return The number of tiles which could not be written or read.
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return The histogram of the time needed to write tiles.
+     * @see LatencyHistogram
+     */
+    public long[] getStoreLatencies() {
+        return storeLatencies.clone();
+    }
+
+    /**
+     * @return The histogram of the time needed to read tiles.
+     * @see LatencyHistogram
+     */
+    public long[] getRestoreLatencies() {
+        return restoreLatencies.clone();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() +
+                "[tileCount=" + tileCount +
+                ", storeCount=" + storeCount +
+                ", restoreCount=" + restoreCount +
+                ", deleteCount=" + deleteCount +
+                ", failureCount=" + failureCount +
+                ", bytesWritten=" + bytesWritten +
+                ", bytesRead=" + bytesRead + "]";
+    }
+}
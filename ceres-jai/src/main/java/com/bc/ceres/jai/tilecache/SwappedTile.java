@@ -33,9 +33,13 @@ import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 final class SwappedTile {
+    // tile keys are not unique as strings, so a serial number is appended to the file names
+    private static final AtomicLong FILE_SERIAL = new AtomicLong();
+
     private final File file;
     private final long fileSize;
     private final SampleModel sampleModel;
@@ -44,7 +48,7 @@ final class SwappedTile {
     private final Object tileCacheMetric;
 
     SwappedTile(MemoryTile mt, File cacheDir) {
-        this.file = new File(cacheDir, mt.getKeyAsString());
+        this.file = new File(cacheDir, mt.getKeyAsString() + "_" + FILE_SERIAL.incrementAndGet());
         this.fileSize = mt.getTileSize();
         this.sampleModel = mt.getTile().getSampleModel();
         this.location = (Point) mt.getTile().getBounds().getLocation().clone();
@@ -24,6 +24,7 @@ import javax.media.jai.TileCache;
 import javax.media.jai.JAI;
 import javax.media.jai.util.ImagingListener;
 import java.awt.Point;
+import java.awt.Image;
 import java.awt.RenderingHints;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
@@ -35,9 +36,12 @@ import java.util.ConcurrentModificationException;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Observable;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
 import java.util.logging.Logger;
 
 
@@ -46,6 +50,12 @@ import java.util.logging.Logger;
  * <code>javax.media.jai.TileCache</code> interface. In opposite to the
  * Sun implementation, we'll never throw away any tiles but instead swap them to a
  * {@link SwapSpace}.
+ * <p/>
+ * By default, the least recently used tiles are swapped out first. If the cache is
+ * {@link #setCostAware(boolean) cost-aware}, tiles are evicted following the GreedyDual-Size
+ * algorithm instead, so that tiles which took long to compute compared to their size are kept
+ * longer. Tiles cheaper than the {@link #setDropCostThreshold(long) drop cost threshold} are then
+ * discarded instead of swapped out.
  *
  * @author Sun Microsystems
  * @author Norman Fomferra
@@ -75,12 +85,16 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
     /**
      * The tile cache.
      * A Hashtable is used to cache the tiles.  The "key" is a
-     * <code>Object</code> determined based on tile owner's UID if any or
-     * hashCode if the UID doesn't exist, and tile index.  The
-     * "value" is a SunCachedTile.
+     * {@link TileKey} given by the tile owner and the
+     * tile index.  The "value" is a MemoryTile.
      */
     private Hashtable<Object, MemoryTile> cache;
 
+    /**
+     * The key used to look up tiles in the cache, only used while holding the monitor.
+     */
+    private final TileKey lookupKey = new TileKey();
+
     /**
      * Sorted (Tree) Set used with tile metrics.
      * Adds another level of metrics used to determine
@@ -139,6 +153,23 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
      */
     private long missCount = 0;
 
+    /**
+     * Statistics, accumulated since the cache has been created.
+     */
+    private volatile long totalHitCount;
+    private volatile long totalMissCount;
+    private long swapOutCount;
+    private long swapInCount;
+    private long bytesSwappedOut;
+    private long bytesSwappedIn;
+    private final LatencyHistogram swapOutLatencies = new LatencyHistogram();
+    private final LatencyHistogram swapInLatencies = new LatencyHistogram();
+
+    /**
+     * The number of bytes occupied by the cached tiles of each owner.
+     */
+    private final Map<RenderedImage, long[]> ownerOccupancy = new WeakHashMap<RenderedImage, long[]>();
+
     /**
      * Diagnostics enable/disable
      */
@@ -146,6 +177,13 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
 
     private SwapSpace swapSpace;
 
+    /**
+     * The GreedyDual-Size policy, {@code null} if tiles are evicted by recency only.
+     */
+    private GreedyDualSizePolicy costPolicy;
+
+    private long dropCostThreshold;
+
     // diagnostic actions
     // !!! If actions are changed in any way (removal, modification, addition)
     // then the getCachedTileActions() method below should be changed to match.
@@ -211,6 +249,13 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
     }
 
 
+    /**
+     * @return The space used to swap out tiles.
+     */
+    public SwapSpace getSwapSpace() {
+        return swapSpace;
+    }
+
     /**
      * Adds a tile to the cache.
      * <p/>
@@ -284,11 +329,13 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
     }
 
     private void addTileNonSync(RenderedImage owner, int tileX, int tileY, Raster tile, Object tileCacheMetric) {
-        Object key = MemoryTile.hashKey(owner, tileX, tileY);
-        MemoryTile ct = cache.get(key);
+        MemoryTile ct = getCachedTile(owner, tileX, tileY);
 
         if (ct != null) {
             ct.timeStamp = timeStamp++;
+            if (costPolicy != null) {
+                costPolicy.tileAccessed(ct);
+            }
 
             if (ct != first) {
                 // Bring this tile to the beginning of the list.
@@ -308,6 +355,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             }
 
             hitCount++;
+            totalHitCount++;
 
             if (diagnostics) {
                 ct.action = UPDATE_FROM_ADD;
@@ -316,6 +364,9 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             }
         } else {
             ct = new MemoryTile(owner, tileX, tileY, tile, tileCacheMetric);
+            if (costPolicy != null) {
+                costPolicy.tileAdded(ct, true);
+            }
             addTileNonSync(ct);
         }
     }
@@ -346,6 +397,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         // add to tile cache
         if (cache.put(ct.key, ct) == null) {
             memoryUsage += ct.tileSize;
+            addOwnerOccupancy(ct, ct.tileSize);
             tileCount++;
             //missCount++;  Not necessary?
 
@@ -403,8 +455,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
     }
 
     private void removeNonSync(RenderedImage owner, int tileX, int tileY) {
-        Object key = MemoryTile.hashKey(owner, tileX, tileY);
-        MemoryTile ct = cache.get(key);
+        MemoryTile ct = getCachedTile(owner, tileX, tileY);
 
         if (ct != null) {
             // Notify observers that a tile is about to be removed.
@@ -417,11 +468,12 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             setChanged();
             notifyObservers(ct);
 
-            ct = cache.remove(key);
+            ct = cache.remove(ct.key);
 
             // recalculate memoryUsage only if tile is actually removed
             if (ct != null) {
                 memoryUsage -= ct.tileSize;
+                addOwnerOccupancy(ct, -ct.tileSize);
                 tileCount--;
 
                 if (cacheSortedSet != null) {
@@ -554,13 +606,15 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
     }
 
     private Raster getTileNonSync(RenderedImage owner, int tileX, int tileY) {
-        Object key = MemoryTile.hashKey(owner, tileX, tileY);
-        MemoryTile ct = cache.get(key);
+        MemoryTile ct = getCachedTile(owner, tileX, tileY);
         Raster tile = null;
         // <NEW>
         if (ct == null) {
-            ct = swapSpace.restoreTile(owner, tileX, tileY);
+            ct = swapIn(owner, tileX, tileY);
             if (ct != null) {
+                if (costPolicy != null) {
+                    costPolicy.tileAdded(ct, false);
+                }
                 if (!addTileNonSync(ct)) {
                     return ct.getTile();
                 }
@@ -569,10 +623,18 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         // </NEW>
         if (ct == null) {
             missCount++;
+            totalMissCount++;
+            if (costPolicy != null) {
+                // the tile is likely to be computed and added now
+                costPolicy.tileMissed(owner, tileX, tileY);
+            }
         } else {
             tile = ct.getTile();
             // Update last-access time. (update() inlined for performance)
             ct.timeStamp = timeStamp++;
+            if (costPolicy != null) {
+                costPolicy.tileAccessed(ct);
+            }
 
             if (ct != first) {
                 // Bring this tile to the beginning of the list.
@@ -592,6 +654,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             }
 
             hitCount++;
+            totalHitCount++;
 
             if (diagnostics) {
                 ct.action = UPDATE_FROM_GETTILE;
@@ -629,6 +692,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             // recalculate memoryUsage only if tile is actually removed
             if (ct != null) {
                 memoryUsage -= ct.tileSize;
+                addOwnerOccupancy(ct, -ct.tileSize);
                 tileCount--;
 
                 if (ct == first) {
@@ -662,6 +726,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         if (memoryCapacity > 0) {
             cache = new Hashtable<Object, MemoryTile>(DEFAULT_HASHTABLE_CAPACITY, LOAD_FACTOR);
         }
+        ownerOccupancy.clear();
 
         if (cacheSortedSet != null) {
             cacheSortedSet.clear();
@@ -763,6 +828,20 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         return missCount;
     }
 
+    /**
+     * @return The number of cache hits since the cache has been created.
+     */
+    public long getTotalHitCount() {
+        return totalHitCount;
+    }
+
+    /**
+     * @return The number of cache misses since the cache has been created.
+     */
+    public long getTotalMissCount() {
+        return totalMissCount;
+    }
+
     /**
      * Reset hit and miss counters.
      *
@@ -796,6 +875,62 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         return memoryThreshold;
     }
 
+    /**
+     * Returns a snapshot of the statistics of this cache. Other than the counts of
+     * {@link #getCacheHitCount()} and {@link #getCacheMissCount()}, all counts are
+     * accumulated since the cache has been created.
+     * <p/>
+     * Statistics are always collected. In opposite to the diagnostics, which notify
+     * observers on every cache action, they only cost a few counter increments.
+     *
+     * @return The statistics.
+     * @see TileCacheMonitor
+     */
+    public synchronized TileCacheStatistics getStatistics() {
+        final Map<String, Long> occupancyByName = new TreeMap<String, Long>();
+        for (Map.Entry<RenderedImage, long[]> entry : ownerOccupancy.entrySet()) {
+            final RenderedImage owner = entry.getKey();
+            if (owner != null) {
+                occupancyByName.put(getOwnerName(owner), entry.getValue()[0]);
+            }
+        }
+        return new TileCacheStatistics(memoryCapacity, memoryUsage, tileCount,
+                                       totalHitCount, totalMissCount,
+                                       swapOutCount, swapInCount,
+                                       bytesSwappedOut, bytesSwappedIn,
+                                       swapOutLatencies.getCounts(), swapInLatencies.getCounts(),
+                                       occupancyByName);
+    }
+
+    // must be called while holding the monitor
+    private void addOwnerOccupancy(MemoryTile ct, long tileSize) {
+        final RenderedImage owner = ct.getOwner();
+        if (owner == null) {
+            // the owner's entry has already been expunged
+            return;
+        }
+        final long[] occupancy = ownerOccupancy.get(owner);
+        if (occupancy == null) {
+            if (tileSize > 0L) {
+                ownerOccupancy.put(owner, new long[]{tileSize});
+            }
+        } else {
+            occupancy[0] += tileSize;
+            if (occupancy[0] <= 0L) {
+                ownerOccupancy.remove(owner);
+            }
+        }
+    }
+
+    private static String getOwnerName(RenderedImage owner) {
+        final String ownerName = owner.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(owner));
+        final Object imageId = owner.getProperty("imageId");
+        if (imageId == null || Image.UndefinedProperty.equals(imageId)) {
+            return ownerName;
+        }
+        return ownerName + " " + imageId;
+    }
+
     /**
      * Returns a string representation of the class object.
      */
@@ -816,7 +951,8 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
     /**
      * Removes tiles from the cache based on their last-access time
      * (old to new) until the memory usage is memoryThreshold % of that of the
-     * memory capacity.
+     * memory capacity. If the cache is cost-aware, the tiles' compute cost and
+     * size are taken into account, too.
      */
     public synchronized void memoryControl() {
         if (cacheSortedSet == null) {
@@ -828,6 +964,10 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
 
     // time stamp based memory control (LRU)
     private void standard_memory_control() {
+        if (costPolicy != null) {
+            cost_aware_memory_control();
+            return;
+        }
         long limit = (long) (memoryCapacity * memoryThreshold);
 
         while (memoryUsage > limit && last != null) {
@@ -836,10 +976,11 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             if (ct != null) {
                 ct = cache.remove(last.key);
                 // <NEW>
-                swapSpace.storeTile(ct);
+                swapOut(ct);
                 // </NEW>
 
                 memoryUsage -= last.tileSize;
+                addOwnerOccupancy(last, -last.tileSize);
                 tileCount--;
 
                 last = last.previous;
@@ -861,6 +1002,58 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         }
     }
 
+    // GreedyDual-Size memory control, the victim is the tile of lowest priority
+    // among the least recently used tiles
+    private void cost_aware_memory_control() {
+        long limit = (long) (memoryCapacity * memoryThreshold);
+
+        while (memoryUsage > limit && last != null) {
+            MemoryTile ct = last;
+            MemoryTile candidate = last.previous;
+            for (int i = 1; i < GreedyDualSizePolicy.SAMPLE_SIZE && candidate != null; i++) {
+                if (candidate.priority < ct.priority) {
+                    ct = candidate;
+                }
+                candidate = candidate.previous;
+            }
+
+            // remove tile from the linked list
+            if (ct.previous != null) {
+                ct.previous.next = ct.next;
+            } else {
+                first = ct.next;
+            }
+            if (ct.next != null) {
+                ct.next.previous = ct.previous;
+            } else {
+                last = ct.previous;
+            }
+            ct.previous = null;
+            ct.next = null;
+
+            if (cache.remove(ct.key) != null) {
+                memoryUsage -= ct.tileSize;
+                addOwnerOccupancy(ct, -ct.tileSize);
+                tileCount--;
+                if (cacheSortedSet != null) {
+                    cacheSortedSet.remove(ct);
+                }
+
+                costPolicy.tileEvicted(ct);
+                if (!costPolicy.isDroppable(ct)) {
+                    swapOut(ct);
+                }
+
+                // diagnostics
+                if (diagnostics) {
+                    ct.action = REMOVE_FROM_MEMCON;
+                    setChanged();
+                    notifyObservers(ct);
+                }
+            }
+        }
+    }
+
     // comparator based memory control (TreeSet)
     private void custom_memory_control() {
         long limit = (long) (memoryCapacity * memoryThreshold);
@@ -871,6 +1064,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             ct = (MemoryTile) iter.next();
 
             memoryUsage -= ct.tileSize;
+            addOwnerOccupancy(ct, -ct.tileSize);
             tileCount--;
 
             // remove from sorted set
@@ -929,7 +1123,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             cache.remove(ct.key);
 
             // <NEW>
-            swapSpace.storeTile(ct);
+            swapOut(ct);
             // </NEW>
 
             // diagnostics
@@ -948,6 +1142,37 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         }
     }
 
+    private void swapOut(MemoryTile ct) {
+        if (ct.getOwner() == null) {
+            // the owner has been garbage collected, so the tile will never be requested again
+            return;
+        }
+        final long t0 = System.nanoTime();
+        swapSpace.storeTile(ct);
+        swapOutLatencies.record(System.nanoTime() - t0);
+        swapOutCount++;
+        bytesSwappedOut += ct.tileSize;
+    }
+
+    private MemoryTile getCachedTile(RenderedImage owner, int tileX, int tileY) {
+        try {
+            return cache.get(lookupKey.set(owner, tileX, tileY));
+        } finally {
+            lookupKey.clear();
+        }
+    }
+
+    private MemoryTile swapIn(RenderedImage owner, int tileX, int tileY) {
+        final long t0 = System.nanoTime();
+        final MemoryTile ct = swapSpace.restoreTile(owner, tileX, tileY);
+        if (ct != null) {
+            swapInLatencies.record(System.nanoTime() - t0);
+            swapInCount++;
+            bytesSwappedIn += ct.tileSize;
+        }
+        return ct;
+    }
+
     /**
      * The <code>Comparator</code> is used to produce an
      * ordered list of tiles based on a user defined
@@ -989,6 +1214,56 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         return comparator;
     }
 
+    /**
+     * @return {@code true} if tiles are evicted by their compute cost, size and recency.
+     */
+    public synchronized boolean isCostAware() {
+        return costPolicy != null;
+    }
+
+    /**
+     * Enables or disables cost-aware eviction. If enabled, the cache measures the time
+     * needed to compute each tile as the time between a cache miss and the addition of
+     * the tile. An <code>OpImage</code> may declare the cost instead by a tile cache metric
+     * which is a {@link Number} giving the compute time in nanoseconds.
+     *
+     * @param costAware {@code true} to evict tiles GreedyDual-Size style,
+     *                  {@code false} to evict the least recently used tiles.
+     */
+    public synchronized void setCostAware(boolean costAware) {
+        if (costAware && costPolicy == null) {
+            costPolicy = new GreedyDualSizePolicy();
+            costPolicy.setDropCostThreshold(dropCostThreshold);
+        } else if (!costAware) {
+            costPolicy = null;
+        }
+    }
+
+    /**
+     * @return The compute time in nanoseconds below which tiles are discarded instead of swapped out.
+     */
+    public synchronized long getDropCostThreshold() {
+        return dropCostThreshold;
+    }
+
+    /**
+     * Sets the compute time below which tiles are discarded instead of swapped out,
+     * because computing them again is faster than restoring them from the swap space.
+     * Only used if the cache is cost-aware. Tiles of unknown cost are always swapped out.
+     *
+     * @param dropCostThreshold The compute time in nanoseconds, 0 to never discard tiles.
+     * @throws IllegalArgumentException If <code>dropCostThreshold</code> is less than 0.
+     */
+    public synchronized void setDropCostThreshold(long dropCostThreshold) {
+        if (dropCostThreshold < 0) {
+            throw new IllegalArgumentException("dropCostThreshold < 0");
+        }
+        this.dropCostThreshold = dropCostThreshold;
+        if (costPolicy != null) {
+            costPolicy.setDropCostThreshold(dropCostThreshold);
+        }
+    }
+
     // test
     public void dump() {
 
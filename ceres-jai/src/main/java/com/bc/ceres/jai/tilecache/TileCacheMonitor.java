@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Exposes the statistics of a {@link SwappingTileCache} via JMX.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     TileCacheMonitor monitor = new TileCacheMonitor(tileCache);
+ *     monitor.register();
+ * </pre>
+ * The cache can then be inspected with any JMX client, e.g. JConsole, under the
+ * object name {@code com.bc.ceres.jai:type=TileCache,id=<id>}.
+ */
+public class TileCacheMonitor implements TileCacheMXBean {
+
+    private final SwappingTileCache tileCache;
+    private ObjectName objectName;
+
+    public TileCacheMonitor(SwappingTileCache tileCache) {
+        if (tileCache == null) {
+            throw new NullPointerException("tileCache");
+        }
+        this.tileCache = tileCache;
+    }
+
+    public SwappingTileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Registers this monitor with the platform MBean server.
+     *
+     * @return The object name under which this monitor has been registered.
+     * @throws JMException If the registration fails.
+     */
+    public synchronized ObjectName register() throws JMException {
+        if (objectName == null) {
+            final ObjectName name = new ObjectName("com.bc.ceres.jai:type=TileCache,id="
+                                                   + Integer.toHexString(System.identityHashCode(tileCache)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        }
+        return objectName;
+    }
+
+    /**
+     * Unregisters this monitor from the platform MBean server, if registered.
+     *
+     * @throws JMException If the unregistration fails.
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getMemoryCapacity() {
+        return tileCache.getMemoryCapacity();
+    }
+
+    @Override
+    public void setMemoryCapacity(long memoryCapacity) {
+        tileCache.setMemoryCapacity(memoryCapacity);
+    }
+
+    @Override
+    public double getHitRatio() {
+        final long hitCount = tileCache.getTotalHitCount();
+        final long requestCount = hitCount + tileCache.getTotalMissCount();
+        return requestCount > 0L ? hitCount / (double) requestCount : 0.0;
+    }
+
+    @Override
+    public TileCacheStatistics getStatistics() {
+        return tileCache.getStatistics();
+    }
+
+    @Override
+    public SwapSpaceStatistics getSwapSpaceStatistics() {
+        SwapSpace swapSpace = tileCache.getSwapSpace();
+        while (!(swapSpace instanceof DefaultSwapSpace)) {
+            if (swapSpace instanceof WriteBehindSwapSpace) {
+                swapSpace = ((WriteBehindSwapSpace) swapSpace).getDelegate();
+            } else if (swapSpace instanceof OffHeapSwapSpace) {
+                swapSpace = ((OffHeapSwapSpace) swapSpace).getDelegate();
+            } else {
+                return null;
+            }
+        }
+        return ((DefaultSwapSpace) swapSpace).getStatistics();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of the statistics of a {@link SwappingTileCache}.
+ * Counts are accumulated since the cache has been created and are not affected by
+ * {@link SwappingTileCache#resetCounts()}.
+ *
+ * @see SwappingTileCache#getStatistics()
+ */
+public final class TileCacheStatistics {
+
+    private final long memoryCapacity;
+    private final long memoryUsed;
+    private final long tileCount;
+    private final long hitCount;
+    private final long missCount;
+    private final long swapOutCount;
+    private final long swapInCount;
+    private final long bytesSwappedOut;
+    private final long bytesSwappedIn;
+    private final long[] swapOutLatencies;
+    private final long[] swapInLatencies;
+    private final Map<String, Long> ownerOccupancy;
+
+    TileCacheStatistics(long memoryCapacity, long memoryUsed, long tileCount,
+                        long hitCount, long missCount,
+                        long swapOutCount, long swapInCount,
+                        long bytesSwappedOut, long bytesSwappedIn,
+                        long[] swapOutLatencies, long[] swapInLatencies,
+                        Map<String, Long> ownerOccupancy) {
+        this.memoryCapacity = memoryCapacity;
+        this.memoryUsed = memoryUsed;
+        this.tileCount = tileCount;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.swapOutCount = swapOutCount;
+        this.swapInCount = swapInCount;
+        this.bytesSwappedOut = bytesSwappedOut;
+        this.bytesSwappedIn = bytesSwappedIn;
+        this.swapOutLatencies = swapOutLatencies;
+        this.swapInLatencies = swapInLatencies;
+        this.ownerOccupancy = Collections.unmodifiableMap(ownerOccupancy);
+    }
+
+    public long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * @return The number of tiles in memory.
+     */
+    public long getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * @return The number of tiles found in memory or restored from the swap space.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of tiles neither found in memory nor in the swap space.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRatio() {
+        final long requestCount = hitCount + missCount;
+        return requestCount > 0L ? hitCount / (double) requestCount : 0.0;
+    }
+
+    public long getSwapOutCount() {
+        return swapOutCount;
+    }
+
+    public long getSwapInCount() {
+        return swapInCount;
+    }
+
+    public long getBytesSwappedOut() {
+        return bytesSwappedOut;
+    }
+
+    public long getBytesSwappedIn() {
+        return bytesSwappedIn;
+    }
+
+    /**
+     * @return The histogram of the time needed to pass tiles to the swap space.
+     * @see LatencyHistogram
+     */
+    public long[] getSwapOutLatencies() {
+        return swapOutLatencies.clone();
+    }
+
+    /**
+     * @return The histogram of the time needed to restore tiles from the swap space.
+     * @see LatencyHistogram
+     */
+    public long[] getSwapInLatencies() {
+        return swapInLatencies.clone();
+    }
+
+    /**
+     * @return The memory occupied by the tiles of each owner image in bytes.
+     */
+    public Map<String, Long> getOwnerOccupancy() {
+        return ownerOccupancy;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() +
+                "[memoryUsed=" + memoryUsed +
+                ", memoryCapacity=" + memoryCapacity +
+                ", tileCount=" + tileCount +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", swapOutCount=" + swapOutCount +
+                ", swapInCount=" + swapInCount +
+                ", bytesSwappedOut=" + bytesSwappedOut +
+                ", bytesSwappedIn=" + bytesSwappedIn + "]";
+    }
+}
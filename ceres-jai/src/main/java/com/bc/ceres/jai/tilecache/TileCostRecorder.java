@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.image.RenderedImage;
+
+/**
+ * Measures the time needed to compute tiles.
+ * <p/>
+ * An <code>OpImage</code> asks the tile cache for a tile, computes it on a miss
+ * and then adds it to the cache, all on the same thread. The recorder therefore
+ * remembers the time of each miss per thread and measures the time elapsed until
+ * the same tile is added. Since computing a tile usually requests tiles of the source
+ * images, misses are kept in a stack; the time measured for a tile includes the time
+ * needed to compute its uncached source tiles.
+ */
+final class TileCostRecorder {
+
+    private static final int MAX_DEPTH = 64;
+
+    private final ThreadLocal<MissStack> missStacks;
+
+    TileCostRecorder() {
+        missStacks = new ThreadLocal<MissStack>() {
+            @Override
+            protected MissStack initialValue() {
+                return new MissStack();
+            }
+        };
+    }
+
+    void missed(RenderedImage owner, int tileX, int tileY) {
+        missStacks.get().push(System.identityHashCode(owner), tileX, tileY, System.nanoTime());
+    }
+
+    /**
+     * @return The time in nanoseconds elapsed since the given tile was missed
+     *         by the current thread, or {@code -1} if unknown.
+     */
+    long added(RenderedImage owner, int tileX, int tileY) {
+        final long startTime = missStacks.get().pop(System.identityHashCode(owner), tileX, tileY);
+        return startTime >= 0L ? System.nanoTime() - startTime : -1L;
+    }
+
+    private static final class MissStack {
+        private final int[] ownerIds = new int[MAX_DEPTH];
+        private final int[] tileXs = new int[MAX_DEPTH];
+        private final int[] tileYs = new int[MAX_DEPTH];
+        private final long[] times = new long[MAX_DEPTH];
+        private int size;
+
+        private void push(int ownerId, int tileX, int tileY, long time) {
+            if (size == MAX_DEPTH) {
+                // drop the oldest miss, it is probably never followed by an add
+                System.arraycopy(ownerIds, 1, ownerIds, 0, MAX_DEPTH - 1);
+                System.arraycopy(tileXs, 1, tileXs, 0, MAX_DEPTH - 1);
+                System.arraycopy(tileYs, 1, tileYs, 0, MAX_DEPTH - 1);
+                System.arraycopy(times, 1, times, 0, MAX_DEPTH - 1);
+                size--;
+            }
+            ownerIds[size] = ownerId;
+            tileXs[size] = tileX;
+            tileYs[size] = tileY;
+            times[size] = time;
+            size++;
+        }
+
+        private long pop(int ownerId, int tileX, int tileY) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (ownerIds[i] == ownerId && tileXs[i] == tileX && tileYs[i] == tileY) {
+                    // misses above were not followed by an add
+                    size = i;
+                    return times[i];
+                }
+            }
+            return -1L;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import javax.media.jai.PlanarImage;
+import java.awt.Image;
+import java.awt.image.RenderedImage;
+import java.lang.ref.Reference;
+
+/**
+ * The key of a tile, given by the tile's owner and the tile's indices.
+ * <p/>
+ * Owners of type {@link PlanarImage} are compared by their image ID, all other owners by identity,
+ * so that tiles of different images never share a key. Neither the owner's hash code nor any of its
+ * properties are evaluated.
+ * <p/>
+ * The keys of stored tiles reference their owner weakly. Since weak references are cleared before
+ * {@code OpImage.finalize()} calls {@code removeTiles()}, the keys of stored tiles also keep the image ID
+ * of their owner, so that they are still found for a collected owner. Stored keys of any other collected
+ * owner are only equal to themselves.
+ * <p/>
+ * Lookup keys reference their owner strongly and must not be stored. A lookup key may be reused
+ * by calling {@link #set} and must be {@link #clear() cleared} afterwards.
+ */
+final class TileKey {
+
+    private RenderedImage owner;
+    private Reference<RenderedImage> ownerRef;
+    private Object ownerId;
+    private int tileX;
+    private int tileY;
+    private int hashCode;
+
+    /**
+     * Creates an empty lookup key.
+     */
+    TileKey() {
+    }
+
+    private TileKey(RenderedImage owner, Reference<RenderedImage> ownerRef, int tileX, int tileY) {
+        this.ownerRef = ownerRef;
+        init(owner, tileX, tileY);
+        this.owner = null;
+    }
+
+    /**
+     * Creates the key of a stored tile.
+     *
+     * @param owner    The tile owner.
+     * @param ownerRef A weak or soft reference to the tile owner.
+     * @param tileX    The tile's X index.
+     * @param tileY    The tile's Y index.
+     * @return The key.
+     */
+    static TileKey create(RenderedImage owner, Reference<RenderedImage> ownerRef, int tileX, int tileY) {
+        return new TileKey(owner, ownerRef, tileX, tileY);
+    }
+
+    /**
+     * Creates a key used to look up a tile.
+     *
+     * @param owner The tile owner.
+     * @param tileX The tile's X index.
+     * @param tileY The tile's Y index.
+     * @return The key.
+     */
+    static TileKey lookup(RenderedImage owner, int tileX, int tileY) {
+        return new TileKey().set(owner, tileX, tileY);
+    }
+
+    /**
+     * Lets this lookup key refer to another tile.
+     *
+     * @param owner The tile owner.
+     * @param tileX The tile's X index.
+     * @param tileY The tile's Y index.
+     * @return This key.
+     */
+    TileKey set(RenderedImage owner, int tileX, int tileY) {
+        if (ownerRef != null) {
+            throw new IllegalStateException("ownerRef != null");
+        }
+        init(owner, tileX, tileY);
+        return this;
+    }
+
+    /**
+     * Releases the owner of this lookup key.
+     */
+    void clear() {
+        owner = null;
+        ownerId = null;
+    }
+
+    RenderedImage getOwner() {
+        return ownerRef != null ? ownerRef.get() : owner;
+    }
+
+    /**
+     * @param owner A tile owner.
+     * @return An ID which identifies the owner even after it has been garbage collected,
+     *         or {@code null} if the owner has to be compared by identity.
+     */
+    static Object getOwnerId(RenderedImage owner) {
+        return owner instanceof PlanarImage ? ((PlanarImage) owner).getImageID() : null;
+    }
+
+    private void init(RenderedImage owner, int tileX, int tileY) {
+        this.owner = owner;
+        this.ownerId = getOwnerId(owner);
+        this.tileX = tileX;
+        this.tileY = tileY;
+        final int ownerHash = ownerId != null ? ownerId.hashCode() : System.identityHashCode(owner);
+        this.hashCode = 31 * (31 * ownerHash + tileY) + tileX;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TileKey)) {
+            return false;
+        }
+        final TileKey other = (TileKey) obj;
+        if (hashCode != other.hashCode || tileX != other.tileX || tileY != other.tileY) {
+            return false;
+        }
+        if (ownerId != null || other.ownerId != null) {
+            return ownerId != null && ownerId.equals(other.ownerId);
+        }
+        final RenderedImage owner = getOwner();
+        return owner != null && owner == other.getOwner();
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * @return A readable representation of this key. Since it is not unique, it must not be used to identify tiles.
+     */
+    @Override
+    public String toString() {
+        final RenderedImage owner = getOwner();
+        String suffix = "null";
+        if (owner != null) {
+            final Object imageId = owner.getProperty("imageId");
+            if (imageId == null || Image.UndefinedProperty.equals(imageId)) {
+                suffix = owner.getClass().getName().replace('.', '_');
+            } else {
+                suffix = imageId.toString();
+            }
+        }
+        return Integer.toHexString(System.identityHashCode(owner)) + "_" + tileX + "_" + tileY + "_" + suffix;
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.image.RenderedImage;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps tile owners to the tables of their tiles.
+ * <p/>
+ * Owners are referenced weakly and compared by their image ID, if they are planar images,
+ * otherwise by identity (see {@link TileKey}). Looking up a tile neither
+ * allocates objects nor computes a string key: the owner's table is found by a
+ * reusable per-thread lookup key, and the tile is found by its index within the
+ * owner's tile grid.
+ */
+final class TileRegistry {
+
+    private final ConcurrentHashMap<Object, OwnerTiles> ownerTilesMap;
+    private final ReferenceQueue<RenderedImage> staleOwners;
+    private final ThreadLocal<LookupKey> lookupKeys;
+
+    TileRegistry() {
+        ownerTilesMap = new ConcurrentHashMap<Object, OwnerTiles>(64, 0.75F,
+                                                                  4 * Runtime.getRuntime().availableProcessors());
+        staleOwners = new ReferenceQueue<RenderedImage>();
+        lookupKeys = new ThreadLocal<LookupKey>() {
+            @Override
+            protected LookupKey initialValue() {
+                return new LookupKey();
+            }
+        };
+    }
+
+    /**
+     * @return The tiles of the given owner, or {@code null} if none have been registered.
+     */
+    OwnerTiles get(RenderedImage owner) {
+        final LookupKey key = lookupKeys.get();
+        key.setOwner(owner);
+        try {
+            return ownerTilesMap.get(key);
+        } finally {
+            // don't keep the owner reachable
+            key.setOwner(null);
+        }
+    }
+
+    OwnerTiles getOrCreate(RenderedImage owner) {
+        final OwnerTiles ownerTiles = get(owner);
+        if (ownerTiles != null) {
+            return ownerTiles;
+        }
+        final OwnerTiles newOwnerTiles = new OwnerTiles(owner);
+        final OwnerTiles otherOwnerTiles = ownerTilesMap.putIfAbsent(new OwnerKey(owner, staleOwners), newOwnerTiles);
+        return otherOwnerTiles != null ? otherOwnerTiles : newOwnerTiles;
+    }
+
+    OwnerTiles remove(RenderedImage owner) {
+        final LookupKey key = lookupKeys.get();
+        key.setOwner(owner);
+        try {
+            return ownerTilesMap.remove(key);
+        } finally {
+            key.setOwner(null);
+        }
+    }
+
+    /**
+     * Removes the tiles of an owner which has been garbage collected.
+     *
+     * @return The removed tiles, or {@code null} if there are no more tiles of collected owners.
+     */
+    OwnerTiles pollStale() {
+        Object key;
+        while ((key = staleOwners.poll()) != null) {
+            // stale keys are only equal to themselves or to keys of the same image ID
+            final OwnerTiles ownerTiles = ownerTilesMap.remove(key);
+            if (ownerTiles != null) {
+                return ownerTiles;
+            }
+        }
+        return null;
+    }
+
+    Collection<OwnerTiles> getAll() {
+        return ownerTilesMap.values();
+    }
+
+    int size() {
+        return ownerTilesMap.size();
+    }
+
+    /**
+     * The tiles of a single owner, indexed by their position in the owner's tile grid.
+     * Tiles are held in chunks which are allocated on demand, so that an image of
+     * which only a few tiles are cached occupies little memory.
+     */
+    static final class OwnerTiles {
+
+        private static final int CHUNK_SHIFT = 6;
+        private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+        private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+        private final int minTileX;
+        private final int minTileY;
+        private final int numXTiles;
+        private final int numYTiles;
+        private final AtomicReferenceArray<AtomicReferenceArray<MemoryTile>> chunks;
+        // one bit per tile which may be held by the swap space
+        private final AtomicLongArray swapped;
+
+        private OwnerTiles(RenderedImage owner) {
+            minTileX = owner.getMinTileX();
+            minTileY = owner.getMinTileY();
+            numXTiles = owner.getNumXTiles();
+            numYTiles = owner.getNumYTiles();
+            final int tileCount = numXTiles * numYTiles;
+            chunks = new AtomicReferenceArray<AtomicReferenceArray<MemoryTile>>((tileCount + CHUNK_MASK) >>> CHUNK_SHIFT);
+            swapped = new AtomicLongArray((tileCount + 63) >>> 6);
+        }
+
+        int getTileCount() {
+            return numXTiles * numYTiles;
+        }
+
+        /**
+         * @return The index of the given tile, or {@code -1} if it is outside of the owner's tile grid.
+         */
+        int getIndex(int tileX, int tileY) {
+            final int x = tileX - minTileX;
+            final int y = tileY - minTileY;
+            if (x < 0 || y < 0 || x >= numXTiles || y >= numYTiles) {
+                return -1;
+            }
+            return y * numXTiles + x;
+        }
+
+        int getTileX(int index) {
+            return minTileX + index % numXTiles;
+        }
+
+        int getTileY(int index) {
+            return minTileY + index / numXTiles;
+        }
+
+        MemoryTile get(int index) {
+            final AtomicReferenceArray<MemoryTile> chunk = chunks.get(index >>> CHUNK_SHIFT);
+            return chunk != null ? chunk.get(index & CHUNK_MASK) : null;
+        }
+
+        /**
+         * @return The tile already stored at the given index, or {@code null} if the given tile has been stored.
+         */
+        MemoryTile putIfAbsent(int index, MemoryTile tile) {
+            final int chunkIndex = index >>> CHUNK_SHIFT;
+            AtomicReferenceArray<MemoryTile> chunk = chunks.get(chunkIndex);
+            if (chunk == null) {
+                chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<MemoryTile>(CHUNK_SIZE));
+                chunk = chunks.get(chunkIndex);
+            }
+            while (true) {
+                if (chunk.compareAndSet(index & CHUNK_MASK, null, tile)) {
+                    return null;
+                }
+                final MemoryTile otherTile = chunk.get(index & CHUNK_MASK);
+                if (otherTile != null) {
+                    return otherTile;
+                }
+            }
+        }
+
+        boolean remove(int index, MemoryTile tile) {
+            final AtomicReferenceArray<MemoryTile> chunk = chunks.get(index >>> CHUNK_SHIFT);
+            return chunk != null && chunk.compareAndSet(index & CHUNK_MASK, tile, null);
+        }
+
+        boolean isSwapped(int index) {
+            return (swapped.get(index >>> 6) & (1L << index)) != 0L;
+        }
+
+        void setSwapped(int index) {
+            final long mask = 1L << index;
+            while (true) {
+                final long bits = swapped.get(index >>> 6);
+                if ((bits & mask) != 0L || swapped.compareAndSet(index >>> 6, bits, bits | mask)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return {@code true} if the swapped flag was set.
+         */
+        boolean clearSwapped(int index) {
+            final long mask = 1L << index;
+            while (true) {
+                final long bits = swapped.get(index >>> 6);
+                if ((bits & mask) == 0L) {
+                    return false;
+                }
+                if (swapped.compareAndSet(index >>> 6, bits, bits & ~mask)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private interface OwnerRef {
+        RenderedImage getOwner();
+
+        Object getOwnerId();
+    }
+
+    private static boolean sameOwner(OwnerRef ref, Object other) {
+        if (!(other instanceof OwnerRef)) {
+            return false;
+        }
+        final Object ownerId = ref.getOwnerId();
+        final Object otherOwnerId = ((OwnerRef) other).getOwnerId();
+        if (ownerId != null || otherOwnerId != null) {
+            return ownerId != null && ownerId.equals(otherOwnerId);
+        }
+        final RenderedImage owner = ref.getOwner();
+        return owner != null && owner == ((OwnerRef) other).getOwner();
+    }
+
+    private static int hash(RenderedImage owner, Object ownerId) {
+        return ownerId != null ? ownerId.hashCode() : System.identityHashCode(owner);
+    }
+
+    private static final class OwnerKey extends WeakReference<RenderedImage> implements OwnerRef {
+        private final Object ownerId;
+        private final int hash;
+
+        private OwnerKey(RenderedImage owner, ReferenceQueue<RenderedImage> queue) {
+            super(owner, queue);
+            ownerId = TileKey.getOwnerId(owner);
+            hash = hash(owner, ownerId);
+        }
+
+        @Override
+        public RenderedImage getOwner() {
+            return get();
+        }
+
+        @Override
+        public Object getOwnerId() {
+            return ownerId;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || sameOwner(this, obj);
+        }
+    }
+
+    private static final class LookupKey implements OwnerRef {
+        private RenderedImage owner;
+        private Object ownerId;
+        private int hash;
+
+        private void setOwner(RenderedImage owner) {
+            this.owner = owner;
+            this.ownerId = owner != null ? TileKey.getOwnerId(owner) : null;
+            this.hash = owner != null ? hash(owner, ownerId) : 0;
+        }
+
+        @Override
+        public RenderedImage getOwner() {
+            return owner;
+        }
+
+        @Override
+        public Object getOwnerId() {
+            return ownerId;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || sameOwner(this, obj);
+        }
+    }
+}
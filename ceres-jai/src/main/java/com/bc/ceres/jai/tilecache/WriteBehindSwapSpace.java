@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.image.RenderedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A swap space which stores tiles asynchronously. Tiles to be stored are put into a bounded
+ * queue and written to the delegate swap space by a background thread, so that a tile cache
+ * swapping out tiles does not have to wait for disk I/O.
+ * <p/>
+ * Tiles waiting to be written are still visible: they are restored from the queue
+ * instead of the delegate. If the queue is full, {@link #storeTile(MemoryTile)} blocks
+ * until the writer has caught up.
+ * <p/>
+ * If the delegate fails to store a tile, the tile is kept in memory, so that it can still be
+ * restored, and all tiles stored afterwards are written synchronously, so that further failures
+ * are reported to the caller.
+ * <p/>
+ * The writer is a daemon thread which runs until {@link #dispose()} is called.
+ */
+public class WriteBehindSwapSpace implements SwapSpace {
+
+    /**
+     * The default number of tiles which may wait to be written.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+    private final SwapSpace delegate;
+    private final Logger logger;
+    private final BlockingQueue<MemoryTile> queue;
+    private final ConcurrentHashMap<Object, MemoryTile> pendingTiles;
+    private final ConcurrentHashMap<Object, MemoryTile> failedTiles;
+    private final Thread writer;
+    private MemoryTile writingTile;
+    private volatile boolean disposed;
+    private volatile boolean storeFailed;
+
+    public WriteBehindSwapSpace(SwapSpace delegate) {
+        this(delegate, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate      The swap space to which tiles are written.
+     * @param queueCapacity The number of tiles which may wait to be written.
+     */
+    public WriteBehindSwapSpace(SwapSpace delegate, int queueCapacity) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity <= 0");
+        }
+        this.delegate = delegate;
+        this.logger = Logger.getLogger(System.getProperty("ceres.context", "ceres"));
+        this.queue = new ArrayBlockingQueue<MemoryTile>(queueCapacity);
+        this.pendingTiles = new ConcurrentHashMap<Object, MemoryTile>(2 * queueCapacity);
+        this.failedTiles = new ConcurrentHashMap<Object, MemoryTile>();
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeTiles();
+            }
+        }, "ceres-jai-swap-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public SwapSpace getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return The number of tiles waiting to be written.
+     */
+    public int getPendingTileCount() {
+        return pendingTiles.size();
+    }
+
+    /**
+     * @return The number of tiles kept in memory because the delegate failed to store them.
+     */
+    public int getFailedTileCount() {
+        return failedTiles.size();
+    }
+
+    /**
+     * @return {@code true} if the delegate has failed to store a tile, so that tiles are now written synchronously.
+     */
+    public boolean isStoreFailed() {
+        return storeFailed;
+    }
+
+    /**
+     * Queues the given tile for being written to the delegate swap space.
+     * Blocks if the queue is full. If the delegate has failed to store a tile before,
+     * or if this swap space has been disposed, the tile is written synchronously.
+     *
+     * @param memoryTile The tile.
+     * @return {@code true} if the tile has been queued or stored, {@code false} if the delegate failed to store it.
+     */
+    @Override
+    public boolean storeTile(MemoryTile memoryTile) {
+        failedTiles.remove(memoryTile.getKey());
+        if (disposed || storeFailed) {
+            return delegate.storeTile(memoryTile);
+        }
+        if (pendingTiles.putIfAbsent(memoryTile.getKey(), memoryTile) != null) {
+            // tiles are immutable, so the pending one is as good as this one
+            return true;
+        }
+        try {
+            queue.put(memoryTile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingTiles.remove(memoryTile.getKey(), memoryTile);
+            return delegate.storeTile(memoryTile);
+        }
+        return true;
+    }
+
+    @Override
+    public MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+        final Object key = TileKey.lookup(owner, tileX, tileY);
+        MemoryTile pendingTile = pendingTiles.get(key);
+        if (pendingTile == null) {
+            pendingTile = failedTiles.get(key);
+        }
+        if (pendingTile != null) {
+            return new MemoryTile(owner, tileX, tileY, pendingTile.getTile(), pendingTile.getTileCacheMetric());
+        }
+        return delegate.restoreTile(owner, tileX, tileY);
+    }
+
+    @Override
+    public boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
+        // If the tile is currently being written, the writer deletes it afterwards.
+        final Object key = TileKey.lookup(owner, tileX, tileY);
+        final MemoryTile pendingTile = pendingTiles.remove(key);
+        final MemoryTile failedTile = failedTiles.remove(key);
+        final boolean deleted = delegate.deleteTile(owner, tileX, tileY);
+        if (pendingTile != null) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        return deleted || pendingTile != null || failedTile != null;
+    }
+
+    /**
+     * Waits until all queued tiles have been written.
+     *
+     * @throws InterruptedException If the current thread has been interrupted while waiting.
+     */
+    public synchronized void flush() throws InterruptedException {
+        while (!pendingTiles.isEmpty() || writingTile != null) {
+            wait();
+        }
+    }
+
+    /**
+     * Writes all queued tiles and stops the writer thread.
+     * Tiles stored afterwards are written synchronously.
+     * Tiles which could not be stored remain in memory.
+     */
+    public void dispose() {
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        disposed = true;
+        writer.interrupt();
+    }
+
+    private void writeTiles() {
+        try {
+            while (!disposed) {
+                writeTile(queue.take());
+            }
+        } catch (InterruptedException e) {
+            // disposed
+        }
+    }
+
+    private void writeTile(MemoryTile memoryTile) {
+        final Object key = memoryTile.getKey();
+        synchronized (this) {
+            if (pendingTiles.get(key) != memoryTile) {
+                // deleted while waiting
+                return;
+            }
+            writingTile = memoryTile;
+        }
+        boolean stored = false;
+        try {
+            stored = delegate.storeTile(memoryTile);
+            if (!stored) {
+                logger.severe("Tile NOT stored, kept in memory: " + memoryTile.getKeyAsString());
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Tile NOT stored, kept in memory: " + memoryTile.getKeyAsString(), e);
+        }
+        try {
+            if (!stored) {
+                // still restorable while it is moved from the pending to the failed tiles
+                failedTiles.put(key, memoryTile);
+                storeFailed = true;
+            }
+            if (!pendingTiles.remove(key, memoryTile)) {
+                // deleted while being written
+                if (stored) {
+                    final RenderedImage owner = memoryTile.getOwner();
+                    if (owner != null) {
+                        delegate.deleteTile(owner, memoryTile.getTileX(), memoryTile.getTileY());
+                    }
+                } else {
+                    failedTiles.remove(key, memoryTile);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                writingTile = null;
+                notifyAll();
+            }
+        }
+    }
+}
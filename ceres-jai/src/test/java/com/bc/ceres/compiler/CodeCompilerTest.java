@@ -91,4 +91,42 @@ public final class CodeCompilerTest extends TestCase {
 //        assertEquals(0.5 * (3 + 8), function.eval(2), 1e-10);
     }
 
-}
\ No newline at end of file
+    public void testCompileInMemory() throws Exception {
+        CodeCompiler compiler = new CodeCompiler(new File[0], new MemoryClassLoader(getClass().getClassLoader()));
+        try {
+            Class<?>[] classes = compiler.compile(
+                    new Code("com.bc.ceres.compiler.test.A", "package com.bc.ceres.compiler.test; public class A { public String toString() { return \"A\" + new B(); } }"),
+                    new Code("com.bc.ceres.compiler.test.B", "package com.bc.ceres.compiler.test; public class B { public String toString() { return \"B\"; } }"));
+            assertEquals(2, classes.length);
+            assertEquals("AB", classes[0].newInstance().toString());
+            assertEquals("B", classes[1].newInstance().toString());
+
+            try {
+                compiler.compile("com.bc.ceres.compiler.test", "C", "package com.bc.ceres.compiler.test; class C { int x = y; }");
+                fail("CodeCompilerException expected");
+            } catch (CodeCompilerException e) {
+                assertFalse(e.getDiagnostics().isEmpty());
+                assertTrue(e.getMessage().contains("com.bc.ceres.compiler.test.C:1:"));
+            }
+        } finally {
+            compiler.dispose();
+        }
+    }
+
+    public void testCompileIntoGivenClassLoader() throws Exception {
+        CodeCompiler compiler = new CodeCompiler(new File[0], new MemoryClassLoader(getClass().getClassLoader()));
+        try {
+            MemoryClassLoader classLoader1 = new MemoryClassLoader(getClass().getClassLoader());
+            MemoryClassLoader classLoader2 = new MemoryClassLoader(getClass().getClassLoader());
+            Code code = new Code("com.bc.ceres.compiler.test.D", "package com.bc.ceres.compiler.test; public class D { }");
+            Class<?> class1 = compiler.compile(classLoader1, code)[0];
+            Class<?> class2 = compiler.compile(classLoader2, code)[0];
+            assertSame(classLoader1, class1.getClassLoader());
+            assertSame(classLoader2, class2.getClassLoader());
+            assertNotSame(class1, class2);
+            assertEquals(class1.getName(), class2.getName());
+        } finally {
+            compiler.dispose();
+        }
+    }
+}
@@ -29,7 +29,10 @@ import javax.media.jai.JAI;
 import javax.media.jai.OpImage;
 import javax.media.jai.ParameterBlockJAI;
 import javax.media.jai.RenderedOp;
+import javax.media.jai.TiledImage;
 import javax.media.jai.operator.ConstantDescriptor;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.Raster;
@@ -58,6 +61,7 @@ public class ExpressionDescriptorTest extends TestCase {
     private static final double N3 = -3.6;
     private static final float N2 = 2.7f;
     private static final int N1 = 32;
+    private static final float[] M = {1.5f, -2.25f, 7.0f};
 
     static {
         String localRepositoryPath = System.getProperty("m2repo");
@@ -106,6 +110,28 @@ public class ExpressionDescriptorTest extends TestCase {
         testDestinationImage(image, S1 * S2 / S3 % S4 + S5 - S6);
     }
 
+    public void testCompiledClassIsReused() {
+        ExpressionCRIF crif = new ExpressionCRIF();
+        RenderedImage image1 = crif.create(createParameterBlock(DataBuffer.TYPE_DOUBLE, "S5 * S6 + 1"), null);
+        RenderedImage image2 = crif.create(createParameterBlock(DataBuffer.TYPE_DOUBLE, " S5 * S6  +  1"), null);
+        RenderedImage image3 = crif.create(createParameterBlock(DataBuffer.TYPE_FLOAT, "S5 * S6 + 1"), null);
+        assertSame(image1.getClass(), image2.getClass());
+        assertNotSame(image1.getClass(), image3.getClass());
+        testDestinationImage(image2, S5 * S6 + 1);
+    }
+
+    public void testMultiBandSources() {
+        // the samples of a pixel interleaved source are accessed with a pixel stride of 3
+        RenderedImage interleavedSource = createSourceImage(new Float[]{M[0], M[1], M[2]});
+        assertEquals(3, ((ComponentSampleModel) interleavedSource.getSampleModel()).getPixelStride());
+        testMultiBandDestinationImage(interleavedSource);
+
+        // the samples of a banded source are accessed by the unit-stride loop
+        RenderedImage bandedSource = createBandedSourceImage(M);
+        assertEquals(1, ((ComponentSampleModel) bandedSource.getSampleModel()).getPixelStride());
+        testMultiBandDestinationImage(bandedSource);
+    }
+
     /**
      * Tests the ExpressionOpImage code that has been created using the testCreate() method.
      */
@@ -122,7 +148,7 @@ public class ExpressionDescriptorTest extends TestCase {
         testDestinationImage(opImage, S1 * S2 / S3 % S4 + S5 - S6);
     }
 
-    static ExpressionCompilerConfig createExpressionCompilerConfig() {
+    public static ExpressionCompilerConfig createExpressionCompilerConfig() {
         File m2repo = new File(M2REPO);
         if (!m2repo.exists()) {
             fail("Maven2 repository not found at " + m2repo + ".\nPlease adjust system property 'm2repo'.");
@@ -140,8 +166,12 @@ public class ExpressionDescriptorTest extends TestCase {
     }
 
     private static ParameterBlockJAI createParameterBlock(int dataType, String expression) {
+        return createParameterBlock(createSourceMap(), dataType, expression);
+    }
+
+    private static ParameterBlockJAI createParameterBlock(Map<String, RenderedImage> sourceMap, int dataType, String expression) {
         ParameterBlockJAI args = new ParameterBlockJAI("Expression");
-        args.addSource(createSourceMap());
+        args.addSource(sourceMap);
         args.setParameter("dataType", dataType);
         args.setParameter("expression", expression);
         args.setParameter("compilerConfig", createExpressionCompilerConfig());
@@ -198,10 +228,40 @@ public class ExpressionDescriptorTest extends TestCase {
         assertEquals(expectedSample, data.getSample(3, 3, 0));
     }
 
+    private static void testMultiBandDestinationImage(RenderedImage multiBandSource) {
+        HashMap<String, RenderedImage> sourceMap = new HashMap<String, RenderedImage>();
+        sourceMap.put("M", multiBandSource);
+        sourceMap.put("S5", createSourceImage(new Float[]{S5}));
+        RenderedOp op = JAI.create("Expression", createParameterBlock(sourceMap, DataBuffer.TYPE_DOUBLE, "M * S5 + 1"), null);
+
+        // the single-band source contributes its only band to every band
+        assertEquals(3, op.getSampleModel().getNumBands());
+        assertTrue(op.getSampleModel() instanceof BandedSampleModel);
+        Raster data = op.getData();
+        for (int b = 0; b < 3; b++) {
+            double expectedSample = M[b] * S5 + 1;
+            assertEquals(expectedSample, data.getSampleDouble(0, 0, b), 1e-10);
+            assertEquals(expectedSample, data.getSampleDouble(1, 2, b), 1e-10);
+            assertEquals(expectedSample, data.getSampleDouble(3, 4, b), 1e-10);
+        }
+    }
+
     static RenderedOp createSourceImage(Number[] v) {
         return ConstantDescriptor.create((float) W, (float) H, v, null);
     }
 
+    static RenderedImage createBandedSourceImage(float[] v) {
+        TiledImage image = new TiledImage(0, 0, W, H, 0, 0, new BandedSampleModel(DataBuffer.TYPE_FLOAT, W, H, v.length), null);
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                for (int b = 0; b < v.length; b++) {
+                    image.setSample(x, y, b, v[b]);
+                }
+            }
+        }
+        return image;
+    }
+
     static ImageLayout createImageLayout() {
         ImageLayout imageLayout = new ImageLayout();
         imageLayout.setWidth(W);
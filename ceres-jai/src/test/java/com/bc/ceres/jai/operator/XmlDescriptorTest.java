@@ -18,13 +18,17 @@ package com.bc.ceres.jai.operator;
 
 import junit.framework.TestCase;
 
+import javax.media.jai.JAI;
+import javax.media.jai.ParameterBlockJAI;
 import javax.media.jai.RenderedOp;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.Map;
 
 public class XmlDescriptorTest extends TestCase {
     public void testInvalidArgs() throws URISyntaxException {
@@ -66,6 +70,81 @@ public class XmlDescriptorTest extends TestCase {
         assertEquals(50 * (4 + 2), data.getSample(1, 1, 0));
     }
 
+    public void testIdentityOperations() throws URISyntaxException {
+        HashMap<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put("source0", SourceImageFactory.createOneBandedUShortImage(2, 2, new short[]{1, 2, 3, 4}));
+        RenderedOp op = XmlDescriptor.create(getResource("identity.jai.xml"), configuration, null);
+        assertNotNull(op);
+
+        Raster data = op.getData();
+        assertEquals(DataBuffer.TYPE_USHORT, data.getSampleModel().getDataType());
+        assertEquals(1, data.getSample(0, 0, 0));
+        assertEquals(2, data.getSample(1, 0, 0));
+        assertEquals(3, data.getSample(0, 1, 0));
+        assertEquals(4, data.getSample(1, 1, 0));
+    }
+
+    public void testFusedOperations() throws URISyntaxException {
+        RenderedImage source = SourceImageFactory.createOneBandedFloatImage(2, 2, new float[]{0.1F, 0.2F, 0.3F, 0.4F});
+        Map<String, RenderedImage> sources = new HashMap<String, RenderedImage>();
+        sources.put("s", source);
+        HashMap<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put("sources", sources);
+        configuration.put("compilerConfig", ExpressionDescriptorTest.createExpressionCompilerConfig());
+        RenderedOp op = XmlDescriptor.create(getResource("fused.jai.xml"), configuration, null);
+        assertNotNull(op);
+
+        // a single expression computed from the source
+        RenderedOp rendering = (RenderedOp) op.getRendering();
+        assertEquals("Expression", rendering.getOperationName());
+        assertSame(source, ((Map) rendering.getSourceObject(0)).get("s"));
+
+        ParameterBlockJAI expression = new ParameterBlockJAI("Expression");
+        expression.addSource(sources);
+        expression.setParameter("dataType", DataBuffer.TYPE_FLOAT);
+        expression.setParameter("expression", "s * 2.5 - 1");
+        expression.setParameter("compilerConfig", configuration.get("compilerConfig"));
+        ParameterBlockJAI rescale = new ParameterBlockJAI("Rescale");
+        rescale.addSource(JAI.create("Expression", expression));
+        rescale.setParameter("constants", new double[]{0.5});
+        rescale.setParameter("offsets", new double[]{3.0});
+        ParameterBlockJAI format = new ParameterBlockJAI("Format");
+        format.addSource(JAI.create("Rescale", rescale));
+        format.setParameter("dataType", DataBuffer.TYPE_DOUBLE);
+        RenderedOp unfused = ReinterpretDescriptor.create(JAI.create("Format", format), 0.1, 0.2,
+                                                          ReinterpretDescriptor.EXPONENTIAL, ReinterpretDescriptor.AWT,
+                                                          null);
+
+        Raster expected = unfused.getData();
+        Raster data = op.getData();
+        assertEquals(DataBuffer.TYPE_DOUBLE, data.getSampleModel().getDataType());
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 2; x++) {
+                // the expression uses Math.exp, the operation FastMath.exp, which may differ in the last bit
+                double value = expected.getSampleDouble(x, y, 0);
+                assertEquals(value, data.getSampleDouble(x, y, 0), 1.0e-6 * value);
+            }
+        }
+    }
+
+    public void testSharedOperations() throws URISyntaxException {
+        HashMap<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put("source0", SourceImageFactory.createOneBandedUShortImage(2, 2, new short[]{1, 2, 3, 4}));
+        RenderedOp op = XmlDescriptor.create(getResource("shared.jai.xml"), configuration, null);
+        assertNotNull(op);
+
+        // the equal operations are created once
+        RenderedOp rendering = (RenderedOp) op.getRendering();
+        assertEquals("Add", rendering.getOperationName());
+        assertSame(rendering.getSourceObject(0), rendering.getSourceObject(1));
+
+        Raster data = op.getData();
+        assertEquals(4 * 1, data.getSample(0, 0, 0));
+        assertEquals(4 * 2, data.getSample(1, 0, 0));
+        assertEquals(4 * 3, data.getSample(0, 1, 0));
+        assertEquals(4 * 4, data.getSample(1, 1, 0));
+    }
+
     private URI getResource(String name) throws URISyntaxException {
         URL url = getClass().getResource(name);
         assertNotNull(url);
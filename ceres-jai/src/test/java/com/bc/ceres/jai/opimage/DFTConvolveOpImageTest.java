@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.opimage;
+
+import junit.framework.TestCase;
+
+import javax.media.jai.BorderExtender;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.KernelJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TiledImage;
+import java.awt.Rectangle;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.util.Random;
+
+public class DFTConvolveOpImageTest extends TestCase {
+
+    private static final int W = 101;
+    private static final int H = 77;
+    private static final int BLOCK_SIZE = 16;
+
+    public void testTilesMatchSpatialConvolution() {
+        // 12 x 12 destination samples per block, so that blocks straddle the 40 x 30 tiles
+        final KernelJAI kernel = createKernel(5, 5, 1, 3, 1);
+        final TiledImage source = createSource(DataBuffer.TYPE_FLOAT, 2);
+        final DFTConvolveOpImage image = createImage(source, kernel, 40, 30);
+        assertEquals(3, image.getNumXTiles());
+        assertEquals(3, image.getNumYTiles());
+
+        for (int tileY = 0; tileY < image.getNumYTiles(); tileY++) {
+            for (int tileX = 0; tileX < image.getNumXTiles(); tileX++) {
+                assertConvolved(source, kernel, image.getTile(tileX, tileY), 1.0e-5);
+            }
+        }
+    }
+
+    public void testKernelLargerThanHalfBlock() {
+        // blocks are enlarged to 32 x 16 samples
+        final KernelJAI kernel = createKernel(9, 3, 8, 0, 2);
+        final TiledImage source = createSource(DataBuffer.TYPE_DOUBLE, 1);
+        final DFTConvolveOpImage image = createImage(source, kernel, 64, 64);
+
+        assertConvolved(source, kernel, image.getData(), 1.0e-6);
+    }
+
+    public void testDataOfImageEdges() {
+        final KernelJAI kernel = createKernel(7, 7, 3, 3, 3);
+        final TiledImage source = createSource(DataBuffer.TYPE_FLOAT, 1);
+        final DFTConvolveOpImage image = createImage(source, kernel, 32, 32);
+
+        assertConvolved(source, kernel, image.getData(new Rectangle(0, 0, W, 4)), 1.0e-5);
+        assertConvolved(source, kernel, image.getData(new Rectangle(0, 0, 4, H)), 1.0e-5);
+        assertConvolved(source, kernel, image.getData(new Rectangle(W - 5, H - 5, 5, 5)), 1.0e-5);
+    }
+
+    public void testKernelSpectrumIsReused() {
+        final KernelJAI kernel = createKernel(5, 5, 2, 2, 4);
+        final FFT fft = new FFT(BLOCK_SIZE);
+        final double[][] spectrum = DFTConvolveOpImage.getKernelSpectrum(kernel, fft, fft);
+        assertSame(spectrum, DFTConvolveOpImage.getKernelSpectrum(createKernel(5, 5, 2, 2, 4), fft, fft));
+        assertNotSame(spectrum, DFTConvolveOpImage.getKernelSpectrum(createKernel(5, 5, 1, 2, 4), fft, fft));
+        assertNotSame(spectrum, DFTConvolveOpImage.getKernelSpectrum(kernel, fft, new FFT(2 * BLOCK_SIZE)));
+
+        // tiles computed by different images with the same kernel share the spectrum
+        final TiledImage source = createSource(DataBuffer.TYPE_FLOAT, 1);
+        final Raster tile1 = createImage(source, kernel, 40, 30).getTile(1, 1);
+        final Raster tile2 = createImage(source, createKernel(5, 5, 2, 2, 4), 40, 30).getTile(1, 1);
+        assertSame(spectrum, DFTConvolveOpImage.getKernelSpectrum(kernel, fft, fft));
+        assertConvolved(source, kernel, tile1, 1.0e-5);
+        final float[] samples1 = tile1.getSamples(40, 30, 40, 30, 0, (float[]) null);
+        final float[] samples2 = tile2.getSamples(40, 30, 40, 30, 0, (float[]) null);
+        for (int i = 0; i < samples1.length; i++) {
+            assertEquals(samples1[i], samples2[i], 0.0F);
+        }
+    }
+
+    private static DFTConvolveOpImage createImage(TiledImage source, KernelJAI kernel, int tileWidth, int tileHeight) {
+        final ImageLayout layout = new ImageLayout();
+        layout.setTileGridXOffset(0);
+        layout.setTileGridYOffset(0);
+        layout.setTileWidth(tileWidth);
+        layout.setTileHeight(tileHeight);
+        return new DFTConvolveOpImage(source,
+                                      BorderExtender.createInstance(BorderExtender.BORDER_ZERO),
+                                      null,
+                                      layout,
+                                      kernel,
+                                      BLOCK_SIZE);
+    }
+
+    private static TiledImage createSource(int dataType, int numBands) {
+        final SampleModel sampleModel = new BandedSampleModel(dataType, 32, 32, numBands);
+        final TiledImage source = new TiledImage(0, 0, W, H, 0, 0, sampleModel, PlanarImage.createColorModel(sampleModel));
+        final Random random = new Random(42);
+        for (int b = 0; b < numBands; b++) {
+            for (int y = 0; y < H; y++) {
+                for (int x = 0; x < W; x++) {
+                    source.setSample(x, y, b, random.nextDouble());
+                }
+            }
+        }
+        return source;
+    }
+
+    private static KernelJAI createKernel(int width, int height, int xOrigin, int yOrigin, long seed) {
+        final Random random = new Random(seed);
+        final float[] data = new float[width * height];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = 0.1F + random.nextFloat();
+        }
+        return new KernelJAI(width, height, xOrigin, yOrigin, data);
+    }
+
+    /**
+     * Compares the given raster with dst(x,y) = sum(src(x - i, y - j) * kernel(xOrigin + i, yOrigin + j)),
+     * computed in the spatial domain with the normalized kernel and a zero-padded source.
+     */
+    private static void assertConvolved(TiledImage source, KernelJAI kernel, Raster actual, double eps) {
+        final float[] data = kernel.getKernelData();
+        double sum = 0.0;
+        for (float value : data) {
+            sum += value;
+        }
+        final int kw = kernel.getWidth();
+        final int kh = kernel.getHeight();
+        final Rectangle bounds = actual.getBounds().intersection(source.getBounds());
+        for (int b = 0; b < actual.getNumBands(); b++) {
+            for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+                for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
+                    double expected = 0.0;
+                    for (int ky = 0; ky < kh; ky++) {
+                        for (int kx = 0; kx < kw; kx++) {
+                            final int sx = x - (kx - kernel.getXOrigin());
+                            final int sy = y - (ky - kernel.getYOrigin());
+                            if (sx >= 0 && sy >= 0 && sx < W && sy < H) {
+                                expected += source.getSampleDouble(sx, sy, b) * data[ky * kw + kx] / sum;
+                            }
+                        }
+                    }
+                    assertEquals("(" + x + "," + y + "," + b + ")", expected, actual.getSampleDouble(x, y, b), eps);
+                }
+            }
+        }
+    }
+}
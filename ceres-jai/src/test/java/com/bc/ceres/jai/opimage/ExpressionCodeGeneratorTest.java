@@ -24,6 +24,8 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.bc.ceres.jai.operator.ExpressionDescriptorTest;
 import com.bc.ceres.jai.opimage.ExpressionCode;
@@ -52,6 +54,22 @@ public class ExpressionCodeGeneratorTest extends TestCase {
         write(code);
     }
 
+    public void testHoistInvariants() {
+        Map<String, String> invariants = new LinkedHashMap<String, String>();
+        String code = ExpressionCodeGenerator.hoistInvariants("_0 * sin(PI / 4) + exp(_1) - pow(sin(PI / 4), 2.0e-1) + cos(2)", invariants);
+        assertEquals("_0 * _c0 + exp(_1) - _c1 + _c2", code);
+        assertEquals(3, invariants.size());
+        assertEquals("_c0", invariants.get("sin(PI / 4)"));
+        assertEquals("_c1", invariants.get("pow(sin(PI / 4), 2.0e-1)"));
+        assertEquals("_c2", invariants.get("cos(2)"));
+
+        invariants.clear();
+        code = ExpressionCodeGenerator.hoistInvariants("sin(x) + abs(-1) + random() + Math.log(E) + log(_0 * 1e+5)", invariants);
+        assertEquals("sin(x) + abs(-1) + random() + _c0 + log(_0 * 1e+5)", code);
+        assertEquals(1, invariants.size());
+        assertEquals("_c0", invariants.get("Math.log(E)"));
+    }
+
     static void write(Code code) {
         try {
             File file = new File("./src/test/java/" + code.getClassName().replace('.', '/') + ".java");
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.opimage;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class FFTTest extends TestCase {
+
+    public void testSize() {
+        assertEquals(1, new FFT(1).getSize());
+        assertEquals(256, new FFT(256).getSize());
+        try {
+            new FFT(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            new FFT(12);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testTransform() {
+        final int n = 16;
+        final Random random = new Random(5);
+        final double[] re = new double[n + 3];
+        final double[] im = new double[n + 3];
+        for (int i = 0; i < re.length; i++) {
+            re[i] = random.nextDouble();
+            im[i] = random.nextDouble();
+        }
+        final double[] re0 = re.clone();
+        final double[] im0 = im.clone();
+
+        final FFT fft = new FFT(n);
+        fft.transform(re, im, 3, false);
+        for (int k = 0; k < n; k++) {
+            double sumRe = 0.0;
+            double sumIm = 0.0;
+            for (int i = 0; i < n; i++) {
+                final double a = -2.0 * Math.PI * i * k / n;
+                sumRe += re0[3 + i] * Math.cos(a) - im0[3 + i] * Math.sin(a);
+                sumIm += re0[3 + i] * Math.sin(a) + im0[3 + i] * Math.cos(a);
+            }
+            assertEquals(sumRe, re[3 + k], 1.0e-12);
+            assertEquals(sumIm, im[3 + k], 1.0e-12);
+        }
+
+        fft.transform(re, im, 3, true);
+        for (int i = 0; i < re.length; i++) {
+            final double scale = i < 3 ? 1.0 : n;
+            assertEquals(re0[i], re[i] / scale, 1.0e-12);
+            assertEquals(im0[i], im[i] / scale, 1.0e-12);
+        }
+    }
+
+    public void testTransform2D() {
+        final FFT rowFFT = new FFT(8);
+        final FFT columnFFT = new FFT(4);
+        final double[] re = new double[8 * 4];
+        final double[] im = new double[8 * 4];
+        re[2 * 8 + 1] = 1.0;
+
+        FFT.transform(rowFFT, columnFFT, re, im, false);
+        // the spectrum of a shifted impulse
+        for (int v = 0; v < 4; v++) {
+            for (int u = 0; u < 8; u++) {
+                final double a = -2.0 * Math.PI * (u / 8.0 + 2.0 * v / 4.0);
+                assertEquals(Math.cos(a), re[v * 8 + u], 1.0e-12);
+                assertEquals(Math.sin(a), im[v * 8 + u], 1.0e-12);
+            }
+        }
+
+        FFT.transform(rowFFT, columnFFT, re, im, true);
+        for (int i = 0; i < re.length; i++) {
+            assertEquals(i == 2 * 8 + 1 ? 32.0 : 0.0, re[i], 1.0e-12);
+            assertEquals(0.0, im[i], 1.0e-12);
+        }
+    }
+}
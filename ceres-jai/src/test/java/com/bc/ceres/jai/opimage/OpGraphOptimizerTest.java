@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.opimage;
+
+import com.bc.ceres.jai.ExpressionCompilerConfig;
+import com.bc.ceres.jai.operator.ExpressionDescriptorTest;
+import com.bc.ceres.jai.operator.ReinterpretDescriptor;
+import com.bc.ceres.jai.operator.ScalingType;
+import junit.framework.TestCase;
+
+import javax.media.jai.JAI;
+import javax.media.jai.ParameterBlockJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RenderedOp;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.awt.image.renderable.ParameterBlock;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class OpGraphOptimizerTest extends TestCase {
+
+    public void testSampleValue() {
+        assertEquals("((byte) (x) & 0xff)", OpGraphOptimizer.getSampleValue(DataBuffer.TYPE_BYTE, "(x)", true));
+        assertEquals("((byte) (x))", OpGraphOptimizer.getSampleValue(DataBuffer.TYPE_BYTE, "(x)", false));
+        assertEquals("((short) (x) & 0xffff)", OpGraphOptimizer.getSampleValue(DataBuffer.TYPE_USHORT, "(x)", false));
+        assertEquals("((short) (x))", OpGraphOptimizer.getSampleValue(DataBuffer.TYPE_SHORT, "(x)", true));
+        assertEquals("((int) (x))", OpGraphOptimizer.getSampleValue(DataBuffer.TYPE_INT, "(x)", true));
+        assertEquals("((float) (x))", OpGraphOptimizer.getSampleValue(DataBuffer.TYPE_FLOAT, "(x)", true));
+        assertEquals("((double) (x))", OpGraphOptimizer.getSampleValue(DataBuffer.TYPE_DOUBLE, "(x)", true));
+    }
+
+    public void testFuseExpressions() {
+        final RenderedImage a = new BufferedImage(2, 2, BufferedImage.TYPE_BYTE_GRAY);
+        final RenderedImage b = new BufferedImage(2, 2, BufferedImage.TYPE_BYTE_GRAY);
+        final RenderedImage c = new BufferedImage(2, 2, BufferedImage.TYPE_BYTE_GRAY);
+        final RenderedImage x = new BufferedImage(2, 2, BufferedImage.TYPE_BYTE_GRAY);
+
+        final Map<String, RenderedImage> innerSources = new LinkedHashMap<String, RenderedImage>();
+        innerSources.put("a", a);
+        innerSources.put("b", b);
+        final ParameterBlock innerBlock = new ParameterBlock();
+        innerBlock.addSource(innerSources);
+        innerBlock.add(DataBuffer.TYPE_FLOAT);
+        innerBlock.add("a * b");
+        final Map<RenderedImage, ParameterBlock> expressionBlocks = new IdentityHashMap<RenderedImage, ParameterBlock>();
+        expressionBlocks.put(x, innerBlock);
+
+        final Map<String, RenderedImage> sources = new LinkedHashMap<String, RenderedImage>();
+        sources.put("a", a);
+        sources.put("b", c);
+        final Map<String, RenderedImage> fusedSources = new LinkedHashMap<String, RenderedImage>();
+        assertNull(OpGraphOptimizer.fuseExpressions("a + b", sources, expressionBlocks, fusedSources));
+
+        sources.put("x", x);
+        fusedSources.clear();
+        final String expression = OpGraphOptimizer.fuseExpressions("sqrt(x) + a - b", sources, expressionBlocks, fusedSources);
+        // the name of the inner source 'b' is already used by the outer expression
+        assertEquals("sqrt(((float) (a * b_1))) + a - b", expression);
+        assertEquals(3, fusedSources.size());
+        assertSame(a, fusedSources.get("a"));
+        assertSame(c, fusedSources.get("b"));
+        assertSame(b, fusedSources.get("b_1"));
+
+        // the inner expression would be computed twice
+        fusedSources.clear();
+        assertNull(OpGraphOptimizer.fuseExpressions("x * x + a", sources, expressionBlocks, fusedSources));
+        assertEquals(3, fusedSources.size());
+        assertSame(x, fusedSources.get("x"));
+
+        sources.put("y", x);
+        fusedSources.clear();
+        assertNull(OpGraphOptimizer.fuseExpressions("x + y", sources, expressionBlocks, fusedSources));
+        assertSame(x, fusedSources.get("x"));
+        assertSame(x, fusedSources.get("y"));
+    }
+
+    public void testFusedChainsMatchUnfusedGraphs() {
+        final RenderedImage source = createSource();
+        final ExpressionCompilerConfig compilerConfig = ExpressionDescriptorTest.createExpressionCompilerConfig();
+        final ScalingType[] scalingTypes = {
+                ReinterpretDescriptor.LINEAR, ReinterpretDescriptor.EXPONENTIAL, ReinterpretDescriptor.LOGARITHMIC
+        };
+        for (ScalingType scalingType : scalingTypes) {
+            final RenderedImage fused = createChain(new OpGraphOptimizer(null), source, scalingType, compilerConfig);
+            final RenderedImage unfused = createChain(null, source, scalingType, compilerConfig);
+
+            // a single expression computed from the source
+            assertEquals("Expression", ((RenderedOp) fused).getOperationName());
+            final Map sources = (Map) ((RenderedOp) fused).getSourceObject(0);
+            assertEquals(1, sources.size());
+            assertSame(source, sources.values().iterator().next());
+            assertEquals("Expression", ((RenderedOp) unfused).getOperationName());
+            assertNotSame(source, ((Map) ((RenderedOp) unfused).getSourceObject(0)).values().iterator().next());
+
+            assertEqualData(unfused.getData(), fused.getData());
+        }
+    }
+
+    public void testEqualOperationsAreCreatedOnce() {
+        final RenderedImage source = createSource();
+        final ExpressionCompilerConfig compilerConfig = ExpressionDescriptorTest.createExpressionCompilerConfig();
+        final OpGraphOptimizer optimizer = new OpGraphOptimizer(null);
+
+        final RenderedImage image1 = optimizer.create("MultiplyConst", createMultiplyConst(source, 2.0));
+        final RenderedImage image2 = optimizer.create("multiplyconst", createMultiplyConst(source, 2.0));
+        final RenderedImage image3 = optimizer.create("MultiplyConst", createMultiplyConst(source, 3.0));
+        assertSame(image1, image2);
+        assertNotSame(image1, image3);
+
+        // a shared expression is not fused with its consumers
+        final RenderedImage expression1 = optimizer.create("Expression",
+                                                           createExpression(source, "s + 1", DataBuffer.TYPE_FLOAT, compilerConfig));
+        final RenderedImage expression2 = optimizer.create("Expression",
+                                                           createExpression(source, "s + 1", DataBuffer.TYPE_FLOAT, compilerConfig));
+        assertSame(expression1, expression2);
+        final RenderedImage rescaled = optimizer.create("Rescale", createRescale(expression1, 2.0, 1.0));
+        assertEquals("Rescale", ((RenderedOp) rescaled).getOperationName());
+        assertSame(expression1, ((RenderedOp) rescaled).getSourceObject(0));
+        final RenderedImage unfused = JAI.create("Rescale", createRescale(
+                JAI.create("Expression", createExpression(source, "s + 1", DataBuffer.TYPE_FLOAT, compilerConfig)), 2.0, 1.0));
+        assertEqualData(unfused.getData(), rescaled.getData());
+    }
+
+    /**
+     * Creates Reinterpret(Format(Rescale(Expression(source)))) followed by a further Expression,
+     * by the given optimizer or, if it is null, without optimization.
+     */
+    private static RenderedImage createChain(OpGraphOptimizer optimizer, RenderedImage source, ScalingType scalingType,
+                                             ExpressionCompilerConfig compilerConfig) {
+        RenderedImage image = create(optimizer, "Expression",
+                                     createExpression(source, "s * 2.5 - 1", DataBuffer.TYPE_FLOAT, compilerConfig));
+        image = create(optimizer, "Rescale", createRescale(image, 0.5, 3.0));
+
+        final ParameterBlockJAI format = new ParameterBlockJAI("Format");
+        format.addSource(image);
+        format.setParameter("dataType", DataBuffer.TYPE_DOUBLE);
+        image = create(optimizer, "Format", format);
+
+        final ParameterBlockJAI reinterpret = new ParameterBlockJAI("Reinterpret");
+        reinterpret.addSource(image);
+        reinterpret.setParameter(ReinterpretDescriptor.PARAM_NAME_FACTOR, 0.1);
+        reinterpret.setParameter(ReinterpretDescriptor.PARAM_NAME_OFFSET, 0.2);
+        reinterpret.setParameter(ReinterpretDescriptor.PARAM_NAME_SCALING_TYPE, scalingType);
+        reinterpret.setParameter(ReinterpretDescriptor.PARAM_NAME_INTERPRETATION_TYPE, ReinterpretDescriptor.AWT);
+        image = create(optimizer, "Reinterpret", reinterpret);
+
+        return create(optimizer, "Expression", createExpression(image, "s * s + 1", DataBuffer.TYPE_DOUBLE, compilerConfig));
+    }
+
+    private static RenderedImage create(OpGraphOptimizer optimizer, String opName, ParameterBlockJAI parameterBlock) {
+        return optimizer != null ? optimizer.create(opName, parameterBlock) : JAI.create(opName, parameterBlock);
+    }
+
+    private static ParameterBlockJAI createExpression(RenderedImage source, String expression, int dataType,
+                                                      ExpressionCompilerConfig compilerConfig) {
+        final Map<String, RenderedImage> sources = new LinkedHashMap<String, RenderedImage>();
+        sources.put("s", source);
+        final ParameterBlockJAI parameterBlock = new ParameterBlockJAI("Expression");
+        parameterBlock.addSource(sources);
+        parameterBlock.setParameter("dataType", dataType);
+        parameterBlock.setParameter("expression", expression);
+        parameterBlock.setParameter("compilerConfig", compilerConfig);
+        return parameterBlock;
+    }
+
+    private static ParameterBlockJAI createRescale(RenderedImage source, double constant, double offset) {
+        final ParameterBlockJAI parameterBlock = new ParameterBlockJAI("Rescale");
+        parameterBlock.addSource(source);
+        parameterBlock.setParameter("constants", new double[]{constant});
+        parameterBlock.setParameter("offsets", new double[]{offset});
+        return parameterBlock;
+    }
+
+    private static ParameterBlockJAI createMultiplyConst(RenderedImage source, double constant) {
+        final ParameterBlockJAI parameterBlock = new ParameterBlockJAI("MultiplyConst");
+        parameterBlock.addSource(source);
+        parameterBlock.setParameter("constants", new double[]{constant});
+        return parameterBlock;
+    }
+
+    private static RenderedImage createSource() {
+        final WritableRaster raster = Raster.createWritableRaster(new BandedSampleModel(DataBuffer.TYPE_FLOAT, 7, 5, 1), null);
+        for (int y = 0; y < raster.getHeight(); y++) {
+            for (int x = 0; x < raster.getWidth(); x++) {
+                raster.setSample(x, y, 0, 0.1F * x + 0.03F * y);
+            }
+        }
+        return new BufferedImage(PlanarImage.createColorModel(raster.getSampleModel()), raster, false, null);
+    }
+
+    private static void assertEqualData(Raster expected, Raster actual) {
+        assertEquals(expected.getBounds(), actual.getBounds());
+        assertEquals(expected.getSampleModel().getDataType(), actual.getSampleModel().getDataType());
+        for (int y = expected.getMinY(); y < expected.getMinY() + expected.getHeight(); y++) {
+            for (int x = expected.getMinX(); x < expected.getMinX() + expected.getWidth(); x++) {
+                final double value = expected.getSampleDouble(x, y, 0);
+                // float results of Rescale and the exponential scaling of Reinterpret may differ in the last bit
+                assertEquals(value, actual.getSampleDouble(x, y, 0), 1.0e-6 * Math.abs(value));
+            }
+        }
+    }
+}
@@ -103,8 +103,28 @@ public class ReinterpretOpImageTest {
                     DataBuffer.TYPE_FLOAT, Math.log10(-1.0 / 255.0 + 1.0));
     }
 
+    @Test
+    public void testRescaleWithLookupTable() {
+        // images with at least as many pixels as source values are rescaled by lookup
+        final RenderedImage byteImage = createSourceImage(256, 256, 64, 64, new Byte[]{-1});
+        testRescale(byteImage, 11.0, 1.0, LINEAR, AWT,
+                    DataBuffer.TYPE_FLOAT, 255 * 11.0 + 1.0);
+        testRescale(byteImage, 1.0 / 255.0, 1.0, EXPONENTIAL, INTERPRET_BYTE_SIGNED,
+                    DataBuffer.TYPE_FLOAT, Math.pow(10, -1.0 / 255.0 + 1.0));
+
+        final RenderedImage shortImage = createSourceImage(256, 256, 64, 64, new Short[]{-2});
+        testRescale(shortImage, 11.0, 1.0, LINEAR, AWT,
+                    DataBuffer.TYPE_FLOAT, -2 * 11.0 + 1.0);
+        testRescale(shortImage, -0.5, 1.0, LOGARITHMIC, AWT,
+                    DataBuffer.TYPE_FLOAT, Math.log10(-2 * -0.5 + 1.0));
+    }
+
     private void testRescale(Number[] sourcePixelValue, double factor, double offset, ScalingType scalingType, InterpretationType interpretationType, int expectedDataType, double expectedPixelValue) {
-        final RenderedImage target = ReinterpretOpImage.create(createSourceImage(sourcePixelValue), factor, offset, scalingType, interpretationType, null);
+        testRescale(createSourceImage(sourcePixelValue), factor, offset, scalingType, interpretationType, expectedDataType, expectedPixelValue);
+    }
+
+    private void testRescale(RenderedImage source, double factor, double offset, ScalingType scalingType, InterpretationType interpretationType, int expectedDataType, double expectedPixelValue) {
+        final RenderedImage target = ReinterpretOpImage.create(source, factor, offset, scalingType, interpretationType, null);
         assertEquals(expectedDataType, target.getSampleModel().getDataType());
         final Raster targetData = target.getData();
         assertEquals(expectedPixelValue, targetData.getSampleDouble(0, 0, 0), expectedDataType == DataBuffer.TYPE_DOUBLE ? 1e-10 : 1e-5);
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.opimage;
+
+import com.bc.ceres.jai.GeneralFilterFunction;
+import org.junit.Test;
+
+import java.awt.image.DataBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SlidingWindowFilterTest {
+
+    private static final int W = 23;
+    private static final int H = 17;
+
+    @Test
+    public void testCreate() {
+        assertNotNull(SlidingWindowFilter.create(new GeneralFilterFunction.Median(3, 3, 1, 1, null)));
+        assertNotNull(SlidingWindowFilter.create(new GeneralFilterFunction.Median(3, 3, 1, 1, createFull(3, 3))));
+        assertNull(SlidingWindowFilter.create(new GeneralFilterFunction.Median(3, 3, 1, 1, createDisk(3))));
+        assertNotNull(SlidingWindowFilter.create(new GeneralFilterFunction.Erosion(3, 3, 1, 1, createDisk(3))));
+    }
+
+    @Test
+    public void testRuns() {
+        assertNull(SlidingWindowFilter.getRuns(new GeneralFilterFunction.Min(3, 2, 1, 1, null)));
+        assertNull(SlidingWindowFilter.getRuns(new GeneralFilterFunction.Min(3, 2, 1, 1, createFull(3, 2))));
+        assertArrayEquals(new int[]{0, 1, 1, 1, 0, 3, 2, 1, 1},
+                          SlidingWindowFilter.getRuns(new GeneralFilterFunction.Min(3, 3, 1, 1, createDisk(3))));
+        assertArrayEquals(new int[]{0, 0, 1, 0, 2, 1},
+                          SlidingWindowFilter.getRuns(new GeneralFilterFunction.Min(3, 1, 1, 0, new boolean[]{true, false, true})));
+        assertArrayEquals(new int[0],
+                          SlidingWindowFilter.getRuns(new GeneralFilterFunction.Min(2, 2, 1, 1, new boolean[4])));
+    }
+
+    @Test
+    public void testStructuringElements() {
+        final boolean[][] elements = {createDisk(7), createDisk(15), createRing(5), new boolean[9]};
+        for (boolean[] se : elements) {
+            final int size = (int) Math.round(Math.sqrt(se.length));
+            final int o = size / 2;
+            assertEqualResults(new GeneralFilterFunction.Erosion(size, size, o, o, se), DataBuffer.TYPE_BYTE, 0.0F);
+            assertEqualResults(new GeneralFilterFunction.Dilation(size, size, o, o, se), DataBuffer.TYPE_FLOAT, 0.0F);
+            assertEqualResults(new GeneralFilterFunction.Mean(size, size, o, o, se), DataBuffer.TYPE_FLOAT, 1.0e-3F);
+            assertEqualResults(new GeneralFilterFunction.StdDev(size, size, o, o, se), DataBuffer.TYPE_USHORT, 1.0e-3F);
+        }
+    }
+
+    @Test
+    public void testMinMax() {
+        for (int[] size : getSizes()) {
+            final int fw = size[0];
+            final int fh = size[1];
+            assertEqualResults(new GeneralFilterFunction.Min(fw, fh, 0, 0, null), DataBuffer.TYPE_FLOAT, 0.0F);
+            assertEqualResults(new GeneralFilterFunction.Max(fw, fh, 0, 0, null), DataBuffer.TYPE_FLOAT, 0.0F);
+            assertEqualResults(new GeneralFilterFunction.Erosion(fw, fh, 0, 0, null), DataBuffer.TYPE_SHORT, 0.0F);
+            assertEqualResults(new GeneralFilterFunction.Dilation(fw, fh, 0, 0, null), DataBuffer.TYPE_BYTE, 0.0F);
+        }
+    }
+
+    @Test
+    public void testMedian() {
+        for (int[] size : getSizes()) {
+            final GeneralFilterFunction.Median median = new GeneralFilterFunction.Median(size[0], size[1], 0, 0, null);
+            assertEqualResults(median, DataBuffer.TYPE_BYTE, 0.0F);
+            assertEqualResults(median, DataBuffer.TYPE_SHORT, 0.0F);
+            assertEqualResults(median, DataBuffer.TYPE_USHORT, 0.0F);
+            assertEqualResults(median, DataBuffer.TYPE_FLOAT, 0.0F);
+        }
+    }
+
+    @Test
+    public void testMeanStdDev() {
+        for (int[] size : getSizes()) {
+            final int fw = size[0];
+            final int fh = size[1];
+            assertEqualResults(new GeneralFilterFunction.Mean(fw, fh, 0, 0, null), DataBuffer.TYPE_FLOAT, 1.0e-3F);
+            assertEqualResults(new GeneralFilterFunction.Mean(fw, fh, 0, 0, null), DataBuffer.TYPE_USHORT, 1.0e-3F);
+            assertEqualResults(new GeneralFilterFunction.StdDev(fw, fh, 0, 0, null), DataBuffer.TYPE_FLOAT, 1.0e-3F);
+            assertEqualResults(new GeneralFilterFunction.StdDev(fw, fh, 0, 0, null), DataBuffer.TYPE_SHORT, 1.0e-3F);
+        }
+    }
+
+    private static boolean[] createFull(int width, int height) {
+        final boolean[] se = new boolean[width * height];
+        Arrays.fill(se, true);
+        return se;
+    }
+
+    private static boolean[] createDisk(int size) {
+        final boolean[] se = new boolean[size * size];
+        final double r = size / 2;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                se[y * size + x] = (x - r) * (x - r) + (y - r) * (y - r) <= r * r;
+            }
+        }
+        return se;
+    }
+
+    private static boolean[] createRing(int size) {
+        final boolean[] se = createDisk(size);
+        se[se.length / 2] = false;
+        return se;
+    }
+
+    private static int[][] getSizes() {
+        return new int[][]{{1, 1}, {3, 3}, {4, 2}, {1, 5}, {7, 4}, {15, 15}};
+    }
+
+    private static void assertEqualResults(GeneralFilterFunction function, int dataType, float relativeError) {
+        final int fw = function.getWidth();
+        final int fh = function.getHeight();
+        final int sw = W + fw - 1;
+        final int sh = H + fh - 1;
+        final float[] src = createSamples(sw * sh, dataType);
+
+        final float[] expected = new float[W * H];
+        final float[] fdata = new float[fw * fh];
+        for (int j = 0; j < H; j++) {
+            for (int i = 0; i < W; i++) {
+                for (int y = 0; y < fh; y++) {
+                    System.arraycopy(src, (j + y) * sw + i, fdata, y * fw, fw);
+                }
+                expected[j * W + i] = function.filter(fdata);
+            }
+        }
+        final float[] actual = new float[W * H];
+        SlidingWindowFilter.create(function).filter(src.clone(), actual, W, H, dataType);
+
+        final String message = function.getClass().getSimpleName() + " " + fw + "x" + fh + ", type " + dataType;
+        for (int i = 0; i < expected.length; i++) {
+            final float delta = relativeError * Math.max(1.0F, Math.abs(expected[i]));
+            assertEquals(message + ", i=" + i, expected[i], actual[i], delta);
+        }
+    }
+
+    private static float[] createSamples(int n, int dataType) {
+        final Random random = new Random(n + dataType);
+        final float[] samples = new float[n];
+        for (int i = 0; i < n; i++) {
+            if (dataType == DataBuffer.TYPE_BYTE) {
+                samples[i] = random.nextInt(256);
+            } else if (dataType == DataBuffer.TYPE_USHORT) {
+                samples[i] = random.nextInt(65536);
+            } else if (dataType == DataBuffer.TYPE_SHORT) {
+                // few distinct values produce equal samples within windows
+                samples[i] = random.nextInt(16) * 4000 - 32000;
+            } else {
+                samples[i] = random.nextInt(10) == 0 ? Float.NaN : 100.0F * random.nextFloat() - 50.0F;
+            }
+        }
+        return samples;
+    }
+}
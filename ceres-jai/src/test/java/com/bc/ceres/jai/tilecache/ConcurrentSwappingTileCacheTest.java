@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import junit.framework.TestCase;
+
+import javax.media.jai.ComponentSampleModelJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TileCache;
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentSwappingTileCacheTest extends TestCase {
+
+    private static final long TILE_SIZE = 64 * 64 * 4;
+
+    public void testTileStoreRestore() {
+        TiledImage im0 = createImage(4, 4);
+        SwapSpaceMock swapSpaceMock = new SwapSpaceMock();
+        ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(3 * TILE_SIZE + 1, swapSpaceMock);
+
+        cache.add(im0, 0, 0, im0.getTile(0, 0));
+        cache.add(im0, 1, 0, im0.getTile(1, 0));
+        cache.add(im0, 0, 1, im0.getTile(0, 1));
+        assertEquals("", swapSpaceMock.trace);
+        assertEquals(3, cache.getCacheTileCount());
+        assertEquals(3 * TILE_SIZE, cache.getCacheMemoryUsed());
+
+        // Expected: 2 swapped tiles in CLOCK order. Two tiles, because memoryThreshold=75%
+        cache.add(im0, 3, 2, im0.getTile(3, 2));
+        assertEquals("" +
+                "storeTile(0-0-0);" +
+                "storeTile(0-1-0);",
+                     swapSpaceMock.trace);
+        assertEquals(2, cache.getCacheTileCount());
+        assertEquals(2 * TILE_SIZE, cache.getCacheMemoryUsed());
+
+        swapSpaceMock.trace = "";
+        assertNotNull(cache.getTile(im0, 0, 1));
+        assertEquals("", swapSpaceMock.trace);
+        assertEquals(1, cache.getCacheHitCount());
+
+        swapSpaceMock.trace = "";
+        assertNotNull(cache.getTile(im0, 0, 0));
+        assertEquals("restoreTile(0-0-0)=MemoryTile;", swapSpaceMock.trace);
+        assertEquals(2, cache.getCacheHitCount());
+
+        // Expected: tile 0-3-2 is swapped first, because 0-0-1 has been accessed since the last swap
+        swapSpaceMock.trace = "";
+        assertNotNull(cache.getTile(im0, 1, 0));
+        assertEquals("" +
+                "restoreTile(0-1-0)=MemoryTile;" +
+                "storeTile(0-3-2);" +
+                "storeTile(0-0-1);",
+                     swapSpaceMock.trace);
+
+        // Expected: the swap space is not asked for tiles which have never been swapped out
+        swapSpaceMock.trace = "";
+        assertNull(cache.getTile(im0, 3, 3));
+        assertEquals("", swapSpaceMock.trace);
+        assertEquals(3, cache.getCacheHitCount());
+        assertEquals(1, cache.getCacheMissCount());
+
+        swapSpaceMock.trace = "";
+        cache.remove(im0, 0, 0);
+        cache.remove(im0, 0, 1);
+        assertEquals("" +
+                "deleteTile(0-0-0)=true;" +
+                "deleteTile(0-0-1)=true;",
+                     swapSpaceMock.trace);
+        assertEquals(1, cache.getCacheTileCount());
+        assertEquals(TILE_SIZE, cache.getCacheMemoryUsed());
+
+        swapSpaceMock.trace = "";
+        cache.removeTiles(im0);
+        assertEquals("" +
+                "deleteTile(0-1-0)=true;" +
+                "deleteTile(0-3-2)=true;",
+                     swapSpaceMock.trace);
+        assertEquals(0, cache.getCacheTileCount());
+        assertEquals(0, cache.getCacheMemoryUsed());
+
+        cache.add(im0, 0, 0, im0.getTile(0, 0));
+        cache.flush();
+        assertEquals(0, cache.getCacheTileCount());
+        assertEquals(0, cache.getCacheMemoryUsed());
+        assertEquals(0, cache.getCacheHitCount());
+        assertEquals(0, cache.getCacheMissCount());
+    }
+
+    public void testCostAwareEviction() {
+        TiledImage im0 = createImage(4, 4);
+        SwapSpaceMock swapSpaceMock = new SwapSpaceMock();
+        ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(3 * TILE_SIZE + 1, swapSpaceMock);
+        cache.setCostAware(true);
+        assertTrue(cache.isCostAware());
+
+        // tile cache metrics give the compute time in nanoseconds
+        cache.add(im0, 0, 0, im0.getTile(0, 0), 1000000L);
+        cache.add(im0, 1, 0, im0.getTile(1, 0), 1000L);
+        cache.add(im0, 0, 1, im0.getTile(0, 1), 2000L);
+        assertEquals("", swapSpaceMock.trace);
+
+        // Expected: the cheapest tiles are swapped first, although 0-0-0 is the oldest one
+        cache.add(im0, 3, 2, im0.getTile(3, 2), 5000L);
+        assertEquals("" +
+                "storeTile(0-1-0);" +
+                "storeTile(0-0-1);",
+                     swapSpaceMock.trace);
+        assertEquals(2, cache.getCacheTileCount());
+
+        // Expected: cheap tiles are dropped instead of being swapped
+        swapSpaceMock.trace = "";
+        cache.setDropCostThreshold(10000L);
+        cache.add(im0, 2, 2, im0.getTile(2, 2), 2500L);
+        cache.add(im0, 3, 3, im0.getTile(3, 3), 4000L);
+        assertEquals("", swapSpaceMock.trace);
+        assertEquals(2, cache.getCacheTileCount());
+        assertEquals(2 * TILE_SIZE, cache.getCacheMemoryUsed());
+        assertNull(cache.getTile(im0, 2, 2));
+        assertNull(cache.getTile(im0, 3, 2));
+        assertEquals("", swapSpaceMock.trace);
+        assertNotNull(cache.getTile(im0, 0, 0));
+        assertNotNull(cache.getTile(im0, 3, 3));
+
+        // Expected: without a metric, the time between miss and add is taken as cost
+        cache.setMemoryCapacity(16 * TILE_SIZE);
+        cache.add(im0, 3, 2, im0.getTile(3, 2));
+        TileRegistry.OwnerTiles ownerTiles = ((TileRegistry) cache.getCachedObject()).get(im0);
+        assertTrue(ownerTiles.get(ownerTiles.getIndex(3, 2)).computeCost >= 0L);
+        cache.add(im0, 1, 1, im0.getTile(1, 1));
+        assertEquals(-1L, ownerTiles.get(ownerTiles.getIndex(1, 1)).computeCost);
+    }
+
+    public void testHitsOnlySetReferenceBit() {
+        TiledImage im0 = createImage(4, 4);
+        ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(16 * TILE_SIZE, new SwapSpaceMock());
+        cache.add(im0, 0, 0, im0.getTile(0, 0));
+        TileRegistry.OwnerTiles ownerTiles = ((TileRegistry) cache.getCachedObject()).get(im0);
+        MemoryTile ct = ownerTiles.get(ownerTiles.getIndex(0, 0));
+        long timeStamp = ct.getTileTimeStamp();
+        assertTrue(ct.referenced);
+
+        ct.referenced = false;
+        assertNotNull(cache.getTile(im0, 0, 0));
+        assertTrue(ct.referenced);
+        assertNotNull(cache.getTile(im0, 0, 0));
+        assertTrue(ct.referenced);
+        assertEquals(timeStamp, ct.getTileTimeStamp());
+    }
+
+    public void testRemovedTilesArePurgedFromClock() {
+        TiledImage im0 = createImage(64, 64);
+        ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(4096 * TILE_SIZE, new SwapSpaceMock());
+        for (int n = 0; n < 4; n++) {
+            for (int tileY = 0; tileY < 64; tileY++) {
+                for (int tileX = 0; tileX < 64; tileX++) {
+                    cache.add(im0, tileX, tileY, im0.getTile(tileX, tileY));
+                    cache.remove(im0, tileX, tileY);
+                }
+            }
+        }
+        assertEquals(0, cache.getCacheTileCount());
+        assertTrue(cache.getClockSize() <= SwappingTileCache.DEFAULT_HASHTABLE_CAPACITY);
+    }
+
+    public void testConcurrentAccess() throws InterruptedException {
+        final TiledImage image = createImage(8, 8);
+        final SwapSpaceMock swapSpaceMock = new SwapSpaceMock();
+        final ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(16 * TILE_SIZE, swapSpaceMock);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicLong missCount = new AtomicLong();
+
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int offset = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int n = 0; n < 1000; n++) {
+                            final int tileIndex = (offset + 7 * n) % 64;
+                            final int tileX = tileIndex % 8;
+                            final int tileY = tileIndex / 8;
+                            final Raster tile = cache.getTile(image, tileX, tileY);
+                            if (tile == null) {
+                                missCount.incrementAndGet();
+                                cache.add(image, tileX, tileY, image.getTile(tileX, tileY));
+                            } else if (tile.getMinX() != tileX * 64 || tile.getMinY() != tileY * 64) {
+                                throw new IllegalStateException("wrong tile: " + tile);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(missCount.get(), cache.getCacheMissCount());
+        // adding a tile which has been added concurrently also counts as a hit
+        assertTrue(cache.getCacheHitCount() >= 8 * 1000 - missCount.get());
+        assertEquals(cache.getCacheTileCount() * TILE_SIZE, cache.getCacheMemoryUsed());
+        assertTrue(cache.getCacheMemoryUsed() <= 16 * TILE_SIZE);
+        for (int tileY = 0; tileY < 8; tileY++) {
+            for (int tileX = 0; tileX < 8; tileX++) {
+                assertNotNull(cache.getTile(image, tileX, tileY));
+            }
+        }
+    }
+
+    public void testRemoveTilesOfFinalizedOwner() throws Exception {
+        File swapDir = createSwapDir();
+        try {
+            ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(3 * TILE_SIZE + 1, new DefaultSwapSpace(swapDir));
+            CountDownLatch finalized = new CountDownLatch(1);
+            addTilesOfFinalizableImage(cache, finalized);
+            assertEquals(2, cache.getCacheTileCount());
+            assertEquals(2, swapDir.listFiles().length);
+
+            // Expected: the tiles are found although the weak references to their owner
+            // have been cleared before the owner's finalizer called removeTiles()
+            awaitFinalization(finalized);
+            assertEquals(0, cache.getCacheTileCount());
+            assertEquals(0L, cache.getCacheMemoryUsed());
+            assertEquals(0, swapDir.listFiles().length);
+        } finally {
+            deleteSwapDir(swapDir);
+        }
+    }
+
+    // the image must not be reachable from the calling test
+    private static void addTilesOfFinalizableImage(TileCache cache, CountDownLatch finalized) {
+        FinalizableImage image = new FinalizableImage(cache, finalized);
+        for (int tileY = 0; tileY < 2; tileY++) {
+            for (int tileX = 0; tileX < 2; tileX++) {
+                cache.add(image, tileX, tileY, image.getTile(tileX, tileY));
+            }
+        }
+    }
+
+    private static void awaitFinalization(CountDownLatch finalized) throws InterruptedException {
+        for (int i = 0; i < 100 && !finalized.await(10, TimeUnit.MILLISECONDS); i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        assertEquals("owner not finalized", 0, finalized.getCount());
+    }
+
+    private static ComponentSampleModelJAI createSampleModel() {
+        return new ComponentSampleModelJAI(DataBuffer.TYPE_FLOAT, 64, 64, 1, 64, new int[1]);
+    }
+
+    private static File createSwapDir() throws IOException {
+        File swapDir = File.createTempFile("ConcurrentSwappingTileCacheTest", "");
+        assertTrue(swapDir.delete());
+        assertTrue(swapDir.mkdir());
+        return swapDir;
+    }
+
+    private static void deleteSwapDir(File swapDir) {
+        File[] files = swapDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        swapDir.delete();
+    }
+
+    private static TiledImage createImage(int numXTiles, int numYTiles) {
+        ComponentSampleModelJAI sm = createSampleModel();
+        return new TiledImage(0, 0, numXTiles * 64, numYTiles * 64, 0, 0, sm, PlanarImage.createColorModel(sm));
+    }
+
+    /**
+     * Removes its tiles from the cache when finalized, like an OpImage does.
+     */
+    private static class FinalizableImage extends TiledImage {
+        private final TileCache cache;
+        private final CountDownLatch finalized;
+
+        private FinalizableImage(TileCache cache, CountDownLatch finalized) {
+            super(0, 0, 2 * 64, 2 * 64, 0, 0, createSampleModel(), null);
+            this.cache = cache;
+            this.finalized = finalized;
+        }
+
+        @Override
+        protected void finalize() throws Throwable {
+            super.finalize();
+            cache.removeTiles(this);
+            finalized.countDown();
+        }
+    }
+
+    private static class SwapSpaceMock implements SwapSpace {
+        HashMap<RenderedImage, Integer> ids = new HashMap<RenderedImage, Integer>();
+        HashMap<String, MemoryTile> tiles = new HashMap<String, MemoryTile>();
+        String trace = "";
+
+        public synchronized boolean storeTile(MemoryTile memoryTile) {
+            String key = getKey(memoryTile.getOwner(), memoryTile.getTileX(), memoryTile.getTileY());
+            tiles.put(key, memoryTile);
+            trace += "storeTile(" + key + ");";
+            return true;
+        }
+
+        public synchronized MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+            String key = getKey(owner, tileX, tileY);
+            final MemoryTile memoryTile = tiles.get(key);
+            trace += "restoreTile(" + key + ")=" + (memoryTile != null ? "MemoryTile" : "null") + ";";
+            return memoryTile != null ? new MemoryTile(owner, tileX, tileY, memoryTile.getTile(), null) : null;
+        }
+
+        public synchronized boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
+            String key = getKey(owner, tileX, tileY);
+            final boolean b = tiles.remove(key) != null;
+            trace += "deleteTile(" + key + ")=" + b + ";";
+            return b;
+        }
+
+        private int getId(RenderedImage owner) {
+            Integer integer = ids.get(owner);
+            if (integer != null) {
+                return integer;
+            }
+            integer = ids.size();
+            ids.put(owner, integer);
+            return integer;
+        }
+
+        private String getKey(RenderedImage owner, int tileX, int tileY) {
+            return getId(owner) + "-" + tileX + "-" + tileY;
+        }
+    }
+}
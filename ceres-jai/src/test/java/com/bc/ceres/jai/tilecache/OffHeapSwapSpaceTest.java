@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import junit.framework.TestCase;
+
+import javax.media.jai.ComponentSampleModelJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.HashMap;
+
+public class OffHeapSwapSpaceTest extends TestCase {
+
+    private static final int TILE_SIZE = 64 * 64 * 4;
+
+    public void testStoreRestoreDemote() {
+        TiledImage image = createImage();
+        fillTile(image, 0, 0);
+        fillTile(image, 1, 0);
+        fillTile(image, 2, 0);
+        SwapSpaceMock delegate = new SwapSpaceMock();
+        OffHeapSwapSpace swapSpace = new OffHeapSwapSpace(delegate, 2 * TILE_SIZE, TILE_SIZE);
+
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 0, 0, image.getTile(0, 0), null)));
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 1, 0, image.getTile(1, 0), null)));
+        assertFalse(swapSpace.storeTile(new MemoryTile(image, 1, 0, image.getTile(1, 0), null)));
+        assertEquals(2, swapSpace.getTileCount());
+        assertEquals(2 * TILE_SIZE, swapSpace.getUsedBytes());
+        assertEquals("", delegate.trace);
+
+        // restored tiles keep their off-heap copy
+        assertEqualTile(image.getTile(0, 0), swapSpace.restoreTile(image, 0, 0).getTile());
+        assertEqualTile(image.getTile(1, 0), swapSpace.restoreTile(image, 1, 0).getTile());
+        assertNull(swapSpace.restoreTile(image, 2, 0));
+        assertEquals(2, swapSpace.getTileCount());
+        assertEquals("restoreTile(0-2-0)=null;", delegate.trace);
+
+        // Expected: the least recently used tile is demoted to the delegate
+        delegate.trace = "";
+        assertTrue(swapSpace.restoreTile(image, 0, 0) != null);
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 2, 0, image.getTile(2, 0), null)));
+        assertEquals("storeTile(0-1-0);", delegate.trace);
+        assertEquals(2, swapSpace.getTileCount());
+        assertEquals(2 * TILE_SIZE, swapSpace.getUsedBytes());
+        assertEqualTile(image.getTile(1, 0), swapSpace.restoreTile(image, 1, 0).getTile());
+        assertEqualTile(image.getTile(2, 0), swapSpace.restoreTile(image, 2, 0).getTile());
+
+        delegate.trace = "";
+        assertTrue(swapSpace.deleteTile(image, 0, 0));
+        assertTrue(swapSpace.deleteTile(image, 1, 0));
+        assertFalse(swapSpace.deleteTile(image, 1, 0));
+        assertEquals("" +
+                "deleteTile(0-0-0)=false;" +
+                "deleteTile(0-1-0)=true;" +
+                "deleteTile(0-1-0)=false;",
+                     delegate.trace);
+        assertEquals(1, swapSpace.getTileCount());
+        assertEquals(TILE_SIZE, swapSpace.getUsedBytes());
+    }
+
+    public void testLargeTilesArePassedToDelegate() {
+        TiledImage image = createImage();
+        SwapSpaceMock delegate = new SwapSpaceMock();
+        OffHeapSwapSpace swapSpace = new OffHeapSwapSpace(delegate, 4 * TILE_SIZE, TILE_SIZE / 2);
+
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 0, 0, image.getTile(0, 0), null)));
+        assertEquals("storeTile(0-0-0);", delegate.trace);
+        assertEquals(0, swapSpace.getTileCount());
+    }
+
+    private static TiledImage createImage() {
+        ComponentSampleModelJAI sm = new ComponentSampleModelJAI(DataBuffer.TYPE_FLOAT, 64, 64, 1, 64, new int[1]);
+        return new TiledImage(0, 0, 4 * 64, 4 * 64, 0, 0, sm, PlanarImage.createColorModel(sm));
+    }
+
+    private static void fillTile(TiledImage image, int tileX, int tileY) {
+        WritableRaster tile = (WritableRaster) image.getTile(tileX, tileY);
+        for (int y = tile.getMinY(); y < tile.getMinY() + tile.getHeight(); y++) {
+            for (int x = tile.getMinX(); x < tile.getMinX() + tile.getWidth(); x++) {
+                tile.setSample(x, y, 0, 0.5F * (x + 3 * y));
+            }
+        }
+    }
+
+    private static void assertEqualTile(Raster expected, Raster actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getBounds(), actual.getBounds());
+        assertEquals(expected.getSampleModel(), actual.getSampleModel());
+        for (int y = expected.getMinY(); y < expected.getMinY() + expected.getHeight(); y++) {
+            for (int x = expected.getMinX(); x < expected.getMinX() + expected.getWidth(); x++) {
+                assertEquals(expected.getSampleFloat(x, y, 0), actual.getSampleFloat(x, y, 0), 0.0F);
+            }
+        }
+    }
+
+    private static class SwapSpaceMock implements SwapSpace {
+        HashMap<RenderedImage, Integer> ids = new HashMap<RenderedImage, Integer>();
+        HashMap<String, MemoryTile> tiles = new HashMap<String, MemoryTile>();
+        String trace = "";
+
+        public synchronized boolean storeTile(MemoryTile memoryTile) {
+            String key = getKey(memoryTile.getOwner(), memoryTile.getTileX(), memoryTile.getTileY());
+            tiles.put(key, memoryTile);
+            trace += "storeTile(" + key + ");";
+            return true;
+        }
+
+        public synchronized MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+            String key = getKey(owner, tileX, tileY);
+            final MemoryTile memoryTile = tiles.get(key);
+            trace += "restoreTile(" + key + ")=" + (memoryTile != null ? "MemoryTile" : "null") + ";";
+            return memoryTile != null ? new MemoryTile(owner, tileX, tileY, memoryTile.getTile(), null) : null;
+        }
+
+        public synchronized boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
+            String key = getKey(owner, tileX, tileY);
+            final boolean b = tiles.remove(key) != null;
+            trace += "deleteTile(" + key + ")=" + b + ";";
+            return b;
+        }
+
+        private int getId(RenderedImage owner) {
+            Integer integer = ids.get(owner);
+            if (integer != null) {
+                return integer;
+            }
+            integer = ids.size();
+            ids.put(owner, integer);
+            return integer;
+        }
+
+        private String getKey(RenderedImage owner, int tileX, int tileY) {
+            return getId(owner) + "-" + tileX + "-" + tileY;
+        }
+    }
+}
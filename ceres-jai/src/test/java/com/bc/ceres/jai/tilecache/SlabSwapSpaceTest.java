@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import junit.framework.TestCase;
+
+import javax.media.jai.ComponentSampleModelJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+public class SlabSwapSpaceTest extends TestCase {
+
+    private static final int TILE_SIZE = 64 * 64 * 4;
+
+    private File swapDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        swapDir = File.createTempFile("SlabSwapSpaceTest", "");
+        assertTrue(swapDir.delete());
+        assertTrue(swapDir.mkdir());
+    }
+
+    @Override
+    protected void tearDown() {
+        final File[] files = swapDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        swapDir.delete();
+    }
+
+    public void testStoreRestoreDelete() {
+        TiledImage image = createImage(DataBuffer.TYPE_FLOAT);
+        fillTile(image, 0, 0);
+        fillTile(image, 1, 0);
+        SlabSwapSpace swapSpace = new SlabSwapSpace(swapDir, 3 * TILE_SIZE, false);
+
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 0, 0, image.getTile(0, 0), null)));
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 1, 0, image.getTile(1, 0), null)));
+        assertFalse(swapSpace.storeTile(new MemoryTile(image, 1, 0, image.getTile(1, 0), null)));
+        assertEquals(2, swapSpace.getTileCount());
+        assertEquals(2 * TILE_SIZE, swapSpace.getStoredBytes());
+        assertEquals(1, swapSpace.getSlabCount());
+        assertEquals(1, swapDir.listFiles().length);
+
+        assertEqualTile(image.getTile(0, 0), swapSpace.restoreTile(image, 0, 0).getTile());
+        assertEqualTile(image.getTile(1, 0), swapSpace.restoreTile(image, 1, 0).getTile());
+        assertNull(swapSpace.restoreTile(image, 2, 0));
+
+        assertTrue(swapSpace.deleteTile(image, 0, 0));
+        assertFalse(swapSpace.deleteTile(image, 0, 0));
+        assertNull(swapSpace.restoreTile(image, 0, 0));
+        assertEquals(TILE_SIZE, swapSpace.getStoredBytes());
+
+        // freed space is reused, so that no further slab is needed
+        fillTile(image, 2, 0);
+        fillTile(image, 3, 0);
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 2, 0, image.getTile(2, 0), null)));
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 3, 0, image.getTile(3, 0), null)));
+        assertEquals(1, swapSpace.getSlabCount());
+        assertEqualTile(image.getTile(1, 0), swapSpace.restoreTile(image, 1, 0).getTile());
+        assertEqualTile(image.getTile(2, 0), swapSpace.restoreTile(image, 2, 0).getTile());
+        assertEqualTile(image.getTile(3, 0), swapSpace.restoreTile(image, 3, 0).getTile());
+
+        // no more space in first slab
+        fillTile(image, 0, 1);
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 0, 1, image.getTile(0, 1), null)));
+        assertEquals(2, swapSpace.getSlabCount());
+        assertEqualTile(image.getTile(0, 1), swapSpace.restoreTile(image, 0, 1).getTile());
+
+        swapSpace.dispose();
+        assertEquals(0, swapDir.listFiles().length);
+    }
+
+    public void testCompression() {
+        TiledImage image = createImage(DataBuffer.TYPE_USHORT);
+        fillTile(image, 0, 0);
+        SlabSwapSpace swapSpace = new SlabSwapSpace(swapDir, 1024 * 1024, true);
+
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 0, 0, image.getTile(0, 0), null)));
+        // the empty tile compresses very well
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 1, 1, image.getTile(1, 1), null)));
+        assertTrue(swapSpace.getStoredBytes() < 2 * 64 * 64 * 2);
+
+        assertEqualTile(image.getTile(0, 0), swapSpace.restoreTile(image, 0, 0).getTile());
+        assertEqualTile(image.getTile(1, 1), swapSpace.restoreTile(image, 1, 1).getTile());
+        swapSpace.dispose();
+    }
+
+    public void testTilesOfDistinctOwnersAreDistinguished() {
+        TiledImage image = createImage(DataBuffer.TYPE_FLOAT);
+        fillTile(image, 0, 0);
+        // owners with equal hash codes and image IDs
+        RenderedImage owner1 = createOwner();
+        RenderedImage owner2 = createOwner();
+        assertEquals(owner1.hashCode(), owner2.hashCode());
+        SlabSwapSpace swapSpace = new SlabSwapSpace(swapDir, 3 * TILE_SIZE, false);
+
+        assertTrue(swapSpace.storeTile(new MemoryTile(owner1, 0, 0, image.getTile(0, 0), null)));
+        assertNull(swapSpace.restoreTile(owner2, 0, 0));
+        assertTrue(swapSpace.storeTile(new MemoryTile(owner2, 0, 0, image.getTile(1, 0), null)));
+        assertEqualTile(image.getTile(0, 0), swapSpace.restoreTile(owner1, 0, 0).getTile());
+        assertEqualTile(image.getTile(1, 0), swapSpace.restoreTile(owner2, 0, 0).getTile());
+        assertTrue(swapSpace.deleteTile(owner2, 0, 0));
+        assertNotNull(swapSpace.restoreTile(owner1, 0, 0));
+        swapSpace.dispose();
+    }
+
+    private static RenderedImage createOwner() {
+        return (RenderedImage) Proxy.newProxyInstance(RenderedImage.class.getClassLoader(),
+                                                      new Class[]{RenderedImage.class},
+                                                      new InvocationHandler() {
+                                                          @Override
+                                                          public Object invoke(Object proxy, Method method, Object[] args) {
+                                                              final String name = method.getName();
+                                                              if (name.equals("hashCode")) {
+                                                                  return 42;
+                                                              }
+                                                              if (name.equals("equals")) {
+                                                                  return proxy == args[0];
+                                                              }
+                                                              if (name.equals("getProperty")) {
+                                                                  return "image";
+                                                              }
+                                                              return null;
+                                                          }
+                                                      });
+    }
+
+    private static TiledImage createImage(int dataType) {
+        ComponentSampleModelJAI sm = new ComponentSampleModelJAI(dataType, 64, 64, 1, 64, new int[1]);
+        return new TiledImage(0, 0, 4 * 64, 4 * 64, 0, 0, sm, PlanarImage.createColorModel(sm));
+    }
+
+    private static void fillTile(TiledImage image, int tileX, int tileY) {
+        WritableRaster tile = (WritableRaster) image.getTile(tileX, tileY);
+        for (int y = tile.getMinY(); y < tile.getMinY() + tile.getHeight(); y++) {
+            for (int x = tile.getMinX(); x < tile.getMinX() + tile.getWidth(); x++) {
+                tile.setSample(x, y, 0, (x + 3 * y) % 1000);
+            }
+        }
+    }
+
+    private static void assertEqualTile(Raster expected, Raster actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getBounds(), actual.getBounds());
+        assertEquals(expected.getSampleModel(), actual.getSampleModel());
+        for (int y = expected.getMinY(); y < expected.getMinY() + expected.getHeight(); y++) {
+            for (int x = expected.getMinX(); x < expected.getMinX() + expected.getWidth(); x++) {
+                assertEquals(expected.getSampleDouble(x, y, 0), actual.getSampleDouble(x, y, 0), 0.0);
+            }
+        }
+    }
+}
@@ -20,11 +20,16 @@ import junit.framework.TestCase;
 
 import javax.media.jai.ComponentSampleModelJAI;
 import javax.media.jai.PlanarImage;
+import javax.media.jai.TileCache;
 import javax.media.jai.TiledImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class SwappingTileCacheTest extends TestCase {
 
@@ -202,8 +207,101 @@ public class SwappingTileCacheTest extends TestCase {
                      swapSpaceMock.trace);
     }
 
+    public void testCostAwareEviction() {
+        long tileSize = 256 * 256 * 4;
+
+        TiledImage im0 = createImage(4, 4);
+        SwapSpaceMock swapSpaceMock = new SwapSpaceMock();
+        SwappingTileCache cache = new SwappingTileCache(3 * tileSize + 1, swapSpaceMock);
+        cache.setCostAware(true);
+
+        // tile cache metrics give the compute time in nanoseconds
+        cache.add(im0, 0, 0, im0.getTile(0, 0), 1000000L);
+        cache.add(im0, 1, 0, im0.getTile(1, 0), 1000L);
+        cache.add(im0, 0, 1, im0.getTile(0, 1), 2000L);
+        assertEquals("", swapSpaceMock.trace);
+
+        // Expected: the cheapest tiles are swapped first, although 0-0-0 is the least recently used one
+        cache.add(im0, 3, 2, im0.getTile(3, 2), 5000L);
+        assertEquals("" +
+                "storeTile(0-1-0);" +
+                "storeTile(0-0-1);",
+                     swapSpaceMock.trace);
+        assertEquals(2, cache.getCacheTileCount());
+
+        // Expected: cheap tiles are dropped instead of being swapped
+        swapSpaceMock.trace = "";
+        cache.setDropCostThreshold(10000L);
+        cache.add(im0, 2, 2, im0.getTile(2, 2), 2500L);
+        cache.add(im0, 3, 3, im0.getTile(3, 3), 4000L);
+        assertEquals("", swapSpaceMock.trace);
+        assertEquals(2, cache.getCacheTileCount());
+        assertEquals(2 * tileSize, cache.getCacheMemoryUsed());
+        assertNotNull(cache.getTile(im0, 0, 0));
+        assertNotNull(cache.getTile(im0, 3, 3));
+    }
+
+    public void testRemoveTilesOfFinalizedOwner() throws Exception {
+        File swapDir = createSwapDir();
+        try {
+            SwappingTileCache cache = new SwappingTileCache(3 * 256 * 256 * 4 + 1, new DefaultSwapSpace(swapDir));
+            CountDownLatch finalized = new CountDownLatch(1);
+            addTilesOfFinalizableImage(cache, finalized);
+            assertEquals(2, cache.getCacheTileCount());
+            assertEquals(2, swapDir.listFiles().length);
+
+            // Expected: the tiles are found although the weak references to their owner
+            // have been cleared before the owner's finalizer called removeTiles()
+            awaitFinalization(finalized);
+            assertEquals(0, cache.getCacheTileCount());
+            assertEquals(0L, cache.getCacheMemoryUsed());
+            assertEquals(0, swapDir.listFiles().length);
+        } finally {
+            deleteSwapDir(swapDir);
+        }
+    }
+
+    // the image must not be reachable from the calling test
+    private static void addTilesOfFinalizableImage(TileCache cache, CountDownLatch finalized) {
+        FinalizableImage image = new FinalizableImage(cache, finalized);
+        for (int tileY = 0; tileY < 2; tileY++) {
+            for (int tileX = 0; tileX < 2; tileX++) {
+                cache.add(image, tileX, tileY, image.getTile(tileX, tileY));
+            }
+        }
+    }
+
+    private static void awaitFinalization(CountDownLatch finalized) throws InterruptedException {
+        for (int i = 0; i < 100 && !finalized.await(10, TimeUnit.MILLISECONDS); i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        assertEquals("owner not finalized", 0, finalized.getCount());
+    }
+
+    private static ComponentSampleModelJAI createSampleModel() {
+        return new ComponentSampleModelJAI(DataBuffer.TYPE_FLOAT, 256, 256, 1, 256, new int[1]);
+    }
+
+    private static File createSwapDir() throws IOException {
+        File swapDir = File.createTempFile("SwappingTileCacheTest", "");
+        assertTrue(swapDir.delete());
+        assertTrue(swapDir.mkdir());
+        return swapDir;
+    }
+
+    private static void deleteSwapDir(File swapDir) {
+        File[] files = swapDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        swapDir.delete();
+    }
+
     private static TiledImage createImage(int numXTiles, int numYTiles) {
-        ComponentSampleModelJAI sm = new ComponentSampleModelJAI(DataBuffer.TYPE_FLOAT, 256, 256, 1, 256, new int[1]);
+        ComponentSampleModelJAI sm = createSampleModel();
         return new TiledImage(0, 0, numXTiles * 256, numYTiles * 256, 0, 0, sm, PlanarImage.createColorModel(sm));
     }
 
@@ -216,6 +314,27 @@ public class SwappingTileCacheTest extends TestCase {
     }
 
 
+    /**
+     * Removes its tiles from the cache when finalized, like an OpImage does.
+     */
+    private static class FinalizableImage extends TiledImage {
+        private final TileCache cache;
+        private final CountDownLatch finalized;
+
+        private FinalizableImage(TileCache cache, CountDownLatch finalized) {
+            super(0, 0, 2 * 256, 2 * 256, 0, 0, createSampleModel(), null);
+            this.cache = cache;
+            this.finalized = finalized;
+        }
+
+        @Override
+        protected void finalize() throws Throwable {
+            super.finalize();
+            cache.removeTiles(this);
+            finalized.countDown();
+        }
+    }
+
     private static class SwapSpaceMock implements SwapSpace {
         HashMap<RenderedImage, Integer> ids = new HashMap<RenderedImage, Integer>();
         HashMap<String, MemoryTile> tiles = new HashMap<String, MemoryTile>();
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import junit.framework.TestCase;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.media.jai.ComponentSampleModelJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+public class TileCacheMonitorTest extends TestCase {
+
+    private static final long TILE_SIZE = 64 * 64 * 4;
+
+    private File swapDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        swapDir = File.createTempFile("TileCacheMonitorTest", "");
+        assertTrue(swapDir.delete());
+        assertTrue(swapDir.mkdir());
+    }
+
+    @Override
+    protected void tearDown() {
+        final File[] files = swapDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        swapDir.delete();
+    }
+
+    public void testStatistics() throws JMException {
+        TiledImage im0 = createImage();
+        DefaultSwapSpace swapSpace = new DefaultSwapSpace(swapDir);
+        SwappingTileCache cache = new SwappingTileCache(3 * TILE_SIZE + 1, swapSpace);
+
+        cache.add(im0, 0, 0, im0.getTile(0, 0));
+        cache.add(im0, 1, 0, im0.getTile(1, 0));
+        cache.add(im0, 0, 1, im0.getTile(0, 1));
+        cache.add(im0, 3, 2, im0.getTile(3, 2));
+        assertNotNull(cache.getTile(im0, 0, 1));
+        assertNotNull(cache.getTile(im0, 0, 0));
+        assertNull(cache.getTile(im0, 2, 2));
+        cache.resetCounts();
+
+        TileCacheStatistics statistics = cache.getStatistics();
+        assertEquals(3 * TILE_SIZE + 1, statistics.getMemoryCapacity());
+        assertEquals(3, statistics.getTileCount());
+        assertEquals(3 * TILE_SIZE, statistics.getMemoryUsed());
+        assertEquals(2, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(2, statistics.getSwapOutCount());
+        assertEquals(1, statistics.getSwapInCount());
+        assertEquals(2 * TILE_SIZE, statistics.getBytesSwappedOut());
+        assertEquals(TILE_SIZE, statistics.getBytesSwappedIn());
+        assertEquals(2, sum(statistics.getSwapOutLatencies()));
+        assertEquals(1, sum(statistics.getSwapInLatencies()));
+        assertEquals(1, statistics.getOwnerOccupancy().size());
+        assertEquals(3 * TILE_SIZE, (long) statistics.getOwnerOccupancy().values().iterator().next());
+
+        SwapSpaceStatistics swapSpaceStatistics = swapSpace.getStatistics();
+        assertEquals(2, swapSpaceStatistics.getTileCount());
+        assertEquals(2, swapSpaceStatistics.getStoreCount());
+        assertEquals(1, swapSpaceStatistics.getRestoreCount());
+        assertEquals(0, swapSpaceStatistics.getFailureCount());
+        assertEquals(2 * TILE_SIZE, swapSpaceStatistics.getBytesWritten());
+        assertEquals(TILE_SIZE, swapSpaceStatistics.getBytesRead());
+
+        TileCacheMonitor monitor = new TileCacheMonitor(cache);
+        ObjectName objectName = monitor.register();
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            assertTrue(mBeanServer.isRegistered(objectName));
+            assertEquals(3 * TILE_SIZE + 1, mBeanServer.getAttribute(objectName, "MemoryCapacity"));
+            assertEquals(2.0 / 3.0, (Double) mBeanServer.getAttribute(objectName, "HitRatio"), 1e-10);
+            CompositeData data = (CompositeData) mBeanServer.getAttribute(objectName, "Statistics");
+            assertEquals(2L, data.get("swapOutCount"));
+            data = (CompositeData) mBeanServer.getAttribute(objectName, "SwapSpaceStatistics");
+            assertEquals(2L, data.get("storeCount"));
+        } finally {
+            monitor.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+
+    public void testOwnerOccupancyIsUpdatedOnRemoval() {
+        TiledImage im0 = createImage();
+        TiledImage im1 = createImage();
+        SwappingTileCache cache = new SwappingTileCache(8 * TILE_SIZE, new DefaultSwapSpace(swapDir));
+
+        cache.add(im0, 0, 0, im0.getTile(0, 0));
+        cache.add(im0, 1, 0, im0.getTile(1, 0));
+        cache.add(im1, 0, 0, im1.getTile(0, 0));
+        assertEquals(2, cache.getStatistics().getOwnerOccupancy().size());
+
+        cache.remove(im0, 0, 0);
+        assertTrue(cache.getStatistics().getOwnerOccupancy().containsValue(TILE_SIZE));
+        assertFalse(cache.getStatistics().getOwnerOccupancy().containsValue(2 * TILE_SIZE));
+        cache.removeTiles(im1);
+        assertEquals(1, cache.getStatistics().getOwnerOccupancy().size());
+        cache.flush();
+        assertEquals(0, cache.getStatistics().getOwnerOccupancy().size());
+    }
+
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500L);
+        histogram.record(1500L);
+        histogram.record(3000L);
+        histogram.record(Long.MAX_VALUE);
+        long[] counts = histogram.getCounts();
+        assertEquals(1, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(1, counts[2]);
+        assertEquals(1, counts[LatencyHistogram.BUCKET_COUNT - 1]);
+        assertEquals(1L, LatencyHistogram.getUpperBound(0));
+        assertEquals(4L, LatencyHistogram.getUpperBound(2));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getUpperBound(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    private static long sum(long[] counts) {
+        long sum = 0;
+        for (long count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private static TiledImage createImage() {
+        ComponentSampleModelJAI sm = new ComponentSampleModelJAI(DataBuffer.TYPE_FLOAT, 64, 64, 1, 64, new int[1]);
+        return new TiledImage(0, 0, 4 * 64, 4 * 64, 0, 0, sm, PlanarImage.createColorModel(sm));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import junit.framework.TestCase;
+
+import javax.media.jai.ComponentSampleModelJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+public class WriteBehindSwapSpaceTest extends TestCase {
+
+    public void testPendingTilesAreRestoredFromQueue() throws InterruptedException {
+        TiledImage image = createImage();
+        BlockingSwapSpaceMock delegate = new BlockingSwapSpaceMock();
+        WriteBehindSwapSpace swapSpace = new WriteBehindSwapSpace(delegate, 4);
+
+        Raster tile00 = image.getTile(0, 0);
+        Raster tile10 = image.getTile(1, 0);
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 0, 0, tile00, null)));
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 1, 0, tile10, null)));
+        assertEquals(2, swapSpace.getPendingTileCount());
+
+        MemoryTile restoredTile = swapSpace.restoreTile(image, 1, 0);
+        assertNotNull(restoredTile);
+        assertSame(tile10, restoredTile.getTile());
+        assertNull(swapSpace.restoreTile(image, 2, 0));
+        assertEquals(0, delegate.tiles.size());
+
+        delegate.release();
+        swapSpace.flush();
+        assertEquals(0, swapSpace.getPendingTileCount());
+        assertEquals(2, delegate.tiles.size());
+        assertSame(tile00, swapSpace.restoreTile(image, 0, 0).getTile());
+
+        swapSpace.dispose();
+    }
+
+    public void testDeletedPendingTilesAreNotStored() throws InterruptedException {
+        TiledImage image = createImage();
+        BlockingSwapSpaceMock delegate = new BlockingSwapSpaceMock();
+        WriteBehindSwapSpace swapSpace = new WriteBehindSwapSpace(delegate, 4);
+
+        swapSpace.storeTile(new MemoryTile(image, 0, 0, image.getTile(0, 0), null));
+        swapSpace.storeTile(new MemoryTile(image, 1, 0, image.getTile(1, 0), null));
+        assertTrue(swapSpace.deleteTile(image, 0, 0));
+        assertTrue(swapSpace.deleteTile(image, 1, 0));
+        assertFalse(swapSpace.deleteTile(image, 1, 1));
+        assertNull(swapSpace.restoreTile(image, 0, 0));
+
+        delegate.release();
+        swapSpace.flush();
+        swapSpace.dispose();
+        assertEquals(0, delegate.tiles.size());
+    }
+
+    public void testFailedTilesAreKeptInMemory() throws InterruptedException {
+        TiledImage image = createImage();
+        BlockingSwapSpaceMock delegate = new BlockingSwapSpaceMock();
+        delegate.failing = true;
+        WriteBehindSwapSpace swapSpace = new WriteBehindSwapSpace(delegate, 4);
+
+        Raster tile00 = image.getTile(0, 0);
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 0, 0, tile00, null)));
+        delegate.release();
+        swapSpace.flush();
+        assertEquals(0, swapSpace.getPendingTileCount());
+        assertEquals(1, swapSpace.getFailedTileCount());
+        assertTrue(swapSpace.isStoreFailed());
+        assertSame(tile00, swapSpace.restoreTile(image, 0, 0).getTile());
+
+        // further failures are reported synchronously
+        assertFalse(swapSpace.storeTile(new MemoryTile(image, 1, 0, image.getTile(1, 0), null)));
+        delegate.failing = false;
+        assertTrue(swapSpace.storeTile(new MemoryTile(image, 1, 0, image.getTile(1, 0), null)));
+        assertEquals(1, delegate.tiles.size());
+
+        assertTrue(swapSpace.deleteTile(image, 0, 0));
+        assertEquals(0, swapSpace.getFailedTileCount());
+        assertNull(swapSpace.restoreTile(image, 0, 0));
+        swapSpace.dispose();
+    }
+
+    private static TiledImage createImage() {
+        ComponentSampleModelJAI sm = new ComponentSampleModelJAI(DataBuffer.TYPE_FLOAT, 64, 64, 1, 64, new int[1]);
+        return new TiledImage(0, 0, 4 * 64, 4 * 64, 0, 0, sm, PlanarImage.createColorModel(sm));
+    }
+
+    private static class BlockingSwapSpaceMock implements SwapSpace {
+        final HashMap<Object, MemoryTile> tiles = new HashMap<Object, MemoryTile>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile boolean failing;
+
+        void release() {
+            latch.countDown();
+        }
+
+        public boolean storeTile(MemoryTile memoryTile) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                return false;
+            }
+            if (failing) {
+                return false;
+            }
+            synchronized (this) {
+                tiles.put(memoryTile.getKey(), memoryTile);
+            }
+            return true;
+        }
+
+        public synchronized MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+            return tiles.get(MemoryTile.hashKey(owner, tileX, tileY));
+        }
+
+        public synchronized boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
+            return tiles.remove(MemoryTile.hashKey(owner, tileX, tileY)) != null;
+        }
+    }
+}